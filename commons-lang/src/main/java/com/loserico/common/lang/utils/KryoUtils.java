@@ -4,8 +4,6 @@ import com.esotericsoftware.kryo.kryo5.Kryo;
 import com.esotericsoftware.kryo.kryo5.io.Input;
 import com.esotericsoftware.kryo.kryo5.io.Output;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.util.Base64;
 
 /**
@@ -27,14 +25,14 @@ public final class KryoUtils {
 	
 	private static final String DEFAULT_ENCODING = "UTF-8";
 	
-	private static final Kryo kryo = new Kryo();
-	
 	/**
+	 * Kryo不是线程安全的, 每个线程一个实例
+	 * <p>
 	 * 不要轻易改变这里的配置, 更改之后, 序列化的格式就会发生变化
 	 * 上线的同时就必须清除 Redis 里的所有缓存, 否则那些缓存再回来反序列化的时候就会报错
-	 *
 	 */
-	static {
+	private static final ThreadLocal<Kryo> KRYO = ThreadLocal.withInitial(() -> {
+		Kryo kryo = new Kryo();
 		/*
 		 * 支持对象循环引用(否则会栈溢出)
 		 * 默认值就是 true, 不要改变这个配置
@@ -51,8 +49,8 @@ public final class KryoUtils {
 		
 		//Fix the NPE bug when deserializing Collections.
 		kryo.getInstantiatorStrategy();
-		
-	}
+		return kryo;
+	});
 	
 	/**
 	 * 将对象【及类型】序列化为字节数组
@@ -62,13 +60,9 @@ public final class KryoUtils {
 	 * @return 序列化后的字节数组
 	 */
 	public static <T> byte[] toBytes(T obj) {
-		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-		Output output = new Output(byteArrayOutputStream);
-		
-		kryo.writeClassAndObject(output, obj);
-		output.flush();
-		
-		return byteArrayOutputStream.toByteArray();
+		Output output = new Output(256, -1);
+		KRYO.get().writeClassAndObject(output, obj);
+		return output.toBytes();
 	}
 	
 	/**
@@ -80,10 +74,22 @@ public final class KryoUtils {
 	 */
 	@SuppressWarnings("unchecked")
 	public static <T> T toObject(byte[] bytes) {
-		ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
-		Input input = new Input(byteArrayInputStream);
-		
-		return (T) kryo.readClassAndObject(input);
+		return toObject(bytes, 0, bytes.length);
+	}
+	
+	/**
+	 * 从字节数组的指定位置开始反序列化, 省掉一次数组拷贝
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @param <T>
+	 * @return T
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T toObject(byte[] bytes, int offset, int length) {
+		Input input = new Input(bytes, offset, length);
+		return (T) KRYO.get().readClassAndObject(input);
 	}
 	
 	/**
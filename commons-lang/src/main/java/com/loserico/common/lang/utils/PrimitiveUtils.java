@@ -18,6 +18,10 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  */
 public final class PrimitiveUtils {
 
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+	};
+
 	public static boolean isPrimitive(Object value) {
 		if (value == null) {
 			return false;
@@ -58,19 +62,19 @@ public final class PrimitiveUtils {
 			return (T) Byte.valueOf(toString(data));
 		}
 		if (Integer.class.equals(clazz) || Integer.TYPE.equals(clazz)) {
-			return (T) Integer.valueOf(toString(data));
+			return (T) Integer.valueOf(parseInt(data));
 		}
 		if (Long.class.equals(clazz) || Long.TYPE.equals(clazz)) {
-			return (T) Long.valueOf(toString(data));
+			return (T) Long.valueOf(parseLong(data));
 		}
-		if (Double.class.equals(clazz)) {
-			return (T) Double.valueOf(toString(data));
+		if (Double.class.equals(clazz) || Double.TYPE.equals(clazz)) {
+			return (T) Double.valueOf(parseDouble(data));
 		}
 		if (Float.class.equals(clazz) || Float.TYPE.equals(clazz)) {
 			return (T) Float.valueOf(toString(data));
 		}
 		if (Boolean.class.equals(clazz) || Boolean.TYPE.equals(clazz)) {
-			return (T) Boolean.valueOf(toString(data));
+			return (T) Boolean.valueOf(parseBoolean(data));
 		}
 		if (Short.class.equals(clazz) || Short.TYPE.equals(clazz)) {
 			return (T) Short.valueOf(toString(data));
@@ -116,7 +120,100 @@ public final class PrimitiveUtils {
 			return 0;
 		}
 		
-		return Integer.valueOf(toString(data));
+		return parseInt(data);
+	}
+
+	/**
+	 * 直接从ASCII字节解析long, 不创建String
+	 * <p>
+	 * 只处理可选的'-'加不超过18位数字, 其他情况('+', 空格, 溢出等)交给Long.parseLong,
+	 * 所以结果和抛出的异常都和Long.parseLong(new String(data, UTF_8))一样
+	 *
+	 * @param data
+	 * @return long
+	 */
+	public static long parseLong(byte[] data) {
+		int len = data.length;
+		boolean negative = len > 0 && data[0] == '-';
+		int i = negative ? 1 : 0;
+		if (i == len || len - i > 18) {
+			return Long.parseLong(toString(data));
+		}
+		long value = 0;
+		for (; i < len; i++) {
+			int digit = data[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return Long.parseLong(toString(data));
+			}
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * 同parseLong, 超出int范围抛NumberFormatException
+	 *
+	 * @param data
+	 * @return int
+	 */
+	public static int parseInt(byte[] data) {
+		long value = parseLong(data);
+		if ((int) value != value) {
+			throw new NumberFormatException("For input string: \"" + toString(data) + "\"");
+		}
+		return (int) value;
+	}
+
+	/**
+	 * 直接从ASCII字节解析double, 不创建String
+	 * <p>
+	 * 只处理[-]digits[.digits]并且有效数字不超过15位的情况: 这时整数部分小于2^53, 除数是精确的10的幂,
+	 * 一次除法就是正确舍入的结果, 和Double.parseDouble一样; 指数形式等其他情况交给Double.parseDouble
+	 *
+	 * @param data
+	 * @return double
+	 */
+	public static double parseDouble(byte[] data) {
+		int len = data.length;
+		boolean negative = len > 0 && data[0] == '-';
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean dot = false;
+		for (int i = negative ? 1 : 0; i < len; i++) {
+			byte b = data[i];
+			if (b == '.' && !dot) {
+				dot = true;
+				continue;
+			}
+			int digit = b - '0';
+			if (digit < 0 || digit > 9 || ++digits > 15) {
+				return Double.parseDouble(toString(data));
+			}
+			mantissa = mantissa * 10 + digit;
+			if (dot) {
+				scale++;
+			}
+		}
+		if (digits == 0) {
+			return Double.parseDouble(toString(data));
+		}
+		double value = scale == 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * 和Boolean.parseBoolean一样, 忽略大小写等于"true"才是true
+	 *
+	 * @param data
+	 * @return boolean
+	 */
+	public static boolean parseBoolean(byte[] data) {
+		return data.length == 4
+				&& (data[0] | 0x20) == 't'
+				&& (data[1] | 0x20) == 'r'
+				&& (data[2] | 0x20) == 'u'
+				&& (data[3] | 0x20) == 'e';
 	}
 
 
@@ -60,9 +60,23 @@ public final class ProtostuffUtils {
 	 * @return T
 	 */
 	public static <T> T toObject(byte[] bytes, Class<T> clazz) {
+		return toObject(bytes, 0, bytes.length, clazz);
+	}
+	
+	/**
+	 * 从字节数组的指定位置开始反序列化, 省掉一次数组拷贝
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @param clazz
+	 * @param <T>
+	 * @return T
+	 */
+	public static <T> T toObject(byte[] bytes, int offset, int length, Class<T> clazz) {
 		Schema<T> schema = getSchema(clazz);
 		T obj = schema.newMessage();
-		ProtobufIOUtil.mergeFrom(bytes, obj, schema);
+		ProtobufIOUtil.mergeFrom(bytes, offset, length, obj, schema);
 		return obj;
 	}
 	
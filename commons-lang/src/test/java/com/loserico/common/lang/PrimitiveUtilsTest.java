@@ -0,0 +1,60 @@
+package com.loserico.common.lang;
+
+import com.loserico.common.lang.utils.PrimitiveUtils;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * Copyright: (C), 2021-03-18 10:15
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class PrimitiveUtilsTest {
+	
+	@Test
+	public void testParseLong() {
+		assertEquals(0L, PrimitiveUtils.parseLong(bytes("0")));
+		assertEquals(-1234567890123L, PrimitiveUtils.parseLong(bytes("-1234567890123")));
+		assertEquals(Long.MAX_VALUE, PrimitiveUtils.parseLong(bytes("9223372036854775807")));
+		assertEquals(Long.MIN_VALUE, PrimitiveUtils.parseLong(bytes("-9223372036854775808")));
+		assertEquals(5L, PrimitiveUtils.parseLong(bytes("+5")));
+	}
+	
+	@Test(expected = NumberFormatException.class)
+	public void testParseLongOverflow() {
+		PrimitiveUtils.parseLong(bytes("9223372036854775808"));
+	}
+	
+	@Test(expected = NumberFormatException.class)
+	public void testParseIntOverflow() {
+		PrimitiveUtils.parseInt(bytes("2147483648"));
+	}
+	
+	@Test
+	public void testParseDouble() {
+		String[] values = {"0.1", "-0", "3.14159265358979", "1.", ".5", "123456789.123456", "1e-7", "-2.5E10"};
+		for (String value : values) {
+			assertEquals(Double.doubleToRawLongBits(Double.parseDouble(value)),
+					Double.doubleToRawLongBits(PrimitiveUtils.parseDouble(bytes(value))));
+		}
+	}
+	
+	@Test
+	public void testToPrimitive() {
+		assertEquals(Integer.valueOf(42), PrimitiveUtils.toPrimitive(bytes("42"), Integer.class));
+		assertEquals(Long.valueOf(-7), PrimitiveUtils.toPrimitive(bytes("-7"), long.class));
+		assertEquals(Boolean.TRUE, PrimitiveUtils.toPrimitive(bytes("TRUE"), Boolean.class));
+		assertEquals(Boolean.FALSE, PrimitiveUtils.toPrimitive(bytes("yes"), Boolean.class));
+	}
+	
+	private static byte[] bytes(String s) {
+		return s.getBytes(UTF_8);
+	}
+}
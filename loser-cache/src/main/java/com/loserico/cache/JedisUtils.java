@@ -2,30 +2,72 @@ package com.loserico.cache;
 
 
 import com.fasterxml.jackson.databind.JavaType;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.loserico.cache.codec.RedisCodec;
+import com.loserico.cache.codec.RedisCodecs;
+import com.loserico.cache.collection.HashFieldReaper;
 import com.loserico.cache.collection.QueueListener;
+import com.loserico.cache.collection.StreamClaim;
+import com.loserico.cache.collection.StreamEntry;
 import com.loserico.cache.concurrent.BlockingLock;
 import com.loserico.cache.concurrent.Lock;
 import com.loserico.cache.concurrent.NonBlockingLock;
-import com.loserico.cache.exception.JedisValueOperationException;
+import com.loserico.cache.concurrent.ReadWriteLock;
+import com.loserico.cache.concurrent.RedisReadWriteLock;
+import com.loserico.cache.concurrent.RedisSemaphore;
+import com.loserico.cache.concurrent.Semaphore;
+import com.loserico.cache.exception.JedisException;
 import com.loserico.cache.factory.JedisOperationFactory;
+import com.loserico.cache.geo.GeoCellCache;
+import com.loserico.cache.geo.GeoResult;
 import com.loserico.cache.listeners.MessageListener;
-import com.loserico.cache.operations.JedisClusterOperations;
+import com.loserico.cache.loader.CacheLoader;
+import com.loserico.cache.metrics.CommandStats;
+import com.loserico.cache.metrics.HdrRedisMetrics;
+import com.loserico.cache.metrics.PoolStats;
+import com.loserico.cache.metrics.RedisMetrics;
+import com.loserico.cache.near.NearCacheStats;
+import com.loserico.cache.operations.AsyncJedisOperations;
+import com.loserico.cache.operations.DelegatingJedisOperations;
+import com.loserico.cache.operations.HotKeyJedisOperations;
 import com.loserico.cache.operations.JedisOperations;
+import com.loserico.cache.operations.MetricsJedisOperations;
+import com.loserico.cache.operations.NearCacheJedisOperations;
+import com.loserico.cache.ratelimit.FixedWindowRateLimiter;
+import com.loserico.cache.ratelimit.RateLimiter;
+import com.loserico.cache.ratelimit.SlidingLogRateLimiter;
+import com.loserico.cache.ratelimit.TokenBucketRateLimiter;
+import com.loserico.cache.script.LuaScript;
+import com.loserico.cache.script.LuaScriptRegistry;
 import com.loserico.cache.status.HSet;
 import com.loserico.cache.status.TTL;
+import com.loserico.cache.utils.KeyTemplate;
 import com.loserico.cache.utils.KeyUtils;
+import com.loserico.cache.utils.ScanIterator;
 import com.loserico.cache.utils.UnMarshaller;
+import com.loserico.common.lang.resource.PropertyReader;
 import com.loserico.common.lang.utils.IOUtils;
 import com.loserico.common.lang.utils.PrimitiveUtils;
 import com.loserico.json.jackson.JacksonUtils;
 import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.GeoCoordinate;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPubSub;
 import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Tuple;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.Pool;
 
-import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -35,16 +77,21 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.loserico.cache.status.HSet.INSERTED;
 import static com.loserico.cache.status.HSet.UPDATED;
+import static com.loserico.cache.utils.ByteUtils.encode;
 import static com.loserico.cache.utils.ByteUtils.toBytes;
 import static com.loserico.cache.utils.KeyUtils.joinKey;
 import static com.loserico.cache.utils.StringUtils.requireNonEmpty;
@@ -54,6 +101,7 @@ import static com.loserico.cache.utils.UnMarshaller.toObject;
 import static com.loserico.cache.utils.UnMarshaller.toSeconds;
 import static com.loserico.json.jackson.JacksonUtils.toJson;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.stream.Collectors.*;
 import static org.apache.commons.lang3.StringUtils.isBlank;
@@ -77,13 +125,34 @@ public final class JedisUtils {
 	
 	public static final String STATUS_SUCCESS = "OK";
 	
+	private static final String SCAN_SCRIPT = "/lua-scripts/scan.lua";
+	
+	private static final String UNLINK_SCRIPT = "/lua-scripts/unlink.lua";
+	
 	/**
-	 * 用户缓存lua脚本的sha
+	 * SCAN默认每页大约多少个, 也是一次UNLINK最多几个key
 	 */
-	private static final ConcurrentHashMap<String, String> shaHashs = new ConcurrentHashMap<>();
+	private static final int SCAN_BATCH_SIZE = 1000;
 	
 	private static JedisOperations jedisOperations = JedisOperationFactory.create();
 	
+	/**
+	 * 所有lua脚本都通过它执行, 启动时预加载到每个master上
+	 */
+	private static final LuaScriptRegistry luaScripts = new LuaScriptRegistry(jedisOperations);
+	
+	/**
+	 * 第一次调用async()的时候才创建
+	 */
+	private static volatile AsyncJedisOperations asyncOperations;
+	
+	static {
+		RedisCodecs.setCodec(JedisOperationFactory.createCodec());
+		if (new PropertyReader("redis").getBoolean("redis.lua.preload", true)) {
+			luaScripts.preload();
+		}
+	}
+	
 	/**
 	 * key/value 都是字符串的版本
 	 *
@@ -92,7 +161,7 @@ public final class JedisUtils {
 	 * @return String
 	 */
 	public static boolean set(String key, String value) {
-		return set(toBytes(key), toBytes(value));
+		return set(toBytes(key), encode(value));
 	}
 	
 	/**
@@ -106,7 +175,7 @@ public final class JedisUtils {
 	 * @return boolean 是否set成功
 	 */
 	public static boolean set(String key, Object value) {
-		return set(toBytes(key), toBytes(value));
+		return set(toBytes(key), encode(value));
 	}
 	
 	/**
@@ -132,7 +201,7 @@ public final class JedisUtils {
 	 * @on
 	 */
 	public static boolean set(Object key, String value) {
-		return set(toBytes(key), toBytes(value));
+		return set(toBytes(key), encode(value));
 	}
 	
 	/**
@@ -144,7 +213,7 @@ public final class JedisUtils {
 	 * @return boolean 是否set成功
 	 */
 	public static boolean set(Object key, Object value) {
-		return set(toBytes(key), toBytes(value));
+		return set(toBytes(key), encode(value));
 	}
 	
 	/**
@@ -167,7 +236,7 @@ public final class JedisUtils {
 	 */
 	public static boolean set(String key, String value, long expires, TimeUnit timeUnit) {
 		Objects.requireNonNull(timeUnit);
-		return set(toBytes(key), toBytes(value), toBytes(expires, timeUnit));
+		return set(toBytes(key), encode(value), toBytes(expires, timeUnit));
 	}
 	
 	/**
@@ -180,7 +249,7 @@ public final class JedisUtils {
 	 */
 	public static boolean set(String key, Object value, long expires, TimeUnit timeUnit) {
 		Objects.requireNonNull(timeUnit);
-		return set(toBytes(key), toBytes(value), toBytes(expires, timeUnit));
+		return set(toBytes(key), encode(value), toBytes(expires, timeUnit));
 	}
 	
 	/**
@@ -193,7 +262,7 @@ public final class JedisUtils {
 	 */
 	public static boolean set(Object key, String value, long expires, TimeUnit timeUnit) {
 		Objects.requireNonNull(key);
-		return set(toBytes(key), toBytes(value), toBytes(expires, timeUnit));
+		return set(toBytes(key), encode(value), toBytes(expires, timeUnit));
 	}
 	
 	/**
@@ -207,7 +276,7 @@ public final class JedisUtils {
 	public static boolean set(Object key, Object value, long expires, TimeUnit timeUnit) {
 		Objects.requireNonNull(key);
 		Objects.requireNonNull(timeUnit);
-		return set(toBytes(key), toBytes(value), toBytes(expires, timeUnit));
+		return set(toBytes(key), encode(value), toBytes(expires, timeUnit));
 	}
 	
 	/**
@@ -218,15 +287,8 @@ public final class JedisUtils {
 	 * @return true 表示设置成功
 	 */
 	public static boolean set(byte[] key, byte[] value, byte[] expires) {
-		String sampleKey = "setExpire.lua";
-		String setExpireSha1 = shaHashs.computeIfAbsent(sampleKey, (x) -> {
-			log.debug("Load script {}", sampleKey);
-			if (jedisOperations instanceof JedisClusterOperations) {
-				jedisOperations.scriptLoad(IOUtils.readClassPathFileAsBytes("/lua-scripts/setExpire.lua"), key);
-			}
-			return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/setExpire.lua"));
-		});
-		long result = (long) jedisOperations.evalsha(toBytes(setExpireSha1), 1, key, value, expires);
+		long result = (long) luaScripts.eval("/lua-scripts/setExpire.lua", 1, key, value, expires);
+		jedisOperations.invalidate(key);
 		return result == 1;
 	}
 	
@@ -239,7 +301,7 @@ public final class JedisUtils {
 	 * @return boolean    是否设置成功
 	 */
 	public static boolean setnx(String key, String value) {
-		return 1L == jedisOperations.setnx(toBytes(key), toBytes(value));
+		return 1L == jedisOperations.setnx(toBytes(key), encode(value));
 	}
 	
 	/**
@@ -252,7 +314,7 @@ public final class JedisUtils {
 	 */
 	public static boolean setnx(String key, Object value) {
 		Objects.requireNonNull(key);
-		return 1L == jedisOperations.setnx(toBytes(key), toBytes(value));
+		return 1L == jedisOperations.setnx(toBytes(key), encode(value));
 	}
 	
 	/**
@@ -265,7 +327,7 @@ public final class JedisUtils {
 	 */
 	public static boolean setnx(Object key, Object value) {
 		Objects.requireNonNull(key);
-		return 1L == jedisOperations.setnx(toBytes(key), toBytes(value));
+		return 1L == jedisOperations.setnx(toBytes(key), encode(value));
 	}
 	
 	/**
@@ -282,22 +344,16 @@ public final class JedisUtils {
 		Objects.requireNonNull(key);
 		Objects.requireNonNull(timeUnit);
 		
-		String sampleKey = "setnx.lua";
-		String setnxSha1 = shaHashs.computeIfAbsent("setnx.lua", x -> {
-			log.debug("Load script {}", "setnx.lua");
-			if (jedisOperations instanceof JedisClusterOperations) {
-				return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/setnx.lua"), key);
-			}
-			return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/setnx.lua"));
-		});
-		
 		long expireInSeconds = timeUnit.toSeconds(expires);
-		long result = (long) jedisOperations.evalsha(toBytes(setnxSha1),
+		byte[] keyBytes = toBytes(key);
+		long result = (long) luaScripts.eval("/lua-scripts/setnx.lua",
 				1,
-				toBytes(key),
-				toBytes(value),
+				keyBytes,
+				encode(value),
 				toBytes(expireInSeconds));
-		
+		if (result == 1) {
+			jedisOperations.invalidate(keyBytes);
+		}
 		return result == 1;
 	}
 	
@@ -322,6 +378,17 @@ public final class JedisUtils {
 		return get(toBytes(key), clazz);
 	}
 	
+	/**
+	 * 泛型类型的value, 比如List&lt;Foo&gt;, Map&lt;String, Foo&gt;
+	 *
+	 * @param key
+	 * @param javaType
+	 * @return T
+	 */
+	public static <T> T get(String key, JavaType javaType) {
+		return UnMarshaller.toObject(jedisOperations.get(toBytes(key)), javaType);
+	}
+	
 	/**
 	 * 根据key从缓存中取, 如果取不到对应的value则调用supplier并回填, 回填后默认5分钟过期
 	 *
@@ -336,6 +403,8 @@ public final class JedisUtils {
 	
 	/**
 	 * 根据key从缓存中取, 如果取不到对应的value则调用supplier并回填, 同时制定key的过期时间
+	 * <p>
+	 * 同一个key同时只会有一个调用方执行supplier, 快过期的时候会提前在后台刷新, 详见CacheLoader
 	 *
 	 * @param key
 	 * @param clazz
@@ -343,23 +412,48 @@ public final class JedisUtils {
 	 * @return T
 	 */
 	public static <T> T get(String key, Class<T> clazz, Supplier<T> supplier, long expires, TimeUnit timeUnit) {
-		T object = get(key, clazz);
-		// 没有命中则调用supplier.get()并回填缓存
-		if (object == null) {
-			// 成功获取锁才调supplier并回填
-			String requestId = UUID.randomUUID().toString();
-			boolean locked = lock(key, requestId, expires, timeUnit);
-			if (locked) {
-				T result = supplier.get();
-				set(key, result, expires, timeUnit);
-				unlock(key, requestId);
-				return result;
-			} else {// 没有获得锁就再从缓存取一遍, 取不到拉倒
-				return get(key, clazz);
-			}
-		}
-		
-		return object;
+		return CacheLoader.builder(clazz)
+				.ttl(expires, timeUnit)
+				.build()
+				.get(key, supplier);
+	}
+	
+	/**
+	 * 和get(key, clazz, supplier, expires, timeUnit)一样, 另外逻辑过期之后staleTtl时间内还返回旧值, 同时后台刷新
+	 *
+	 * @param key
+	 * @param clazz
+	 * @param supplier
+	 * @param expires
+	 * @param staleTtl
+	 * @param timeUnit
+	 * @return T
+	 */
+	public static <T> T get(String key, Class<T> clazz, Supplier<T> supplier, long expires, long staleTtl, TimeUnit timeUnit) {
+		return CacheLoader.builder(clazz)
+				.ttl(expires, timeUnit)
+				.staleTtl(staleTtl, timeUnit)
+				.build()
+				.get(key, supplier);
+	}
+	
+	/**
+	 * 和get(key, clazz, supplier, expires, staleTtl, timeUnit)一样, value是泛型类型, 比如List&lt;Foo&gt;
+	 *
+	 * @param key
+	 * @param javaType
+	 * @param supplier
+	 * @param expires
+	 * @param staleTtl
+	 * @param timeUnit
+	 * @return T
+	 */
+	public static <T> T get(String key, JavaType javaType, Supplier<T> supplier, long expires, long staleTtl, TimeUnit timeUnit) {
+		return CacheLoader.<T>builder(javaType)
+				.ttl(expires, timeUnit)
+				.staleTtl(staleTtl, timeUnit)
+				.build()
+				.get(key, supplier);
 	}
 	
 	/**
@@ -399,6 +493,105 @@ public final class JedisUtils {
 		return toObject(value, clazz);
 	}
 	
+	/**
+	 * 批量读, 返回结果和keys一一对应, 不存在的key对应null; keys为空返回空List, 不发命令
+	 * <p>
+	 * Cluster模式下keys可以分布在不同的slot, 会按slot分组后每个master一次pipeline并行执行
+	 *
+	 * @param keys
+	 * @return List<String>
+	 */
+	public static List<String> mget(List<String> keys) {
+		if (isEmpty(keys)) {
+			return new ArrayList<>();
+		}
+		List<byte[]> values = jedisOperations.mget(toBytes(keys));
+		List<String> results = new ArrayList<>(values.size());
+		for (byte[] value : values) {
+			results.add(value == null || value.length == 0 ? null : new String(value, UTF_8));
+		}
+		return results;
+	}
+	
+	/**
+	 * 批量读, value反序列化成clazz类型, 返回结果和keys一一对应, 不存在的key对应null
+	 *
+	 * @param keys
+	 * @param clazz
+	 * @return List<T>
+	 */
+	public static <T> List<T> mget(List<String> keys, Class<T> clazz) {
+		if (isEmpty(keys)) {
+			return new ArrayList<>();
+		}
+		List<byte[]> values = jedisOperations.mget(toBytes(keys));
+		List<T> results = new ArrayList<>(values.size());
+		for (byte[] value : values) {
+			results.add(toObject(value, clazz));
+		}
+		return results;
+	}
+	
+	/**
+	 * 批量写, value的序列化方式和set(key, value)一样
+	 * <p>
+	 * Cluster模式下keys可以分布在不同的slot, 但是整体不再是原子的
+	 *
+	 * @param keyValues
+	 * @return boolean 是否全部set成功
+	 */
+	public static boolean mset(Map<String, ?> keyValues) {
+		if (keyValues == null || keyValues.isEmpty()) {
+			return true;
+		}
+		byte[][] keysvalues = new byte[keyValues.size() * 2][];
+		int i = 0;
+		for (Map.Entry<String, ?> entry : keyValues.entrySet()) {
+			keysvalues[i++] = toBytes(entry.getKey());
+			keysvalues[i++] = encode(entry.getValue());
+		}
+		return STATUS_SUCCESS.equals(jedisOperations.mset(keysvalues));
+	}
+	
+	/**
+	 * 批量写并设置过期时间, 每个key的SET和EXPIRE是原子的, 整体不是
+	 * <p>
+	 * 单节点/Sentinel模式下所有key放在一个pipeline里, 一次网络往返; Cluster模式下逐个写
+	 *
+	 * @param keyValues
+	 * @param expires
+	 * @param timeUnit
+	 * @return boolean 是否全部set成功
+	 */
+	public static boolean mset(Map<String, ?> keyValues, long expires, TimeUnit timeUnit) {
+		if (keyValues == null || keyValues.isEmpty()) {
+			return true;
+		}
+		Objects.requireNonNull(timeUnit);
+		byte[] expiresBytes = toBytes(expires, timeUnit);
+		byte[][] keys = new byte[keyValues.size()][];
+		List<Object[]> paramsList = new ArrayList<>(keyValues.size());
+		int i = 0;
+		for (Map.Entry<String, ?> entry : keyValues.entrySet()) {
+			keys[i] = toBytes(entry.getKey());
+			paramsList.add(new Object[]{keys[i], encode(entry.getValue()), expiresBytes});
+			i++;
+		}
+		List<Object> results = evalScriptPipelined("/lua-scripts/setExpire.lua", 1, paramsList);
+		jedisOperations.invalidate(keys);
+		
+		boolean success = true;
+		for (Object result : results) {
+			if (result instanceof Throwable) {
+				log.warn("Set with expire failed", (Throwable) result);
+				success = false;
+			} else if (!Long.valueOf(1L).equals(result)) {
+				success = false;
+			}
+		}
+		return success;
+	}
+	
 	/**
 	 * 获取Long类型的值, 如果这个key不存在这返回null
 	 *
@@ -516,20 +709,13 @@ public final class JedisUtils {
 	 * @return Long
 	 */
 	public static Long incr(String key, long expires, TimeUnit timeUnit) {
-		String sampleKey = "incrExpire.lua";
-		String setnxSha1 = shaHashs.computeIfAbsent(sampleKey, x -> {
-			log.debug("Load script {}", sampleKey);
-			if (jedisOperations instanceof JedisClusterOperations) {
-				return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/incrExpire.lua"), key);
-			}
-			return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/incrExpire.lua"));
-		});
-		
 		long expireInSeconds = timeUnit.toSeconds(expires);
-		long currentValue = (long) jedisOperations.evalsha(toBytes(setnxSha1),
+		byte[] keyBytes = toBytes(key);
+		long currentValue = (long) luaScripts.eval("/lua-scripts/incrExpire.lua",
 				1,
-				toBytes(key),
+				keyBytes,
 				toBytes(expireInSeconds));
+		jedisOperations.invalidate(keyBytes);
 		return currentValue;
 	}
 	
@@ -585,7 +771,18 @@ public final class JedisUtils {
 		 * @return long
 		 */
 		public static long lpush(String key, Object... values) {
-			return jedisOperations.lpush(toBytes(key), toBytes(values));
+			return jedisOperations.lpush(toBytes(key), encode(values));
+		}
+		
+		/**
+		 * lpush 原样写入已经序列化好的元素
+		 *
+		 * @param key
+		 * @param values
+		 * @return long
+		 */
+		public static long lpush(String key, byte[]... values) {
+			return jedisOperations.lpush(toBytes(key), values);
 		}
 		
 		/**
@@ -607,7 +804,7 @@ public final class JedisUtils {
 		 * @return long
 		 */
 		public static long rpush(String key, Object... values) {
-			return jedisOperations.rpush(toBytes(key), toBytes(values));
+			return jedisOperations.rpush(toBytes(key), encode(values));
 		}
 		
 		/**
@@ -750,6 +947,9 @@ public final class JedisUtils {
 		 *
 		 * 有元素出队后queueListener会被调用
 		 * </pre>
+		 * <p>
+		 * 元素出队后就从Redis里删掉了, listener处理失败或者进程挂掉消息就丢了, 需要至少处理一次的场景用
+		 * {@link com.loserico.cache.collection.ReliableQueue}
 		 *
 		 * @param key
 		 * @return
@@ -910,6 +1110,9 @@ public final class JedisUtils {
 		 *
 		 * 有元素出队后queueListener会被调用
 		 * </pre>
+		 * <p>
+		 * 元素出队后就从Redis里删掉了, listener处理失败或者进程挂掉消息就丢了, 需要至少处理一次的场景用
+		 * {@link com.loserico.cache.collection.ReliableQueue}
 		 *
 		 * @param key
 		 * @param listener
@@ -923,17 +1126,27 @@ public final class JedisUtils {
 			}
 		}
 		
+		/**
+		 * 阻塞地从source尾部弹出一个元素, 同时放到destination头部, 原子操作
+		 * <p>
+		 * 可靠队列用它把元素挪到处理中列表, 消费者挂掉元素也不会丢, 见 {@link com.loserico.cache.collection.ReliableQueue}
+		 *
+		 * @param source
+		 * @param destination
+		 * @param timeout     秒, 0表示一直等
+		 * @return byte[] 超时返回null
+		 */
+		public static byte[] brpoplpush(String source, String destination, int timeout) {
+			return jedisOperations.brpoplpush(toBytes(source), toBytes(destination), timeout);
+		}
+		
 		public static String rpop(String key) {
 			return jedisOperations.rpop(key);
 		}
 		
 		public static <T> T rpop(String key, Class<T> clazz) {
-			String value = jedisOperations.rpop(key);
-			if (isBlank(value)) {
-				return null;
-			}
-			
-			return JacksonUtils.toObject(value, clazz);
+			byte[] value = jedisOperations.rpop(toBytes(key));
+			return toObject(value, clazz);
 		}
 		
 		/**
@@ -1033,7 +1246,7 @@ public final class JedisUtils {
 		public static long lrem(String key, long count, String value) {
 			return jedisOperations.lrem(key, count, value);
 		}
-		
+	
 	}
 	
 	/**
@@ -1135,6 +1348,29 @@ public final class JedisUtils {
 			return jedisOperations.srem(toBytes(key), toBytes(elements));
 		}
 		
+		
+		/**
+		 * 用SSCAN遍历Set, 大Set用这个代替smembers, 用到下一页的时候才去取
+		 *
+		 * @param key
+		 * @param pattern 只返回匹配的元素, * 表示全部
+		 * @param count   每页大约多少个
+		 * @return Stream<String> 同一个元素可能返回多次
+		 */
+		public static Stream<String> sscan(String key, String pattern, int count) {
+			return sscan(key, pattern, count, String.class);
+		}
+		
+		public static <T> Stream<T> sscan(String key, String pattern, int count, Class<T> clazz) {
+			return ScanIterator.stream(cursor -> scanPage("SSCAN", key, cursor, pattern, count, elements -> {
+				List<T> results = new ArrayList<>(elements.size());
+				for (byte[] element : elements) {
+					results.add(toObject(element, clazz));
+				}
+				return results;
+			}));
+		}
+	
 	}
 	
 	/**
@@ -1238,7 +1474,7 @@ public final class JedisUtils {
 					.stream()
 					.map(json -> JacksonUtils.toObject(json, clazz))
 					.collect(toSet());
-			
+		
 		}
 		
 		/**
@@ -1273,6 +1509,25 @@ public final class JedisUtils {
 					.map(json -> JacksonUtils.toObject(json, clazz))
 					.collect(Collectors.toSet());
 		}
+		
+		/**
+		 * 用ZSCAN遍历有序集合, 用到下一页的时候才去取; 不按score排序
+		 *
+		 * @param key
+		 * @param pattern 只返回匹配的member, * 表示全部
+		 * @param count   每页大约多少个
+		 * @return Stream<Tuple> member和score, 同一个member可能返回多次
+		 */
+		public static Stream<Tuple> zscan(String key, String pattern, int count) {
+			return ScanIterator.stream(cursor -> scanPage("ZSCAN", key, cursor, pattern, count, elements -> {
+				List<Tuple> tuples = new ArrayList<>(elements.size() / 2);
+				for (int i = 0; i < elements.size(); i += 2) {
+					tuples.add(new Tuple(elements.get(i), Double.valueOf(UnMarshaller.toString(elements.get(i + 1)))));
+				}
+				return tuples;
+			}));
+		}
+	
 	}
 	
 	/**
@@ -1290,7 +1545,45 @@ public final class JedisUtils {
 	public static final class HASH {
 		
 		// hash每个field的过期时间记录在key为 jedis_utils:__timeout__set:key 的zset中
-		private static final String HASH_EXPIRE_ZSET_PREFIX = "jedis_utils:__timeout__set";
+		public static final String HASH_EXPIRE_ZSET_PREFIX = "jedis_utils:__timeout__set";
+		
+		/**
+		 * Cluster模式下zset的key带上hash tag, 和hash落在同一个slot, 脚本里才能同时操作两个key
+		 */
+		private static final KeyTemplate HASH_EXPIRE_ZSET_KEY = KeyTemplate.of(HASH_EXPIRE_ZSET_PREFIX + ":{0}").hashTag(0);
+		
+		/**
+		 * key是记录field过期时间的zset的key, value是这个zset是否存在, 也就是hash有没有过期field
+		 * <p>
+		 * 没有过期field的hash, hget直接HGET, 可以命中本地缓存; 有的才走脚本过滤掉已过期的field
+		 */
+		private static final Cache<ByteBuffer, Boolean> FIELD_TTL_FLAGS = Caffeine.newBuilder()
+				.maximumSize(10000)
+				.expireAfterWrite(1, TimeUnit.SECONDS)
+				.build();
+		
+		/**
+		 * 服务端是否支持HEXPIRE, 第一次用到field过期的时候探测一次
+		 * <p>
+		 * 支持的话field过期交给Redis自己处理, hget直接HGET, 不用再走lua脚本; 可以通过 redis.hash.native-expire=false 关闭
+		 */
+		private static volatile Boolean nativeExpire;
+		
+		/**
+		 * 记录hash key各个field过期时间的zset的key
+		 * <p>
+		 * 单机模式还是原来的 jedis_utils:__timeout__set:key, 兼容已有的数据;
+		 * Cluster模式是 jedis_utils:__timeout__set:{key}, key本身有{tag}的话是 jedis_utils:__timeout__set:key
+		 *
+		 * @param key String或者byte[]
+		 * @return byte[]
+		 */
+		public static byte[] expireZsetKey(Object key) {
+			if (jedisOperations.isCluster()) {
+				return HASH_EXPIRE_ZSET_KEY.format(key);
+			}
+			return toBytes(joinKey(HASH_EXPIRE_ZSET_PREFIX, key));
+		}
 		
 		/**
 		 * key 是Map的名字
@@ -1305,7 +1598,7 @@ public final class JedisUtils {
 		 * @return int
 		 */
 		public static int hset(String key, Object field, Object value) {
-			return hset(toBytes(key), toBytes(field), toBytes(value));
+			return hset(toBytes(key), toBytes(field), encode(value));
 		}
 		
 		/**
@@ -1339,7 +1632,7 @@ public final class JedisUtils {
 		 * @return HSetStatus
 		 */
 		public static HSet hset(String key, Object field, Object value, int ttl) {
-			return hset(toBytes(key), toBytes(field), toBytes(value), ttl);
+			return hset(toBytes(key), toBytes(field), encode(value), ttl);
 		}
 		
 		/**
@@ -1356,24 +1649,27 @@ public final class JedisUtils {
 		 * @return HSetStatus
 		 */
 		public static HSet hset(byte[] key, byte[] field, byte[] value, int ttl) {
-			String hashSha = shaHashs.computeIfAbsent("hash.lua", x -> {
-				log.debug("Load script {}", "hash.lua");
-				if (jedisOperations instanceof JedisClusterOperations) {
-					return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua"), key);
-				} else {
-					return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua"));
-				}
-			});
+			if (nativeExpire(key)) {
+				Long result = (Long) evalHash(2, key, expireZsetKey(key),
+						toBytes("hsetNative"), field, value, toBytes(ttl));
+				jedisOperations.invalidate(key);
+				return result.intValue() == 0 ? UPDATED : INSERTED;
+			}
 			
-			String zsetKey = joinKey(HASH_EXPIRE_ZSET_PREFIX, key);
-			Long result = (Long) jedisOperations.evalsha(toBytes(hashSha),
+			byte[] zsetKey = expireZsetKey(key);
+			Long result = (Long) luaScripts.eval("/lua-scripts/hash.lua",
 					2,
 					key, // hash key
-					toBytes(zsetKey), // zset key
+					zsetKey, // zset key
 					toBytes("hset"), // 调用的lua function名字
 					field,
 					value,
 					toBytes(ttl));
+			if (ttl > 0) {
+				FIELD_TTL_FLAGS.put(ByteBuffer.wrap(zsetKey), Boolean.TRUE);
+				HashFieldReaper.track(UnMarshaller.toString(key), ttl);
+			}
+			jedisOperations.invalidate(key);
 			return result.intValue() == 0 ? UPDATED : INSERTED;
 		}
 		
@@ -1400,7 +1696,7 @@ public final class JedisUtils {
 		public static <K, V> AtomicLongArray hmsetGeneric(String key, Map<K, V> map) {
 			AtomicLongArray statistic = new AtomicLongArray(2);
 			map.entrySet().forEach((entry) -> {
-				Long type = jedisOperations.hset(toBytes(key), toBytes(entry.getKey()), toBytes(entry.getValue()));
+				Long type = jedisOperations.hset(toBytes(key), toBytes(entry.getKey()), encode(entry.getValue()));
 				if (type == 0) {
 					statistic.incrementAndGet(0);
 				} else {
@@ -1439,20 +1735,18 @@ public final class JedisUtils {
 		 */
 		
 		public static byte[] hget(byte[] key, byte[] field) {
-			String hashSha = shaHashs.computeIfAbsent("hash.lua", x -> {
-				log.debug("Load script {}", "hash.lua");
-				String script = IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua");
-				if (jedisOperations instanceof JedisClusterOperations) {
-					return jedisOperations.scriptLoad(script, key);
-				}
-				return jedisOperations.scriptLoad(script);
-			});
+			if (nativeExpire(key)) {
+				return jedisOperations.hget(key, field);
+			}
 			
-			String zsetKey = joinKey(HASH_EXPIRE_ZSET_PREFIX, key);
-			byte[] data = (byte[]) jedisOperations.evalsha(toBytes(hashSha),
+			byte[] zsetKey = expireZsetKey(key);
+			if (!hasFieldTtl(zsetKey)) {
+				return jedisOperations.hget(key, field);
+			}
+			byte[] data = (byte[]) luaScripts.eval("/lua-scripts/hash.lua",
 					2,
 					toBytes(key), // hash key
-					toBytes(zsetKey), // zset key
+					zsetKey, // zset key
 					toBytes("hget"), // 调用的lua function名字
 					toBytes(field));
 			return data;
@@ -1485,12 +1779,7 @@ public final class JedisUtils {
 		 */
 		public static <T> T hget(String key, Object field, JavaType javaType) {
 			byte[] data = jedisOperations.hget(toBytes(key), toBytes(field));
-			try {
-				return JacksonUtils.objectMapper().readValue(UnMarshaller.toString(data), javaType);
-			} catch (IOException e) {
-				log.error("Convert value to Collection type failed", e);
-				throw new JedisValueOperationException(e);
-			}
+			return UnMarshaller.toObject(data, javaType);
 		}
 		
 		/**
@@ -1550,14 +1839,7 @@ public final class JedisUtils {
 			return map.entrySet().stream()
 					.collect(toMap(
 							(entry) -> UnMarshaller.toString(entry.getKey()),
-							(entry) -> {
-								try {
-									return JacksonUtils.objectMapper().readValue(UnMarshaller.toString(entry.getValue()), javaType);
-								} catch (IOException e) {
-									log.error("Convert value to Collection type failed", e);
-									throw new JedisValueOperationException(e);
-								}
-							}));
+							(entry) -> UnMarshaller.<V>toObject(entry.getValue(), javaType)));
 		}
 		
 		/**
@@ -1585,14 +1867,7 @@ public final class JedisUtils {
 			return map.entrySet().stream()
 					.collect(toMap(
 							(entry) -> toObject(entry.getKey(), clazzKey),
-							(entry) -> {
-								try {
-									return JacksonUtils.objectMapper().readValue(UnMarshaller.toString(entry.getValue()), javaType);
-								} catch (IOException e) {
-									log.error("Convert value to Collection type failed", e);
-									throw new JedisValueOperationException(e);
-								}
-							}));
+							(entry) -> UnMarshaller.<V>toObject(entry.getValue(), javaType)));
 		}
 		
 		/**
@@ -1620,9 +1895,9 @@ public final class JedisUtils {
 		 * @return List<T>
 		 */
 		public static <T> List<T> hvals(String key, Class<T> clazz) {
-			List<String> values = jedisOperations.hvals(key);
+			List<byte[]> values = jedisOperations.hvals(toBytes(key));
 			return values.stream()
-					.map((value) -> JacksonUtils.toObject(value, clazz))
+					.map((value) -> toObject(value, clazz))
 					.collect(Collectors.toList());
 		}
 		
@@ -1700,21 +1975,17 @@ public final class JedisUtils {
 		 * @return int 删除的field数量
 		 */
 		public static Long hdel(String key, Object field) {
-			String hashSha = shaHashs.computeIfAbsent("hash.lua", x -> {
-				log.debug("Load script {}", "hash.lua");
-				if (jedisOperations instanceof JedisClusterOperations) {
-					return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua"), key);
-				}
-				return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua"));
-			});
-			
-			String zsetKey = joinKey(HASH_EXPIRE_ZSET_PREFIX, key);
-			return (Long) jedisOperations.evalsha(toBytes(hashSha),
+			byte[] zsetKey = expireZsetKey(key);
+			Long deleted = (Long) luaScripts.eval("/lua-scripts/hash.lua",
 					2,
 					toBytes(key), // hash key
-					toBytes(zsetKey), // zset key
+					zsetKey, // zset key
 					toBytes("hdel"), // 调用的lua function名字
 					toBytes(field));
+			if (deleted != null && deleted > 0) {
+				jedisOperations.invalidate(toBytes(key));
+			}
+			return deleted;
 		}
 		
 		/**
@@ -1725,21 +1996,16 @@ public final class JedisUtils {
 		 * @return int 删除的field数量
 		 */
 		public static String hdelGet(String key, Object field) {
-			String hashSha = shaHashs.computeIfAbsent("hash.lua", x -> {
-				log.debug("Load script {}", "hash.lua");
-				if (jedisOperations instanceof JedisClusterOperations) {
-					return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua"), key);
-				}
-				return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua"));
-			});
-			
-			String zsetKey = joinKey(HASH_EXPIRE_ZSET_PREFIX, key);
-			byte[] data = (byte[]) jedisOperations.evalsha(toBytes(hashSha),
+			byte[] zsetKey = expireZsetKey(key);
+			byte[] data = (byte[]) luaScripts.eval("/lua-scripts/hash.lua",
 					2,
 					toBytes(key), // hash key
-					toBytes(zsetKey), // zset key
+					zsetKey, // zset key
 					toBytes("hdelGet"), // 调用的lua function名字
 					toBytes(field));
+			if (data != null) {
+				jedisOperations.invalidate(toBytes(key));
+			}
 			return PrimitiveUtils.toString(data);
 		}
 		
@@ -1758,22 +2024,22 @@ public final class JedisUtils {
 		 * @on
 		 */
 		public static TTL ttl(String key, String field) {
-			String hashSha = shaHashs.computeIfAbsent("hash.lua", x -> {
-				log.debug("Load script {}", "hash.lua");
-				if (jedisOperations instanceof JedisClusterOperations) {
-					return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua"), key);
-				}
-				return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua"));
-			});
+			if (nativeExpire(toBytes(key))) {
+				Long result = (Long) evalHash(1, toBytes(key), toBytes("ttlNative"), toBytes(field));
+				return toTTL(result.intValue());
+			}
 			
-			String zsetKey = joinKey(HASH_EXPIRE_ZSET_PREFIX, key);
-			Long result = (Long) jedisOperations.evalsha(toBytes(hashSha),
+			byte[] zsetKey = expireZsetKey(key);
+			Long result = (Long) luaScripts.eval("/lua-scripts/hash.lua",
 					2,
 					toBytes(key),
-					toBytes(zsetKey),
+					zsetKey,
 					toBytes("ttl"),
 					toBytes(field));
-			int code = result.intValue();
+			return toTTL(result.intValue());
+		}
+		
+		private static TTL toTTL(int code) {
 			switch (code) {
 				case -3:
 					return TTL.KEY_NOT_EXIST;
@@ -1801,22 +2067,27 @@ public final class JedisUtils {
 		 * @return
 		 */
 		public static int expire(String key, String field, int ttl) {
-			String hashSha = shaHashs.computeIfAbsent("hash.lua", x -> {
-				log.debug("Load script {}", "hash.lua");
-				if (jedisOperations instanceof JedisClusterOperations) {
-					return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua"), key);
+			if (nativeExpire(toBytes(key))) {
+				Long result = (Long) evalHash(1, toBytes(key), toBytes("expireNative"), toBytes(field), toBytes(ttl));
+				if (result == 1) {
+					jedisOperations.invalidate(toBytes(key));
 				}
-				return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua"));
-			});
+				return result.intValue();
+			}
 			
-			String zsetKey = joinKey(HASH_EXPIRE_ZSET_PREFIX, key);
-			Long result = (Long) jedisOperations.evalsha(toBytes(hashSha),
+			byte[] zsetKey = expireZsetKey(key);
+			Long result = (Long) luaScripts.eval("/lua-scripts/hash.lua",
 					2,
 					toBytes(key),
-					toBytes(zsetKey),
+					zsetKey,
 					toBytes("expire"),
 					toBytes(field),
 					toBytes(ttl));
+			if (result == 1) {
+				FIELD_TTL_FLAGS.put(ByteBuffer.wrap(zsetKey), Boolean.TRUE);
+				HashFieldReaper.track(key, ttl);
+				jedisOperations.invalidate(toBytes(key));
+			}
 			return result.intValue();
 		}
 		
@@ -1832,19 +2103,16 @@ public final class JedisUtils {
 		 * @on
 		 */
 		public static int persist(String key, String field) {
-			String hashSha = shaHashs.computeIfAbsent("hash.lua", x -> {
-				log.debug("Load script {}", "hash.lua");
-				if (jedisOperations instanceof JedisClusterOperations) {
-					return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua"), key);
-				}
-				return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua"));
-			});
+			if (nativeExpire(toBytes(key))) {
+				Long result = (Long) evalHash(1, toBytes(key), toBytes("persistNative"), toBytes(field));
+				return result.intValue();
+			}
 			
-			String zsetKey = joinKey(HASH_EXPIRE_ZSET_PREFIX, key);
-			Long result = (Long) jedisOperations.evalsha(toBytes(hashSha),
+			byte[] zsetKey = expireZsetKey(key);
+			Long result = (Long) luaScripts.eval("/lua-scripts/hash.lua",
 					2,
 					toBytes(key),
-					toBytes(zsetKey),
+					zsetKey,
 					toBytes("persist"),
 					toBytes(field));
 			return result.intValue();
@@ -1856,16 +2124,7 @@ public final class JedisUtils {
 		 * @return
 		 */
 		public static long time() {
-			String hashSha = shaHashs.computeIfAbsent("hash.lua", x -> {
-				log.debug("Load script {}", "hash.lua");
-				if (jedisOperations instanceof JedisClusterOperations) {
-					
-					return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua"), "hash.lua");
-				}
-				return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua"));
-			});
-			
-			long milis = (long) jedisOperations.evalsha(toBytes(hashSha), 0, toBytes("time"));
+			long milis = (long) luaScripts.eval("/lua-scripts/hash.lua", 0, toBytes("time"));
 			return milis;
 		}
 		
@@ -1875,40 +2134,60 @@ public final class JedisUtils {
 		 * @return
 		 */
 		public static List<String> expiredFields(String key) {
-			String hashSha = shaHashs.computeIfAbsent("hash.lua", x -> {
-				log.debug("Load script {}", "hash.lua");
-				if (jedisOperations instanceof JedisClusterOperations) {
-					return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua"), key);
-				}
-				return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua"));
-			});
-			
-			String zsetKey = joinKey(HASH_EXPIRE_ZSET_PREFIX, key);
-			byte[] bytes = (byte[]) jedisOperations.evalsha(toBytes(hashSha),
+			byte[] zsetKey = expireZsetKey(key);
+			byte[] bytes = (byte[]) luaScripts.eval("/lua-scripts/hash.lua",
 					1,
-					toBytes(zsetKey),
+					zsetKey,
 					toBytes("expiredFields"));
 			String json = UnMarshaller.toString(bytes);
 			return JacksonUtils.toList(json, String.class);
 		}
 		
+		/**
+		 * 第一次调用时探测服务端是否支持HEXPIRE, 之后直接返回探测结果
+		 *
+		 * @param key Cluster模式下用来定位节点
+		 * @return boolean
+		 */
+		private static boolean nativeExpire(byte[] key) {
+			if (nativeExpire == null) {
+				synchronized (HASH.class) {
+					if (nativeExpire == null) {
+						boolean enabled = new PropertyReader("redis").getBoolean("redis.hash.native-expire", true);
+						nativeExpire = enabled && (Long) evalScript("/lua-scripts/hexpireSupported.lua", 1, UnMarshaller.toString(key)) == 1L;
+						log.info("Hash field expiration uses {}", nativeExpire ? "native HEXPIRE" : "companion zset");
+						/*
+						 * 原生模式下也启动一次, 把切换之前用zset记录的过期field清理掉
+						 */
+						HashFieldReaper.start();
+					}
+				}
+			}
+			return nativeExpire;
+		}
+		
+		/**
+		 * 这个hash有没有设置了过期时间的field, 结果在本地缓存1秒
+		 * <p>
+		 * 别的节点给hash加过期field之后, 本节点最多1秒后才知道; field的过期时间最少1秒, 所以这期间直接HGET读到的都还没过期
+		 */
+		private static boolean hasFieldTtl(byte[] zsetKey) {
+			return FIELD_TTL_FLAGS.get(ByteBuffer.wrap(zsetKey), k -> jedisOperations.exists(zsetKey));
+		}
+		
+		private static Object evalHash(int keyCount, byte[]... params) {
+			return luaScripts.eval("/lua-scripts/hash.lua", keyCount, params);
+		}
+		
 		/**
 		 * 调试用
 		 */
 		public static void testPurpose(String key, String field) {
-			String hashSha = shaHashs.computeIfAbsent("hash.lua", x -> {
-				log.debug("Load script {}", "hash.lua");
-				if (jedisOperations instanceof JedisClusterOperations) {
-					return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua"), key);
-				}
-				return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/hash.lua"));
-			});
-			
-			String zsetKey = joinKey(HASH_EXPIRE_ZSET_PREFIX, key);
-			Object data = (Object) jedisOperations.evalsha(toBytes(hashSha),
+			byte[] zsetKey = expireZsetKey(key);
+			Object data = (Object) luaScripts.eval("/lua-scripts/hash.lua",
 					2,
 					toBytes(key),
-					toBytes(zsetKey),
+					zsetKey,
 					toBytes("ttl"),
 					toBytes(field));
 			if (!PrimitiveUtils.isByteArray(data)) {
@@ -1917,11 +2196,46 @@ public final class JedisUtils {
 				System.out.println(UnMarshaller.toString((byte[]) data));
 			}
 		}
+		
+		/**
+		 * 用HSCAN遍历hash, 大hash用这个代替hgetAll, 用到下一页的时候才去取
+		 * <p>
+		 * 不检查field的过期时间, 已经过期但还没被清理的field也会返回
+		 *
+		 * @param key
+		 * @param pattern 只返回匹配的field, * 表示全部
+		 * @param count   每页大约多少个
+		 * @return Stream<Map.Entry<String, String>> 同一个field可能返回多次
+		 */
+		public static Stream<Map.Entry<String, String>> hscan(String key, String pattern, int count) {
+			return hscan(key, pattern, count, String.class);
+		}
+		
+		public static <T> Stream<Map.Entry<String, T>> hscan(String key, String pattern, int count, Class<T> clazz) {
+			return ScanIterator.stream(cursor -> scanPage("HSCAN", key, cursor, pattern, count, elements -> {
+				List<Map.Entry<String, T>> entries = new ArrayList<>(elements.size() / 2);
+				for (int i = 0; i < elements.size(); i += 2) {
+					entries.add(new SimpleImmutableEntry<>(UnMarshaller.toString(elements.get(i)), toObject(elements.get(i + 1), clazz)));
+				}
+				return entries;
+			}));
+		}
+	
 	}
 	
 	/**
 	 * 地理位置信息查询
 	 * <p>
+	 * 都是通过 /lua-scripts/geo.lua 执行的, member和普通value一样用当前的RedisCodec序列化, 查询结果直接反序列化成POJO
+	 * <ul>
+	 * <li>{@code geoadd}         批量添加时每500个一次脚本调用, 单节点/Sentinel模式下所有批次放在一个pipeline里
+	 * <li>{@code searchByRadius} 按圆形区域查询
+	 * <li>{@code searchByBox}    按矩形区域查询
+	 * </ul>
+	 * 查询用GEOSEARCH, 支持COUNT和ANY; Redis 6.2以前退回到GEORADIUS, ANY不生效, 矩形查询用外接圆查出来再过滤
+	 * <p>
+	 * 查询结果按中心点所在的geohash格子在本地缓存一小段时间, 每次按真实的中心点过滤、排序、取COUNT, 见 {@link GeoCellCache}
+	 * <p>
 	 * Copyright: Copyright (c) 2020-10-16 17:35
 	 * <p>
 	 * Company: Sexy Uncle Inc.
@@ -1932,38 +2246,410 @@ public final class JedisUtils {
 	 */
 	public static final class GEO {
 		
-	}
-	
-	
-	/**
-	 * 指定key是否存在
-	 *
-	 * @param key
-	 * @return
-	 */
-	public static boolean exists(String key) {
-		return jedisOperations.exists(key);
-	}
-	
-	public static boolean exists(Object key) {
-		if (Serializable.class.isInstance(key)) {
-			return jedisOperations.exists(toBytes(key));
+		private static final String GEO_SCRIPT = "/lua-scripts/geo.lua";
+		
+		/**
+		 * 批量添加时一次脚本调用最多多少个点
+		 */
+		private static final int ADD_BATCH_SIZE = 500;
+		
+		/**
+		 * 添加一个点, member已经存在则更新位置
+		 *
+		 * @param key
+		 * @param longitude 经度
+		 * @param latitude  纬度
+		 * @param member
+		 * @return long 新增的个数
+		 */
+		public static long geoadd(String key, double longitude, double latitude, Object member) {
+			return geoadd(key, Collections.singletonMap(member, new GeoCoordinate(longitude, latitude)));
 		}
 		
-		return jedisOperations.exists(JacksonUtils.toBytes(key));
-	}
-	
-	/**
-	 * 设置过期时间, 单位秒
-	 *
-	 * @param key
-	 * @param timeout
-	 * @return boolean 是否成功设置了过期时间
-	 */
-	public static boolean expire(String key, int timeout) {
-		return jedisOperations.expire(key, timeout) == 1;
-	}
-	
+		/**
+		 * 批量添加
+		 *
+		 * @param key
+		 * @param members member -> 经纬度
+		 * @return long 新增的个数
+		 */
+		public static long geoadd(String key, Map<?, GeoCoordinate> members) {
+			KeyUtils.requireNonBlank(key);
+			List<Object[]> paramsList = new ArrayList<>(members.size() / ADD_BATCH_SIZE + 1);
+			List<Object> params = null;
+			for (Map.Entry<?, GeoCoordinate> entry : members.entrySet()) {
+				if (params == null) {
+					params = new ArrayList<>(ADD_BATCH_SIZE * 3 + 2);
+					params.add(key);
+					params.add("add");
+				}
+				params.add(entry.getValue().getLongitude());
+				params.add(entry.getValue().getLatitude());
+				params.add(encode(entry.getKey()));
+				if (params.size() == ADD_BATCH_SIZE * 3 + 2) {
+					paramsList.add(params.toArray());
+					params = null;
+				}
+			}
+			if (params != null) {
+				paramsList.add(params.toArray());
+			}
+			
+			long added = 0L;
+			for (Object result : evalScriptPipelined(GEO_SCRIPT, 1, paramsList)) {
+				if (result instanceof RuntimeException) {
+					throw (RuntimeException) result;
+				}
+				added += (Long) result;
+			}
+			GeoCellCache.invalidate(key);
+			return added;
+		}
+		
+		/**
+		 * 删除点
+		 *
+		 * @param key
+		 * @param members
+		 * @return long 删除的个数
+		 */
+		public static long georem(String key, Object... members) {
+			Object[] params = new Object[members.length + 2];
+			params[0] = key;
+			params[1] = "rem";
+			for (int i = 0; i < members.length; i++) {
+				params[i + 2] = encode(members[i]);
+			}
+			Long removed = evalScript(GEO_SCRIPT, 1, params);
+			GeoCellCache.invalidate(key);
+			return removed;
+		}
+		
+		/**
+		 * 圆形区域内的所有点, 由近到远
+		 */
+		public static <T> List<GeoResult<T>> searchByRadius(String key, double longitude, double latitude, double radius,
+		                                                    Class<T> clazz) {
+			return searchByRadius(key, longitude, latitude, radius, 0, false, clazz);
+		}
+		
+		/**
+		 * 圆形区域内的点, 由近到远
+		 *
+		 * @param key
+		 * @param longitude 中心点经度
+		 * @param latitude  中心点纬度
+		 * @param radius    半径, 米
+		 * @param count     最多返回几个, 0表示不限
+		 * @param any       true表示找够count个就返回, 不保证是最近的count个, 点很多的时候快得多
+		 * @param clazz
+		 * @return List<GeoResult<T>>
+		 */
+		public static <T> List<GeoResult<T>> searchByRadius(String key, double longitude, double latitude, double radius,
+		                                                    int count, boolean any, Class<T> clazz) {
+			if (!GeoCellCache.isEnabled()) {
+				return search(clazz, key, "radius", longitude, latitude, radius, count, any ? 1 : 0);
+			}
+			String condition = joinCondition("radius", radius, clazz.getName());
+			return GeoCellCache.radius(key, condition, longitude, latitude, radius, count,
+					(lon, lat, margin) -> search(clazz, key, "radius", lon, lat, radius + margin, 0, 0));
+		}
+		
+		/**
+		 * 矩形区域内的所有点, 由近到远
+		 */
+		public static <T> List<GeoResult<T>> searchByBox(String key, double longitude, double latitude, double width,
+		                                                 double height, Class<T> clazz) {
+			return searchByBox(key, longitude, latitude, width, height, 0, false, clazz);
+		}
+		
+		/**
+		 * 以(longitude, latitude)为中心的矩形区域内的点, 由近到远
+		 *
+		 * @param key
+		 * @param longitude 中心点经度
+		 * @param latitude  中心点纬度
+		 * @param width     东西方向的宽度, 米
+		 * @param height    南北方向的高度, 米
+		 * @param count     最多返回几个, 0表示不限
+		 * @param any       true表示找够count个就返回, 不保证是最近的count个
+		 * @param clazz
+		 * @return List<GeoResult<T>>
+		 */
+		public static <T> List<GeoResult<T>> searchByBox(String key, double longitude, double latitude, double width,
+		                                                 double height, int count, boolean any, Class<T> clazz) {
+			if (!GeoCellCache.isEnabled()) {
+				return search(clazz, key, "box", longitude, latitude, width, height, count, any ? 1 : 0);
+			}
+			String condition = joinCondition("box", width, height, clazz.getName());
+			return GeoCellCache.box(key, condition, longitude, latitude, width, height, count,
+					(lon, lat, margin) -> search(clazz, key, "box", lon, lat, width + margin, height + margin, 0, 0));
+		}
+		
+		@SuppressWarnings("unchecked")
+		private static <T> List<GeoResult<T>> search(Class<T> clazz, Object... params) {
+			List<Object> rows = evalScript(GEO_SCRIPT, 1, params);
+			List<GeoResult<T>> results = new ArrayList<>(rows.size());
+			for (Object row : rows) {
+				List<Object> columns = (List<Object>) row;
+				List<byte[]> coordinate = (List<byte[]>) columns.get(2);
+				results.add(new GeoResult<>(toObject((byte[]) columns.get(0), clazz),
+						Double.parseDouble(UnMarshaller.toString((byte[]) columns.get(1))),
+						Double.parseDouble(UnMarshaller.toString(coordinate.get(0))),
+						Double.parseDouble(UnMarshaller.toString(coordinate.get(1)))));
+			}
+			return results;
+		}
+		
+		private static String joinCondition(Object... conditions) {
+			return Arrays.stream(conditions).map(String::valueOf).collect(joining("|"));
+		}
+	}
+	
+	/**
+	 * Redis Stream 相关操作, 需要Redis 5.0+
+	 * <p>
+	 * Jedis 2.9没有stream的API, 都是通过 /lua-scripts/stream.lua 执行的, 每个entry只有一个field: body。
+	 * body默认和普通value一样用当前的RedisCodec序列化, 也可以每次指定一个RedisCodec
+	 * <ul>
+	 * <li>{@code xadd}       追加entry, 可以按MAXLEN ~ 近似裁剪, 批量追加一次往返
+	 * <li>{@code createGroup} 创建消费组, 已经存在不报错
+	 * <li>{@code xreadgroup} 按消费组批量读新的entry, lua里不能阻塞, 没有数据立即返回空List
+	 * <li>{@code xack}       确认处理完成
+	 * <li>{@code xautoclaim} 把空闲太久没确认的entry认领过来, Redis 6.2以前用XPENDING + XCLAIM
+	 * </ul>
+	 * 需要持续消费用 {@link com.loserico.cache.collection.StreamConsumer}
+	 * <p>
+	 * Copyright: (C), 2021-03-14 09:40
+	 * <p>
+	 * <p>
+	 * Company: Sexy Uncle Inc.
+	 *
+	 * @author Rico Yu ricoyu520@gmail.com
+	 * @version 1.0
+	 */
+	public static final class STREAM {
+		
+		private static final String STREAM_SCRIPT = "/lua-scripts/stream.lua";
+		
+		/**
+		 * 追加一个entry, 不裁剪
+		 *
+		 * @param key
+		 * @param body
+		 * @return String entry的id
+		 */
+		public static String xadd(String key, Object body) {
+			return xadd(key, 0L, body);
+		}
+		
+		/**
+		 * 追加一个entry, stream长度大约保持在maxLen
+		 *
+		 * @param key
+		 * @param maxLen 0表示不裁剪
+		 * @param body
+		 * @return String entry的id
+		 */
+		public static String xadd(String key, long maxLen, Object body) {
+			return xadd(key, maxLen, null, Collections.singletonList(body)).get(0);
+		}
+		
+		/**
+		 * 一次往返追加多个entry
+		 *
+		 * @param key
+		 * @param maxLen 0表示不裁剪
+		 * @param codec  body的序列化方式, null表示和普通value一样
+		 * @param bodies
+		 * @return List<String> 每个entry的id
+		 */
+		public static List<String> xadd(String key, long maxLen, RedisCodec codec, List<?> bodies) {
+			KeyUtils.requireNonBlank(key);
+			Object[] params = new Object[bodies.size() + 3];
+			params[0] = key;
+			params[1] = "add";
+			params[2] = maxLen;
+			for (int i = 0; i < bodies.size(); i++) {
+				Object body = bodies.get(i);
+				params[i + 3] = codec == null ? encode(body) : codec.encode(body);
+			}
+			List<byte[]> ids = evalScript(STREAM_SCRIPT, 1, params);
+			return ids.stream().map(UnMarshaller::toString).collect(Collectors.toList());
+		}
+		
+		/**
+		 * 创建消费组, stream不存在会自动创建, 消费组已经存在不报错
+		 *
+		 * @param key
+		 * @param group
+		 * @param startId $表示只消费创建之后的新entry, 0表示从头消费
+		 * @return boolean 是否新建了消费组
+		 */
+		public static boolean createGroup(String key, String group, String startId) {
+			Long created = evalScript(STREAM_SCRIPT, 1, key, "group", group, startId);
+			return created == 1L;
+		}
+		
+		/**
+		 * 创建消费组, 只消费创建之后的新entry
+		 */
+		public static boolean createGroup(String key, String group) {
+			return createGroup(key, group, "$");
+		}
+		
+		/**
+		 * 以消费组中某个消费者的身份读最多count个还没投递过的entry, 读到的entry进入这个消费者的pending列表, 要xack
+		 *
+		 * @param key
+		 * @param group
+		 * @param consumer
+		 * @param count
+		 * @param clazz
+		 * @return List<StreamEntry<T>> 没有新entry返回空List
+		 */
+		public static <T> List<StreamEntry<T>> xreadgroup(String key, String group, String consumer, int count, Class<T> clazz) {
+			return xreadgroup(key, group, consumer, count, null, clazz);
+		}
+		
+		public static <T> List<StreamEntry<T>> xreadgroup(String key, String group, String consumer, int count,
+		                                                  RedisCodec codec, Class<T> clazz) {
+			List<Object> entries = evalScript(STREAM_SCRIPT, 1, key, "read", group, consumer, count);
+			return toEntries(entries, codec, clazz);
+		}
+		
+		/**
+		 * 确认处理完成, 从消费组的pending列表里删掉
+		 *
+		 * @param key
+		 * @param group
+		 * @param ids
+		 * @return long 确认的个数
+		 */
+		public static long xack(String key, String group, String... ids) {
+			if (ids.length == 0) {
+				return 0L;
+			}
+			Object[] params = new Object[ids.length + 3];
+			params[0] = key;
+			params[1] = "ack";
+			params[2] = group;
+			System.arraycopy(ids, 0, params, 3, ids.length);
+			Long acked = evalScript(STREAM_SCRIPT, 1, params);
+			return acked;
+		}
+		
+		/**
+		 * 把消费组里空闲超过minIdleMillis还没确认的entry(消费者挂了或者处理失败)认领给consumer, 最多count个
+		 * <p>
+		 * 已经被删除或者裁剪掉的entry会直接确认掉, 不会返回
+		 *
+		 * @param key
+		 * @param group
+		 * @param consumer
+		 * @param minIdleMillis
+		 * @param count
+		 * @param clazz
+		 * @return List<StreamEntry<T>>
+		 */
+		public static <T> List<StreamEntry<T>> xautoclaim(String key, String group, String consumer, long minIdleMillis,
+		                                                  int count, Class<T> clazz) {
+			return xautoclaim(key, group, consumer, minIdleMillis, count, null, clazz);
+		}
+		
+		public static <T> List<StreamEntry<T>> xautoclaim(String key, String group, String consumer, long minIdleMillis,
+		                                                  int count, RedisCodec codec, Class<T> clazz) {
+			return xautoclaim(key, group, consumer, minIdleMillis, "0-0", count, 0, null, codec, clazz).getEntries();
+		}
+		
+		/**
+		 * 从start开始认领空闲超过minIdleMillis的entry, 最多count个; 返回的cursor作为下一次的start, 是0-0表示找完了一轮
+		 * <p>
+		 * maxDeliveries大于0时, 认领之后投递次数超过maxDeliveries的entry追加到deadLetterKey(body之外带上原来的id)并确认掉,
+		 * 不再返回。Cluster模式下deadLetterKey要和key在同一个slot
+		 *
+		 * @param key
+		 * @param group
+		 * @param consumer
+		 * @param minIdleMillis
+		 * @param start         第一次传0-0
+		 * @param count
+		 * @param maxDeliveries 0表示不限
+		 * @param deadLetterKey 死信stream, maxDeliveries是0时不用
+		 * @param codec         body的序列化方式, null表示和普通value一样
+		 * @param clazz
+		 * @return StreamClaim<T>
+		 */
+		@SuppressWarnings("unchecked")
+		public static <T> StreamClaim<T> xautoclaim(String key, String group, String consumer, long minIdleMillis, String start,
+		                                            int count, int maxDeliveries, String deadLetterKey, RedisCodec codec,
+		                                            Class<T> clazz) {
+			List<Object> result;
+			if (maxDeliveries > 0 && deadLetterKey != null) {
+				result = evalScript(STREAM_SCRIPT, 2, key, deadLetterKey, "claim", group, consumer, minIdleMillis, count,
+						start, maxDeliveries);
+			} else {
+				result = evalScript(STREAM_SCRIPT, 1, key, "claim", group, consumer, minIdleMillis, count, start, 0);
+			}
+			List<StreamEntry<T>> entries = toEntries((List<Object>) result.get(1), codec, clazz);
+			Long deadLettered = (Long) result.get(2);
+			return new StreamClaim<>(UnMarshaller.toString((byte[]) result.get(0)), entries, deadLettered.intValue());
+		}
+		
+		/**
+		 * stream里的entry个数
+		 *
+		 * @param key
+		 * @return long
+		 */
+		public static long xlen(String key) {
+			Long len = evalScript(STREAM_SCRIPT, 1, key, "len");
+			return len;
+		}
+		
+		@SuppressWarnings("unchecked")
+		private static <T> List<StreamEntry<T>> toEntries(List<Object> entries, RedisCodec codec, Class<T> clazz) {
+			List<StreamEntry<T>> results = new ArrayList<>(entries.size());
+			for (Object entry : entries) {
+				List<byte[]> idAndBody = (List<byte[]>) entry;
+				byte[] body = idAndBody.get(1);
+				T value = codec == null ? toObject(body, clazz) : codec.decode(body, clazz);
+				results.add(new StreamEntry<>(UnMarshaller.toString(idAndBody.get(0)), value));
+			}
+			return results;
+		}
+	}
+	
+	
+	/**
+	 * 指定key是否存在
+	 *
+	 * @param key
+	 * @return
+	 */
+	public static boolean exists(String key) {
+		return jedisOperations.exists(key);
+	}
+	
+	public static boolean exists(Object key) {
+		if (Serializable.class.isInstance(key)) {
+			return jedisOperations.exists(toBytes(key));
+		}
+		
+		return jedisOperations.exists(JacksonUtils.toBytes(key));
+	}
+	
+	/**
+	 * 设置过期时间, 单位秒
+	 *
+	 * @param key
+	 * @param timeout
+	 * @return boolean 是否成功设置了过期时间
+	 */
+	public static boolean expire(String key, int timeout) {
+		return jedisOperations.expire(key, timeout) == 1;
+	}
+	
 	/**
 	 * 设置过期时间, 单位秒
 	 *
@@ -2059,6 +2745,16 @@ public final class JedisUtils {
 		return jedisOperations.ttl(toBytes(key));
 	}
 	
+	/**
+	 * 返回key的过期时间, 单位毫秒。 如果key没有设置过期时间, 返回 -1 如果key不存在, 返回 -2
+	 *
+	 * @param key
+	 * @return long 返回key的过期时间, 单位毫秒, -1 表示没有过期时间 -2 表示可以不存在
+	 */
+	public static long pttl(Object key) {
+		return jedisOperations.pttl(toBytes(key));
+	}
+	
 	public static void del(String key) {
 		jedisOperations.del(key);
 	}
@@ -2067,6 +2763,166 @@ public final class JedisUtils {
 		jedisOperations.del(toBytes(key));
 	}
 	
+	/**
+	 * 用SCAN按pattern遍历key, 不会像KEYS一样阻塞Redis
+	 * <p>
+	 * 用到下一页的时候才去取, 每页大约count个。Cluster模式下遍历所有master, 调parallel()之后各个master并行遍历。
+	 * 同一个key可能返回多次
+	 *
+	 * @param pattern 如 tenant:42:*
+	 * @param count   每页大约多少个
+	 * @return Stream<String>
+	 */
+	public static Stream<String> scan(String pattern, int count) {
+		ScanParams params = new ScanParams().match(pattern).count(count);
+		return jedisOperations.masterPools()
+				.stream()
+				.flatMap(pool -> ScanIterator.stream(cursor -> {
+					try (Jedis jedis = pool.getResource()) {
+						return jedis.scan(cursor, params);
+					}
+				}));
+	}
+	
+	public static Stream<String> scan(String pattern) {
+		return scan(pattern, SCAN_BATCH_SIZE);
+	}
+	
+	/**
+	 * 删除匹配pattern的所有key
+	 *
+	 * @param pattern
+	 * @return long 删除的key数量
+	 * @see #deleteByPattern(String, int, long)
+	 */
+	public static long deleteByPattern(String pattern) {
+		return deleteByPattern(pattern, SCAN_BATCH_SIZE, 0L);
+	}
+	
+	/**
+	 * 删除匹配pattern的所有key, 几千万个key也不会造成Redis卡顿
+	 * <p>
+	 * 每个master一个线程并行: SCAN一页, 用pipeline把这一页UNLINK掉(在后台线程释放内存), 再SCAN下一页。
+	 * Cluster模式下同一个slot的key一次UNLINK; Redis 4.0以前没有UNLINK, 退回到DEL
+	 * <p>
+	 * 脚本和evalScript一样由LuaScriptRegistry管理, 碰到NOSCRIPT退回到EVAL; 每删一页就让这一页key的本地缓存失效
+	 *
+	 * @param pattern     如 tenant:42:*
+	 * @param batchSize   SCAN每页大约多少个
+	 * @param pauseMillis 每删一页停多久, 给线上请求让路, 0表示不停
+	 * @return long 删除的key数量
+	 */
+	public static long deleteByPattern(String pattern, int batchSize, long pauseMillis) {
+		if (isBlank(pattern)) {
+			throw new IllegalArgumentException("pattern cannot be blank");
+		}
+		List<Pool<Jedis>> masters = jedisOperations.masterPools();
+		LuaScript script = luaScripts.script(UNLINK_SCRIPT);
+		ExecutorService executor = Executors.newFixedThreadPool(masters.size(), new ThreadFactoryBuilder()
+				.setNameFormat("loser-cache-delete-%d")
+				.setDaemon(true)
+				.build());
+		try {
+			List<Future<Long>> futures = new ArrayList<>(masters.size());
+			for (Pool<Jedis> pool : masters) {
+				futures.add(executor.submit(() -> deleteByPattern(pool, script, pattern, batchSize, pauseMillis)));
+			}
+			long deleted = 0L;
+			for (Future<Long> future : futures) {
+				deleted += future.get();
+			}
+			log.info("Deleted {} keys matching {}", deleted, pattern);
+			return deleted;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JedisException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new JedisException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * 在一个节点上边SCAN边删
+	 */
+	private static long deleteByPattern(Pool<Jedis> pool, LuaScript script, String pattern, int batchSize, long pauseMillis)
+			throws InterruptedException {
+		ScanParams params = new ScanParams().match(pattern).count(batchSize);
+		long deleted = 0L;
+		String cursor = ScanParams.SCAN_POINTER_START;
+		do {
+			try (Jedis jedis = pool.getResource()) {
+				ScanResult<String> page = jedis.scan(cursor, params);
+				cursor = page.getStringCursor();
+				deleted += unlink(jedis, script, page.getResult());
+			}
+			if (pauseMillis > 0) {
+				MILLISECONDS.sleep(pauseMillis);
+			}
+		} while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+		return deleted;
+	}
+	
+	private static long unlink(Jedis jedis, LuaScript script, List<String> keys) {
+		if (keys.isEmpty()) {
+			return 0L;
+		}
+		List<List<String>> batches = new ArrayList<>(jedisOperations.isCluster() ?
+				keys.stream().collect(groupingBy(JedisClusterCRC16::getSlot)).values() :
+				Lists.partition(keys, SCAN_BATCH_SIZE));
+		Pipeline pipeline = jedis.pipelined();
+		for (List<String> batch : batches) {
+			pipeline.evalsha(script.getSha1(), batch.size(), toBytes(batch));
+		}
+		List<Object> results = pipeline.syncAndReturnAll();
+		
+		/*
+		 * 这个节点上的脚本没了(重启, SCRIPT FLUSH), 这几批用EVAL重跑, 同时在后台重新加载
+		 */
+		List<Integer> noScripts = new ArrayList<>();
+		for (int i = 0; i < results.size(); i++) {
+			if (results.get(i) instanceof Throwable && LuaScriptRegistry.isNoScript((Throwable) results.get(i))) {
+				noScripts.add(i);
+			}
+		}
+		if (!noScripts.isEmpty()) {
+			log.warn("NOSCRIPT for {}, fallback to EVAL and reload scripts", UNLINK_SCRIPT);
+			luaScripts.reloadAsync();
+			Pipeline retry = jedis.pipelined();
+			for (Integer index : noScripts) {
+				retry.eval(script.getBody(), batches.get(index).size(), toBytes(batches.get(index)));
+			}
+			List<Object> retried = retry.syncAndReturnAll();
+			for (int i = 0; i < noScripts.size(); i++) {
+				results.set(noScripts.get(i), retried.get(i));
+			}
+		}
+		
+		jedisOperations.invalidate(toBytes(keys));
+		long deleted = 0L;
+		for (Object result : results) {
+			if (result instanceof RuntimeException) {
+				throw (RuntimeException) result;
+			}
+			deleted += (Long) result;
+		}
+		return deleted;
+	}
+	
+	/**
+	 * HSCAN/SSCAN/ZSCAN的一页, Cluster模式下也能用
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> ScanResult<T> scanPage(String command, String key, String cursor, String pattern, int count,
+	                                          Function<List<byte[]>, List<T>> mapper) {
+		List<Object> page = evalScript(SCAN_SCRIPT, 1, key, command, cursor, pattern, count);
+		return new ScanResult<>(UnMarshaller.toString((byte[]) page.get(0)), mapper.apply((List<byte[]>) page.get(1)));
+	}
+	
 	/**
 	 * 删除并返回key对应的value
 	 *
@@ -2126,17 +2982,10 @@ public final class JedisUtils {
 	public static byte[] delGet(byte[] key) {
 		Objects.requireNonNull(key);
 		
-		String delGetSha1 = shaHashs.computeIfAbsent("delGet.lua", x -> {
-			log.debug("Load script {}", "delGet.lua");
-			if (jedisOperations instanceof JedisClusterOperations) {
-				return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/delGet.lua"), key);
-			}
-			return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/delGet.lua"));
-		});
-		
-		byte[] value = (byte[]) jedisOperations.evalsha(toBytes(delGetSha1),
+		byte[] value = (byte[]) luaScripts.eval("/lua-scripts/delGet.lua",
 				1,
 				key);
+		jedisOperations.invalidate(key);
 		
 		return value;
 	}
@@ -2249,6 +3098,17 @@ public final class JedisUtils {
 		return jedisPubSub;
 	}
 	
+	/**
+	 * 异步方式模式订阅, 直接用调用方提供的JedisPubSub, 需要onPSubscribe这些回调的时候用
+	 *
+	 * @param jedisPubSub
+	 * @param chnannelPatterns
+	 * @return Future<?> 订阅结束(取消订阅、连接断开)或者失败之后isDone才是true
+	 */
+	public static Future<?> psubscribe(JedisPubSub jedisPubSub, String... chnannelPatterns) {
+		return jedisOperations.psubscribe(jedisPubSub, chnannelPatterns);
+	}
+	
 	/**
 	 * 取消订阅
 	 *
@@ -2352,6 +3212,78 @@ public final class JedisUtils {
 		return new NonBlockingLock(key);
 	}
 	
+	/**
+	 * 分布式读写锁, 读锁共享, 写锁排他, 同一个线程可重入
+	 *
+	 * @param name
+	 * @return ReadWriteLock
+	 */
+	public static ReadWriteLock readWriteLock(String name) {
+		return new RedisReadWriteLock(name);
+	}
+	
+	/**
+	 * 固定窗口限流, 一个窗口内最多limit次
+	 *
+	 * @param limit
+	 * @param window   窗口长度, 最小1秒
+	 * @param timeUnit
+	 * @return RateLimiter
+	 */
+	public static RateLimiter fixedWindowLimiter(long limit, long window, TimeUnit timeUnit) {
+		return new FixedWindowRateLimiter(limit, window, timeUnit);
+	}
+	
+	/**
+	 * 滑动日志限流, 任意一个窗口长度的时间段内最多limit次
+	 *
+	 * @param limit
+	 * @param window
+	 * @param timeUnit
+	 * @return RateLimiter
+	 */
+	public static RateLimiter slidingLogLimiter(long limit, long window, TimeUnit timeUnit) {
+		return new SlidingLogRateLimiter(limit, window, timeUnit);
+	}
+	
+	/**
+	 * 令牌桶限流(GCRA), 每个period产生rate个令牌, 桶里最多攒burst个
+	 *
+	 * @param rate
+	 * @param period
+	 * @param timeUnit
+	 * @param burst
+	 * @return RateLimiter
+	 */
+	public static RateLimiter tokenBucketLimiter(long rate, long period, TimeUnit timeUnit, long burst) {
+		return new TokenBucketRateLimiter(rate, period, timeUnit, burst, true);
+	}
+	
+	/**
+	 * 分布式信号量, permits只有第一次创建的时候生效
+	 *
+	 * @param name
+	 * @param permits
+	 * @return Semaphore
+	 */
+	public static Semaphore semaphore(String name, int permits) {
+		return new RedisSemaphore(name, permits);
+	}
+	
+	/**
+	 * 分布式信号量
+	 *
+	 * @param name
+	 * @param permits   permit总数, 只有第一次创建的时候生效
+	 * @param leaseTime 持有者挂掉之后最多过多久permit被回收
+	 * @param timeUnit
+	 * @param fair      是否按到达顺序获取permit
+	 * @return Semaphore
+	 */
+	public static Semaphore semaphore(String name, int permits, long leaseTime, TimeUnit timeUnit, boolean fair) {
+		return new RedisSemaphore(name, permits, leaseTime, timeUnit, fair);
+	}
+	
 	/**
 	 * 释放分布式锁
 	 * <p>
@@ -2379,15 +3311,7 @@ public final class JedisUtils {
 	 * @return boolean 是否释放成功
 	 */
 	public static boolean unlock(String key, String value) {
-		String setnxSha1 = shaHashs.computeIfAbsent("unlock.lua", x -> {
-			log.debug("Load script {}", "unlock.lua");
-			if (jedisOperations instanceof JedisClusterOperations) {
-				return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/unlock.lua"), key);
-			}
-			return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString("/lua-scripts/unlock.lua"));
-		});
-		
-		long result = (long) jedisOperations.evalsha(setnxSha1, 1, key, value);
+		long result = (long) luaScripts.eval("/lua-scripts/unlock.lua", 1, toBytes(key), toBytes(value));
 		return result == 1L;
 	}
 	
@@ -2399,12 +3323,227 @@ public final class JedisUtils {
 	 */
 	public static String scriptLoad(String luaPath) {
 		log.debug("Load script {}", luaPath);
-		if (jedisOperations instanceof JedisClusterOperations) {
+		if (jedisOperations.isCluster()) {
 			return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString(luaPath), luaPath);
 		}
 		return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString(luaPath));
 	}
 	
+	/**
+	 * lua脚本加载到sampleKey所在的节点, 单节点/Sentinel模式下sampleKey没有作用
+	 * <p>
+	 * Cluster模式下脚本只会加载到一个master上, 操作其他slot的key之前要用那个key再加载一次
+	 *
+	 * @param luaPath
+	 * @param sampleKey
+	 * @return lua脚本加载到Redis之后得到的SHA1值
+	 */
+	public static String scriptLoad(String luaPath, String sampleKey) {
+		log.debug("Load script {}", luaPath);
+		if (jedisOperations.isCluster()) {
+			return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString(luaPath), sampleKey);
+		}
+		return jedisOperations.scriptLoad(IOUtils.readClassPathFileAsString(luaPath));
+	}
+	
+	/**
+	 * 执行classpath下的lua脚本, SHA1在本地计算, 启动时已经预加载到每个master上
+	 * <p>
+	 * 碰到NOSCRIPT(主从切换, SCRIPT FLUSH)时这一次退回到EVAL, 同时在后台重新加载所有脚本
+	 *
+	 * @param luaPath  如 /lua-scripts/semaphoreAcquire.lua
+	 * @param keyCount
+	 * @param params   KEYS 和 ARGV
+	 * @return T
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T evalScript(String luaPath, int keyCount, Object... params) {
+		return (T) luaScripts.eval(luaPath, keyCount, toBytes(params));
+	}
+	
+	/**
+	 * 自己的脚本修改了GET/HGET能读到的key, 执行完之后调用这个方法让本地缓存(本节点和其他节点)失效
+	 * <p>
+	 * 脚本有读有写, 装饰器分辨不出来, 所以evalScript本身不做失效
+	 *
+	 * @param keys
+	 */
+	public static void invalidate(Object... keys) {
+		jedisOperations.invalidate(toBytes(keys));
+	}
+	
+	/**
+	 * 同一个lua脚本执行多次, 单节点/Sentinel模式下放进一个pipeline, 一次网络往返;
+	 * Cluster模式下不支持pipeline, 退回到逐个evalScript
+	 * <p>
+	 * 其中某几次碰到NOSCRIPT(比如Redis重启过)只把这几次用EVAL重跑一遍, 同时在后台重新加载所有脚本
+	 *
+	 * @param luaPath
+	 * @param keyCount
+	 * @param paramsList 每一次的 KEYS 和 ARGV
+	 * @return List<Object> 和paramsList一一对应, 某一次执行出错对应的是那个异常
+	 */
+	public static List<Object> evalScriptPipelined(String luaPath, int keyCount, List<Object[]> paramsList) {
+		List<Object> results = new ArrayList<>(paramsList.size());
+		if (jedisOperations.isCluster()) {
+			for (Object[] params : paramsList) {
+				try {
+					results.add(evalScript(luaPath, keyCount, params));
+				} catch (RuntimeException e) {
+					results.add(e);
+				}
+			}
+			return results;
+		}
+		
+		LuaScript script = luaScripts.script(luaPath);
+		results.addAll(pipeline(pipeline -> {
+			for (Object[] params : paramsList) {
+				pipeline.evalsha(script.getSha1(), keyCount, toBytes(params));
+			}
+		}));
+		List<Integer> noScripts = new ArrayList<>();
+		for (int i = 0; i < results.size(); i++) {
+			if (results.get(i) instanceof Throwable && LuaScriptRegistry.isNoScript((Throwable) results.get(i))) {
+				noScripts.add(i);
+			}
+		}
+		if (noScripts.isEmpty()) {
+			return results;
+		}
+		
+		log.warn("NOSCRIPT for {}, fallback to EVAL and reload scripts", luaPath);
+		luaScripts.reloadAsync();
+		List<Object> retried = pipeline(pipeline -> {
+			for (Integer index : noScripts) {
+				pipeline.eval(script.getBody(), keyCount, toBytes(paramsList.get(index)));
+			}
+		});
+		for (int i = 0; i < noScripts.size(); i++) {
+			results.set(noScripts.get(i), retried.get(i));
+		}
+		return results;
+	}
+	
+	/**
+	 * 切换POJO类型value的序列化方式, 也可以通过 redis.codec 配置
+	 * <p>
+	 * 二进制格式都带了header, 切换之后以前写进去的JSON照样能读
+	 *
+	 * @param codec
+	 */
+	public static void setCodec(RedisCodec codec) {
+		RedisCodecs.setCodec(codec);
+	}
+	
+	/**
+	 * 本地缓存的命中/未命中/淘汰/失效统计, 没有开启 redis.near-cache.enabled 时返回null
+	 *
+	 * @return NearCacheStats
+	 */
+	public static NearCacheStats nearCacheStats() {
+		JedisOperations operations = jedisOperations;
+		while (operations instanceof DelegatingJedisOperations) {
+			if (operations instanceof NearCacheJedisOperations) {
+				return ((NearCacheJedisOperations) operations).getNearCache().stats();
+			}
+			operations = ((DelegatingJedisOperations) operations).getDelegate();
+		}
+		return null;
+	}
+	
+	/**
+	 * 异步版本的常用命令, 返回CompletableFuture, 调用方线程不用等Redis返回
+	 * <p>
+	 * <pre>
+	 * JedisUtils.async().get("user:1").thenAccept(json -> ...);
+	 * </pre>
+	 *
+	 * @return AsyncJedisOperations
+	 */
+	public static AsyncJedisOperations async() {
+		if (asyncOperations == null) {
+			synchronized (JedisUtils.class) {
+				if (asyncOperations == null) {
+					asyncOperations = JedisOperationFactory.createAsync(jedisOperations);
+				}
+			}
+		}
+		return asyncOperations;
+	}
+	
+	/**
+	 * 当前探测到的热点key -> 估算的每周期访问次数, 没有开启 redis.hot-key.enabled 时返回空Map
+	 *
+	 * @return Map<String, Long>
+	 */
+	public static Map<String, Long> hotKeys() {
+		JedisOperations operations = jedisOperations;
+		while (operations instanceof DelegatingJedisOperations) {
+			if (operations instanceof HotKeyJedisOperations) {
+				return ((HotKeyJedisOperations) operations).hotKeys();
+			}
+			operations = ((DelegatingJedisOperations) operations).getDelegate();
+		}
+		return Collections.emptyMap();
+	}
+	
+	/**
+	 * 每条命令的延迟分位数, 调用/异常次数和收发字节数, 没有开启 redis.metrics.enabled 时返回null
+	 * <p>
+	 * 延迟分位数是上一次调用本方法之后的, 用自己的RedisMetrics实现时也返回null
+	 *
+	 * @return List<CommandStats>
+	 */
+	public static List<CommandStats> commandStats() {
+		MetricsJedisOperations operations = metricsOperations();
+		if (operations != null && operations.getMetrics() instanceof HdrRedisMetrics) {
+			return ((HdrRedisMetrics) operations.getMetrics()).snapshot();
+		}
+		return null;
+	}
+	
+	/**
+	 * 替换命令指标的实现, 比如 MicrometerRedisMetrics; 没有开启 redis.metrics.enabled 时不生效, 返回false
+	 *
+	 * @param metrics
+	 * @return boolean 是否生效
+	 */
+	public static boolean setMetrics(RedisMetrics metrics) {
+		MetricsJedisOperations operations = metricsOperations();
+		if (operations == null) {
+			log.warn("redis.metrics.enabled is false, metrics ignored");
+			return false;
+		}
+		operations.setMetrics(metrics);
+		return true;
+	}
+	
+	/**
+	 * 每个连接池的active/idle/waiters和借连接的等待时间, 不访问Redis, 不需要开启 redis.metrics.enabled
+	 *
+	 * @return List<PoolStats>
+	 */
+	public static List<PoolStats> poolStats() {
+		Map<String, Pool<Jedis>> pools = jedisOperations.connectionPools();
+		List<PoolStats> stats = new ArrayList<>(pools.size());
+		for (Map.Entry<String, Pool<Jedis>> entry : pools.entrySet()) {
+			stats.add(PoolStats.of(entry.getKey(), entry.getValue()));
+		}
+		return stats;
+	}
+	
+	private static MetricsJedisOperations metricsOperations() {
+		JedisOperations operations = jedisOperations;
+		while (operations instanceof DelegatingJedisOperations) {
+			if (operations instanceof MetricsJedisOperations) {
+				return (MetricsJedisOperations) operations;
+			}
+			operations = ((DelegatingJedisOperations) operations).getDelegate();
+		}
+		return null;
+	}
+	
 	public static <R> R execute(Function<Jedis, R> func) {
 		try (Jedis jedis = jedisOperations.jedis()) {
 			return func.apply(jedis);
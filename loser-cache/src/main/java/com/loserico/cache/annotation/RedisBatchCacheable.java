@@ -0,0 +1,60 @@
+package com.loserico.cache.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量缓存, 用在 Map<ID, V> findByIds(List<ID> ids) 或者 List<V> findByIds(List<ID> ids) 这样的方法上
+ * <p>
+ * 先把ids里每个id生成key, 一次mget; 没命中的id再调用一次方法(ids参数换成没命中的那部分), 结果回填Redis,
+ * 最后和命中的拼在一起按原来的顺序返回
+ * <ul>
+ * <li>返回Map: key是id, 查不到的id不在Map里
+ * <li>返回List: 和ids一一对应, 查不到的是null; 方法只拿到没命中的ids, 返回的List也要和它一一对应
+ * </ul>
+ * 方法查不到的id不会缓存, 下次还会再查
+ * <p>
+ * Copyright: (C), 2021-03-17 15:10
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface RedisBatchCacheable {
+	
+	/**
+	 * SpEL形式的key, 当前的id用#id引用, 如 "'user:' + #id"
+	 */
+	String key() default "";
+	
+	/**
+	 * KeyTemplate形式的key, {0}是当前的id, 如 "user:{0}"
+	 */
+	String template() default "";
+	
+	/**
+	 * ids是第几个参数, 参数类型可以是List, Set或者Collection
+	 */
+	int idsIndex() default 0;
+	
+	/**
+	 * 缓存的value类型, 也就是返回的Map的value或者List的元素类型
+	 */
+	Class<?> valueType();
+	
+	/**
+	 * 过期时间
+	 */
+	long ttl() default 5 * 60;
+	
+	TimeUnit timeUnit() default TimeUnit.SECONDS;
+}
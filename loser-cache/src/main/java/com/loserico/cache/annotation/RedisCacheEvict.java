@@ -0,0 +1,34 @@
+package com.loserico.cache.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 方法正常返回之后删除key, key和template的写法同RedisCacheable
+ * <p>
+ * Copyright: (C), 2021-03-17 15:10
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface RedisCacheEvict {
+	
+	/**
+	 * SpEL形式的key
+	 */
+	String key() default "";
+	
+	/**
+	 * KeyTemplate形式的key
+	 */
+	String template() default "";
+}
@@ -0,0 +1,54 @@
+package com.loserico.cache.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 方法返回值缓存到Redis, 相当于 JedisUtils.get(key, 返回值类型, () -> 调用方法, ttl, staleTtl, timeUnit)
+ * <p>
+ * key和template二选一:
+ * <ul>
+ * <li>key: SpEL, 方法参数用#参数名或者#p0, #a0引用, 如 "'user:' + #id"
+ * <li>template: KeyTemplate, {0}, {1}是第几个方法参数, 如 "user:{0}"
+ * </ul>
+ * 返回值类型要是具体的类, 泛型集合反序列化时拿不到元素类型
+ * <p>
+ * Copyright: (C), 2021-03-17 15:10
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface RedisCacheable {
+	
+	/**
+	 * SpEL形式的key
+	 */
+	String key() default "";
+	
+	/**
+	 * KeyTemplate形式的key, 比SpEL快
+	 */
+	String template() default "";
+	
+	/**
+	 * 过期时间
+	 */
+	long ttl() default 5 * 60;
+	
+	/**
+	 * 逻辑过期之后还能返回旧值的时间, 同时后台刷新, 0表示不返回旧值
+	 */
+	long staleTtl() default 0;
+	
+	TimeUnit timeUnit() default TimeUnit.SECONDS;
+}
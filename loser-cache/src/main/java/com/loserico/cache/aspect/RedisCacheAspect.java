@@ -0,0 +1,281 @@
+package com.loserico.cache.aspect;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.loserico.cache.JedisUtils;
+import com.loserico.cache.annotation.RedisBatchCacheable;
+import com.loserico.cache.annotation.RedisCacheEvict;
+import com.loserico.cache.annotation.RedisCacheable;
+import com.loserico.cache.utils.KeyTemplate;
+import com.loserico.json.jackson.JacksonUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RedisCacheable, RedisBatchCacheable, RedisCacheEvict的切面
+ * <p>
+ * 读写都走JedisUtils: RedisCacheable的读经过本地缓存和热点key缓存; RedisBatchCacheable的mget经过本地缓存,
+ * 没命中的在一个pipeline里批量回填。自定义RedisCodec对两者都生效
+ * <p>
+ * RedisCacheable方法的返回类型带泛型(比如List&lt;User&gt;)时按完整的泛型类型反序列化,
+ * 返回类型里有类型变量(比如&lt;T&gt; T find())的没法确定类型, 直接报错
+ * <p>
+ * 需要Spring AOP, 注册成bean即可:
+ * <pre>
+ * &#64;Bean
+ * public RedisCacheAspect redisCacheAspect() {
+ * 	return new RedisCacheAspect();
+ * }
+ * </pre>
+ * <p>
+ * Copyright: (C), 2021-03-17 15:30
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Slf4j
+@Aspect
+public class RedisCacheAspect {
+	
+	private static final ExpressionParser PARSER = new SpelExpressionParser();
+	
+	private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+	
+	/**
+	 * 解析过的SpEL和KeyTemplate, 每个表达式只解析一次
+	 */
+	private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+	
+	private final Map<String, KeyTemplate> templates = new ConcurrentHashMap<>();
+	
+	/**
+	 * 带泛型的返回类型, 每个方法只解析一次
+	 */
+	private final Map<Method, JavaType> javaTypes = new ConcurrentHashMap<>();
+	
+	@SuppressWarnings("unchecked")
+	@Around("@annotation(cacheable)")
+	public Object cacheable(ProceedingJoinPoint joinPoint, RedisCacheable cacheable) throws Throwable {
+		Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+		Object[] args = joinPoint.getArgs();
+		String key = generateKey(cacheable.key(), cacheable.template(), method, args);
+		try {
+			if (!(method.getGenericReturnType() instanceof Class)) {
+				return JedisUtils.get(key, javaTypes.computeIfAbsent(method, RedisCacheAspect::javaType),
+						() -> proceed(joinPoint, args), cacheable.ttl(), cacheable.staleTtl(), cacheable.timeUnit());
+			}
+			Class<Object> clazz = (Class<Object>) ClassUtils.resolvePrimitiveIfNecessary(method.getReturnType());
+			return JedisUtils.get(key, clazz, () -> proceed(joinPoint, args),
+					cacheable.ttl(), cacheable.staleTtl(), cacheable.timeUnit());
+		} catch (RuntimeException e) {
+			throw unwrap(e);
+		}
+	}
+	
+	@AfterReturning("@annotation(evict)")
+	public void evict(JoinPoint joinPoint, RedisCacheEvict evict) {
+		Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+		JedisUtils.del(generateKey(evict.key(), evict.template(), method, joinPoint.getArgs()));
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Around("@annotation(batchCacheable)")
+	public Object batchCacheable(ProceedingJoinPoint joinPoint, RedisBatchCacheable batchCacheable) throws Throwable {
+		Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+		Object[] args = joinPoint.getArgs();
+		int idsIndex = batchCacheable.idsIndex();
+		Collection<Object> ids = (Collection<Object>) args[idsIndex];
+		if (ids == null || ids.isEmpty()) {
+			return joinPoint.proceed(args);
+		}
+		
+		List<Object> idList = new ArrayList<>(ids);
+		List<String> keys = new ArrayList<>(idList.size());
+		for (Object id : idList) {
+			keys.add(generateKey(batchCacheable.key(), batchCacheable.template(), method, args, id));
+		}
+		List<?> cached = JedisUtils.mget(keys, batchCacheable.valueType());
+		
+		Map<Object, Object> values = new LinkedHashMap<>(idList.size() * 2);
+		List<Object> missIds = new ArrayList<>();
+		List<String> missKeys = new ArrayList<>();
+		for (int i = 0; i < idList.size(); i++) {
+			Object value = cached.get(i);
+			if (value != null) {
+				values.put(idList.get(i), value);
+			} else {
+				missIds.add(idList.get(i));
+				missKeys.add(keys.get(i));
+			}
+		}
+		
+		if (!missIds.isEmpty()) {
+			Object[] missArgs = args.clone();
+			missArgs[idsIndex] = ids instanceof Set ? new LinkedHashSet<>(missIds) : missIds;
+			Object loaded = joinPoint.proceed(missArgs);
+			Map<String, Object> writes = new LinkedHashMap<>(missIds.size() * 2);
+			for (int i = 0; i < missIds.size(); i++) {
+				Object value = loadedValue(loaded, missIds, i);
+				if (value == null) {
+					continue;
+				}
+				values.put(missIds.get(i), value);
+				writes.put(missKeys.get(i), value);
+			}
+			JedisUtils.mset(writes, batchCacheable.ttl(), batchCacheable.timeUnit());
+			log.debug("{} batch cache hit {}, miss {}", method.getName(), idList.size() - missIds.size(), missIds.size());
+		}
+		
+		if (Map.class.isAssignableFrom(method.getReturnType())) {
+			Map<Object, Object> result = new LinkedHashMap<>(values.size() * 2);
+			for (Object id : idList) {
+				Object value = values.get(id);
+				if (value != null) {
+					result.put(id, value);
+				}
+			}
+			return result;
+		}
+		List<Object> result = new ArrayList<>(idList.size());
+		for (Object id : idList) {
+			result.add(values.get(id));
+		}
+		return result;
+	}
+	
+	/**
+	 * 返回类型里的类型变量反序列化的时候没法确定, 只能报错; 通配符按上界处理
+	 */
+	private static JavaType javaType(Method method) {
+		Type type = method.getGenericReturnType();
+		if (hasTypeVariable(type)) {
+			throw new IllegalStateException(method + " 的返回类型 " + type + " 含有类型变量, 不能用RedisCacheable缓存");
+		}
+		return JacksonUtils.objectMapper().getTypeFactory().constructType(type);
+	}
+	
+	private static boolean hasTypeVariable(Type type) {
+		if (type instanceof TypeVariable) {
+			return true;
+		}
+		if (type instanceof ParameterizedType) {
+			for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+				if (hasTypeVariable(argument)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		if (type instanceof GenericArrayType) {
+			return hasTypeVariable(((GenericArrayType) type).getGenericComponentType());
+		}
+		if (type instanceof WildcardType) {
+			for (Type bound : ((WildcardType) type).getUpperBounds()) {
+				if (hasTypeVariable(bound)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * 方法返回Map就按id取, 返回List就按下标取
+	 */
+	private static Object loadedValue(Object loaded, List<Object> missIds, int i) {
+		if (loaded instanceof Map) {
+			return ((Map<?, ?>) loaded).get(missIds.get(i));
+		}
+		if (loaded instanceof List) {
+			List<?> list = (List<?>) loaded;
+			return i < list.size() ? list.get(i) : null;
+		}
+		return null;
+	}
+	
+	private String generateKey(String key, String template, Method method, Object[] args) {
+		if (!template.isEmpty()) {
+			return templates.computeIfAbsent(template, KeyTemplate::of).formatAsString(args);
+		}
+		return evaluate(key, method, args, null);
+	}
+	
+	private String generateKey(String key, String template, Method method, Object[] args, Object id) {
+		if (!template.isEmpty()) {
+			return templates.computeIfAbsent(template, KeyTemplate::of).formatAsString(id);
+		}
+		return evaluate(key, method, args, id);
+	}
+	
+	private String evaluate(String key, Method method, Object[] args, Object id) {
+		if (key.isEmpty()) {
+			throw new IllegalArgumentException(method + " 上的缓存注解key和template至少要提供一个");
+		}
+		MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(null, method, args, parameterNameDiscoverer);
+		if (id != null) {
+			context.setVariable("id", id);
+		}
+		return expressions.computeIfAbsent(key, PARSER::parseExpression).getValue(context, String.class);
+	}
+	
+	private static Object proceed(ProceedingJoinPoint joinPoint, Object[] args) {
+		try {
+			return joinPoint.proceed(args);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new LoaderException(e);
+		}
+	}
+	
+	/**
+	 * 方法自己抛出的受检异常原样抛给调用方
+	 */
+	private static Throwable unwrap(RuntimeException e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof LoaderException) {
+				return cause.getCause();
+			}
+		}
+		return e;
+	}
+	
+	/**
+	 * 包装被缓存方法抛出的受检异常, 穿过Supplier之后再拆开
+	 */
+	private static final class LoaderException extends RuntimeException {
+		
+		private LoaderException(Throwable cause) {
+			super(cause);
+		}
+	}
+}
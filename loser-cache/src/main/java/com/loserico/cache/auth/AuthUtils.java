@@ -1,5 +1,6 @@
 package com.loserico.cache.auth;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.loserico.cache.JedisUtils;
 import com.loserico.common.lang.utils.StringUtils;
 import com.loserico.json.jackson.JacksonUtils;
@@ -7,13 +8,14 @@ import com.loserico.json.jsonpath.JsonPathUtils;
 import com.loserico.common.lang.resource.PropertyReader;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
@@ -41,11 +43,6 @@ public final class AuthUtils {
 	 */
 	private static final PropertyReader propertyReader = new PropertyReader("redis");
 	
-	/**
-	 * 用户缓存lua脚本的sha
-	 */
-	private static final ConcurrentHashMap<String, String> shaHashs = new ConcurrentHashMap<>();
-	
 	/**
 	 * 根据用户名获取token
 	 */
@@ -83,6 +80,17 @@ public final class AuthUtils {
 	 */
 	public static final String AUTH_TOKEN_EXPIRE_CHANNEL = "auth:token:expired";
 	
+	/**
+	 * 同一账号在别处登录时, 被踢下线的token会publish到这个channel
+	 * 格式: {token:loginInfo}
+	 */
+	public static final String AUTH_SINGLE_SIGNON_CHANNEL = "auth:single:signon:channel";
+	
+	/**
+	 * 开启本地token缓存后, 登出成功会把token publish到这个channel, 通知其他实例清掉本地缓存
+	 */
+	public static final String AUTH_TOKEN_LOGOUT_CHANNEL = "auth:token:logout";
+	
 	/**
 	 * 是否自动刷新token
 	 * <p>
@@ -90,7 +98,31 @@ public final class AuthUtils {
 	 */
 	private static boolean autoRefresh = propertyReader.getBoolean("redis.auth.auto-refresh", true);
 	
-	private static final String sha1 = JedisUtils.scriptLoad("/lua-scripts/spring-security-auth.lua");
+	private static final String AUTH_SCRIPT = "/lua-scripts/spring-security-auth.lua";
+	
+	/**
+	 * 清理过期token时每次脚本调用最多清理多少个, 避免一次清理全部token长时间阻塞Redis
+	 */
+	private static final int CLEAR_EXPIRED_BATCH_SIZE = propertyReader.getInt("redis.auth.clear-expired.batch-size", 500);
+	
+	/**
+	 * 定时清理每一轮最多执行多少批, 剩下的留到下一轮
+	 */
+	private static final int CLEAR_EXPIRED_MAX_BATCHES = propertyReader.getInt("redis.auth.clear-expired.max-batches", 100);
+	
+	/**
+	 * 一次批量续期最多带多少个token
+	 */
+	private static final int REFRESH_BATCH_SIZE = 500;
+	
+	/**
+	 * 本地token缓存, redis.auth.cache.enabled=true 时才有
+	 * <p>
+	 * 缓存期间token在Redis里过期但还没被clearExpired清理掉, 本地仍然认为有效, 最多持续redis.auth.cache.ttl-seconds
+	 */
+	private static final TokenCache tokenCache = propertyReader.getBoolean("redis.auth.cache.enabled", false) ?
+			new TokenCache(propertyReader.getInt("redis.auth.cache.max-size", 100000),
+					propertyReader.getInt("redis.auth.cache.ttl-seconds", 30)) : null;
 	
 	/**
 	 * 执行登录操作, 返回登录成功与否, 如果同一账号已经在别处登录, 先对其执行登出, 并将之前的登录信息返回
@@ -112,7 +144,7 @@ public final class AuthUtils {
 	                                       T additionalInfo) {
 		Objects.requireNonNull(timeUnit);
 		
-		byte[] result = JedisUtils.evalsha(sha1,
+		byte[] result = JedisUtils.evalScript(AUTH_SCRIPT,
 				0,
 				"login",
 				username,
@@ -135,12 +167,19 @@ public final class AuthUtils {
 	 * @return boolean
 	 */
 	public static boolean logout(String token) {
-		byte[] result = JedisUtils.evalsha(sha1,
+		if (tokenCache != null) {
+			tokenCache.invalidate(token);
+		}
+		byte[] result = JedisUtils.evalScript(AUTH_SCRIPT,
 				0,
 				"logout",
 				token);
 		String str = StringUtils.toString(result);
-		return Boolean.parseBoolean(str);
+		boolean success = Boolean.parseBoolean(str);
+		if (success && tokenCache != null) {
+			JedisUtils.publish(AUTH_TOKEN_LOGOUT_CHANNEL, token);
+		}
+		return success;
 	}
 	
 	/**
@@ -148,16 +187,55 @@ public final class AuthUtils {
 	 * <p>
 	 * 没有token过期 返回emptyMap
 	 * token过期, 返回map的key是token, value是LoginInfo
+	 * <p>
+	 * 按redis.auth.clear-expired.batch-size分批清理直到清完, 每一批都会publish到AUTH_TOKEN_EXPIRE_CHANNEL;
+	 * 返回值要把所有过期token攒在一起, 过期token很多时用sweepExpired()
 	 *
 	 * @return
 	 * @on
 	 */
 	public static <T> Map<String, T> clearExpired() {
 		log.info("Start cleaning token...");
-		byte[] result = JedisUtils.evalsha(sha1, 0, "clearExpired");
+		Map<String, T> expired = new HashMap<>();
+		Map<String, T> batch;
+		do {
+			batch = clearExpiredBatch();
+			expired.putAll(batch);
+		} while (batch.size() >= CLEAR_EXPIRED_BATCH_SIZE);
+		log.info("Clean done, expired tokens: {}", expired.keySet());
+		return expired.isEmpty() ? Collections.emptyMap() : expired;
+	}
+	
+	/**
+	 * 分批清除过期的token, 最多执行redis.auth.clear-expired.max-batches批, 返回清除了多少个
+	 * <p>
+	 * 过期的token和loginInfo不在本地攒起来, 每一批清完就publish, 通过onTokenExpire()增量拿到
+	 *
+	 * @return int
+	 */
+	public static int sweepExpired() {
+		int count = 0;
+		for (int i = 0; i < CLEAR_EXPIRED_MAX_BATCHES; i++) {
+			int size = clearExpiredBatch().size();
+			count += size;
+			if (size < CLEAR_EXPIRED_BATCH_SIZE) {
+				break;
+			}
+		}
+		if (count > 0) {
+			log.info("Swept {} expired tokens", count);
+		}
+		return count;
+	}
+	
+	/**
+	 * 一次脚本调用, 清理score最小的至多CLEAR_EXPIRED_BATCH_SIZE个过期token
+	 */
+	private static <T> Map<String, T> clearExpiredBatch() {
+		byte[] result = JedisUtils.evalScript(AUTH_SCRIPT, 0, "clearExpired", CLEAR_EXPIRED_BATCH_SIZE);
 		String resultJson = StringUtils.toString(result);
-		log.info("Clean done, expired tokens: {}", resultJson);
-		return resultJson == null ? Collections.emptyMap() : JacksonUtils.toMap(resultJson);
+		Map<String, T> batch = resultJson == null ? null : JacksonUtils.toMap(resultJson);
+		return batch == null ? Collections.emptyMap() : batch;
 	}
 	
 	/**
@@ -173,12 +251,27 @@ public final class AuthUtils {
 	public static String auth(String token) {
 		Objects.requireNonNull(token, "token cannot be null");
 		
-		byte[] result = JedisUtils.evalsha(sha1,
+		if (tokenCache != null) {
+			TokenCache.CachedToken cached = tokenCache.get(token);
+			if (cached != null) {
+				if (autoRefresh) {
+					tokenCache.markRefresh(token);
+				}
+				return cached.getUsername();
+			}
+		}
+		
+		long version = tokenCache == null ? 0 : tokenCache.version();
+		byte[] result = JedisUtils.evalScript(AUTH_SCRIPT,
 				0,
 				"auth",
 				token,
 				autoRefresh);
-		return StringUtils.toString(result);
+		String username = StringUtils.toString(result);
+		if (username != null && tokenCache != null) {
+			tokenCache.put(token, username, version);
+		}
+		return username;
 	}
 	
 	/**
@@ -193,7 +286,7 @@ public final class AuthUtils {
 	public static Long usernameTtl(String username) {
 		Objects.requireNonNull(username, "username cannot be null");
 		
-		byte[] bytes = JedisUtils.evalsha(sha1,
+		byte[] bytes = JedisUtils.evalScript(AUTH_SCRIPT,
 				0,
 				"usernameTtl",
 				username);
@@ -214,7 +307,7 @@ public final class AuthUtils {
 	 * @on
 	 */
 	public static String isLogined(String username) {
-		byte[] bytes = JedisUtils.evalsha(sha1, 0, "isLogined", username, autoRefresh);
+		byte[] bytes = JedisUtils.evalScript(AUTH_SCRIPT, 0, "isLogined", username, autoRefresh);
 		return StringUtils.toString(bytes);
 	}
 	
@@ -226,6 +319,10 @@ public final class AuthUtils {
 	 * @return T
 	 */
 	public static <T> T userDetails(String token, Class<T> clazz) {
+		TokenCache.CachedToken cached = tokenCache == null ? null : tokenCache.get(token);
+		if (cached != null) {
+			return cached.userDetails(clazz, () -> JedisUtils.HASH.hget(AUTH_TOKEN_USERDETAILS_HASH, token));
+		}
 		String userdetails = JedisUtils.HASH.hget(AUTH_TOKEN_USERDETAILS_HASH, token);
 		return JacksonUtils.toObject(userdetails, clazz);
 	}
@@ -238,6 +335,10 @@ public final class AuthUtils {
 	 * @return List<T>
 	 */
 	public static <T> List<T> authorities(String token, Class<T> clazz) {
+		TokenCache.CachedToken cached = tokenCache == null ? null : tokenCache.get(token);
+		if (cached != null) {
+			return cached.authorities(clazz, () -> JedisUtils.HASH.hget(AUTH_TOKEN_AUTHORITIES_HASH, token));
+		}
 		String authorities = JedisUtils.HASH.hget(AUTH_TOKEN_AUTHORITIES_HASH, token);
 		return JacksonUtils.toList(authorities, clazz);
 	}
@@ -261,6 +362,10 @@ public final class AuthUtils {
 	 * @return
 	 */
 	public static String username(String token) {
+		TokenCache.CachedToken cached = tokenCache == null ? null : tokenCache.get(token);
+		if (cached != null) {
+			return cached.getUsername();
+		}
 		return JedisUtils.HASH.hget(AUTH_TOKEN_USERNAME_HASH, token);
 	}
 	
@@ -279,19 +384,80 @@ public final class AuthUtils {
 		}, AuthUtils.AUTH_TOKEN_EXPIRE_CHANNEL);
 	}
 	
+	/**
+	 * 把本地缓存命中期间攒下的token批量续期
+	 */
+	private static void flushRefresh() {
+		List<String> tokens;
+		while (!(tokens = tokenCache.drainRefresh(REFRESH_BATCH_SIZE)).isEmpty()) {
+			List<Object> args = new ArrayList<>(tokens.size() + 1);
+			args.add("refresh");
+			args.addAll(tokens);
+			try {
+				JedisUtils.evalScript(AUTH_SCRIPT, 0, args.toArray());
+			} catch (Throwable e) {
+				log.error("Refresh {} tokens failed", tokens.size(), e);
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * 收到过期/单点登录踢下线/登出消息后清掉本地缓存
+	 */
+	private static void invalidateLocal(String channel, String message) {
+		if (AUTH_TOKEN_LOGOUT_CHANNEL.equals(channel)) {
+			tokenCache.invalidate(message);
+			return;
+		}
+		Map<String, Object> tokens = JacksonUtils.toMap(message);
+		if (tokens != null) {
+			tokens.keySet().forEach(tokenCache::invalidate);
+		}
+	}
+	
 	/**
 	 * 定期自动清理token
 	 */
 	static {
+		if (tokenCache != null) {
+			subscribe(AuthUtils::invalidateLocal,
+					AUTH_TOKEN_EXPIRE_CHANNEL, AUTH_SINGLE_SIGNON_CHANNEL, AUTH_TOKEN_LOGOUT_CHANNEL);
+			if (autoRefresh) {
+				long interval = propertyReader.getInt("redis.auth.cache.refresh-interval-millis", 1000);
+				/*
+				 * 一次要把攒下的续期都刷完, 单独一个线程, 不占用锁续约的ThreadPool.scheduler()
+				 */
+				ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+						.setNameFormat("loser-auth-refresher-%d")
+						.setDaemon(true)
+						.build());
+				refresher.scheduleWithFixedDelay(AuthUtils::flushRefresh,
+						interval,
+						interval,
+						TimeUnit.MILLISECONDS);
+			}
+		}
+		
 		// 默认1分钟执行一次
 		int period = propertyReader.getInt("redis.auth.clear-expired.period", -1);
 		// -1表示不执行清理
 		if (-1 != period) {
-			ScheduledExecutorService scheduledExecutorService = new ScheduledThreadPoolExecutor(1);
-			scheduledExecutorService.scheduleAtFixedRate(() -> clearExpired(),
-					1,
-					period,
-					TimeUnit.MINUTES);
+			/*
+			 * 上一轮没清完的话下一轮接着清, FixedDelay保证两轮不会重叠
+			 * 一轮可能要扫很多批, 单独一个线程, 不占用锁续约的ThreadPool.scheduler()
+			 */
+			ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+					.setNameFormat("loser-auth-sweeper-%d")
+					.setDaemon(true)
+					.build());
+			sweeper.scheduleWithFixedDelay(() -> {
+				try {
+					sweepExpired();
+				} catch (Throwable e) {
+					log.error("Sweep expired tokens failed", e);
+				}
+			}, 1, period, TimeUnit.MINUTES);
 		}
 	}
 }
@@ -0,0 +1,131 @@
+package com.loserico.cache.auth;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.hash.Hashing;
+import com.loserico.json.jackson.JacksonUtils;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * AuthUtils的本地token缓存, 命中时auth/username/userDetails/authorities都不访问Redis
+ * <p>
+ * key是token的SHA-256, 不在内存里留原始token; 不用murmur这类非加密hash, 否则可以构造出和别人token碰撞的假token
+ * <p>
+ * 失效靠三个channel: token过期, 单点登录踢下线, 登出; 订阅断开期间漏掉的消息最多ttl之后过期。
+ * 和NearCache一样用version防止读Redis期间发生的失效被回填覆盖
+ * <p>
+ * 命中的auth需要续期的token先攒起来, 由AuthUtils定时批量续期
+ * <p>
+ * Copyright: (C), 2021-03-16 14:20
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+final class TokenCache {
+	
+	private final Cache<String, CachedToken> tokens;
+	
+	/**
+	 * 待续期的原始token
+	 */
+	private final Set<String> pendingRefresh = ConcurrentHashMap.newKeySet();
+	
+	private final AtomicLong version = new AtomicLong(0);
+	
+	TokenCache(long maxSize, long ttlSeconds) {
+		this.tokens = Caffeine.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+				.build();
+	}
+	
+	/**
+	 * 读Redis之前先拿到version, 回填的时候传回来
+	 */
+	long version() {
+		return version.get();
+	}
+	
+	CachedToken get(String token) {
+		return tokens.getIfPresent(hash(token));
+	}
+	
+	/**
+	 * 读Redis期间有过失效就不回填
+	 */
+	void put(String token, String username, long version) {
+		tokens.asMap().compute(hash(token), (key, old) -> this.version.get() == version ? new CachedToken(username) : old);
+	}
+	
+	void invalidate(String token) {
+		version.incrementAndGet();
+		tokens.invalidate(hash(token));
+		pendingRefresh.remove(token);
+	}
+	
+	void markRefresh(String token) {
+		pendingRefresh.add(token);
+	}
+	
+	/**
+	 * @param max 最多取多少个
+	 * @return 取出来的token会从待续期集合里删掉
+	 */
+	List<String> drainRefresh(int max) {
+		List<String> drained = new ArrayList<>(Math.min(max, pendingRefresh.size()));
+		Iterator<String> iterator = pendingRefresh.iterator();
+		while (iterator.hasNext() && drained.size() < max) {
+			drained.add(iterator.next());
+			iterator.remove();
+		}
+		return drained;
+	}
+	
+	private static String hash(String token) {
+		return Hashing.sha256().hashString(token, UTF_8).toString();
+	}
+	
+	/**
+	 * 一个token在本地的副本, userdetails/authorities第一次用到才去Redis取, 按Class缓存反序列化结果
+	 * <p>
+	 * 返回的对象是共享的, 调用方不要修改
+	 */
+	static final class CachedToken {
+		
+		@Getter
+		private final String username;
+		
+		private final Map<Class<?>, Object> userDetails = new ConcurrentHashMap<>();
+		
+		private final Map<Class<?>, List<?>> authorities = new ConcurrentHashMap<>();
+		
+		private CachedToken(String username) {
+			this.username = username;
+		}
+		
+		@SuppressWarnings("unchecked")
+		<T> T userDetails(Class<T> clazz, Supplier<String> loader) {
+			return (T) userDetails.computeIfAbsent(clazz, c -> JacksonUtils.toObject(loader.get(), c));
+		}
+		
+		@SuppressWarnings("unchecked")
+		<T> List<T> authorities(Class<T> clazz, Supplier<String> loader) {
+			return (List<T>) authorities.computeIfAbsent(clazz, c -> JacksonUtils.toList(loader.get(), c));
+		}
+	}
+}
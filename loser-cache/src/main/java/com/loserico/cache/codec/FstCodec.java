@@ -0,0 +1,31 @@
+package com.loserico.cache.codec;
+
+import com.loserico.common.lang.utils.FstUtils;
+
+import java.util.Arrays;
+
+/**
+ * FST序列化, 对象必须实现Serializable
+ * <p>
+ * Copyright: (C), 2021-03-04 10:16
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class FstCodec implements RedisCodec {
+	
+	public static final byte HEADER = 0x03;
+	
+	@Override
+	public byte[] encode(Object value) {
+		return RedisCodecs.withHeader(HEADER, FstUtils.toBytes(value));
+	}
+	
+	@Override
+	public <T> T decode(byte[] data, Class<T> clazz) {
+		return FstUtils.toObject(Arrays.copyOfRange(data, 1, data.length));
+	}
+}
@@ -0,0 +1,42 @@
+package com.loserico.cache.codec;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.loserico.cache.exception.CodecException;
+import com.loserico.json.jackson.JacksonUtils;
+
+import java.io.IOException;
+
+/**
+ * 默认的序列化方式, UTF-8 JSON, 没有header, 和以前的格式完全一样
+ * <p>
+ * 直接从byte[]反序列化, 不再先转成String
+ * <p>
+ * Copyright: (C), 2021-03-04 09:52
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class JacksonCodec implements RedisCodec {
+	
+	@Override
+	public byte[] encode(Object value) {
+		return JacksonUtils.toBytes(value);
+	}
+	
+	@Override
+	public <T> T decode(byte[] data, Class<T> clazz) {
+		return JacksonUtils.toObject(data, clazz);
+	}
+	
+	@Override
+	public <T> T decode(byte[] data, JavaType javaType) {
+		try {
+			return JacksonUtils.objectMapper().readValue(data, javaType);
+		} catch (IOException e) {
+			throw new CodecException(e);
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package com.loserico.cache.codec;
+
+import com.loserico.common.lang.utils.KryoUtils;
+
+/**
+ * Kryo序列化, 对象需要有默认构造函数, 不需要实现Serializable
+ * <p>
+ * 序列化结果里带了类型信息, 所以反序列化不依赖传进来的Class
+ * <p>
+ * Copyright: (C), 2021-03-04 10:05
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class KryoCodec implements RedisCodec {
+	
+	public static final byte HEADER = 0x01;
+	
+	@Override
+	public byte[] encode(Object value) {
+		return RedisCodecs.withHeader(HEADER, KryoUtils.toBytes(value));
+	}
+	
+	@Override
+	public <T> T decode(byte[] data, Class<T> clazz) {
+		return KryoUtils.toObject(data, 1, data.length - 1);
+	}
+}
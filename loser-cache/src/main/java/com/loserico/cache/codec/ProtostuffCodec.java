@@ -0,0 +1,31 @@
+package com.loserico.cache.codec;
+
+import com.loserico.common.lang.utils.ProtostuffUtils;
+
+/**
+ * Protostuff序列化, 不要求默认构造函数和Serializable, 体积最小
+ * <p>
+ * 序列化结果里没有类型信息, 反序列化必须传具体的Class
+ * <p>
+ * Copyright: (C), 2021-03-04 10:11
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class ProtostuffCodec implements RedisCodec {
+	
+	public static final byte HEADER = 0x02;
+	
+	@Override
+	public byte[] encode(Object value) {
+		return RedisCodecs.withHeader(HEADER, ProtostuffUtils.toBytes(value));
+	}
+	
+	@Override
+	public <T> T decode(byte[] data, Class<T> clazz) {
+		return ProtostuffUtils.toObject(data, 1, data.length - 1, clazz);
+	}
+}
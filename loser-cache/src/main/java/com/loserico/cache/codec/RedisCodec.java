@@ -0,0 +1,55 @@
+package com.loserico.cache.codec;
+
+import com.fasterxml.jackson.databind.JavaType;
+
+/**
+ * JedisUtils存取POJO类型value时用的序列化方式
+ * <p>
+ * 除了Jackson之外, 其他实现序列化出来的byte[]第一个字节都是一个header, 标明是用哪种方式序列化的,
+ * 读的时候根据header选择反序列化方式, 没有header的按JSON处理。所以切换序列化方式之后, 老的JSON value照样能读
+ * <p>
+ * 自定义实现可以通过 redis.codec=实现类全限定名 指定, 需要有无参构造函数
+ * <p>
+ * Copyright: (C), 2021-03-04 09:30
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public interface RedisCodec {
+	
+	/**
+	 * 序列化
+	 *
+	 * @param value 不会是null, 也不会是String/原子类型/集合, 这些都在ByteUtils里面处理掉了
+	 * @return byte[]
+	 */
+	public byte[] encode(Object value);
+	
+	/**
+	 * 反序列化
+	 *
+	 * @param data  非空
+	 * @param clazz
+	 * @param <T>
+	 * @return T
+	 */
+	public <T> T decode(byte[] data, Class<T> clazz);
+	
+	/**
+	 * 泛型类型的反序列化, 如 List&lt;Foo&gt;, Map&lt;String, Foo&gt;
+	 * <p>
+	 * 二进制格式自己记录了类型信息, 默认只用原始类型; 按声明类型解析的格式(如JSON)要覆盖这个方法
+	 *
+	 * @param data     非空
+	 * @param javaType
+	 * @param <T>
+	 * @return T
+	 */
+	@SuppressWarnings("unchecked")
+	public default <T> T decode(byte[] data, JavaType javaType) {
+		return (T) decode(data, javaType.getRawClass());
+	}
+}
@@ -0,0 +1,150 @@
+package com.loserico.cache.codec;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.loserico.cache.exception.CodecException;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 持有当前使用的RedisCodec, 并根据header选择反序列化方式
+ * <p>
+ * Copyright: (C), 2021-03-04 10:23
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Slf4j
+public final class RedisCodecs {
+	
+	public static final String JACKSON = "jackson";
+	public static final String KRYO = "kryo";
+	public static final String PROTOSTUFF = "protostuff";
+	public static final String FST = "fst";
+	
+	private static final RedisCodec JACKSON_CODEC = new JacksonCodec();
+	private static final RedisCodec KRYO_CODEC = new KryoCodec();
+	private static final RedisCodec PROTOSTUFF_CODEC = new ProtostuffCodec();
+	private static final RedisCodec FST_CODEC = new FstCodec();
+	
+	/**
+	 * 写的时候用这个, 读的时候看header
+	 */
+	private static volatile RedisCodec codec = JACKSON_CODEC;
+	
+	private RedisCodecs() {
+	}
+	
+	public static RedisCodec getCodec() {
+		return codec;
+	}
+	
+	/**
+	 * 切换写value时用的序列化方式, 已经写进去的value不受影响, 照样能读
+	 *
+	 * @param redisCodec
+	 */
+	public static void setCodec(RedisCodec redisCodec) {
+		if (redisCodec == null) {
+			throw new IllegalArgumentException("redisCodec cannot be null");
+		}
+		codec = redisCodec;
+	}
+	
+	/**
+	 * 根据名字创建RedisCodec: jackson, kryo, protostuff, fst 或者 自定义实现类的全限定名
+	 *
+	 * @param name
+	 * @return RedisCodec
+	 */
+	public static RedisCodec of(String name) {
+		if (name == null || JACKSON.equalsIgnoreCase(name)) {
+			return JACKSON_CODEC;
+		}
+		if (KRYO.equalsIgnoreCase(name)) {
+			return KRYO_CODEC;
+		}
+		if (PROTOSTUFF.equalsIgnoreCase(name)) {
+			return PROTOSTUFF_CODEC;
+		}
+		if (FST.equalsIgnoreCase(name)) {
+			return FST_CODEC;
+		}
+		try {
+			return (RedisCodec) Class.forName(name).newInstance();
+		} catch (ClassNotFoundException | InstantiationException | IllegalAccessException | ClassCastException e) {
+			throw new CodecException("Invalid redis.codec: " + name, e);
+		}
+	}
+	
+	public static byte[] encode(Object value) {
+		return codec.encode(value);
+	}
+	
+	/**
+	 * 第一个字节是已知的header就用对应的方式反序列化, 否则交给当前codec
+	 * <p>
+	 * JSON的第一个字节不可能是0x01~0x03, 所以老数据都会走到当前codec
+	 *
+	 * @param data
+	 * @param clazz
+	 * @param <T>
+	 * @return T
+	 */
+	public static <T> T decode(byte[] data, Class<T> clazz) {
+		if (data == null || data.length == 0) {
+			return null;
+		}
+		return codecOf(data).decode(data, clazz);
+	}
+	
+	/**
+	 * 泛型类型的反序列化, 和decode(byte[], Class)一样按header选择codec, 完整的JavaType交给codec
+	 *
+	 * @param data
+	 * @param javaType
+	 * @param <T>
+	 * @return T
+	 */
+	public static <T> T decode(byte[] data, JavaType javaType) {
+		if (data == null || data.length == 0) {
+			return null;
+		}
+		return codecOf(data).decode(data, javaType);
+	}
+	
+	static byte[] withHeader(byte header, byte[] body) {
+		byte[] data = new byte[body.length + 1];
+		data[0] = header;
+		System.arraycopy(body, 0, data, 1, body.length);
+		return data;
+	}
+	
+	/**
+	 * 没有header的是JSON或者自定义codec写的
+	 */
+	private static RedisCodec codecOf(byte[] data) {
+		RedisCodec redisCodec = byHeader(data[0]);
+		if (redisCodec == null) {
+			redisCodec = codec;
+			if (redisCodec instanceof KryoCodec || redisCodec instanceof ProtostuffCodec || redisCodec instanceof FstCodec) {
+				redisCodec = JACKSON_CODEC;
+			}
+		}
+		return redisCodec;
+	}
+	
+	private static RedisCodec byHeader(byte header) {
+		switch (header) {
+			case KryoCodec.HEADER:
+				return KRYO_CODEC;
+			case ProtostuffCodec.HEADER:
+				return PROTOSTUFF_CODEC;
+			case FstCodec.HEADER:
+				return FST_CODEC;
+			default:
+				return null;
+		}
+	}
+}
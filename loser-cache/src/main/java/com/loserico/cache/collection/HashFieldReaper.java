@@ -0,0 +1,148 @@
+package com.loserico.cache.collection;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.loserico.cache.JedisUtils;
+import com.loserico.common.lang.resource.PropertyReader;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 后台清理过期的hash field
+ * <p>
+ * JedisUtils.HASH.hset(key, field, value, ttl)把field的过期时间记在zset里, 读的时候只检查读到的那个field,
+ * 没人读的field过期了会一直留着。这里维护一个索引zset(hash key -> 最早可能有field过期的时间), 后台定时:
+ * <ol>
+ * <li>ZRANGEBYSCORE索引, 每次最多拿batchSize个已经有field过期了的hash
+ * <li>每个hash删掉最多batchSize个过期的field, 单节点/Sentinel模式下这些hash放在一个pipeline里
+ * <li>把每个hash下一个field的过期时间写回索引, 没有带过期时间的field了就从索引里删掉
+ * </ol>
+ * 多个JVM同时清理也没关系, 删除和回写索引都是幂等的
+ * <p>
+ * 有field设置过期时间的时候才启动, 配置项:
+ * <ul>
+ * <li>redis.hash.reaper.enabled 默认true
+ * <li>redis.hash.reaper.interval-millis 默认1000
+ * <li>redis.hash.reaper.batch-size 默认100
+ * </ul>
+ * <p>
+ * Copyright: (C), 2021-03-13 10:20
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Slf4j
+public final class HashFieldReaper {
+	
+	/**
+	 * 索引zset, member是hash的key, score是这个hash里最早可能有field过期的时间(秒)
+	 */
+	public static final String HASH_EXPIRE_INDEX = "jedis_utils:__timeout__index";
+	
+	private static final String HASH_SCRIPT = "/lua-scripts/hash.lua";
+	
+	private static final String INDEX_SCRIPT = "/lua-scripts/hashExpireIndex.lua";
+	
+	/**
+	 * 一次清理最多循环几轮, 防止过期的太多一直占着清理线程
+	 */
+	private static final int MAX_ROUNDS = 10;
+	
+	private static final PropertyReader propertyReader = new PropertyReader("redis");
+	
+	private static final AtomicBoolean STARTED = new AtomicBoolean(false);
+	
+	private static final int BATCH_SIZE = propertyReader.getInt("redis.hash.reaper.batch-size", 100);
+	
+	/**
+	 * 清理单独一个线程, 不占用锁续约的ThreadPool.scheduler(), 启动的时候才创建
+	 */
+	private static volatile ScheduledExecutorService reaper;
+	
+	private HashFieldReaper() {
+	}
+	
+	/**
+	 * 登记hash key有field在ttl秒后过期, 并确保后台清理已经启动
+	 *
+	 * @param key hash的key
+	 * @param ttl 秒
+	 */
+	public static void track(String key, int ttl) {
+		JedisUtils.evalScript(INDEX_SCRIPT, 1, HASH_EXPIRE_INDEX, "track", key, ttl);
+		start();
+	}
+	
+	/**
+	 * 启动后台清理, 重复调用没有影响
+	 */
+	public static void start() {
+		if (!propertyReader.getBoolean("redis.hash.reaper.enabled", true) || !STARTED.compareAndSet(false, true)) {
+			return;
+		}
+		int interval = propertyReader.getInt("redis.hash.reaper.interval-millis", 1000);
+		reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("loser-hash-reaper-%d")
+				.setDaemon(true)
+				.build());
+		reaper.scheduleWithFixedDelay(() -> {
+			try {
+				reap();
+			} catch (Throwable e) {
+				log.error("Reap expired hash fields failed", e);
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+		log.info("Hash field reaper started, interval {}ms, batch size {}", interval, BATCH_SIZE);
+	}
+	
+	/**
+	 * 清理一次
+	 *
+	 * @return 清理过的hash数量
+	 */
+	public static int reap() {
+		int reaped = 0;
+		for (int round = 0; round < MAX_ROUNDS; round++) {
+			List<Object> dueKeys = JedisUtils.evalScript(INDEX_SCRIPT, 1, HASH_EXPIRE_INDEX, "due", BATCH_SIZE);
+			if (dueKeys.isEmpty()) {
+				break;
+			}
+			
+			List<String> keys = new ArrayList<>(dueKeys.size());
+			List<Object[]> paramsList = new ArrayList<>(dueKeys.size());
+			for (Object dueKey : dueKeys) {
+				String key = new String((byte[]) dueKey, UTF_8);
+				keys.add(key);
+				paramsList.add(new Object[]{key, JedisUtils.HASH.expireZsetKey(key), "reap", BATCH_SIZE});
+			}
+			List<Object> nextExpires = JedisUtils.evalScriptPipelined(HASH_SCRIPT, 2, paramsList);
+			
+			List<Object[]> reindexes = new ArrayList<>(keys.size());
+			for (int i = 0; i < keys.size(); i++) {
+				Object nextExpire = nextExpires.get(i);
+				if (nextExpire instanceof Throwable) {
+					log.warn("Reap expired fields of hash {} failed", keys.get(i), (Throwable) nextExpire);
+					continue;
+				}
+				reindexes.add(new Object[]{HASH_EXPIRE_INDEX, "reindex", keys.get(i), nextExpire});
+			}
+			JedisUtils.evalScriptPipelined(INDEX_SCRIPT, 1, reindexes);
+			
+			reaped += keys.size();
+			if (dueKeys.size() < BATCH_SIZE) {
+				break;
+			}
+		}
+		return reaped;
+	}
+}
@@ -0,0 +1,53 @@
+package com.loserico.cache.collection;
+
+import lombok.Data;
+
+/**
+ * 可靠队列的统计信息, 用来调整消费者线程数和预取个数
+ * <p>
+ * Copyright: (C), 2021-03-13 15:10
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Data
+public class QueueStats {
+	
+	/**
+	 * 还在队列里等着被消费的元素个数
+	 */
+	private long backlog;
+	
+	/**
+	 * 已经被取走但还没确认的元素个数, 包括其他JVM里的消费者
+	 */
+	private long inflight;
+	
+	/**
+	 * 本JVM处理成功并确认的个数
+	 */
+	private long processed;
+	
+	/**
+	 * 本JVM处理失败的个数, 这些元素等处理超时后重新入队
+	 */
+	private long failed;
+	
+	/**
+	 * 本JVM的清理任务重新入队的个数
+	 */
+	private long requeued;
+	
+	/**
+	 * 从入队到确认的平均耗时, 毫秒
+	 */
+	private double avgLatencyMillis;
+	
+	/**
+	 * 从入队到确认的最大耗时, 毫秒
+	 */
+	private long maxLatencyMillis;
+}
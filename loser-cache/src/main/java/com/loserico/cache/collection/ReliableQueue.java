@@ -0,0 +1,370 @@
+package com.loserico.cache.collection;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.loserico.cache.JedisUtils;
+import com.loserico.cache.utils.ByteUtils;
+import com.loserico.cache.utils.KeyUtils;
+import com.loserico.cache.utils.UnMarshaller;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 基于Redis list的可靠队列, 至少处理一次
+ * <p>
+ * JedisUtils.LIST.blpop(key, QueueListener)元素一出队就从Redis里删掉了, 处理失败或者进程挂掉消息就丢了。这里:
+ * <ol>
+ * <li>消费者用BRPOPLPUSH把元素原子地挪到处理中列表, 有积压时一次lua批量挪prefetch个, 同时在zset里登记处理截止时间
+ * <li>处理成功的一批元素一次lua确认, 从处理中列表和zset里删掉
+ * <li>处理失败不确认, 后台任务把超过截止时间还没确认的元素放回队尾, 下一个就被重新消费
+ * </ol>
+ * 同一个元素可能被处理多次(处理超时、确认之前进程挂掉), handler要保证幂等
+ * <p>
+ * 入队要用offer, 每个元素前面加了唯一id和入队时间, 内容相同的两个元素互不影响, 也能统计入队到确认的延迟
+ * <p>
+ * 处理中列表和zset的key是 {队列}:processing 和 {队列}:deadlines, Cluster模式下和队列在同一个slot;
+ * 每个消费者线程阻塞等待时占用一个连接, 连接池要留够
+ * <pre>
+ * ReliableQueue<Order> queue = ReliableQueue.builder("order:queue", Order.class)
+ * 		.workers(4)
+ * 		.prefetch(20)
+ * 		.visibilityTimeout(30, TimeUnit.SECONDS)
+ * 		.build();
+ * queue.start(order -> orderService.handle(order));
+ * queue.offer(order);
+ * </pre>
+ * <p>
+ * Copyright: (C), 2021-03-13 15:20
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Slf4j
+public class ReliableQueue<T> {
+	
+	private static final String FETCH = "/lua-scripts/queueFetch.lua";
+	
+	private static final String ACK = "/lua-scripts/queueAck.lua";
+	
+	private static final String REQUEUE = "/lua-scripts/queueRequeue.lua";
+	
+	/**
+	 * BRPOPLPUSH每次最多阻塞多久, 秒; 不能一直阻塞, 否则shutdown之后线程退不出来
+	 */
+	private static final int BLOCK_SECONDS = 1;
+	
+	/**
+	 * 清理任务一次最多重新入队几个, 也是一次最多检查处理中列表的几个元素有没有登记截止时间
+	 */
+	private static final int REQUEUE_BATCH = 1000;
+	
+	private static final byte SEPARATOR = ':';
+	
+	private final String queue;
+	
+	private final String processing;
+	
+	private final String deadlines;
+	
+	private final Class<T> clazz;
+	
+	private final int workers;
+	
+	private final int prefetch;
+	
+	private final long visibilityMillis;
+	
+	private final LongAdder processed = new LongAdder();
+	
+	private final LongAdder failed = new LongAdder();
+	
+	private final LongAdder requeued = new LongAdder();
+	
+	private final LongAdder totalLatency = new LongAdder();
+	
+	private final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0L);
+	
+	private volatile boolean running = false;
+	
+	private ExecutorService executor;
+	
+	/**
+	 * 超时重新入队单独一个线程, 不占用锁续约的ThreadPool.scheduler()
+	 */
+	private ScheduledExecutorService sweeper;
+	
+	/**
+	 * 下次从处理中列表的哪个下标开始检查有没有截止时间
+	 */
+	private volatile long backfillCursor = 0L;
+	
+	private ReliableQueue(Builder<T> builder) {
+		this.queue = builder.queue;
+		this.clazz = builder.clazz;
+		this.workers = builder.workers;
+		this.prefetch = builder.prefetch;
+		this.visibilityMillis = builder.visibilityMillis;
+		String hashTag = queue.contains("{") ? queue : "{" + queue + "}";
+		this.processing = hashTag + ":processing";
+		this.deadlines = hashTag + ":deadlines";
+	}
+	
+	/**
+	 * @param queue 队列的key
+	 * @param clazz 元素类型
+	 * @return Builder
+	 */
+	public static <T> Builder<T> builder(String queue, Class<T> clazz) {
+		KeyUtils.requireNonBlank(queue);
+		return new Builder<>(queue, clazz);
+	}
+	
+	/**
+	 * 入队, 先入队的先被消费
+	 *
+	 * @param values
+	 * @return long 入队后队列的长度
+	 */
+	@SafeVarargs
+	public final long offer(T... values) {
+		byte[][] elements = new byte[values.length][];
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < values.length; i++) {
+			elements[i] = wrap(ByteUtils.encode(values[i]), now);
+		}
+		return JedisUtils.LIST.lpush(queue, elements);
+	}
+	
+	/**
+	 * 启动workers个消费者线程和超时重新入队的后台任务, 只能启动一次
+	 *
+	 * @param handler 抛异常表示处理失败, 等处理超时后重新入队
+	 */
+	public synchronized void start(Consumer<T> handler) {
+		if (running) {
+			throw new IllegalStateException("Queue " + queue + " already started");
+		}
+		running = true;
+		executor = Executors.newFixedThreadPool(workers, new ThreadFactoryBuilder()
+				.setNameFormat("loser-queue-" + queue + "-%d")
+				.setDaemon(true)
+				.build());
+		for (int i = 0; i < workers; i++) {
+			executor.execute(() -> consume(handler));
+		}
+		long interval = Math.max(1000L, visibilityMillis / 2);
+		sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("loser-queue-" + queue + "-sweeper-%d")
+				.setDaemon(true)
+				.build());
+		sweeper.scheduleWithFixedDelay(() -> {
+			try {
+				requeue();
+			} catch (Throwable e) {
+				log.error("Requeue timeout elements of {} failed", queue, e);
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+		log.info("Queue {} started, workers {}, prefetch {}, visibility timeout {}ms", queue, workers, prefetch, visibilityMillis);
+	}
+	
+	/**
+	 * 停止消费, 正在处理的元素处理完再退出; 没来得及确认的元素等处理超时后由其他消费者重新处理
+	 */
+	public synchronized void shutdown() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		sweeper.shutdown();
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(visibilityMillis, TimeUnit.MILLISECONDS)) {
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		log.info("Queue {} shutdown", queue);
+	}
+	
+	/**
+	 * 把超过处理截止时间还没确认的元素放回队列, 顺便给处理中列表里的一段元素补登记截止时间,
+	 * 每次检查REQUEUE_BATCH个, 多调几次就把整个处理中列表检查一遍
+	 *
+	 * @return int 重新入队的个数
+	 */
+	public int requeue() {
+		List<Long> result = JedisUtils.evalScript(REQUEUE, 3, queue, processing, deadlines,
+				visibilityMillis, REQUEUE_BATCH, backfillCursor);
+		long count = result.get(0);
+		backfillCursor = result.get(1);
+		if (count > 0) {
+			requeued.add(count);
+			log.info("Requeued {} timeout elements of {}", count, queue);
+		}
+		return (int) count;
+	}
+	
+	public QueueStats stats() {
+		QueueStats stats = new QueueStats();
+		stats.setBacklog(JedisUtils.LIST.llen(queue));
+		stats.setInflight(JedisUtils.LIST.llen(processing));
+		long processedCount = processed.sum();
+		stats.setProcessed(processedCount);
+		stats.setFailed(failed.sum());
+		stats.setRequeued(requeued.sum());
+		stats.setAvgLatencyMillis(processedCount == 0 ? 0D : (double) totalLatency.sum() / processedCount);
+		stats.setMaxLatencyMillis(maxLatency.get());
+		return stats;
+	}
+	
+	private void consume(Consumer<T> handler) {
+		while (running) {
+			try {
+				List<byte[]> elements = fetch();
+				if (elements.isEmpty()) {
+					continue;
+				}
+				List<Object> acks = new ArrayList<>(elements.size() + 2);
+				acks.add(processing);
+				acks.add(deadlines);
+				for (byte[] element : elements) {
+					if (handle(handler, element)) {
+						acks.add(element);
+					}
+				}
+				if (acks.size() > 2) {
+					JedisUtils.evalScript(ACK, 2, acks.toArray());
+				}
+			} catch (Throwable e) {
+				log.error("Consume queue {} failed", queue, e);
+				sleepQuietly();
+			}
+		}
+	}
+	
+	/**
+	 * 有积压时一次lua取prefetch个; 队列空了就用BRPOPLPUSH阻塞等, 等到一个之后顺便再取prefetch-1个
+	 */
+	private List<byte[]> fetch() {
+		List<byte[]> elements = JedisUtils.evalScript(FETCH, 3, queue, processing, deadlines, prefetch, visibilityMillis);
+		if (!elements.isEmpty()) {
+			return elements;
+		}
+		byte[] element = JedisUtils.LIST.brpoplpush(queue, processing, BLOCK_SECONDS);
+		if (element == null) {
+			return Collections.emptyList();
+		}
+		return JedisUtils.evalScript(FETCH, 3, queue, processing, deadlines, prefetch - 1, visibilityMillis, element);
+	}
+	
+	private boolean handle(Consumer<T> handler, byte[] element) {
+		int first = indexOf(element, 0);
+		int second = indexOf(element, first + 1);
+		long enqueuedAt = Long.parseLong(new String(element, first + 1, second - first - 1, UTF_8));
+		byte[] payload = new byte[element.length - second - 1];
+		System.arraycopy(element, second + 1, payload, 0, payload.length);
+		try {
+			handler.accept(UnMarshaller.toObject(payload, clazz));
+		} catch (Throwable e) {
+			failed.increment();
+			log.error("Handle element of queue {} failed, will be redelivered after visibility timeout", queue, e);
+			return false;
+		}
+		long latency = System.currentTimeMillis() - enqueuedAt;
+		processed.increment();
+		totalLatency.add(latency);
+		maxLatency.accumulate(latency);
+		return true;
+	}
+	
+	/**
+	 * 元素格式: 唯一id:入队时间毫秒:value
+	 */
+	private static byte[] wrap(byte[] payload, long now) {
+		byte[] header = (Long.toHexString(ThreadLocalRandom.current().nextLong()) + SEPARATOR + now + SEPARATOR).getBytes(UTF_8);
+		byte[] element = new byte[header.length + payload.length];
+		System.arraycopy(header, 0, element, 0, header.length);
+		System.arraycopy(payload, 0, element, header.length, payload.length);
+		return element;
+	}
+	
+	private static int indexOf(byte[] element, int from) {
+		for (int i = from; i < element.length; i++) {
+			if (element[i] == SEPARATOR) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Not an element offered by ReliableQueue");
+	}
+	
+	private static void sleepQuietly() {
+		try {
+			TimeUnit.SECONDS.sleep(BLOCK_SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	public static class Builder<T> {
+		
+		private final String queue;
+		
+		private final Class<T> clazz;
+		
+		private int workers = 1;
+		
+		private int prefetch = 10;
+		
+		private long visibilityMillis = TimeUnit.SECONDS.toMillis(30);
+		
+		private Builder(String queue, Class<T> clazz) {
+			this.queue = queue;
+			this.clazz = clazz;
+		}
+		
+		/**
+		 * 消费者线程数, 默认1
+		 */
+		public Builder<T> workers(int workers) {
+			this.workers = Math.max(1, workers);
+			return this;
+		}
+		
+		/**
+		 * 每个消费者一次最多取几个, 默认10
+		 */
+		public Builder<T> prefetch(int prefetch) {
+			this.prefetch = Math.max(1, prefetch);
+			return this;
+		}
+		
+		/**
+		 * 取走之后多久还没确认就重新入队, 默认30秒; 要大于处理一批prefetch个元素的时间
+		 */
+		public Builder<T> visibilityTimeout(long timeout, TimeUnit timeUnit) {
+			this.visibilityMillis = timeUnit.toMillis(timeout);
+			return this;
+		}
+		
+		public ReliableQueue<T> build() {
+			return new ReliableQueue<>(this);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package com.loserico.cache.collection;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 一次XAUTOCLAIM的结果
+ * <p>
+ * Copyright: (C), 2021-03-14 10:40
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Data
+@AllArgsConstructor
+public class StreamClaim<T> {
+	
+	/**
+	 * 下次从哪个id开始找, 0-0表示整个pending列表已经找完一轮
+	 */
+	private String cursor;
+	
+	/**
+	 * 认领过来的entry
+	 */
+	private List<StreamEntry<T>> entries;
+	
+	/**
+	 * 投递次数太多转到死信stream的个数
+	 */
+	private int deadLettered;
+}
@@ -0,0 +1,335 @@
+package com.loserico.cache.collection;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.loserico.cache.JedisUtils;
+import com.loserico.cache.codec.RedisCodec;
+import com.loserico.cache.utils.KeyUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Redis Stream 消费组的消费者, 至少处理一次
+ * <p>
+ * 和 {@link ReliableQueue} 比, 一条entry可以被多个消费组各消费一遍, 确认之后也还在stream里, 可以从任意id重放;
+ * 长度由生产者xadd的时候按MAXLEN近似裁剪
+ * <ol>
+ * <li>workers个线程以同一个消费者的身份XREADGROUP, 每次最多batchSize个, 处理成功的一批一次XACK
+ * <li>处理失败不确认, 留在pending列表里
+ * <li>每隔claimIdle, 其中一个线程把整个消费组里空闲超过claimIdle的entry认领过来重新处理, 包括挂掉的消费者没确认的;
+ * 每次认领batchSize个, 记住XAUTOCLAIM返回的位置接着往后认领, 一轮找完(返回0-0)之后等下一个claimIdle再从头开始
+ * <li>设置了maxDeliveries的话, 投递次数超过maxDeliveries的entry(一直处理失败的毒消息)转到死信stream并确认掉,
+ * 死信stream默认是 {key}:dead, 每个entry除了body还带上原来的id
+ * </ol>
+ * lua脚本里不能阻塞, 没有新entry时睡pollInterval再读; handler要保证幂等
+ * <pre>
+ * StreamConsumer<Order> consumer = StreamConsumer.builder("order:stream", "billing", Order.class)
+ * 		.workers(4)
+ * 		.batchSize(50)
+ * 		.claimIdle(1, TimeUnit.MINUTES)
+ * 		.maxDeliveries(5)
+ * 		.build();
+ * consumer.start(order -> billingService.charge(order));
+ *
+ * JedisUtils.STREAM.xadd("order:stream", 100000, order);
+ * </pre>
+ * <p>
+ * Copyright: (C), 2021-03-14 10:10
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Slf4j
+public class StreamConsumer<T> {
+	
+	private final String key;
+	
+	private final String group;
+	
+	private final String consumer;
+	
+	private final Class<T> clazz;
+	
+	private final RedisCodec codec;
+	
+	private final String startId;
+	
+	private final int workers;
+	
+	private final int batchSize;
+	
+	private final long claimIdleMillis;
+	
+	private final long pollMillis;
+	
+	private final int maxDeliveries;
+	
+	private final String deadLetterKey;
+	
+	/**
+	 * 下一次认领超时entry的时间, 几个线程CAS抢, 只有一个去认领
+	 */
+	private final AtomicLong nextClaimAt = new AtomicLong();
+	
+	/**
+	 * 下次认领从哪个id开始找, 同一时间只有一个线程在认领
+	 */
+	private volatile String claimCursor = "0-0";
+	
+	private volatile boolean running = false;
+	
+	private ExecutorService executor;
+	
+	private StreamConsumer(Builder<T> builder) {
+		this.key = builder.key;
+		this.group = builder.group;
+		this.clazz = builder.clazz;
+		this.consumer = builder.consumer;
+		this.codec = builder.codec;
+		this.startId = builder.startId;
+		this.workers = builder.workers;
+		this.batchSize = builder.batchSize;
+		this.claimIdleMillis = builder.claimIdleMillis;
+		this.pollMillis = builder.pollMillis;
+		this.maxDeliveries = builder.maxDeliveries;
+		if (builder.deadLetterKey != null) {
+			this.deadLetterKey = builder.deadLetterKey;
+		} else {
+			this.deadLetterKey = (key.contains("{") ? key : "{" + key + "}") + ":dead";
+		}
+	}
+	
+	/**
+	 * @param key   stream的key
+	 * @param group 消费组
+	 * @param clazz entry body的类型
+	 * @return Builder
+	 */
+	public static <T> Builder<T> builder(String key, String group, Class<T> clazz) {
+		KeyUtils.requireNonBlank(key);
+		KeyUtils.requireNonBlank(group);
+		return new Builder<>(key, group, clazz);
+	}
+	
+	/**
+	 * 创建消费组(已经存在不影响), 启动workers个消费线程, 只能启动一次
+	 *
+	 * @param handler 抛异常表示处理失败, 等空闲超过claimIdle后重新处理
+	 */
+	public synchronized void start(Consumer<T> handler) {
+		if (running) {
+			throw new IllegalStateException("Consumer " + consumer + " of stream " + key + " already started");
+		}
+		JedisUtils.STREAM.createGroup(key, group, startId);
+		running = true;
+		nextClaimAt.set(System.currentTimeMillis() + claimIdleMillis);
+		executor = Executors.newFixedThreadPool(workers, new ThreadFactoryBuilder()
+				.setNameFormat("loser-stream-" + key + "-" + group + "-%d")
+				.setDaemon(true)
+				.build());
+		for (int i = 0; i < workers; i++) {
+			executor.execute(() -> consume(handler));
+		}
+		log.info("Stream {} group {} consumer {} started, workers {}, batch size {}", key, group, consumer, workers, batchSize);
+	}
+	
+	/**
+	 * 停止消费, 正在处理的一批处理完再退出
+	 */
+	public synchronized void shutdown() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(claimIdleMillis, TimeUnit.MILLISECONDS)) {
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		log.info("Stream {} group {} consumer {} shutdown", key, group, consumer);
+	}
+	
+	public String getConsumer() {
+		return consumer;
+	}
+	
+	private void consume(Consumer<T> handler) {
+		while (running) {
+			try {
+				List<StreamEntry<T>> entries = claimDue() ? claim() :
+						JedisUtils.STREAM.xreadgroup(key, group, consumer, batchSize, codec, clazz);
+				if (entries.isEmpty()) {
+					TimeUnit.MILLISECONDS.sleep(pollMillis);
+					continue;
+				}
+				List<String> acks = new ArrayList<>(entries.size());
+				for (StreamEntry<T> entry : entries) {
+					try {
+						handler.accept(entry.getBody());
+						acks.add(entry.getId());
+					} catch (Throwable e) {
+						log.error("Handle entry {} of stream {} failed, will be claimed again after {}ms", entry.getId(), key, claimIdleMillis, e);
+					}
+				}
+				JedisUtils.STREAM.xack(key, group, acks.toArray(new String[0]));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Throwable e) {
+				log.error("Consume stream {} group {} failed", key, group, e);
+				try {
+					TimeUnit.SECONDS.sleep(1L);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 接着上次的位置认领一批; 还没找完一轮的话下一次循环马上接着认领, 找完了等claimIdle之后从头开始
+	 */
+	private List<StreamEntry<T>> claim() {
+		StreamClaim<T> claimed = JedisUtils.STREAM.xautoclaim(key, group, consumer, claimIdleMillis, claimCursor,
+				batchSize, maxDeliveries, deadLetterKey, codec, clazz);
+		claimCursor = claimed.getCursor();
+		if (!"0-0".equals(claimCursor)) {
+			nextClaimAt.set(System.currentTimeMillis());
+		}
+		if (claimed.getDeadLettered() > 0) {
+			log.warn("Moved {} entries of stream {} group {} delivered more than {} times to {}",
+					claimed.getDeadLettered(), key, group, maxDeliveries, deadLetterKey);
+		}
+		return claimed.getEntries();
+	}
+	
+	private boolean claimDue() {
+		long next = nextClaimAt.get();
+		long now = System.currentTimeMillis();
+		return now >= next && nextClaimAt.compareAndSet(next, now + claimIdleMillis);
+	}
+	
+	public static class Builder<T> {
+		
+		private final String key;
+		
+		private final String group;
+		
+		private final Class<T> clazz;
+		
+		private String consumer = ManagementFactory.getRuntimeMXBean().getName();
+		
+		private RedisCodec codec;
+		
+		private String startId = "$";
+		
+		private int workers = 1;
+		
+		private int batchSize = 10;
+		
+		private long claimIdleMillis = TimeUnit.MINUTES.toMillis(1);
+		
+		private long pollMillis = 100L;
+		
+		private int maxDeliveries;
+		
+		private String deadLetterKey;
+		
+		private Builder(String key, String group, Class<T> clazz) {
+			this.key = key;
+			this.group = group;
+			this.clazz = clazz;
+		}
+		
+		/**
+		 * 消费者名字, 默认 pid@hostname
+		 */
+		public Builder<T> consumer(String consumer) {
+			this.consumer = consumer;
+			return this;
+		}
+		
+		/**
+		 * entry body的序列化方式, 要和生产者一致, 默认和普通value一样
+		 */
+		public Builder<T> codec(RedisCodec codec) {
+			this.codec = codec;
+			return this;
+		}
+		
+		/**
+		 * 消费组不存在时从哪个id开始消费, 默认$即只消费新的, 0表示从头消费
+		 */
+		public Builder<T> startId(String startId) {
+			this.startId = startId;
+			return this;
+		}
+		
+		/**
+		 * 消费线程数, 默认1
+		 */
+		public Builder<T> workers(int workers) {
+			this.workers = Math.max(1, workers);
+			return this;
+		}
+		
+		/**
+		 * 每次最多读几个, 默认10
+		 */
+		public Builder<T> batchSize(int batchSize) {
+			this.batchSize = Math.max(1, batchSize);
+			return this;
+		}
+		
+		/**
+		 * 读走之后多久没确认就被重新认领, 默认1分钟; 要大于处理一批batchSize个entry的时间
+		 */
+		public Builder<T> claimIdle(long claimIdle, TimeUnit timeUnit) {
+			this.claimIdleMillis = timeUnit.toMillis(claimIdle);
+			return this;
+		}
+		
+		/**
+		 * 没有新entry时隔多久再读, 默认100毫秒
+		 */
+		public Builder<T> pollInterval(long pollInterval, TimeUnit timeUnit) {
+			this.pollMillis = timeUnit.toMillis(pollInterval);
+			return this;
+		}
+		
+		/**
+		 * 一个entry最多投递几次(第一次读到也算), 超过了转到死信stream并确认掉, 默认0表示不限
+		 */
+		public Builder<T> maxDeliveries(int maxDeliveries) {
+			this.maxDeliveries = Math.max(0, maxDeliveries);
+			return this;
+		}
+		
+		/**
+		 * 死信stream的key, 默认 {key}:dead; Cluster模式下要和key在同一个slot
+		 */
+		public Builder<T> deadLetterKey(String deadLetterKey) {
+			this.deadLetterKey = deadLetterKey;
+			return this;
+		}
+		
+		public StreamConsumer<T> build() {
+			return new StreamConsumer<>(this);
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.loserico.cache.collection;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Redis Stream里的一条记录
+ * <p>
+ * Copyright: (C), 2021-03-14 09:30
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Data
+@AllArgsConstructor
+public class StreamEntry<T> {
+	
+	/**
+	 * Redis生成的id, 如 1615685400000-0, 确认的时候要用
+	 */
+	private String id;
+	
+	private T body;
+}
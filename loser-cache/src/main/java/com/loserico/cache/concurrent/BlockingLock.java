@@ -4,10 +4,7 @@ import com.loserico.cache.JedisUtils;
 import com.loserico.cache.exception.OperationNotSupportedException;
 import com.loserico.cache.listeners.MessageListener;
 import lombok.extern.slf4j.Slf4j;
-import redis.clients.jedis.JedisPubSub;
 
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.LockSupport;
@@ -47,6 +44,11 @@ public class BlockingLock implements Lock {
 	 */
 	private static final String NOTIFY_CHANNEL_FORMAT = "loser:blk:%s:lock:channel";
 	
+	/**
+	 * 所有阻塞锁的解锁通知共用一个模式订阅, 不再每个等待线程占一个订阅连接
+	 */
+	private static final ChannelMultiplexer NOTIFY_CHANNELS = ChannelMultiplexer.of("loser:blk:*:lock:channel");
+	
 	/**
 	 * 解锁后在该channel上通知等待线程可以获取锁了
 	 */
@@ -70,13 +72,13 @@ public class BlockingLock implements Lock {
 	/**
 	 * 负责定时刷新锁过期时间
 	 */
-	private Timer watchDog = null;
+	private WatchDog.Lease watchDog = null;
 	
 	/**
-	 * 当前线程自旋获取锁失败后, 会先订阅notifyChannel, 然后进入阻塞状态;
+	 * 当前线程自旋获取锁失败后, 会先在notifyChannel上注册, 然后进入阻塞状态;
 	 * 如果拿到锁的线程解锁, 会发布一条消息, 此时本线程被唤醒再次尝试获取锁
 	 */
-	private JedisPubSub subscribe = null;
+	private MessageListener listener = null;
 	
 	/**
 	 * 锁默认30秒过期
@@ -195,23 +197,24 @@ public class BlockingLock implements Lock {
 	}
 	
 	/**
-	 * 订阅通知channel, 只会订阅一次
+	 * 在通知channel上注册, 只会注册一次
 	 */
 	public void startListener() {
-		if (this.subscribe == null) {
+		if (this.listener == null) {
 			/*
 			 * 因为当前线程自旋获取锁失败, 所以在startListener之后当前线程会被阻塞,
 			 * 这里把当前线程传给NotifyListener, 这个在监听到事件后, 才可以知道要唤醒的线程是哪个
-			 * 订阅本身是交给JedisPoolOperations.THREAD_POOL线程池去执行的
+			 * 订阅本身是所有阻塞锁共用的, 第一次注册的时候才去订阅
 			 */
-			this.subscribe = JedisUtils.subscribe(new NotifyListener(Thread.currentThread()), notifyChannel);
+			this.listener = new NotifyListener(Thread.currentThread());
+			NOTIFY_CHANNELS.register(notifyChannel, listener);
 		}
 	}
 	
 	public void stopListener() {
-		if (this.subscribe != null) {
-			JedisUtils.unsubscribe(subscribe, notifyChannel);
-			this.subscribe = null;
+		if (this.listener != null) {
+			NOTIFY_CHANNELS.unregister(notifyChannel, listener);
+			this.listener = null;
 		}
 	}
 	
@@ -231,26 +234,12 @@ public class BlockingLock implements Lock {
 	}
 	
 	/**
-	 * 定时刷新锁的过期时间
+	 * 交给共用的WatchDog定时刷新锁的过期时间
 	 */
 	private void startWatchDog() {
 		if (watchDog == null) {
-			watchDog = new Timer("Loser Cache key renewval watch dog");
+			watchDog = WatchDog.instance().watchLock(key, value, defaultTimeout, TimeUnit.SECONDS, null);
 		}
-		watchDog.schedule(new TimerTask() {
-			@Override
-			public void run() {
-				//如果key已经过期了, 那么watchDog就不用再去刷新key过期时间了
-				boolean isSuccess = JedisUtils.expire(key, defaultTimeout, TimeUnit.SECONDS);
-				if (!isSuccess) {
-					log.info("Key {} already expired, Watch dog stop refresh", key);
-					watchDog.cancel();
-					watchDog = null;
-				} else {
-					log.info("Watch dog refresh lock {} timeout to default {} seconds", key, defaultTimeout);
-				}
-			}
-		}, 0L, 200);
 	}
 	
 	private void stopWatchDog() {
@@ -0,0 +1,136 @@
+package com.loserico.cache.concurrent;
+
+import com.loserico.cache.JedisUtils;
+import com.loserico.cache.listeners.MessageListener;
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一类channel共用一个模式订阅
+ * <p>
+ * 以前每个等锁的线程都要自己订阅一次, 每个订阅一直占着一个连接和一个线程, 锁竞争激烈的时候连接池很快就被耗光了。
+ * 现在整个JVM每个pattern只有一个psubscribe连接, 收到消息后按channel在本地的注册表里找到等待者分发
+ * <p>
+ * 第一次有人注册的时候才去订阅, 之后一直保持; 每次检查的时候上一次psubscribe已经返回了(连接断了、订阅失败)才重新订阅。
+ * 连接断开的时候Jedis不会把isSubscribed改回false, 所以只看psubscribe有没有返回;
+ * 还在连接中或者订阅中就等下一次检查, 不会在连不上的时候越堆越多的连接和线程。
+ * 中间丢掉的通知靠等待者自己的超时兜底
+ * <p>
+ * Copyright: (C), 2021-03-11 09:30
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Slf4j
+final class ChannelMultiplexer {
+	
+	/**
+	 * 多久检查一次订阅连接是否还活着
+	 */
+	private static final long CHECK_INTERVAL_SECONDS = 5L;
+	
+	private static final ConcurrentHashMap<String, ChannelMultiplexer> MULTIPLEXERS = new ConcurrentHashMap<>();
+	
+	private final String pattern;
+	
+	/**
+	 * channel -> 在这个channel上等待的listener
+	 */
+	private final ConcurrentHashMap<String, Set<MessageListener>> listeners = new ConcurrentHashMap<>();
+	
+	private volatile JedisPubSub subscriber;
+	
+	/**
+	 * 当前这次psubscribe, 订阅结束或者失败之后isDone才是true
+	 */
+	private Future<?> subscription;
+	
+	private ChannelMultiplexer(String pattern) {
+		this.pattern = pattern;
+	}
+	
+	/**
+	 * @param pattern 如 loser:blk:*:lock:channel
+	 * @return 同一个pattern返回同一个ChannelMultiplexer
+	 */
+	static ChannelMultiplexer of(String pattern) {
+		return MULTIPLEXERS.computeIfAbsent(pattern, ChannelMultiplexer::new);
+	}
+	
+	/**
+	 * channel上来了消息就回调listener, channel要能被pattern匹配上
+	 *
+	 * @param channel
+	 * @param listener
+	 */
+	void register(String channel, MessageListener listener) {
+		listeners.computeIfAbsent(channel, x -> ConcurrentHashMap.newKeySet()).add(listener);
+		ensureSubscribed();
+	}
+	
+	void unregister(String channel, MessageListener listener) {
+		listeners.computeIfPresent(channel, (x, channelListeners) -> {
+			channelListeners.remove(listener);
+			return channelListeners.isEmpty() ? null : channelListeners;
+		});
+	}
+	
+	private void ensureSubscribed() {
+		if (subscriber != null) {
+			return;
+		}
+		synchronized (this) {
+			if (subscriber == null) {
+				subscribe();
+				ThreadPool.scheduler().scheduleWithFixedDelay(this::checkSubscription,
+						CHECK_INTERVAL_SECONDS, CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+			}
+		}
+	}
+	
+	private void subscribe() {
+		subscriber = new JedisPubSub() {
+			
+			@Override
+			public void onPMessage(String pattern, String channel, String message) {
+				dispatch(channel, message);
+			}
+		};
+		subscription = JedisUtils.psubscribe(subscriber, pattern);
+		log.info("Subscribed pattern {}", pattern);
+	}
+	
+	private synchronized void checkSubscription() {
+		if (subscription != null && !subscription.isDone()) {
+			return;
+		}
+		log.warn("Pattern {} not subscribed, resubscribe", pattern);
+		try {
+			subscribe();
+		} catch (Throwable e) {
+			log.error("Resubscribe pattern {} failed", pattern, e);
+		}
+	}
+	
+	private void dispatch(String channel, String message) {
+		Set<MessageListener> channelListeners = listeners.get(channel);
+		if (channelListeners == null) {
+			return;
+		}
+		for (MessageListener listener : channelListeners) {
+			try {
+				listener.onMessage(channel, message);
+			} catch (Throwable e) {
+				log.error("Dispatch message of channel {} failed", channel, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.loserico.cache.concurrent;
+
+import com.loserico.cache.listeners.MessageListener;
+
+/**
+ * 分布式锁/信号量的等待通知
+ * <p>
+ * 第一个等待者在ChannelMultiplexer上注册, 最后一个等待者退出时注销; 收到消息后唤醒所有在await的线程, 由它们自己再去Redis上抢
+ * <p>
+ * 订阅是异步的, 订阅成功之前或者订阅连接断开期间发出的通知会丢, 所以await一定要带超时
+ * <p>
+ * Copyright: (C), 2021-03-10 09:20
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+class ChannelNotifier {
+	
+	private final String channel;
+	
+	private final ChannelMultiplexer multiplexer;
+	
+	private final Object monitor = new Object();
+	
+	private final MessageListener listener = (notifyChannel, message) -> {
+		synchronized (monitor) {
+			monitor.notifyAll();
+		}
+	};
+	
+	private int waiters = 0;
+	
+	/**
+	 * @param channel 通知channel
+	 * @param pattern 能匹配上channel的pattern, 同一类锁共用一个订阅
+	 */
+	ChannelNotifier(String channel, String pattern) {
+		this.channel = channel;
+		this.multiplexer = ChannelMultiplexer.of(pattern);
+	}
+	
+	String getChannel() {
+		return channel;
+	}
+	
+	void startWaiting() {
+		synchronized (monitor) {
+			if (waiters++ == 0) {
+				multiplexer.register(channel, listener);
+			}
+		}
+	}
+	
+	/**
+	 * 挂起当前线程, 直到收到通知或者超时
+	 *
+	 * @param millis
+	 * @throws InterruptedException
+	 */
+	void await(long millis) throws InterruptedException {
+		synchronized (monitor) {
+			monitor.wait(Math.max(1L, millis));
+		}
+	}
+	
+	void stopWaiting() {
+		synchronized (monitor) {
+			if (--waiters == 0) {
+				multiplexer.unregister(channel, listener);
+			}
+		}
+	}
+}
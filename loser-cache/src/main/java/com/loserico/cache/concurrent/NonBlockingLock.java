@@ -6,6 +6,7 @@ import com.loserico.cache.utils.KeyUtils;
 import com.loserico.common.lang.utils.ReflectionUtils;
 
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 非阻塞锁
@@ -37,6 +38,13 @@ public class NonBlockingLock implements Lock{
 
 	private boolean locked;
 
+	/**
+	 * 锁的过期时间, 小于等于0表示不过期
+	 */
+	private long leaseTime;
+
+	private TimeUnit timeUnit;
+
 	/**
 	 * transactionEventsInstance是否已经通过反射获取过
 	 */
@@ -48,10 +56,27 @@ public class NonBlockingLock implements Lock{
 		this.key = String.format(LOCK_FORMAT, key);
 		this.requestId = UUID.randomUUID().toString();
 	}
+
+	/**
+	 * 带过期时间的锁, 持有锁的进程挂掉之后到期自动释放
+	 *
+	 * @param key
+	 * @param leaseTime
+	 * @param timeUnit
+	 */
+	public NonBlockingLock(String key, long leaseTime, TimeUnit timeUnit) {
+		this(key);
+		this.leaseTime = leaseTime;
+		this.timeUnit = timeUnit;
+	}
 	
 	@Override
 	public void lock() {
-		this.locked = JedisUtils.lock(key, requestId);
+		if (leaseTime > 0) {
+			this.locked = JedisUtils.lock(key, requestId, leaseTime, timeUnit);
+		} else {
+			this.locked = JedisUtils.lock(key, requestId);
+		}
 	}
 
 	@Override
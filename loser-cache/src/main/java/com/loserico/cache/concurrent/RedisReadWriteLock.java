@@ -0,0 +1,215 @@
+package com.loserico.cache.concurrent;
+
+import com.loserico.cache.JedisUtils;
+import com.loserico.cache.exception.OperationNotSupportedException;
+import com.loserico.cache.utils.KeyUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * 基于Redis的分布式读写锁
+ * <p>
+ * 锁是一个hash: mode记录当前是读锁还是写锁, 每个持有者(RedisReadWriteLock对象 + 线程)的读锁/写锁重入次数各占一个field。
+ * 多个读者可以同时持有读锁, 写锁是排他的; 同一个线程可重入, 持有写锁的线程还可以再加读锁(锁降级), 反过来不行
+ * <p>
+ * 每个持有者有自己的租约, 持有期间由WatchDog每 lease/3 续约一次, 进程挂掉之后租约到期, 下一次有人加锁时把它的锁清掉
+ * <p>
+ * 和BlockingLock一样, 加锁失败的线程订阅通知channel后挂起, 解锁时发通知唤醒。非公平模式, 读写之间的先后顺序不保证
+ * <pre>
+ * ReadWriteLock rwLock = JedisUtils.readWriteLock("config");
+ * Lock readLock = rwLock.readLock();
+ * readLock.lock();
+ * try {
+ *     ...
+ * } finally {
+ *     readLock.unlock();
+ * }
+ * </pre>
+ * <p>
+ * Copyright: (C), 2021-03-10 10:05
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Slf4j
+public class RedisReadWriteLock implements ReadWriteLock {
+	
+	private static final String KEY_FORMAT = "loser:rwlock:{%s}:%s";
+	
+	/**
+	 * 所有读写锁共用一个订阅
+	 */
+	private static final String CHANNEL_PATTERN = "loser:rwlock:*:channel";
+	
+	private static final String READ_LOCK = "/lua-scripts/rwlockRead.lua";
+	private static final String WRITE_LOCK = "/lua-scripts/rwlockWrite.lua";
+	private static final String UNLOCK = "/lua-scripts/rwlockUnlock.lua";
+	
+	/**
+	 * 默认租约30秒, 和BlockingLock一样
+	 */
+	private static final long DEFAULT_LEASE_MILLIS = 30000L;
+	
+	private final String name;
+	
+	private final String lockKey;
+	
+	private final String leasesKey;
+	
+	private final String clientId = UUID.randomUUID().toString();
+	
+	private final long leaseMillis;
+	
+	private final ChannelNotifier notifier;
+	
+	private final Lock readLock = new InnerLock(READ_LOCK, "r");
+	
+	private final Lock writeLock = new InnerLock(WRITE_LOCK, "w");
+	
+	/**
+	 * 每个线程持有的读锁+写锁总次数, 大于0的时候续约
+	 */
+	private final ConcurrentHashMap<Long, Integer> holds = new ConcurrentHashMap<>();
+	
+	private final ConcurrentHashMap<Long, WatchDog.Lease> leases = new ConcurrentHashMap<>();
+	
+	public RedisReadWriteLock(String name) {
+		this(name, DEFAULT_LEASE_MILLIS, MILLISECONDS);
+	}
+	
+	/**
+	 * @param name
+	 * @param leaseTime 持有者挂掉之后最多过这么久锁被释放
+	 * @param timeUnit
+	 */
+	public RedisReadWriteLock(String name, long leaseTime, TimeUnit timeUnit) {
+		KeyUtils.requireNonBlank(name);
+		this.name = name;
+		this.lockKey = String.format(KEY_FORMAT, name, "lock");
+		this.leasesKey = String.format(KEY_FORMAT, name, "leases");
+		this.leaseMillis = timeUnit.toMillis(leaseTime);
+		this.notifier = new ChannelNotifier(String.format(KEY_FORMAT, name, "channel"), CHANNEL_PATTERN);
+	}
+	
+	@Override
+	public Lock readLock() {
+		return readLock;
+	}
+	
+	@Override
+	public Lock writeLock() {
+		return writeLock;
+	}
+	
+	private String holder(long threadId) {
+		return clientId + ":" + threadId;
+	}
+	
+	private void held(long threadId) {
+		holds.merge(threadId, 1, Integer::sum);
+		leases.computeIfAbsent(threadId, id -> {
+			String holder = holder(id);
+			return WatchDog.instance().watchLease(leasesKey, holder, leaseMillis, MILLISECONDS,
+					() -> log.warn("Lease of read write lock {} held by {} already expired", name, holder));
+		});
+	}
+	
+	private void released(long threadId) {
+		Integer remaining = holds.computeIfPresent(threadId, (id, count) -> count <= 1 ? null : count - 1);
+		if (remaining == null) {
+			WatchDog.Lease lease = leases.remove(threadId);
+			if (lease != null) {
+				lease.cancel();
+			}
+		}
+	}
+	
+	private class InnerLock implements Lock {
+		
+		private final String script;
+		
+		/**
+		 * r 或 w
+		 */
+		private final String type;
+		
+		/**
+		 * 每个线程对这把锁的重入次数
+		 */
+		private final ConcurrentHashMap<Long, Integer> reentrants = new ConcurrentHashMap<>();
+		
+		private InnerLock(String script, String type) {
+			this.script = script;
+			this.type = type;
+		}
+		
+		@Override
+		public boolean locked() {
+			return reentrants.containsKey(Thread.currentThread().getId());
+		}
+		
+		/**
+		 * 拿不到锁就一直等, 和BlockingLock一样不响应中断, 中断标记会保留
+		 */
+		@Override
+		public void lock() {
+			long threadId = Thread.currentThread().getId();
+			String holder = holder(threadId);
+			boolean waiting = false;
+			boolean interrupted = false;
+			try {
+				while (true) {
+					long waitMillis = JedisUtils.evalScript(script, 2, lockKey, leasesKey, holder, leaseMillis);
+					if (waitMillis == 0) {
+						reentrants.merge(threadId, 1, Integer::sum);
+						held(threadId);
+						return;
+					}
+					if (!waiting) {
+						notifier.startWaiting();
+						waiting = true;
+					}
+					try {
+						notifier.await(Math.min(waitMillis, leaseMillis / 3));
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			} finally {
+				if (waiting) {
+					notifier.stopWaiting();
+				}
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		
+		@Override
+		public void unlock() {
+			long threadId = Thread.currentThread().getId();
+			if (!reentrants.containsKey(threadId)) {
+				throw new OperationNotSupportedException("你还没获取到锁哦");
+			}
+			reentrants.computeIfPresent(threadId, (id, count) -> count <= 1 ? null : count - 1);
+			released(threadId);
+			long remaining = JedisUtils.evalScript(UNLOCK, 2, lockKey, leasesKey, holder(threadId), type, notifier.getChannel());
+			if (remaining < 0) {
+				throw new OperationNotSupportedException("解锁失败了哟, 锁的租约可能已经到期");
+			}
+		}
+		
+		@Override
+		public void unlockAnyway() {
+			throw new OperationNotSupportedException("读写锁不支持unlockAnyway");
+		}
+	}
+}
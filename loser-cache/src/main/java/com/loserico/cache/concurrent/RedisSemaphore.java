@@ -0,0 +1,345 @@
+package com.loserico.cache.concurrent;
+
+import com.loserico.cache.JedisUtils;
+import com.loserico.cache.exception.OperationNotSupportedException;
+import com.loserico.cache.utils.KeyUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * 基于Redis的分布式信号量
+ * <p>
+ * permit是带租约的: 每个RedisSemaphore对象有一个clientId, 它持有的permit记在Redis里, 同时记一个租约到期时间,
+ * 持有期间由WatchDog每 lease/3 续约一次。进程挂掉之后租约到期, 下一次有人获取permit的时候会把它持有的permit回收
+ * <p>
+ * 获取不到permit的线程不轮询Redis, 而是订阅通知channel后挂起, release的时候在channel上发通知把它唤醒;
+ * 挂起时间最长到最早的一个租约到期, 这样持有者挂掉(不会发通知)的情况也能及时醒来
+ * <p>
+ * 公平模式下等待者在Redis里按到达顺序排队, 只有队头的等待者可以获取permit
+ * <p>
+ * 用法:
+ * <pre>
+ * Semaphore semaphore = JedisUtils.semaphore("order-api", 20);
+ * if (semaphore.tryAcquire(3, TimeUnit.SECONDS)) {
+ *     try {
+ *         callOrderApi();
+ *     } finally {
+ *         semaphore.release();
+ *     }
+ * }
+ * </pre>
+ * 所有key都带同一个hashtag, Cluster模式下落在同一个slot
+ * <p>
+ * Copyright: (C), 2021-03-09 10:15
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Slf4j
+public class RedisSemaphore implements Semaphore {
+	
+	private static final String KEY_FORMAT = "loser:sem:{%s}:%s";
+	
+	/**
+	 * 所有信号量共用一个订阅
+	 */
+	private static final String CHANNEL_PATTERN = "loser:sem:*:channel";
+	
+	private static final String ACQUIRE = "/lua-scripts/semaphoreAcquire.lua";
+	private static final String RELEASE = "/lua-scripts/semaphoreRelease.lua";
+	private static final String CANCEL = "/lua-scripts/semaphoreCancel.lua";
+	private static final String AVAILABLE = "/lua-scripts/semaphoreAvailable.lua";
+	
+	/**
+	 * 默认租约30秒
+	 */
+	private static final long DEFAULT_LEASE_MILLIS = 30000L;
+	
+	private final String name;
+	
+	private final String permitsKey;
+	
+	private final String holdersKey;
+	
+	private final String countsKey;
+	
+	private final String queueKey;
+	
+	private final String waitersKey;
+	
+	private final String channel;
+	
+	private final String clientId = UUID.randomUUID().toString();
+	
+	private final long leaseMillis;
+	
+	private final boolean fair;
+	
+	private final boolean permitsSetSuccess;
+	
+	private final ChannelNotifier notifier;
+	
+	/**
+	 * 本对象当前持有的permit数, 大于0的时候才续约
+	 */
+	private int heldPermits = 0;
+	
+	private WatchDog.Lease lease;
+	
+	public RedisSemaphore(String name, int permits) {
+		this(name, permits, DEFAULT_LEASE_MILLIS, MILLISECONDS, false);
+	}
+	
+	/**
+	 * @param name      信号量名字
+	 * @param permits   permit总数, 只有第一次创建的时候生效
+	 * @param leaseTime 租约时长, 持有者挂掉之后最多过这么久permit被回收
+	 * @param timeUnit
+	 * @param fair      是否公平模式
+	 */
+	public RedisSemaphore(String name, int permits, long leaseTime, TimeUnit timeUnit, boolean fair) {
+		KeyUtils.requireNonBlank(name);
+		this.name = name;
+		this.permitsKey = String.format(KEY_FORMAT, name, "permits");
+		this.holdersKey = String.format(KEY_FORMAT, name, "holders");
+		this.countsKey = String.format(KEY_FORMAT, name, "counts");
+		this.queueKey = String.format(KEY_FORMAT, name, "queue");
+		this.waitersKey = String.format(KEY_FORMAT, name, "waiters");
+		this.channel = String.format(KEY_FORMAT, name, "channel");
+		this.notifier = new ChannelNotifier(channel, CHANNEL_PATTERN);
+		this.leaseMillis = timeUnit.toMillis(leaseTime);
+		this.fair = fair;
+		this.permitsSetSuccess = trySetPermits(permits);
+	}
+	
+	@Override
+	public void acquire() throws InterruptedException {
+		acquire(1);
+	}
+	
+	@Override
+	public void acquire(int permits) throws InterruptedException {
+		tryAcquire(permits, -1, MILLISECONDS);
+	}
+	
+	@Override
+	public boolean tryAcquire() {
+		return tryAcquire(1);
+	}
+	
+	@Override
+	public boolean tryAcquire(int permits) {
+		try {
+			return tryAcquire(permits, 0, MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	
+	@Override
+	public boolean tryAcquire(long waitTime, TimeUnit unit) throws InterruptedException {
+		return tryAcquire(1, waitTime, unit);
+	}
+	
+	/**
+	 * @param permits
+	 * @param waitTime 小于0表示一直等
+	 * @param unit
+	 * @return boolean
+	 * @throws InterruptedException
+	 */
+	@Override
+	public boolean tryAcquire(int permits, long waitTime, TimeUnit unit) throws InterruptedException {
+		if (permits <= 0) {
+			throw new IllegalArgumentException("permits must be positive");
+		}
+		long deadline = waitTime < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + unit.toMillis(waitTime);
+		String waiterId = UUID.randomUUID().toString();
+		boolean waiting = false;
+		boolean acquired = false;
+		try {
+			while (true) {
+				long waitMillis = tryAcquireOnce(permits, waiterId);
+				if (waitMillis == 0) {
+					acquired = true;
+					held(permits);
+					return true;
+				}
+				
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return false;
+				}
+				if (!waiting) {
+					notifier.startWaiting();
+					waiting = true;
+				}
+				/*
+				 * 公平模式下等待者要在自己的等待期限之前再来一次, 否则会被当成已经放弃移出队列
+				 */
+				notifier.await(Math.min(Math.min(waitMillis, remaining), leaseMillis / 3));
+			}
+		} finally {
+			if (waiting) {
+				notifier.stopWaiting();
+			}
+			if (fair && !acquired) {
+				JedisUtils.evalScript(CANCEL, 2, queueKey, waitersKey, waiterId, channel);
+			}
+		}
+	}
+	
+	@Override
+	public void release() {
+		release(1);
+	}
+	
+	/**
+	 * 只能释放本对象持有的permit, 持有的不够抛OperationNotSupportedException
+	 *
+	 * @param permits amount
+	 */
+	@Override
+	public void release(int permits) {
+		long remaining = JedisUtils.evalScript(RELEASE, 2, holdersKey, countsKey, clientId, permits, channel);
+		if (remaining < 0) {
+			throw new OperationNotSupportedException("没有持有" + permits + "个permit, 可能租约已经到期");
+		}
+		released((int) remaining);
+	}
+	
+	@Override
+	public int availablePermits() {
+		long available = JedisUtils.evalScript(AVAILABLE, 3, permitsKey, holdersKey, countsKey);
+		return (int) Math.max(0L, available);
+	}
+	
+	@Override
+	public int drainPermits() {
+		int available = availablePermits();
+		while (available > 0) {
+			if (tryAcquire(available)) {
+				return available;
+			}
+			available = availablePermits();
+		}
+		return 0;
+	}
+	
+	@Override
+	public boolean trySetPermits(int permits) {
+		return JedisUtils.setnx(permitsKey, String.valueOf(permits));
+	}
+	
+	@Override
+	public void reducePermits(int permits) {
+		if (permits < 0) {
+			throw new IllegalArgumentException("reduction must not be negative");
+		}
+		JedisUtils.incrBy(permitsKey, -permits);
+	}
+	
+	@Override
+	public boolean isPermitsSetSuccess() {
+		return permitsSetSuccess;
+	}
+	
+	@Override
+	public String getName() {
+		return name;
+	}
+	
+	@Override
+	public boolean delete() {
+		boolean exists = isExists();
+		for (String key : keys()) {
+			JedisUtils.del(key);
+		}
+		return exists;
+	}
+	
+	@Override
+	public boolean isExists() {
+		return JedisUtils.exists(permitsKey);
+	}
+	
+	@Override
+	public boolean expire(long timeToLive, TimeUnit timeUnit) {
+		boolean success = false;
+		for (String key : keys()) {
+			success |= JedisUtils.expire(key, (int) timeUnit.toSeconds(timeToLive), SECONDS);
+		}
+		return success;
+	}
+	
+	@Override
+	public boolean expireAt(long timestamp) {
+		boolean success = false;
+		for (String key : keys()) {
+			success |= JedisUtils.expireAt(key, MILLISECONDS.toSeconds(timestamp));
+		}
+		return success;
+	}
+	
+	@Override
+	public boolean expireAt(LocalDateTime localDateTime) {
+		return expireAt(localDateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+	}
+	
+	@Override
+	public boolean clearExpire() {
+		boolean success = false;
+		for (String key : keys()) {
+			success |= JedisUtils.persist(key);
+		}
+		return success;
+	}
+	
+	@Override
+	public long remainTimeToLive() {
+		long ttl = JedisUtils.ttl(permitsKey);
+		return ttl < 0 ? ttl : SECONDS.toMillis(ttl);
+	}
+	
+	/**
+	 * @return 0表示获取成功, 大于0是建议等待的毫秒数
+	 */
+	private long tryAcquireOnce(int permits, String waiterId) {
+		return JedisUtils.evalScript(ACQUIRE, 5,
+				permitsKey, holdersKey, countsKey, queueKey, waitersKey,
+				clientId, permits, leaseMillis, fair ? 1 : 0, waiterId);
+	}
+	
+	private String[] keys() {
+		return new String[]{permitsKey, holdersKey, countsKey, queueKey, waitersKey};
+	}
+	
+	private synchronized void held(int permits) {
+		heldPermits += permits;
+		if (lease == null) {
+			lease = WatchDog.instance().watchLease(holdersKey, clientId, leaseMillis, MILLISECONDS, () -> {
+				log.warn("Lease of semaphore {} already expired, permits held by {} were reclaimed", name, clientId);
+				released(0);
+			});
+		}
+	}
+	
+	private synchronized void released(int remaining) {
+		heldPermits = remaining;
+		if (heldPermits == 0 && lease != null) {
+			lease.cancel();
+			lease = null;
+		}
+	}
+}
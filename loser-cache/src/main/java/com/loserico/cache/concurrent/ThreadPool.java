@@ -3,7 +3,9 @@ package com.loserico.cache.concurrent;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -49,6 +51,14 @@ public final class ThreadPool {
 			.setDaemon(true)
 			.build();
 	
+	/**
+	 * 锁/信号量续约这类定时任务共用, 任务都很轻, 一个线程就够了
+	 */
+	private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+			.setNameFormat("loser-cache-scheduler-%d")
+			.setDaemon(true)
+			.build());
+	
 	private ThreadPool() {
 	}
 	
@@ -64,4 +74,13 @@ public final class ThreadPool {
 				new LinkedBlockingQueue<>(1000),
 				threadFactory);
 	}
+	
+	/**
+	 * 共用的定时任务线程池
+	 *
+	 * @return ScheduledExecutorService
+	 */
+	public static ScheduledExecutorService scheduler() {
+		return SCHEDULER;
+	}
 }
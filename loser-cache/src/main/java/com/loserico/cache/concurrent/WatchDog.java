@@ -1,8 +1,30 @@
 package com.loserico.cache.concurrent;
 
+import com.loserico.cache.JedisUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * 负责不断刷新分布式锁的过期时间
  * <p>
+ * 整个JVM共用一个看门狗: 一个时间轮(hashed wheel timer)线程管理所有正在持有的锁/租约, 每隔 TTL/3 续约一次。
+ * 同一个tick到期的续约合成一批, 交给ThreadPool.scheduler()用pipeline一次发出去, 几千把锁也只有一个线程,
+ * 每个tick最多一两次网络往返
+ * <p>
+ * 续约用lua脚本, 锁的值还是自己的才续, 锁已经过期或者被别人拿走了就不再续约, 并回调onLost
+ * <ul>
+ * <li>watchLock: 普通的字符串锁, 比如BlockingLock
+ * <li>watchLease: 记在zset里的租约(成员 -> 到期时间), 比如RedisSemaphore, RedisReadWriteLock
+ * </ul>
+ * 不再需要续约的时候调用返回的Lease.cancel()
+ * <p>
  * Copyright: (C), 2020/3/28 18:01
  * <p>
  * <p>
@@ -11,16 +33,268 @@ package com.loserico.cache.concurrent;
  * @author Rico Yu ricoyu520@gmail.com
  * @version 1.0
  */
-public class WatchDog {
+@Slf4j
+public final class WatchDog {
+	
+	private static final String RENEW_LOCK = "/lua-scripts/renewLock.lua";
+	
+	private static final String RENEW_LEASE = "/lua-scripts/renewLease.lua";
+	
+	/**
+	 * 时间轮每格100毫秒, 续约间隔是秒级的, 这个精度足够了
+	 */
+	private static final long TICK_MILLIS = 100L;
+	
+	/**
+	 * 512格, 转一圈51.2秒, 更长的间隔靠rounds计圈数
+	 */
+	private static final int WHEEL_SIZE = 512;
+	
+	/**
+	 * 续约出错(比如网络抖动)之后最多隔多久再试
+	 */
+	private static final long RETRY_MILLIS = 1000L;
+	
+	private static final WatchDog INSTANCE = new WatchDog();
+	
+	@SuppressWarnings("unchecked")
+	private final ArrayDeque<Lease>[] wheel = new ArrayDeque[WHEEL_SIZE];
 	
 	/**
-	 * key过期时间
+	 * 新加入或者续约完要重新排期的Lease先放这里, 由时间轮线程在下一个tick放进格子, 格子只有时间轮线程自己访问
 	 */
-	private long ttlMillis;
+	private final ConcurrentLinkedQueue<Lease> pending = new ConcurrentLinkedQueue<>();
 	
-	public WatchDog(long ttlMillis) {
-		this.ttlMillis = ttlMillis;
+	private WatchDog() {
+		for (int i = 0; i < WHEEL_SIZE; i++) {
+			wheel[i] = new ArrayDeque<>();
+		}
+		Thread worker = new Thread(this::run, "loser-cache-watchdog");
+		worker.setDaemon(true);
+		worker.start();
 	}
+	
+	public static WatchDog instance() {
+		return INSTANCE;
+	}
+	
+	/**
+	 * 每 ttl/3 把锁的过期时间重新设为ttl, 前提是锁的值还是value
+	 *
+	 * @param key    锁的key
+	 * @param value  加锁时设置的值
+	 * @param ttl    锁的过期时间
+	 * @param unit
+	 * @param onLost 锁已经不是自己的了的时候回调, 可以为null
+	 * @return Lease
+	 */
+	public Lease watchLock(String key, String value, long ttl, TimeUnit unit, Runnable onLost) {
+		return schedule(new Lease(key, value, unit.toMillis(ttl), false, onLost));
+	}
+	
+	/**
+	 * 每 ttl/3 把zset里member的分数(租约到期时间)改成Redis当前时间+ttl, 前提是member还在zset里并且租约还没到期
+	 *
+	 * @param leasesKey 记录租约的zset
+	 * @param member    持有者
+	 * @param ttl       租约时长
+	 * @param unit
+	 * @param onLost    租约已经到期被清理掉的时候回调, 可以为null
+	 * @return Lease
+	 */
+	public Lease watchLease(String leasesKey, String member, long ttl, TimeUnit unit, Runnable onLost) {
+		return schedule(new Lease(leasesKey, member, unit.toMillis(ttl), true, onLost));
+	}
+	
+	private Lease schedule(Lease lease) {
+		return schedule(lease, lease.period());
+	}
+	
+	private Lease schedule(Lease lease, long delayMillis) {
+		lease.delayMillis = delayMillis;
+		pending.offer(lease);
+		return lease;
+	}
+	
+	/**
+	 * 时间轮线程, 只负责排期, 续约交给ThreadPool.scheduler(), 不会因为Redis慢把tick拖住
+	 */
+	private void run() {
+		long tickNanos = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+		long startTime = System.nanoTime();
+		long tick = 0;
+		while (true) {
+			long deadline = startTime + (tick + 1) * tickNanos;
+			for (long sleepNanos = deadline - System.nanoTime(); sleepNanos > 0; sleepNanos = deadline - System.nanoTime()) {
+				LockSupport.parkNanos(this, sleepNanos);
+			}
+			
+			try {
+				transferPending(tick);
+				List<Lease> due = expire(wheel[(int) (tick % WHEEL_SIZE)]);
+				if (!due.isEmpty()) {
+					ThreadPool.scheduler().execute(() -> renew(due));
+				}
+			} catch (Throwable e) {
+				log.error("Watch dog tick failed", e);
+			}
+			tick++;
+		}
+	}
+	
+	/**
+	 * Lease放进 tick + ticks 那一格, 那一格每转过一圈rounds减1, 减到0才真正到期
+	 */
+	private void transferPending(long tick) {
+		for (Lease lease = pending.poll(); lease != null; lease = pending.poll()) {
+			if (lease.cancelled) {
+				continue;
+			}
+			long ticks = Math.max(1L, (lease.delayMillis + TICK_MILLIS - 1) / TICK_MILLIS);
+			lease.rounds = ticks / WHEEL_SIZE;
+			wheel[(int) ((tick + ticks) % WHEEL_SIZE)].add(lease);
+		}
+	}
+	
+	private List<Lease> expire(ArrayDeque<Lease> bucket) {
+		List<Lease> due = new ArrayList<>();
+		for (Iterator<Lease> iterator = bucket.iterator(); iterator.hasNext(); ) {
+			Lease lease = iterator.next();
+			if (lease.cancelled) {
+				iterator.remove();
+			} else if (lease.rounds > 0) {
+				lease.rounds--;
+			} else {
+				iterator.remove();
+				due.add(lease);
+			}
+		}
+		return due;
+	}
+	
+	/**
+	 * 锁和zset租约是两个脚本, 各自一个pipeline
+	 */
+	private void renew(List<Lease> due) {
+		List<Lease> locks = new ArrayList<>();
+		List<Lease> leases = new ArrayList<>();
+		for (Lease lease : due) {
+			if (!lease.cancelled) {
+				(lease.zset ? leases : locks).add(lease);
+			}
+		}
+		renew(RENEW_LOCK, locks);
+		renew(RENEW_LEASE, leases);
+	}
+	
+	private void renew(String script, List<Lease> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		
+		List<Object[]> paramsList = new ArrayList<>(batch.size());
+		for (Lease lease : batch) {
+			paramsList.add(lease.params());
+		}
 		
+		List<Object> results;
+		try {
+			results = JedisUtils.evalScriptPipelined(script, 1, paramsList);
+		} catch (Throwable e) {
+			log.error("Renew {} leases failed, retry later", batch.size(), e);
+			for (Lease lease : batch) {
+				schedule(lease, Math.min(lease.period(), RETRY_MILLIS));
+			}
+			return;
+		}
+		
+		for (int i = 0; i < batch.size(); i++) {
+			Lease lease = batch.get(i);
+			Object result = results.get(i);
+			if (lease.cancelled) {
+				continue;
+			}
+			if (result instanceof Throwable) {
+				log.error("Renew lease of {} failed, retry later", lease.key, (Throwable) result);
+				schedule(lease, Math.min(lease.period(), RETRY_MILLIS));
+			} else if (result instanceof Long && (Long) result == 0L) {
+				log.info("Lease of {} held by {} already expired, Watch dog stop renewing", lease.key, lease.value);
+				lease.lost();
+			} else {
+				schedule(lease);
+			}
+		}
+	}
 	
+	/**
+	 * 一把锁或者一个租约的续约任务
+	 */
+	public static final class Lease {
+		
+		private final String key;
+		
+		private final String value;
+		
+		private final long ttlMillis;
+		
+		/**
+		 * true: zset租约, 续约脚本按Redis的时间算到期时间; false: 字符串锁, 用pexpire续期
+		 */
+		private final boolean zset;
+		
+		private final Runnable onLost;
+		
+		private volatile boolean cancelled = false;
+		
+		private volatile boolean lost = false;
+		
+		/**
+		 * 下面两个只有时间轮线程读写(delayMillis在放进pending之前写)
+		 */
+		private long delayMillis;
+		
+		private long rounds;
+		
+		private Lease(String key, String value, long ttlMillis, boolean zset, Runnable onLost) {
+			this.key = key;
+			this.value = value;
+			this.ttlMillis = ttlMillis;
+			this.zset = zset;
+			this.onLost = onLost;
+		}
+		
+		/**
+		 * 不再续约, 已经放进时间轮的会在轮到它的时候丢掉
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+		
+		/**
+		 * @return 锁/租约是否已经丢了(过期或者被别人拿走)
+		 */
+		public boolean isLost() {
+			return lost;
+		}
+		
+		private long period() {
+			return Math.max(1L, ttlMillis / 3);
+		}
+		
+		private Object[] params() {
+			return new Object[]{key, value, ttlMillis};
+		}
+		
+		private void lost() {
+			lost = true;
+			cancelled = true;
+			if (onLost != null) {
+				try {
+					onLost.run();
+				} catch (Throwable e) {
+					log.error("Lease lost callback of {} failed", key, e);
+				}
+			}
+		}
+	}
 }
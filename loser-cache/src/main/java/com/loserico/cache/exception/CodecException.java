@@ -0,0 +1,33 @@
+package com.loserico.cache.exception;
+
+/**
+ * value序列化/反序列化失败时抛出
+ * <p>
+ * Copyright: (C), 2021-03-04 09:41
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class CodecException extends RuntimeException {
+
+	private static final long serialVersionUID = -4217356120388745812L;
+
+	public CodecException() {
+	}
+
+	public CodecException(String message) {
+		super(message);
+	}
+
+	public CodecException(Throwable cause) {
+		super(cause);
+	}
+
+	public CodecException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
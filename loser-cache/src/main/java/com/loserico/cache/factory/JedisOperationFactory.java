@@ -1,9 +1,23 @@
 package com.loserico.cache.factory;
 
+import com.loserico.cache.codec.RedisCodec;
+import com.loserico.cache.codec.RedisCodecs;
 import com.loserico.cache.config.RedisProperties;
+import com.loserico.cache.metrics.HdrRedisMetrics;
+import com.loserico.cache.near.HotKeyDetector;
+import com.loserico.cache.near.NearCache;
+import com.loserico.cache.operations.AsyncJedisOperations;
+import com.loserico.cache.operations.AutoPipelineJedisOperations;
+import com.loserico.cache.operations.DelegatingJedisOperations;
+import com.loserico.cache.operations.HotKeyJedisOperations;
 import com.loserico.cache.operations.JedisClusterOperations;
 import com.loserico.cache.operations.JedisOperations;
 import com.loserico.cache.operations.JedisPoolOperations;
+import com.loserico.cache.operations.MetricsJedisOperations;
+import com.loserico.cache.operations.NearCacheJedisOperations;
+import com.loserico.cache.operations.PipelinedAsyncJedisOperations;
+import com.loserico.cache.pipeline.AutoPipeliner;
+import com.loserico.cache.pipeline.ClusterSlotRouter;
 import com.loserico.common.lang.resource.PropertyReader;
 import com.loserico.common.lang.resource.YamlOps;
 import com.loserico.common.lang.resource.YamlProfileReaders;
@@ -16,6 +30,9 @@ import redis.clients.util.Pool;
 import java.util.ArrayList;
 import java.util.List;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
 import static org.apache.commons.lang3.StringUtils.isNotEmpty;
 
 /**
@@ -34,12 +51,159 @@ public final class JedisOperationFactory {
 	private static final String SENTINELS = "redis.sentinels";
 	private static final String CLUSTERS = "redis.clusters";
 	
+	/**
+	 * 近端缓存相关配置
+	 */
+	private static final String NEAR_CACHE_ENABLED = "redis.near-cache.enabled";
+	private static final String NEAR_CACHE_MAX_SIZE = "redis.near-cache.max-size";
+	private static final String NEAR_CACHE_TTL = "redis.near-cache.ttl";
+	private static final String NEAR_CACHE_CHANNEL = "redis.near-cache.channel";
+	private static final String NEAR_CACHE_KEY_PREFIXES = "redis.near-cache.key-prefixes";
+	
+	/**
+	 * 自动pipeline相关配置
+	 */
+	private static final String AUTO_PIPELINE_ENABLED = "redis.auto-pipeline.enabled";
+	private static final String AUTO_PIPELINE_MAX_BATCH = "redis.auto-pipeline.max-batch";
+	private static final String AUTO_PIPELINE_WINDOW_MICROS = "redis.auto-pipeline.window-micros";
+	private static final String AUTO_PIPELINE_FLUSHERS = "redis.auto-pipeline.flushers";
+	
+	/**
+	 * 热点key探测和本地缓存相关配置
+	 */
+	private static final String HOT_KEY_ENABLED = "redis.hot-key.enabled";
+	private static final String HOT_KEY_SAMPLE_RATE = "redis.hot-key.sample-rate";
+	private static final String HOT_KEY_THRESHOLD = "redis.hot-key.threshold";
+	private static final String HOT_KEY_DECAY_MILLIS = "redis.hot-key.decay-millis";
+	private static final String HOT_KEY_LOCAL_TTL_MILLIS = "redis.hot-key.local-ttl-millis";
+	private static final String HOT_KEY_MAX_SIZE = "redis.hot-key.max-size";
+	private static final String HOT_KEY_REPLICAS = "redis.hot-key.replicas";
+	private static final String HOT_KEY_REPLICA_TTL_MILLIS = "redis.hot-key.replica-ttl-millis";
+	
+	/**
+	 * 命令延迟/字节数/异常次数统计
+	 */
+	private static final String METRICS_ENABLED = "redis.metrics.enabled";
+	
+	/**
+	 * POJO类型value的序列化方式: jackson(默认), kryo, protostuff, fst 或者 RedisCodec实现类的全限定名
+	 */
+	private static final String CODEC = "redis.codec";
+	
 	public static JedisOperations create() {
 		
 		/**
 		 * 默认读取classpath下redis.properties文件
 		 */
 		PropertyReader propertyReader = new PropertyReader("redis");
+		return decorate(createOperations(propertyReader), propertyReader);
+	}
+	
+	/**
+	 * 根据 redis.codec 创建value的序列化方式, 没配置的话还是用Jackson, 和以前一样
+	 *
+	 * @return RedisCodec
+	 */
+	public static RedisCodec createCodec() {
+		PropertyReader propertyReader = new PropertyReader("redis");
+		String codec = propertyReader.getString(CODEC, RedisCodecs.JACKSON);
+		log.info("Use {} codec for redis values", codec);
+		return RedisCodecs.of(codec);
+	}
+	
+	/**
+	 * 按配置在原始的JedisOperations外面套上装饰器
+	 * <p>
+	 * 自动pipeline在最里层, 近端缓存在它外面, 本地命中的读请求不用进pipeline队列;
+	 * 热点key的本地缓存再套在外面, 只挡热点key的读;
+	 * 指标统计在最外层, 记录的是调用方实际感受到的耗时
+	 *
+	 * @param jedisOperations
+	 * @param propertyReader
+	 * @return JedisOperations
+	 */
+	private static JedisOperations decorate(JedisOperations jedisOperations, PropertyReader propertyReader) {
+		if (propertyReader.getBoolean(AUTO_PIPELINE_ENABLED, false)) {
+			int maxBatch = propertyReader.getInt(AUTO_PIPELINE_MAX_BATCH, 128);
+			int windowMicros = propertyReader.getInt(AUTO_PIPELINE_WINDOW_MICROS, 0);
+			int flushers = propertyReader.getInt(AUTO_PIPELINE_FLUSHERS, 2);
+			log.info("Auto pipeline enabled, max-batch={}, window-micros={}, flushers={}", maxBatch, windowMicros, flushers);
+			AutoPipeliner pipeliner = createPipeliner(jedisOperations, maxBatch, windowMicros, flushers);
+			jedisOperations = new AutoPipelineJedisOperations(jedisOperations, pipeliner);
+		}
+		
+		if (propertyReader.getBoolean(NEAR_CACHE_ENABLED, false)) {
+			int maxSize = propertyReader.getInt(NEAR_CACHE_MAX_SIZE, 10000);
+			int ttl = propertyReader.getInt(NEAR_CACHE_TTL, 60);
+			String channel = propertyReader.getString(NEAR_CACHE_CHANNEL, NearCacheJedisOperations.DEFAULT_CHANNEL);
+			List<byte[]> keyPrefixes = propertyReader.getStrList(NEAR_CACHE_KEY_PREFIXES)
+					.stream()
+					.map(prefix -> prefix.getBytes(UTF_8))
+					.collect(toList());
+			log.info("Near cache enabled, max-size={}, ttl={}s, channel={}", maxSize, ttl, channel);
+			NearCache nearCache = new NearCache(maxSize, ttl, SECONDS, keyPrefixes);
+			jedisOperations = new NearCacheJedisOperations(jedisOperations, nearCache, channel);
+		}
+		
+		if (propertyReader.getBoolean(HOT_KEY_ENABLED, false)) {
+			int sampleRate = propertyReader.getInt(HOT_KEY_SAMPLE_RATE, 16);
+			int threshold = propertyReader.getInt(HOT_KEY_THRESHOLD, 1000);
+			int decayMillis = propertyReader.getInt(HOT_KEY_DECAY_MILLIS, 1000);
+			int localTtlMillis = propertyReader.getInt(HOT_KEY_LOCAL_TTL_MILLIS, 1000);
+			int maxSize = propertyReader.getInt(HOT_KEY_MAX_SIZE, 1000);
+			int replicas = propertyReader.getInt(HOT_KEY_REPLICAS, 0);
+			int replicaTtlMillis = propertyReader.getInt(HOT_KEY_REPLICA_TTL_MILLIS, 5000);
+			log.info("Hot key detection enabled, sample-rate={}, threshold={}, decay-millis={}, local-ttl-millis={}, replicas={}",
+					sampleRate, threshold, decayMillis, localTtlMillis, replicas);
+			HotKeyDetector detector = new HotKeyDetector(sampleRate, threshold);
+			jedisOperations = new HotKeyJedisOperations(jedisOperations, detector, decayMillis, localTtlMillis, maxSize,
+					replicas, replicaTtlMillis);
+		}
+		
+		if (propertyReader.getBoolean(METRICS_ENABLED, false)) {
+			log.info("Redis command metrics enabled");
+			jedisOperations = new MetricsJedisOperations(jedisOperations, new HdrRedisMetrics());
+		}
+		return jedisOperations;
+	}
+	
+	/**
+	 * 创建异步的AsyncJedisOperations
+	 * <p>
+	 * 开启了自动pipeline的话和同步命令共用同一个AutoPipeliner, 否则按 redis.auto-pipeline.* 的配置单独创建一个;
+	 * 异步写命令完成后通过jedisOperations.invalidate(keys)让本地缓存和热点key副本失效
+	 *
+	 * @param jedisOperations JedisOperationFactory.create()创建出来的JedisOperations
+	 * @return AsyncJedisOperations
+	 */
+	public static AsyncJedisOperations createAsync(JedisOperations jedisOperations) {
+		JedisOperations operations = jedisOperations;
+		while (operations instanceof DelegatingJedisOperations) {
+			if (operations instanceof AutoPipelineJedisOperations) {
+				return new PipelinedAsyncJedisOperations(((AutoPipelineJedisOperations) operations).getPipeliner(), jedisOperations);
+			}
+			operations = ((DelegatingJedisOperations) operations).getDelegate();
+		}
+		PropertyReader propertyReader = new PropertyReader("redis");
+		int maxBatch = propertyReader.getInt(AUTO_PIPELINE_MAX_BATCH, 128);
+		int windowMicros = propertyReader.getInt(AUTO_PIPELINE_WINDOW_MICROS, 0);
+		int flushers = propertyReader.getInt(AUTO_PIPELINE_FLUSHERS, 2);
+		return new PipelinedAsyncJedisOperations(createPipeliner(operations, maxBatch, windowMicros, flushers), jedisOperations);
+	}
+	
+	/**
+	 * @param jedisOperations 没有被装饰过的JedisPoolOperations/JedisClusterOperations
+	 */
+	private static AutoPipeliner createPipeliner(JedisOperations jedisOperations, int maxBatch, int windowMicros, int flushers) {
+		if (jedisOperations.isCluster()) {
+			JedisCluster jedisCluster = ((JedisClusterOperations) jedisOperations).getJedisCluster();
+			return new AutoPipeliner(new ClusterSlotRouter(jedisCluster), maxBatch, windowMicros, flushers);
+		}
+		Pool<Jedis> pool = ((JedisPoolOperations) jedisOperations).getPool();
+		return new AutoPipeliner(pool, maxBatch, windowMicros, flushers);
+	}
+	
+	private static JedisOperations createOperations(PropertyReader propertyReader) {
 		RedisProperties redisProperties = null;
 		
 		/*
@@ -130,7 +294,7 @@ public final class JedisOperationFactory {
 					throw new RuntimeException(e);
 				}
 			}
-			
+		
 		}, "<<<< JedisPool warmup thread >>>>");
 	}
 }
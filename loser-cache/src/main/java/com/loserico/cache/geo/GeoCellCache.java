@@ -0,0 +1,238 @@
+package com.loserico.cache.geo;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.loserico.common.lang.resource.PropertyReader;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * GEO查询结果的本地缓存, 按查询中心所在的geohash格子缓存
+ * <p>
+ * 附近的人/附近的店这类查询, 同一片区域短时间内会被反复查询, 中心点只差几十米结果几乎一样。
+ * 中心点落在同一个geohash格子、查询条件也一样的共用一份缓存: 第一次查询以格子中心为圆心/矩形中心,
+ * 半径(或宽高)加上一个格子的对角线去Redis查, 格子里任何一个中心点的查询结果都包含在里面;
+ * 每次查询再按真实的中心点重新计算距离, 按真实的半径/矩形过滤, 排序后再取COUNT个, 结果和直接查Redis一样。
+ * <p>
+ * 因为COUNT要在本地按真实中心点取, 加载时不带COUNT, 会把放大后的区域里所有的点都查出来。
+ * 点很密、COUNT又很小的查询(比如10公里内最近的20个)不适合缓存, 把redis.geo.cache.enabled设成false
+ * <p>
+ * 本JVM里geoadd/georem会清掉这个key的缓存, 其他JVM的写入最多ttl之后可见。配置项:
+ * <ul>
+ * <li>redis.geo.cache.enabled 默认true
+ * <li>redis.geo.cache.precision geohash的位数, 默认7
+ * <li>redis.geo.cache.ttl-millis 默认5000
+ * <li>redis.geo.cache.max-size 默认10000
+ * </ul>
+ * <p>
+ * Copyright: (C), 2021-03-14 14:30
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public final class GeoCellCache {
+	
+	private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+	
+	/**
+	 * 和Redis里计算距离用的地球半径一样
+	 */
+	private static final double EARTH_RADIUS = 6372797.560856D;
+	
+	private static final char SEPARATOR = '|';
+	
+	private static final PropertyReader propertyReader = new PropertyReader("redis");
+	
+	private static final boolean ENABLED = propertyReader.getBoolean("redis.geo.cache.enabled", true);
+	
+	private static final int PRECISION = propertyReader.getInt("redis.geo.cache.precision", 7);
+	
+	/**
+	 * 格子在赤道上的对角线长度, 米; 任何纬度上格子的对角线和东西方向的宽度都不会比它大
+	 */
+	private static final double MARGIN = distance(0D, 0D,
+			360D / (1L << ((PRECISION * 5 + 1) / 2)), 180D / (1L << (PRECISION * 5 / 2)));
+	
+	private static final Cache<String, List<GeoResult<?>>> CACHE = Caffeine.newBuilder()
+			.maximumSize(propertyReader.getInt("redis.geo.cache.max-size", 10000))
+			.expireAfterWrite(propertyReader.getInt("redis.geo.cache.ttl-millis", 5000), MILLISECONDS)
+			.build();
+	
+	private GeoCellCache() {
+	}
+	
+	/**
+	 * @return 没开缓存的话直接查Redis, COUNT和ANY交给Redis处理
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+	
+	/**
+	 * 圆形区域查询, 中心点所在格子有缓存就用缓存, 没有就调loader查Redis并缓存
+	 *
+	 * @param key       geo的key
+	 * @param condition 除了中心点和COUNT之外的查询条件, 如 radius|1000|com.foo.Shop
+	 * @param longitude 查询中心
+	 * @param latitude  查询中心
+	 * @param radius    半径, 米
+	 * @param count     最多返回几个, 0表示不限
+	 * @param loader    以给定的点为中心, 半径加上给定的米数去查Redis, 不带COUNT
+	 * @return List<GeoResult<T>> 按离真实中心点的距离由近到远
+	 */
+	public static <T> List<GeoResult<T>> radius(String key, String condition, double longitude, double latitude,
+	                                            double radius, int count, GeoLoader<T> loader) {
+		return get(key, condition, longitude, latitude, count, loader,
+				result -> result.getDistance() <= radius);
+	}
+	
+	/**
+	 * 矩形区域查询, 和Redis的BYBOX一样: 南北方向按纬度差算距离, 东西方向按点所在纬度上的经度差算距离
+	 *
+	 * @param key       geo的key
+	 * @param condition 除了中心点和COUNT之外的查询条件, 如 box|1000|500|com.foo.Shop
+	 * @param longitude 查询中心
+	 * @param latitude  查询中心
+	 * @param width     东西方向的宽度, 米
+	 * @param height    南北方向的高度, 米
+	 * @param count     最多返回几个, 0表示不限
+	 * @param loader    以给定的点为中心, 宽和高都加上给定的米数去查Redis, 不带COUNT
+	 * @return List<GeoResult<T>> 按离真实中心点的距离由近到远
+	 */
+	public static <T> List<GeoResult<T>> box(String key, String condition, double longitude, double latitude,
+	                                         double width, double height, int count, GeoLoader<T> loader) {
+		return get(key, condition, longitude, latitude, count, loader,
+				result -> distance(longitude, latitude, longitude, result.getLatitude()) <= height / 2
+						&& distance(longitude, result.getLatitude(), result.getLongitude(), result.getLatitude()) <= width / 2);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <T> List<GeoResult<T>> get(String key, String condition, double longitude, double latitude, int count,
+	                                          GeoLoader<T> loader, Predicate<GeoResult<?>> inside) {
+		String geohash = geohash(longitude, latitude, PRECISION);
+		String cacheKey = key + SEPARATOR + geohash + SEPARATOR + condition;
+		List<GeoResult<?>> cached = CACHE.get(cacheKey, x -> {
+			double[] cell = decode(geohash);
+			return new ArrayList<>(loader.load((cell[0] + cell[1]) / 2, (cell[2] + cell[3]) / 2, MARGIN));
+		});
+		List<GeoResult<T>> results = new ArrayList<>();
+		for (GeoResult<?> result : cached) {
+			double distance = distance(longitude, latitude, result.getLongitude(), result.getLatitude());
+			GeoResult<T> relocated = new GeoResult<>((T) result.getMember(), distance, result.getLongitude(), result.getLatitude());
+			if (inside.test(relocated)) {
+				results.add(relocated);
+			}
+		}
+		results.sort(Comparator.comparingDouble(GeoResult::getDistance));
+		return count > 0 && results.size() > count ? new ArrayList<>(results.subList(0, count)) : results;
+	}
+	
+	/**
+	 * 清掉这个key的所有缓存
+	 *
+	 * @param key
+	 */
+	public static void invalidate(String key) {
+		if (!ENABLED) {
+			return;
+		}
+		String prefix = key + SEPARATOR;
+		CACHE.asMap().keySet().removeIf(cacheKey -> cacheKey.startsWith(prefix));
+	}
+	
+	/**
+	 * 两点间的距离, 米
+	 */
+	static double distance(double lon1, double lat1, double lon2, double lat2) {
+		double rlat1 = Math.toRadians(lat1);
+		double rlat2 = Math.toRadians(lat2);
+		double u = Math.sin((rlat2 - rlat1) / 2);
+		double v = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+		return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(u * u + Math.cos(rlat1) * Math.cos(rlat2) * v * v));
+	}
+	
+	/**
+	 * geohash对应的格子
+	 *
+	 * @return double[] {最小经度, 最大经度, 最小纬度, 最大纬度}
+	 */
+	static double[] decode(String geohash) {
+		double[] cell = {-180D, 180D, -90D, 90D};
+		boolean even = true;
+		for (int i = 0; i < geohash.length(); i++) {
+			int ch = BASE32.indexOf(geohash.charAt(i));
+			for (int mask = 16; mask > 0; mask >>= 1) {
+				int offset = even ? 0 : 2;
+				double mid = (cell[offset] + cell[offset + 1]) / 2;
+				if ((ch & mask) != 0) {
+					cell[offset] = mid;
+				} else {
+					cell[offset + 1] = mid;
+				}
+				even = !even;
+			}
+		}
+		return cell;
+	}
+	
+	/**
+	 * 标准的base32 geohash, 经度纬度交替二分
+	 */
+	static String geohash(double longitude, double latitude, int precision) {
+		double minLon = -180D, maxLon = 180D, minLat = -90D, maxLat = 90D;
+		StringBuilder geohash = new StringBuilder(precision);
+		boolean even = true;
+		int bit = 0, ch = 0;
+		while (geohash.length() < precision) {
+			if (even) {
+				double mid = (minLon + maxLon) / 2;
+				if (longitude >= mid) {
+					ch = (ch << 1) | 1;
+					minLon = mid;
+				} else {
+					ch = ch << 1;
+					maxLon = mid;
+				}
+			} else {
+				double mid = (minLat + maxLat) / 2;
+				if (latitude >= mid) {
+					ch = (ch << 1) | 1;
+					minLat = mid;
+				} else {
+					ch = ch << 1;
+					maxLat = mid;
+				}
+			}
+			even = !even;
+			if (++bit == 5) {
+				geohash.append(BASE32.charAt(ch));
+				bit = 0;
+				ch = 0;
+			}
+		}
+		return geohash.toString();
+	}
+	
+	/**
+	 * 缓存没命中时查Redis
+	 */
+	@FunctionalInterface
+	public interface GeoLoader<T> {
+		
+		/**
+		 * @param longitude 格子中心
+		 * @param latitude  格子中心
+		 * @param margin    半径或者宽高要加上的米数
+		 * @return List<GeoResult<T>> 放大后的区域里所有的点
+		 */
+		List<GeoResult<T>> load(double longitude, double latitude, double margin);
+	}
+}
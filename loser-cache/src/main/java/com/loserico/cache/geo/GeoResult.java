@@ -0,0 +1,31 @@
+package com.loserico.cache.geo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * GEO查询的一条结果
+ * <p>
+ * Copyright: (C), 2021-03-14 14:20
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Data
+@AllArgsConstructor
+public class GeoResult<T> {
+	
+	private T member;
+	
+	/**
+	 * 离查询中心的距离, 米
+	 */
+	private double distance;
+	
+	private double longitude;
+	
+	private double latitude;
+}
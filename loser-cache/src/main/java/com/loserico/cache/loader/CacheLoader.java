@@ -0,0 +1,429 @@
+package com.loserico.cache.loader;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.loserico.cache.JedisUtils;
+import com.loserico.cache.concurrent.NonBlockingLock;
+import com.loserico.cache.concurrent.ThreadPool;
+import com.loserico.cache.exception.JedisException;
+import com.loserico.cache.exception.OperationNotSupportedException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Cache-aside 加载器, 解决热点key过期瞬间大量请求同时打到数据库的问题
+ * <p>
+ * <ul>
+ * <li>single-flight: 同一个JVM里同一个key同时只有一个线程调supplier, 其他线程等它的结果
+ * <li>分布式保护: 多个JVM之间用带过期时间的NonBlockingLock, 抢到锁的去加载, 其他的轮询Redis等结果
+ * <li>XFetch: 离过期越近、加载越慢, 越有可能在过期前提前异步刷新, 不用等到真正过期
+ * <li>stale-while-revalidate: key写入Redis时多保留staleTtl, 逻辑过期之后还在这段时间内的旧值照常返回,
+ * 同时后台刷新
+ * </ul>
+ * 这样一个热点key过期只会产生一次数据库查询
+ * <p>
+ * value和普通的set(key, value)格式一样, 用get(key, clazz)也能读, 读value走JedisUtils.get, 本地缓存和热点key缓存都生效。
+ * 逻辑过期时间是用PTTL减去staleTtl算出来的, 所以不需要额外的元数据key; PTTL按key记在本地,
+ * 本地算出来该刷新了才再查一次PTTL确认, 大部分读不用多一次往返
+ *
+ * <pre>
+ * CacheLoader<User> loader = CacheLoader.builder(User.class)
+ * 		.ttl(5, TimeUnit.MINUTES)
+ * 		.staleTtl(1, TimeUnit.MINUTES)
+ * 		.build();
+ * User user = loader.get("user:" + id, () -> userRepository.findById(id));
+ * </pre>
+ * <p>
+ * Copyright: (C), 2021-03-08 09:42
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Slf4j
+public class CacheLoader<T> {
+	
+	private static final String LOCK_FORMAT = "loader:%s";
+	
+	/**
+	 * 没有测到过加载耗时的key, XFetch按这个耗时估算, 单位毫秒
+	 */
+	private static final long DEFAULT_LOAD_COST = 100L;
+	
+	/**
+	 * 等其他JVM加载的时候多久查一次Redis
+	 */
+	private static final long POLL_INTERVAL = 50L;
+	
+	/**
+	 * 正在加载的key, 所有CacheLoader实例共用, 这样JedisUtils.get(key, clazz, supplier)每次new一个也没关系
+	 */
+	private static final ConcurrentHashMap<String, CompletableFuture<Object>> LOADING = new ConcurrentHashMap<>();
+	
+	/**
+	 * supplier返回了null, 等待的线程直接返回null, 不再自己加载
+	 */
+	private static final Object NULL = new Object();
+	
+	/**
+	 * 后台刷新没有拿到值(没抢到分布式锁、线程池满了或者刷新失败), 等待的线程只能自己加载
+	 */
+	private static final Object SKIPPED = new Object();
+	
+	/**
+	 * 每个key在Redis里真正过期的时间点, 毫秒时间戳, -1表示没有过期时间
+	 */
+	private static final Cache<String, Long> DEADLINES = Caffeine.newBuilder()
+			.maximumSize(10000)
+			.build();
+	
+	/**
+	 * 每个key最近一次加载的耗时, XFetch的delta
+	 */
+	private static final Cache<String, Long> LOAD_COSTS = Caffeine.newBuilder()
+			.maximumSize(10000)
+			.build();
+	
+	private static final ExecutorService REFRESH_POOL = ThreadPool.newThreadPool();
+	
+	private final Class<T> clazz;
+	
+	/**
+	 * 泛型类型的value才有, 比如List&lt;User&gt;; 为null时按clazz反序列化
+	 */
+	private final JavaType javaType;
+	
+	private final long ttlMillis;
+	
+	private final long staleMillis;
+	
+	private final double beta;
+	
+	private final boolean distributed;
+	
+	private final long lockWaitMillis;
+	
+	private CacheLoader(Builder<T> builder) {
+		this.clazz = builder.clazz;
+		this.javaType = builder.javaType;
+		this.ttlMillis = builder.ttlMillis;
+		this.staleMillis = builder.staleMillis;
+		this.beta = builder.beta;
+		this.distributed = builder.distributed;
+		this.lockWaitMillis = builder.lockWaitMillis;
+	}
+	
+	public static <T> Builder<T> builder(Class<T> clazz) {
+		return new Builder<>(clazz, null);
+	}
+	
+	/**
+	 * value是泛型类型的时候用这个, 比如List&lt;User&gt;, 不然JSON会被反序列化成LinkedHashMap
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Builder<T> builder(JavaType javaType) {
+		return new Builder<>((Class<T>) javaType.getRawClass(), javaType);
+	}
+	
+	/**
+	 * 先读Redis, 命中的话按需触发后台刷新并直接返回; 没命中则加载、回填并返回
+	 * <p>
+	 * supplier返回null不回填
+	 *
+	 * @param key
+	 * @param supplier
+	 * @return T
+	 */
+	public T get(String key, Supplier<T> supplier) {
+		T value = read(key);
+		if (value != null) {
+			if (shouldRefresh(key)) {
+				refreshAsync(key, supplier);
+			}
+			return value;
+		}
+		return load(key, supplier);
+	}
+	
+	/**
+	 * 先按本地记下的过期时间判断, 要刷新的时候再查一次PTTL, 别的JVM已经刷新过就按新的过期时间重新判断
+	 */
+	private boolean shouldRefresh(String key) {
+		Long deadline = DEADLINES.getIfPresent(key);
+		if (deadline == null) {
+			deadline = fetchDeadline(key);
+		}
+		if (deadline < 0 || !shouldRefresh(key, deadline - System.currentTimeMillis() - staleMillis)) {
+			return false;
+		}
+		
+		long latest = fetchDeadline(key);
+		if (latest < 0) {
+			return false;
+		}
+		if (latest > deadline) {
+			return shouldRefresh(key, latest - System.currentTimeMillis() - staleMillis);
+		}
+		return true;
+	}
+	
+	/**
+	 * 查PTTL并记到本地, key已经不在了按现在过期处理
+	 */
+	private static long fetchDeadline(String key) {
+		long pttl = JedisUtils.pttl(key);
+		long deadline = pttl == -1 ? -1L : System.currentTimeMillis() + Math.max(0L, pttl);
+		DEADLINES.put(key, deadline);
+		return deadline;
+	}
+	
+	/**
+	 * 逻辑过期之后一定刷新, 过期之前按XFetch的概率提前刷新:
+	 * -delta * beta * ln(random) >= 剩余时间
+	 *
+	 * @param key
+	 * @param remainingMillis 离逻辑过期还剩多少毫秒
+	 * @return boolean
+	 */
+	private boolean shouldRefresh(String key, long remainingMillis) {
+		if (remainingMillis <= 0) {
+			return true;
+		}
+		if (beta <= 0) {
+			return false;
+		}
+		Long cost = LOAD_COSTS.getIfPresent(key);
+		long delta = cost == null ? DEFAULT_LOAD_COST : cost;
+		double random = 1D - ThreadLocalRandom.current().nextDouble();
+		return -delta * beta * Math.log(random) >= remainingMillis;
+	}
+	
+	/**
+	 * 同步加载, 同一个key只有一个线程真正去加载
+	 */
+	@SuppressWarnings("unchecked")
+	private T load(String key, Supplier<T> supplier) {
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		CompletableFuture<Object> inflight = LOADING.putIfAbsent(key, future);
+		if (inflight != null) {
+			Object value = join(inflight);
+			if (value == NULL) {
+				return null;
+			}
+			/*
+			 * 等到的是一次没拿到值或者失败了的后台刷新, 只能自己加载
+			 */
+			if (value == SKIPPED) {
+				return loadGuarded(key, supplier, true);
+			}
+			return (T) value;
+		}
+		
+		try {
+			T value = loadGuarded(key, supplier, true);
+			future.complete(value == null ? NULL : value);
+			return value;
+		} catch (Throwable e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			LOADING.remove(key, future);
+		}
+	}
+	
+	/**
+	 * 后台刷新, 已经有线程在加载这个key就不重复提交
+	 */
+	private void refreshAsync(String key, Supplier<T> supplier) {
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		if (LOADING.putIfAbsent(key, future) != null) {
+			return;
+		}
+		try {
+			REFRESH_POOL.execute(() -> {
+				try {
+					T value = loadGuarded(key, supplier, false);
+					future.complete(value == null ? SKIPPED : value);
+				} catch (Throwable e) {
+					/*
+					 * 后台刷新失败只记日志, 不把异常抛给正在等这个key的线程, 它们自己再加载一次
+					 */
+					log.warn("Refresh cache {} failed, keep serving the cached value", key, e);
+					future.complete(SKIPPED);
+				} finally {
+					LOADING.remove(key, future);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			log.warn("Too many cache refreshes, skip refreshing {}", key);
+			LOADING.remove(key, future);
+			future.complete(SKIPPED);
+		}
+	}
+	
+	/**
+	 * 多个JVM之间的保护
+	 *
+	 * @param key
+	 * @param supplier
+	 * @param waitForOthers 没抢到锁的时候是否等别人加载的结果; 后台刷新不等, 直接返回null
+	 * @return T
+	 */
+	private T loadGuarded(String key, Supplier<T> supplier, boolean waitForOthers) {
+		if (!distributed) {
+			return loadAndSet(key, supplier);
+		}
+		
+		NonBlockingLock lock = new NonBlockingLock(String.format(LOCK_FORMAT, key), lockWaitMillis, MILLISECONDS);
+		lock.lock();
+		if (lock.locked()) {
+			try {
+				/*
+				 * 抢到锁之前别的JVM可能刚加载完
+				 */
+				if (waitForOthers) {
+					T value = read(key);
+					if (value != null) {
+						return value;
+					}
+				}
+				return loadAndSet(key, supplier);
+			} finally {
+				try {
+					lock.unlock();
+				} catch (OperationNotSupportedException e) {
+					log.warn("Loading {} took longer than the lock lease {}ms", key, lockWaitMillis);
+				}
+			}
+		}
+		
+		if (!waitForOthers) {
+			return null;
+		}
+		long deadline = System.currentTimeMillis() + lockWaitMillis;
+		while (System.currentTimeMillis() < deadline) {
+			try {
+				Thread.sleep(POLL_INTERVAL);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new JedisException(e);
+			}
+			T value = read(key);
+			if (value != null) {
+				return value;
+			}
+		}
+		log.warn("Waited {}ms for another node to load {}, load it myself", lockWaitMillis, key);
+		return loadAndSet(key, supplier);
+	}
+	
+	private T loadAndSet(String key, Supplier<T> supplier) {
+		long begin = System.currentTimeMillis();
+		T value = supplier.get();
+		LOAD_COSTS.put(key, Math.max(1L, System.currentTimeMillis() - begin));
+		if (value != null) {
+			/*
+			 * 过期时间最终是按秒设置的, 向上取整, 避免不足1秒变成0
+			 */
+			long expires = Math.max(1L, MILLISECONDS.toSeconds(ttlMillis + staleMillis + 999L));
+			JedisUtils.set(key, value, expires, SECONDS);
+			DEADLINES.put(key, System.currentTimeMillis() + SECONDS.toMillis(expires));
+		}
+		return value;
+	}
+	
+	private T read(String key) {
+		return javaType == null ? JedisUtils.get(key, clazz) : JedisUtils.get(key, javaType);
+	}
+	
+	private static Object join(CompletableFuture<Object> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new JedisException(e.getCause());
+		}
+	}
+	
+	public static class Builder<T> {
+		
+		private final Class<T> clazz;
+		
+		private final JavaType javaType;
+		
+		private long ttlMillis = TimeUnit.MINUTES.toMillis(5);
+		
+		private long staleMillis = 0L;
+		
+		private double beta = 1D;
+		
+		private boolean distributed = true;
+		
+		private long lockWaitMillis = 3000L;
+		
+		private Builder(Class<T> clazz, JavaType javaType) {
+			this.clazz = clazz;
+			this.javaType = javaType;
+		}
+		
+		/**
+		 * 逻辑过期时间, 默认5分钟
+		 */
+		public Builder<T> ttl(long ttl, TimeUnit timeUnit) {
+			this.ttlMillis = timeUnit.toMillis(ttl);
+			return this;
+		}
+		
+		/**
+		 * 逻辑过期之后还能返回旧值的时间, 默认0即不返回旧值
+		 */
+		public Builder<T> staleTtl(long staleTtl, TimeUnit timeUnit) {
+			this.staleMillis = timeUnit.toMillis(staleTtl);
+			return this;
+		}
+		
+		/**
+		 * XFetch的beta, 越大越早刷新, 默认1, 0表示不提前刷新
+		 */
+		public Builder<T> beta(double beta) {
+			this.beta = beta;
+			return this;
+		}
+		
+		/**
+		 * 是否用分布式锁保证多个JVM之间同一个key只有一个在加载, 默认true
+		 */
+		public Builder<T> distributed(boolean distributed) {
+			this.distributed = distributed;
+			return this;
+		}
+		
+		/**
+		 * 分布式锁的过期时间, 也是没抢到锁时最多等多久, 默认3秒
+		 */
+		public Builder<T> lockWait(long lockWait, TimeUnit timeUnit) {
+			this.lockWaitMillis = timeUnit.toMillis(lockWait);
+			return this;
+		}
+		
+		public CacheLoader<T> build() {
+			return new CacheLoader<>(this);
+		}
+	}
+}
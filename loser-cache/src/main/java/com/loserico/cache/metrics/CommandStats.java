@@ -0,0 +1,62 @@
+package com.loserico.cache.metrics;
+
+import lombok.Data;
+
+/**
+ * 一条命令的统计
+ * <p>
+ * count和延迟分位数是上一次取统计到这一次之间的, calls/errors/bytesOut/bytesIn是累计值
+ * <p>
+ * Copyright: (C), 2021-03-15 14:15
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Data
+public class CommandStats {
+	
+	private String command;
+	
+	/**
+	 * 这段时间内的调用次数
+	 */
+	private long count;
+	
+	/**
+	 * 以下延迟单位都是微秒
+	 */
+	private double mean;
+	
+	private long p50;
+	
+	private long p90;
+	
+	private long p99;
+	
+	private long p999;
+	
+	private long max;
+	
+	/**
+	 * 累计调用次数
+	 */
+	private long calls;
+	
+	/**
+	 * 累计异常次数
+	 */
+	private long errors;
+	
+	/**
+	 * 累计发出去的字节数
+	 */
+	private long bytesOut;
+	
+	/**
+	 * 累计收到的字节数
+	 */
+	private long bytesIn;
+}
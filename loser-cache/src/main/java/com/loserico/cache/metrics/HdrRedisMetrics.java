@@ -0,0 +1,118 @@
+package com.loserico.cache.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 默认的RedisMetrics, 每条命令一个HdrHistogram的Recorder
+ * <p>
+ * Recorder写入是wait-free的, 业务线程记录一次只是几次数组自增, 不加锁不分配内存;
+ * snapshot()的时候把这段时间的histogram换出来算分位数, 所以延迟分位数是两次snapshot之间的
+ * <p>
+ * 延迟按纳秒记录, 2位有效数字(误差1%以内), 超过60秒的按60秒记
+ * <p>
+ * Copyright: (C), 2021-03-15 14:25
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class HdrRedisMetrics implements RedisMetrics {
+	
+	private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.SECONDS.toNanos(60);
+	
+	private static final int SIGNIFICANT_DIGITS = 2;
+	
+	private final Map<String, CommandMetrics> commands = new ConcurrentHashMap<>();
+	
+	@Override
+	public void recordCommand(String command, long nanos, long bytesOut, long bytesIn, boolean error) {
+		CommandMetrics metrics = commands.get(command);
+		if (metrics == null) {
+			metrics = commands.computeIfAbsent(command, CommandMetrics::new);
+		}
+		metrics.record(nanos, bytesOut, bytesIn, error);
+	}
+	
+	/**
+	 * Recorder同一时间只能有一个读的线程, 所以加锁
+	 *
+	 * @return 每条命令上一次snapshot之后的延迟分布和累计的调用/异常/字节数
+	 */
+	public synchronized List<CommandStats> snapshot() {
+		List<CommandStats> stats = new ArrayList<>(commands.size());
+		for (CommandMetrics metrics : commands.values()) {
+			stats.add(metrics.snapshot());
+		}
+		return stats;
+	}
+	
+	private static final class CommandMetrics {
+		
+		private final String command;
+		
+		private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+		
+		private final LongAdder calls = new LongAdder();
+		
+		private final LongAdder errors = new LongAdder();
+		
+		private final LongAdder bytesOut = new LongAdder();
+		
+		private final LongAdder bytesIn = new LongAdder();
+		
+		/**
+		 * 换出来的histogram重复利用, 只在snapshot里用
+		 */
+		private Histogram interval;
+		
+		private CommandMetrics(String command) {
+			this.command = command;
+		}
+		
+		private void record(long nanos, long out, long in, boolean error) {
+			recorder.recordValue(Math.min(Math.max(nanos, 0L), HIGHEST_TRACKABLE_NANOS));
+			calls.increment();
+			if (error) {
+				errors.increment();
+			}
+			if (out > 0) {
+				bytesOut.add(out);
+			}
+			if (in > 0) {
+				bytesIn.add(in);
+			}
+		}
+		
+		private CommandStats snapshot() {
+			interval = recorder.getIntervalHistogram(interval);
+			CommandStats stats = new CommandStats();
+			stats.setCommand(command);
+			stats.setCount(interval.getTotalCount());
+			stats.setMean(interval.getMean() / 1000D);
+			stats.setP50(micros(interval.getValueAtPercentile(50D)));
+			stats.setP90(micros(interval.getValueAtPercentile(90D)));
+			stats.setP99(micros(interval.getValueAtPercentile(99D)));
+			stats.setP999(micros(interval.getValueAtPercentile(99.9D)));
+			stats.setMax(micros(interval.getMaxValue()));
+			stats.setCalls(calls.sum());
+			stats.setErrors(errors.sum());
+			stats.setBytesOut(bytesOut.sum());
+			stats.setBytesIn(bytesIn.sum());
+			return stats;
+		}
+		
+		private static long micros(long nanos) {
+			return TimeUnit.NANOSECONDS.toMicros(nanos);
+		}
+	}
+}
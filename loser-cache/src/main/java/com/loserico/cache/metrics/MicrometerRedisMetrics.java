@@ -0,0 +1,125 @@
+package com.loserico.cache.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 把命令延迟和连接池状态记录到Micrometer, micrometer-core是optional依赖, 用的话要自己引入
+ * <p>
+ * 用法:
+ * <pre>
+ * MicrometerRedisMetrics metrics = new MicrometerRedisMetrics(JedisUtils::poolStats);
+ * metrics.bindTo(meterRegistry);
+ * JedisUtils.setMetrics(metrics);
+ * </pre>
+ * 指标:
+ * <ul>
+ * <li>redis.command 每条命令一个Timer, tag command, 带p50/p99/p999
+ * <li>redis.command.errors 异常次数
+ * <li>redis.command.bytes.out / redis.command.bytes.in 收发字节数
+ * <li>redis.pool.active / idle / waiters / borrow.wait.mean / borrow.wait.max 连接池状态, tag pool
+ * </ul>
+ * bindTo之前记录的命令直接丢掉
+ * <p>
+ * Copyright: (C), 2021-03-15 14:40
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class MicrometerRedisMetrics implements RedisMetrics, MeterBinder {
+	
+	private final Supplier<List<PoolStats>> poolStats;
+	
+	private final Map<String, CommandMeters> commands = new ConcurrentHashMap<>();
+	
+	private volatile MeterRegistry registry;
+	
+	/**
+	 * @param poolStats 连接池状态, 一般是JedisUtils::poolStats
+	 */
+	public MicrometerRedisMetrics(Supplier<List<PoolStats>> poolStats) {
+		this.poolStats = poolStats;
+	}
+	
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		this.registry = registry;
+		for (PoolStats stats : poolStats.get()) {
+			String pool = stats.getName();
+			poolGauge(registry, "redis.pool.active", pool, PoolStats::getActive);
+			poolGauge(registry, "redis.pool.idle", pool, PoolStats::getIdle);
+			poolGauge(registry, "redis.pool.waiters", pool, PoolStats::getWaiters);
+			poolGauge(registry, "redis.pool.borrow.wait.mean", pool, PoolStats::getMeanBorrowWaitMillis);
+			poolGauge(registry, "redis.pool.borrow.wait.max", pool, PoolStats::getMaxBorrowWaitMillis);
+		}
+	}
+	
+	@Override
+	public void recordCommand(String command, long nanos, long bytesOut, long bytesIn, boolean error) {
+		MeterRegistry meterRegistry = registry;
+		if (meterRegistry == null) {
+			return;
+		}
+		CommandMeters meters = commands.get(command);
+		if (meters == null) {
+			meters = commands.computeIfAbsent(command, c -> new CommandMeters(meterRegistry, c));
+		}
+		meters.timer.record(nanos, TimeUnit.NANOSECONDS);
+		if (error) {
+			meters.errors.increment();
+		}
+		if (bytesOut > 0) {
+			meters.bytesOut.increment(bytesOut);
+		}
+		if (bytesIn > 0) {
+			meters.bytesIn.increment(bytesIn);
+		}
+	}
+	
+	private void poolGauge(MeterRegistry registry, String name, String pool, ToDoubleFunction<PoolStats> value) {
+		Gauge.builder(name, poolStats, supplier -> {
+					for (PoolStats stats : supplier.get()) {
+						if (stats.getName().equals(pool)) {
+							return value.applyAsDouble(stats);
+						}
+					}
+					return Double.NaN;
+				})
+				.tag("pool", pool)
+				.register(registry);
+	}
+	
+	private static final class CommandMeters {
+		
+		private final Timer timer;
+		
+		private final Counter errors;
+		
+		private final Counter bytesOut;
+		
+		private final Counter bytesIn;
+		
+		private CommandMeters(MeterRegistry registry, String command) {
+			timer = Timer.builder("redis.command")
+					.tag("command", command)
+					.publishPercentiles(0.5, 0.99, 0.999)
+					.register(registry);
+			errors = Counter.builder("redis.command.errors").tag("command", command).register(registry);
+			bytesOut = Counter.builder("redis.command.bytes.out").baseUnit("bytes").tag("command", command).register(registry);
+			bytesIn = Counter.builder("redis.command.bytes.in").baseUnit("bytes").tag("command", command).register(registry);
+		}
+	}
+}
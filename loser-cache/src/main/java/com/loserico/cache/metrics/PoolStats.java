@@ -0,0 +1,58 @@
+package com.loserico.cache.metrics;
+
+import lombok.Data;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+
+/**
+ * 一个连接池的状态, 都是commons-pool2自己维护的数据, 取一次没有额外开销
+ * <p>
+ * Copyright: (C), 2021-03-15 14:18
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Data
+public class PoolStats {
+	
+	/**
+	 * 单节点/Sentinel模式是default, Cluster模式是 host:port
+	 */
+	private String name;
+	
+	/**
+	 * 借出去还没还回来的连接数
+	 */
+	private int active;
+	
+	private int idle;
+	
+	/**
+	 * 正在等连接的线程数, 持续大于0说明连接池不够用
+	 */
+	private int waiters;
+	
+	/**
+	 * 最近100次借连接平均等了多久, 毫秒
+	 */
+	private long meanBorrowWaitMillis;
+	
+	/**
+	 * 借连接等得最久的一次, 毫秒
+	 */
+	private long maxBorrowWaitMillis;
+	
+	public static PoolStats of(String name, Pool<Jedis> pool) {
+		PoolStats stats = new PoolStats();
+		stats.setName(name);
+		stats.setActive(pool.getNumActive());
+		stats.setIdle(pool.getNumIdle());
+		stats.setWaiters(pool.getNumWaiters());
+		stats.setMeanBorrowWaitMillis(pool.getMeanBorrowWaitTimeMillis());
+		stats.setMaxBorrowWaitMillis(pool.getMaxBorrowWaitTimeMillis());
+		return stats;
+	}
+}
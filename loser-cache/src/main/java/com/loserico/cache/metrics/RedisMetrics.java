@@ -0,0 +1,37 @@
+package com.loserico.cache.metrics;
+
+/**
+ * 命令级别指标的采集接口, MetricsJedisOperations每执行完一条命令调用一次
+ * <p>
+ * 实现要足够轻, 调用方所在的就是业务线程: 不要加锁, 不要做IO
+ * <ul>
+ * <li>HdrRedisMetrics 默认实现, 每条命令一个HdrHistogram, 通过JedisUtils.commandStats()查看
+ * <li>MicrometerRedisMetrics 记录到Micrometer的MeterRegistry, 需要自己引入micrometer-core
+ * </ul>
+ * 也可以自己实现, 通过JedisUtils.setMetrics()替换
+ * <p>
+ * Copyright: (C), 2021-03-15 14:10
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public interface RedisMetrics {
+	
+	/**
+	 * 什么都不记
+	 */
+	public static final RedisMetrics NOOP = (command, nanos, bytesOut, bytesIn, error) -> {
+	};
+	
+	/**
+	 * @param command  命令名, 如 get, hmset, evalsha, pipeline
+	 * @param nanos    耗时, 纳秒, 包括从连接池借连接的时间
+	 * @param bytesOut 发出去的key/value/参数的字节数, 估算值, 不含协议开销
+	 * @param bytesIn  返回结果的字节数, 估算值, 不含协议开销
+	 * @param error    是否抛了异常
+	 */
+	public void recordCommand(String command, long nanos, long bytesOut, long bytesIn, boolean error);
+}
@@ -0,0 +1,154 @@
+package com.loserico.cache.near;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 基于采样 + Count-Min Sketch的热点key探测
+ * <p>
+ * 每次读只以1/sampleRate的概率进入统计, 进入的key算一次murmur3, 在depth行计数器上各加1,
+ * 估算访问次数取depth行里最小的那个再乘以sampleRate。计数器数量固定, 不管有多少个不同的key内存都不会涨,
+ * 代价是估算值只会偏大不会偏小
+ * <p>
+ * 每个周期调用一次decay()把所有计数器减半, 老的访问权重越来越低, 计数反映的是最近几个周期的访问频率。
+ * 估算值达到threshold的key标记为热点; 减半之后低于threshold/2的才摘掉, 避免在阈值附近来回抖动
+ * <p>
+ * Copyright: (C), 2021-03-15 16:20
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Slf4j
+public class HotKeyDetector {
+	
+	private static final HashFunction MURMUR3 = Hashing.murmur3_128();
+	
+	private static final int DEPTH = 4;
+	
+	/**
+	 * 每行的计数器个数, 必须是2的幂
+	 */
+	private static final int WIDTH = 1 << 12;
+	
+	private final AtomicIntegerArray counters = new AtomicIntegerArray(DEPTH * WIDTH);
+	
+	private final int sampleRate;
+	
+	private final long threshold;
+	
+	/**
+	 * 热点key -> 最近一次的估算访问次数
+	 */
+	private final Map<ByteBuffer, Long> hotKeys = new ConcurrentHashMap<>();
+	
+	/**
+	 * @param sampleRate 每多少次读采样一次, 1表示每次都统计
+	 * @param threshold  一个衰减周期内估算访问次数达到多少算热点
+	 */
+	public HotKeyDetector(int sampleRate, long threshold) {
+		if (sampleRate < 1) {
+			throw new IllegalArgumentException("sampleRate must be at least 1");
+		}
+		this.sampleRate = sampleRate;
+		this.threshold = threshold;
+	}
+	
+	/**
+	 * 记录一次读, 返回这个key现在是不是热点
+	 *
+	 * @param key
+	 * @return boolean
+	 */
+	public boolean record(byte[] key) {
+		if (sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0) {
+			long estimate = increment(key) * (long) sampleRate;
+			if (estimate >= threshold) {
+				if (hotKeys.replace(ByteBuffer.wrap(key), estimate) == null
+						&& hotKeys.putIfAbsent(ByteBuffer.wrap(key.clone()), estimate) == null) {
+					log.info("Hot key detected: {}, estimated {} reads", new String(key, UTF_8), estimate);
+				}
+				return true;
+			}
+		}
+		return isHot(key);
+	}
+	
+	public boolean isHot(byte[] key) {
+		return !hotKeys.isEmpty() && hotKeys.containsKey(ByteBuffer.wrap(key));
+	}
+	
+	/**
+	 * 所有计数器减半, 估算值掉到threshold/2以下的key不再是热点
+	 */
+	public void decay() {
+		for (int i = 0; i < counters.length(); i++) {
+			int count = counters.get(i);
+			while (count > 0 && !counters.compareAndSet(i, count, count >>> 1)) {
+				count = counters.get(i);
+			}
+		}
+		hotKeys.replaceAll((key, count) -> estimate(key.array()) * (long) sampleRate);
+		hotKeys.entrySet().removeIf(entry -> {
+			boolean cooled = entry.getValue() < threshold / 2;
+			if (cooled) {
+				log.info("Hot key cooled down: {}", new String(entry.getKey().array(), UTF_8));
+			}
+			return cooled;
+		});
+	}
+	
+	/**
+	 * @return 当前的热点key -> 估算的每周期访问次数, 给运维看的
+	 */
+	public Map<String, Long> hotKeys() {
+		Map<String, Long> result = new HashMap<>(hotKeys.size());
+		hotKeys.forEach((key, count) -> result.put(new String(key.array(), UTF_8), count));
+		return result;
+	}
+	
+	/**
+	 * 每行加1, 返回加完之后的最小值
+	 */
+	private long increment(byte[] key) {
+		long hash = MURMUR3.hashBytes(key).asLong();
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		int min = Integer.MAX_VALUE;
+		for (int row = 0; row < DEPTH; row++) {
+			int count = counters.incrementAndGet(index(row, h1, h2));
+			min = Math.min(min, count);
+		}
+		return min;
+	}
+	
+	private long estimate(byte[] key) {
+		long hash = MURMUR3.hashBytes(key).asLong();
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		int min = Integer.MAX_VALUE;
+		for (int row = 0; row < DEPTH; row++) {
+			min = Math.min(min, counters.get(index(row, h1, h2)));
+		}
+		return min;
+	}
+	
+	/**
+	 * 用两个hash组合出DEPTH个独立的hash, 见 Kirsch & Mitzenmacher, Less Hashing, Same Performance
+	 */
+	private static int index(int row, int h1, int h2) {
+		return row * WIDTH + ((h1 + row * h2) & (WIDTH - 1));
+	}
+}
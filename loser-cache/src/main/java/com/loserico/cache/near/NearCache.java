@@ -0,0 +1,240 @@
+package com.loserico.cache.near;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内的一级缓存, 放在Redis前面, 缓存热点key的原始byte[]
+ * <p>
+ * 底层是Caffeine, 容量有上限, 每个entry写入后ttl过期, 淘汰策略是W-TinyLFU
+ * <p>
+ * 读Redis和写本地缓存之间如果有其他线程/节点修改了数据, 那么这次读到的值就不能放进本地缓存了,
+ * 否则本地会一直持有一个旧值直到过期。所以每次失效都会把version加1, 读之前先记下version,
+ * 回填的时候version变了就放弃回填
+ * <p>
+ * Copyright: (C), 2021-03-02 14:20
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Slf4j
+public class NearCache {
+	
+	/**
+	 * STRING类型的key -> value
+	 */
+	private final Cache<ByteBuffer, byte[]> values;
+	
+	/**
+	 * HASH类型的key -> (field -> value)
+	 * 权重是field的个数, 整个hash作为一个entry参与淘汰
+	 */
+	private final Cache<ByteBuffer, Map<ByteBuffer, byte[]>> hashes;
+	
+	/**
+	 * 只有以这些前缀开头的key才会被本地缓存, 为空表示所有key都缓存
+	 */
+	private final List<byte[]> keyPrefixes;
+	
+	private final AtomicLong version = new AtomicLong(0);
+	
+	/**
+	 * HASH是一个key对应一个entry, field没命中Caffeine也会算命中, 所以命中率自己统计
+	 */
+	private final LongAdder hits = new LongAdder();
+	
+	private final LongAdder misses = new LongAdder();
+	
+	private final AtomicLong invalidations = new AtomicLong(0);
+	
+	private final AtomicLong remoteInvalidations = new AtomicLong(0);
+	
+	/**
+	 * @param maxSize     本地最多缓存多少个entry, HASH的每个field算一个
+	 * @param ttl         entry写入后多久过期
+	 * @param timeUnit
+	 * @param keyPrefixes 只缓存这些前缀的key, 传空表示不限制
+	 */
+	public NearCache(long maxSize, long ttl, TimeUnit timeUnit, List<byte[]> keyPrefixes) {
+		this.values = Caffeine.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(ttl, timeUnit)
+				.recordStats()
+				.build();
+		this.hashes = Caffeine.newBuilder()
+				.maximumWeight(maxSize)
+				.weigher((ByteBuffer key, Map<ByteBuffer, byte[]> fields) -> fields.size())
+				.expireAfterWrite(ttl, timeUnit)
+				.recordStats()
+				.build();
+		this.keyPrefixes = keyPrefixes == null ? Collections.emptyList() : keyPrefixes;
+	}
+	
+	/**
+	 * 当前的失效版本号, 从Redis读数据之前先拿到它, 回填的时候要传回来
+	 *
+	 * @return long
+	 */
+	public long version() {
+		return version.get();
+	}
+	
+	/**
+	 * 这个key是否需要本地缓存
+	 *
+	 * @param key
+	 * @return boolean
+	 */
+	public boolean cacheable(byte[] key) {
+		if (key == null) {
+			return false;
+		}
+		if (keyPrefixes.isEmpty()) {
+			return true;
+		}
+		for (byte[] prefix : keyPrefixes) {
+			if (startsWith(key, prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public byte[] get(byte[] key) {
+		return record(values.getIfPresent(ByteBuffer.wrap(key)));
+	}
+	
+	/**
+	 * 回填STRING, 读Redis期间发生过失效则放弃; null值不缓存
+	 *
+	 * @param key
+	 * @param value
+	 * @param version 读Redis之前拿到的version
+	 */
+	public void put(byte[] key, byte[] value, long version) {
+		if (value == null) {
+			return;
+		}
+		ByteBuffer cacheKey = ByteBuffer.wrap(key.clone());
+		values.asMap().compute(cacheKey, (k, old) -> this.version.get() == version ? value : old);
+	}
+	
+	public byte[] hget(byte[] key, byte[] field) {
+		Map<ByteBuffer, byte[]> fields = hashes.getIfPresent(ByteBuffer.wrap(key));
+		if (fields == null) {
+			return record(null);
+		}
+		return record(fields.get(ByteBuffer.wrap(field)));
+	}
+	
+	/**
+	 * 回填HASH的一个field
+	 * <p>
+	 * field map是copy-on-write的, 这样读的时候不用加锁, 同时compute会让Caffeine重新计算权重
+	 *
+	 * @param key
+	 * @param field
+	 * @param value
+	 * @param version 读Redis之前拿到的version
+	 */
+	public void hput(byte[] key, byte[] field, byte[] value, long version) {
+		if (value == null) {
+			return;
+		}
+		hashes.asMap().compute(ByteBuffer.wrap(key.clone()), (k, old) -> {
+			if (this.version.get() != version) {
+				return old;
+			}
+			Map<ByteBuffer, byte[]> fields = old == null ? new HashMap<>() : new HashMap<>(old);
+			fields.put(ByteBuffer.wrap(field.clone()), value);
+			return Collections.unmodifiableMap(fields);
+		});
+	}
+	
+	/**
+	 * 本节点修改了这些key, 本地副本失效
+	 *
+	 * @param keys
+	 */
+	public void invalidate(byte[]... keys) {
+		doInvalidate(keys);
+		invalidations.addAndGet(keys.length);
+	}
+	
+	/**
+	 * 收到其他节点的失效通知
+	 *
+	 * @param keys
+	 */
+	public void invalidateRemote(List<byte[]> keys) {
+		doInvalidate(keys.toArray(new byte[0][]));
+		remoteInvalidations.addAndGet(keys.size());
+	}
+	
+	/**
+	 * 订阅连接断开重连后, 中间可能漏掉了失效消息, 只能全部清空
+	 */
+	public void invalidateAll() {
+		version.incrementAndGet();
+		values.invalidateAll();
+		hashes.invalidateAll();
+		log.info("Near cache cleared");
+	}
+	
+	public NearCacheStats stats() {
+		CacheStats valueStats = values.stats();
+		CacheStats hashStats = hashes.stats();
+		NearCacheStats stats = new NearCacheStats();
+		stats.setHits(hits.sum());
+		stats.setMisses(misses.sum());
+		stats.setEvictions(valueStats.evictionCount() + hashStats.evictionCount());
+		stats.setInvalidations(invalidations.get());
+		stats.setRemoteInvalidations(remoteInvalidations.get());
+		stats.setSize(values.estimatedSize() + hashes.estimatedSize());
+		return stats;
+	}
+	
+	private byte[] record(byte[] value) {
+		if (value == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return value;
+	}
+	
+	private void doInvalidate(byte[]... keys) {
+		version.incrementAndGet();
+		for (byte[] key : keys) {
+			ByteBuffer cacheKey = ByteBuffer.wrap(key);
+			values.invalidate(cacheKey);
+			hashes.invalidate(cacheKey);
+		}
+	}
+	
+	private static boolean startsWith(byte[] key, byte[] prefix) {
+		if (key.length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (key[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
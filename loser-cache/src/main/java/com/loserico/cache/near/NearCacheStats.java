@@ -0,0 +1,53 @@
+package com.loserico.cache.near;
+
+import lombok.Data;
+
+/**
+ * 本地缓存的统计信息, 用来调整 redis.near-cache.max-size 和 redis.near-cache.ttl
+ * <p>
+ * Copyright: (C), 2021-03-02 14:26
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Data
+public class NearCacheStats {
+	
+	/**
+	 * 本地命中次数
+	 */
+	private long hits;
+	
+	/**
+	 * 本地未命中, 需要去Redis读的次数
+	 */
+	private long misses;
+	
+	/**
+	 * 因为容量不够被淘汰的entry数
+	 */
+	private long evictions;
+	
+	/**
+	 * 本节点写操作导致的失效次数
+	 */
+	private long invalidations;
+	
+	/**
+	 * 收到其他节点通知导致的失效次数
+	 */
+	private long remoteInvalidations;
+	
+	/**
+	 * 当前本地缓存的entry数(估算值)
+	 */
+	private long size;
+	
+	public double getHitRate() {
+		long total = hits + misses;
+		return total == 0 ? 0D : (double) hits / total;
+	}
+}
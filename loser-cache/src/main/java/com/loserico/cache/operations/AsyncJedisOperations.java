@@ -0,0 +1,120 @@
+package com.loserico.cache.operations;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步版本的JedisOperations, 调用方线程不等Redis返回, 少量线程就能同时挂着成千上万条命令
+ * <p>
+ * 只包括常用的单key命令, 多key命令在Cluster模式下要拆分, 阻塞命令会占住连接, 这些还是用同步的JedisOperations
+ * <p>
+ * 返回的CompletableFuture不会在IO线程上回调, thenApply/thenAccept里可以放心调用同步的JedisUtils
+ * <p>
+ * Copyright: (C), 2021-03-16 09:30
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public interface AsyncJedisOperations {
+	
+	public CompletableFuture<String> get(String key);
+	
+	public CompletableFuture<byte[]> get(byte[] key);
+	
+	public CompletableFuture<String> set(String key, String value);
+	
+	public CompletableFuture<String> set(byte[] key, byte[] value);
+	
+	/**
+	 * SET key value PX ttlMillis
+	 *
+	 * @param key
+	 * @param value
+	 * @param ttlMillis
+	 * @return CompletableFuture<String>
+	 */
+	public CompletableFuture<String> set(String key, String value, long ttlMillis);
+	
+	public CompletableFuture<Long> setnx(String key, String value);
+	
+	public CompletableFuture<Long> incr(String key);
+	
+	public CompletableFuture<Long> incrBy(String key, long increment);
+	
+	public CompletableFuture<Long> del(String key);
+	
+	public CompletableFuture<Long> del(byte[] key);
+	
+	public CompletableFuture<Boolean> exists(String key);
+	
+	public CompletableFuture<Long> expire(String key, int seconds);
+	
+	public CompletableFuture<Long> ttl(String key);
+	
+	public CompletableFuture<String> hget(String key, String field);
+	
+	public CompletableFuture<byte[]> hget(byte[] key, byte[] field);
+	
+	public CompletableFuture<Long> hset(String key, String field, String value);
+	
+	public CompletableFuture<Long> hset(byte[] key, byte[] field, byte[] value);
+	
+	public CompletableFuture<List<String>> hmget(String key, String... fields);
+	
+	public CompletableFuture<Map<String, String>> hgetAll(String key);
+	
+	public CompletableFuture<Long> hdel(String key, String... fields);
+	
+	public CompletableFuture<Long> hincrBy(String key, String field, long increment);
+	
+	public CompletableFuture<Long> lpush(String key, String... values);
+	
+	public CompletableFuture<Long> rpush(String key, String... values);
+	
+	public CompletableFuture<String> lpop(String key);
+	
+	public CompletableFuture<String> rpop(String key);
+	
+	public CompletableFuture<List<String>> lrange(String key, long start, long stop);
+	
+	public CompletableFuture<Long> llen(String key);
+	
+	public CompletableFuture<Long> zadd(String key, double score, String member);
+	
+	public CompletableFuture<Double> zincrby(String key, double increment, String member);
+	
+	public CompletableFuture<Double> zscore(String key, String member);
+	
+	public CompletableFuture<Set<String>> zrange(String key, long start, long end);
+	
+	public CompletableFuture<Set<String>> zrangeByScore(String key, double min, double max);
+	
+	public CompletableFuture<Long> zrem(String key, String... members);
+	
+	public CompletableFuture<Long> zcard(String key);
+	
+	/**
+	 * Cluster模式下按第一个key路由, 所有key必须在同一个slot
+	 *
+	 * @param script
+	 * @param keyCount
+	 * @param params KEYS 和 ARGV
+	 * @return CompletableFuture<Object>
+	 */
+	public CompletableFuture<Object> eval(String script, int keyCount, String... params);
+	
+	/**
+	 * Cluster模式下按第一个key路由, 所有key必须在同一个slot; 脚本没加载过会以NOSCRIPT异常结束
+	 *
+	 * @param sha1
+	 * @param keyCount
+	 * @param params KEYS 和 ARGV
+	 * @return CompletableFuture<Object>
+	 */
+	public CompletableFuture<Object> evalsha(String sha1, int keyCount, String... params);
+}
@@ -0,0 +1,148 @@
+package com.loserico.cache.operations;
+
+import com.loserico.cache.pipeline.AutoPipeliner;
+
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 自动pipeline模式: 常用的单key命令不再各自借一个连接, 而是交给AutoPipeliner攒批发送
+ * <p>
+ * 对调用方还是同步接口, JedisUtils不需要任何改动; 阻塞命令, lua脚本, pub/sub等还是走被装饰的JedisOperations
+ * <p>
+ * Copyright: (C), 2021-03-05 16:48
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class AutoPipelineJedisOperations extends DelegatingJedisOperations {
+	
+	private final AutoPipeliner pipeliner;
+	
+	public AutoPipelineJedisOperations(JedisOperations delegate, AutoPipeliner pipeliner) {
+		super(delegate);
+		this.pipeliner = pipeliner;
+	}
+	
+	public AutoPipeliner getPipeliner() {
+		return pipeliner;
+	}
+	
+	@Override
+	public String set(byte[] key, byte[] value) {
+		return pipeliner.execute(key, pipeline -> pipeline.set(key, value));
+	}
+	
+	@Override
+	public Long setnx(byte[] key, byte[] value) {
+		return pipeliner.execute(key, pipeline -> pipeline.setnx(key, value));
+	}
+	
+	@Override
+	public byte[] get(byte[] key) {
+		return pipeliner.execute(key, pipeline -> pipeline.get(key));
+	}
+	
+	@Override
+	public Boolean exists(String key) {
+		return pipeliner.execute(bytes(key), pipeline -> pipeline.exists(key));
+	}
+	
+	@Override
+	public Boolean exists(byte[] key) {
+		return pipeliner.execute(key, pipeline -> pipeline.exists(key));
+	}
+	
+	@Override
+	public Long incr(String key) {
+		return pipeliner.execute(bytes(key), pipeline -> pipeline.incr(key));
+	}
+	
+	@Override
+	public Long incrBy(String key, long increment) {
+		return pipeliner.execute(bytes(key), pipeline -> pipeline.incrBy(key, increment));
+	}
+	
+	@Override
+	public Double zscore(String key, String member) {
+		return pipeliner.execute(bytes(key), pipeline -> pipeline.zscore(key, member));
+	}
+	
+	@Override
+	public Boolean sismember(byte[] key, byte[] member) {
+		return pipeliner.execute(key, pipeline -> pipeline.sismember(key, member));
+	}
+	
+	@Override
+	public Boolean hexists(byte[] key, byte[] field) {
+		return pipeliner.execute(key, pipeline -> pipeline.hexists(key, field));
+	}
+	
+	@Override
+	public Boolean hexists(String key, String field) {
+		return pipeliner.execute(bytes(key), pipeline -> pipeline.hexists(key, field));
+	}
+	
+	@Override
+	public byte[] hget(byte[] key, byte[] field) {
+		return pipeliner.execute(key, pipeline -> pipeline.hget(key, field));
+	}
+	
+	@Override
+	public Long hset(byte[] key, byte[] field, byte[] value) {
+		return pipeliner.execute(key, pipeline -> pipeline.hset(key, field, value));
+	}
+	
+	@Override
+	public List<byte[]> hmget(byte[] key, byte[]... fields) {
+		return pipeliner.execute(key, pipeline -> pipeline.hmget(key, fields));
+	}
+	
+	@Override
+	public Long expire(byte[] key, int seconds) {
+		return pipeliner.execute(key, pipeline -> pipeline.expire(key, seconds));
+	}
+	
+	@Override
+	public Long expire(String key, int seconds) {
+		return pipeliner.execute(bytes(key), pipeline -> pipeline.expire(key, seconds));
+	}
+	
+	@Override
+	public Long ttl(String key) {
+		return pipeliner.execute(bytes(key), pipeline -> pipeline.ttl(key));
+	}
+	
+	@Override
+	public Long ttl(byte[] key) {
+		return pipeliner.execute(key, pipeline -> pipeline.ttl(key));
+	}
+	
+	@Override
+	public Long pttl(String key) {
+		return pipeliner.execute(bytes(key), pipeline -> pipeline.pttl(key));
+	}
+	
+	@Override
+	public Long pttl(byte[] key) {
+		return pipeliner.execute(key, pipeline -> pipeline.pttl(key));
+	}
+	
+	@Override
+	public Long del(String key) {
+		return pipeliner.execute(bytes(key), pipeline -> pipeline.del(key));
+	}
+	
+	@Override
+	public Long del(byte[] key) {
+		return pipeliner.execute(key, pipeline -> pipeline.del(key));
+	}
+	
+	private static byte[] bytes(String key) {
+		return key.getBytes(UTF_8);
+	}
+}
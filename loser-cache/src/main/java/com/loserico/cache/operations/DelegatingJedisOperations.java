@@ -0,0 +1,493 @@
+package com.loserico.cache.operations;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.util.Pool;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * 把所有操作都转发给被装饰的JedisOperations, 子类只需要覆盖自己关心的方法
+ * <p>
+ * 本地缓存, 监控等功能都是以装饰器的形式套在JedisPoolOperations/JedisClusterOperations外面的
+ * <p>
+ * Copyright: (C), 2021-03-02 10:12
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public abstract class DelegatingJedisOperations implements JedisOperations {
+	
+	protected final JedisOperations delegate;
+	
+	protected DelegatingJedisOperations(JedisOperations delegate) {
+		this.delegate = delegate;
+	}
+	
+	/**
+	 * 返回被装饰的JedisOperations
+	 *
+	 * @return JedisOperations
+	 */
+	public JedisOperations getDelegate() {
+		return delegate;
+	}
+	
+	@Override
+	public String set(byte[] key, byte[] value) {
+		return delegate.set(key, value);
+	}
+	
+	@Override
+	public Long setnx(byte[] key, byte[] value) {
+		return delegate.setnx(key, value);
+	}
+	
+	@Override
+	public byte[] get(byte[] key) {
+		return delegate.get(key);
+	}
+	
+	@Override
+	public List<byte[]> mget(byte[]... keys) {
+		return delegate.mget(keys);
+	}
+	
+	@Override
+	public String mset(byte[]... keysvalues) {
+		return delegate.mset(keysvalues);
+	}
+	
+	@Override
+	public Boolean exists(String key) {
+		return delegate.exists(key);
+	}
+	
+	@Override
+	public Boolean exists(byte[] key) {
+		return delegate.exists(key);
+	}
+	
+	@Override
+	public Long incr(String key) {
+		return delegate.incr(key);
+	}
+	
+	@Override
+	public Long incrBy(String key, long increment) {
+		return delegate.incrBy(key, increment);
+	}
+	
+	@Override
+	public Double zscore(String key, String member) {
+		return delegate.zscore(key, member);
+	}
+	
+	@Override
+	public Long zadd(String key, double score, String member) {
+		return delegate.zadd(key, score, member);
+	}
+	
+	@Override
+	public Long zadd(String key, double score, Object member) {
+		return delegate.zadd(key, score, member);
+	}
+	
+	@Override
+	public Long zadd(byte[] key, double score, byte[] member) {
+		return delegate.zadd(key, score, member);
+	}
+	
+	@Override
+	public Long zcard(String key) {
+		return delegate.zcard(key);
+	}
+	
+	@Override
+	public Long zremByRank(String key, long start, long end) {
+		return delegate.zremByRank(key, start, end);
+	}
+	
+	@Override
+	public Long zremRangeByScore(String key, String min, String max) {
+		return delegate.zremRangeByScore(key, min, max);
+	}
+	
+	@Override
+	public Set<String> zrange(String key, long start, long end) {
+		return delegate.zrange(key, start, end);
+	}
+	
+	@Override
+	public Set<String> zrangeByScore(String key, String min, String max) {
+		return delegate.zrangeByScore(key, min, max);
+	}
+	
+	@Override
+	public byte[] lpop(byte[] key) {
+		return delegate.lpop(key);
+	}
+	
+	@Override
+	public String lpop(String key) {
+		return delegate.lpop(key);
+	}
+	
+	@Override
+	public Long lpush(String key, String... strings) {
+		return delegate.lpush(key, strings);
+	}
+	
+	@Override
+	public Long lpush(byte[] key, byte[]... strings) {
+		return delegate.lpush(key, strings);
+	}
+	
+	@Override
+	public Long rpush(String key, String... strings) {
+		return delegate.rpush(key, strings);
+	}
+	
+	@Override
+	public Long rpush(byte[] key, byte[]... strings) {
+		return delegate.rpush(key, strings);
+	}
+	
+	@Override
+	public List<String> blpop(int timeout, String key) {
+		return delegate.blpop(timeout, key);
+	}
+	
+	@Override
+	public List<byte[]> blpop(int timeout, byte[]... keys) {
+		return delegate.blpop(timeout, keys);
+	}
+	
+	@Override
+	public List<String> brpop(int timeout, String key) {
+		return delegate.brpop(timeout, key);
+	}
+	
+	@Override
+	public List<String> brpop(int timeout, String... keys) {
+		return delegate.brpop(timeout, keys);
+	}
+	
+	@Override
+	public List<byte[]> brpop(int timeout, byte[]... keys) {
+		return delegate.brpop(timeout, keys);
+	}
+	
+	@Override
+	public byte[] brpoplpush(byte[] source, byte[] destination, int timeout) {
+		return delegate.brpoplpush(source, destination, timeout);
+	}
+	
+	@Override
+	public String rpop(String key) {
+		return delegate.rpop(key);
+	}
+	
+	@Override
+	public byte[] rpop(byte[] key) {
+		return delegate.rpop(key);
+	}
+	
+	@Override
+	public Long llen(String key) {
+		return delegate.llen(key);
+	}
+	
+	@Override
+	public List<String> lrange(String key, long start, long stop) {
+		return delegate.lrange(key, start, stop);
+	}
+	
+	@Override
+	public List<byte[]> lrange(byte[] key, long start, long stop) {
+		return delegate.lrange(key, start, stop);
+	}
+	
+	@Override
+	public Long lrem(String key, long count, String value) {
+		return delegate.lrem(key, count, value);
+	}
+	
+	@Override
+	public Long sadd(String key, String... members) {
+		return delegate.sadd(key, members);
+	}
+	
+	@Override
+	public Long sadd(byte[] key, byte[]... members) {
+		return delegate.sadd(key, members);
+	}
+	
+	@Override
+	public Long srem(byte[] key, byte[]... member) {
+		return delegate.srem(key, member);
+	}
+	
+	@Override
+	public Long scard(String key) {
+		return delegate.scard(key);
+	}
+	
+	@Override
+	public Boolean sismember(byte[] key, byte[] member) {
+		return delegate.sismember(key, member);
+	}
+	
+	@Override
+	public Set<byte[]> smembers(byte[] key) {
+		return delegate.smembers(key);
+	}
+	
+	@Override
+	public Set<String> smembers(String key) {
+		return delegate.smembers(key);
+	}
+	
+	@Override
+	public Boolean hexists(byte[] key, byte[] field) {
+		return delegate.hexists(key, field);
+	}
+	
+	@Override
+	public Boolean hexists(String key, String field) {
+		return delegate.hexists(key, field);
+	}
+	
+	@Override
+	public Long hlen(byte[] key) {
+		return delegate.hlen(key);
+	}
+	
+	@Override
+	public byte[] hget(byte[] key, byte[] field) {
+		return delegate.hget(key, field);
+	}
+	
+	@Override
+	public Long hset(byte[] key, byte[] field, byte[] value) {
+		return delegate.hset(key, field, value);
+	}
+	
+	@Override
+	public String hmset(String key, Map<String, String> hash) {
+		return delegate.hmset(key, hash);
+	}
+	
+	@Override
+	public List<byte[]> hmget(byte[] key, byte[]... fields) {
+		return delegate.hmget(key, fields);
+	}
+	
+	@Override
+	public List<String> hmget(String key, String... fields) {
+		return delegate.hmget(key, fields);
+	}
+	
+	@Override
+	public Map<byte[], byte[]> hgetAll(byte[] key) {
+		return delegate.hgetAll(key);
+	}
+	
+	@Override
+	public Map<String, String> hgetAll(String key) {
+		return delegate.hgetAll(key);
+	}
+	
+	@Override
+	public List<String> hvals(String key) {
+		return delegate.hvals(key);
+	}
+	
+	@Override
+	public List<byte[]> hvals(byte[] key) {
+		return delegate.hvals(key);
+	}
+	
+	@Override
+	public Long expire(byte[] key, int seconds) {
+		return delegate.expire(key, seconds);
+	}
+	
+	@Override
+	public Long expire(String key, int seconds) {
+		return delegate.expire(key, seconds);
+	}
+	
+	@Override
+	public Long expireAt(String key, long unixTime) {
+		return delegate.expireAt(key, unixTime);
+	}
+	
+	@Override
+	public Long expireAt(byte[] key, long unixTime) {
+		return delegate.expireAt(key, unixTime);
+	}
+	
+	@Override
+	public Long persist(String key) {
+		return delegate.persist(key);
+	}
+	
+	@Override
+	public Long persist(byte[] key) {
+		return delegate.persist(key);
+	}
+	
+	@Override
+	public Long ttl(String key) {
+		return delegate.ttl(key);
+	}
+	
+	@Override
+	public Long ttl(byte[] key) {
+		return delegate.ttl(key);
+	}
+	
+	@Override
+	public Long pttl(String key) {
+		return delegate.pttl(key);
+	}
+	
+	@Override
+	public Long pttl(byte[] key) {
+		return delegate.pttl(key);
+	}
+	
+	@Override
+	public Long del(String key) {
+		return delegate.del(key);
+	}
+	
+	@Override
+	public Long del(byte[] key) {
+		return delegate.del(key);
+	}
+	
+	@Override
+	public Object eval(String script) {
+		return delegate.eval(script);
+	}
+	
+	@Override
+	public Object eval(String script, String sampleKey) {
+		return delegate.eval(script, sampleKey);
+	}
+	
+	@Override
+	public Object eval(String script, int keyCount, String... params) {
+		return delegate.eval(script, keyCount, params);
+	}
+	
+	@Override
+	public Object eval(byte[] script, int keyCount, byte[]... params) {
+		return delegate.eval(script, keyCount, params);
+	}
+	
+	@Override
+	public String scriptLoad(String script) {
+		return delegate.scriptLoad(script);
+	}
+	
+	@Override
+	public String scriptLoad(String script, String sampleKey) {
+		return delegate.scriptLoad(script, sampleKey);
+	}
+	
+	@Override
+	public String scriptLoad(String script, Object sampleKey) {
+		return delegate.scriptLoad(script, sampleKey);
+	}
+	
+	@Override
+	public String scriptLoad(String script, byte[] sampleKey) {
+		return delegate.scriptLoad(script, sampleKey);
+	}
+	
+	@Override
+	public byte[] scriptLoad(byte[] script, byte[] sampleKey) {
+		return delegate.scriptLoad(script, sampleKey);
+	}
+	
+	@Override
+	public Object evalsha(String sha1) {
+		return delegate.evalsha(sha1);
+	}
+	
+	@Override
+	public Object evalsha(String sha1, String sampleKey) {
+		return delegate.evalsha(sha1, sampleKey);
+	}
+	
+	@Override
+	public Object evalsha(String sha1, int keyCount, String... params) {
+		return delegate.evalsha(sha1, keyCount, params);
+	}
+	
+	@Override
+	public Object evalsha(byte[] sha1, int keyCount, byte[]... params) {
+		return delegate.evalsha(sha1, keyCount, params);
+	}
+	
+	@Override
+	public Long publish(byte[] channel, byte[] message) {
+		return delegate.publish(channel, message);
+	}
+	
+	@Override
+	public void subscribe(JedisPubSub jedisPubSub, String... channels) {
+		delegate.subscribe(jedisPubSub, channels);
+	}
+	
+	@Override
+	public Future<?> psubscribe(JedisPubSub jedisPubSub, String... patterns) {
+		return delegate.psubscribe(jedisPubSub, patterns);
+	}
+	
+	@Override
+	public List<Object> executePipelined(Consumer<Pipeline> consumer) {
+		return delegate.executePipelined(consumer);
+	}
+	
+	@Override
+	public String ping() {
+		return delegate.ping();
+	}
+	
+	@Override
+	public boolean isCluster() {
+		return delegate.isCluster();
+	}
+	
+	@Override
+	public void invalidate(byte[]... keys) {
+		delegate.invalidate(keys);
+	}
+	
+	@Override
+	public Jedis jedis() {
+		return delegate.jedis();
+	}
+	
+	@Override
+	public List<Pool<Jedis>> masterPools() {
+		return delegate.masterPools();
+	}
+	
+	@Override
+	public Map<String, Pool<Jedis>> connectionPools() {
+		return delegate.connectionPools();
+	}
+}
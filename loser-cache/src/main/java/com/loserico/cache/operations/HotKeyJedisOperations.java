@@ -0,0 +1,289 @@
+package com.loserico.cache.operations;
+
+import com.loserico.cache.concurrent.ThreadPool;
+import com.loserico.cache.near.HotKeyDetector;
+import com.loserico.cache.near.NearCache;
+import com.loserico.cache.script.LuaScriptRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * 自动发现热点key, 在本地缓存很短的时间, 把打到同一个分片上的读请求挡在本地
+ * <p>
+ * get(byte[]) 和 hget(byte[], byte[]) 的key会被HotKeyDetector采样统计, 只有被判定为热点的key才走本地缓存,
+ * 本地缓存的ttl很短(默认1秒), 其他节点的修改最多ttl之后可见。本节点经过JedisOperations的写操作会立即让本地副本失效,
+ * 脚本写的key需要调用方通过invalidate(byte[]...)通知, eval/evalsha本身不当成写
+ * <p>
+ * Cluster模式下还可以把热点STRING复制到replicas个带后缀的key上(key:hot:0, key:hot:1...),
+ * 这些key落在不同的slot上, 本地缓存过期后的回源读随机打到其中一个, 不再全部压在一个分片上。
+ * 副本带replicaTtl过期时间, 读不到就回源并重建; 本节点写原key时删掉副本, 其他节点写原key时副本最多replicaTtl之后更新。
+ * key里有{hashtag}的加后缀也还在同一个slot, 不做副本
+ * <p>
+ * Copyright: (C), 2021-03-15 16:50
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Slf4j
+public class HotKeyJedisOperations extends DelegatingJedisOperations {
+	
+	private static final String REPLICA_SUFFIX = ":hot:";
+	
+	/**
+	 * SET key value PX ttl, 一次往返写副本并设置过期时间
+	 */
+	private static final String REPLICA_SCRIPT = "/lua-scripts/hotKeyReplica.lua";
+	
+	private final HotKeyDetector detector;
+	
+	/**
+	 * 直接在delegate上执行脚本, 副本key不用再经过本地缓存这一层
+	 */
+	private final LuaScriptRegistry luaScripts;
+	
+	/**
+	 * 只放热点key, 复用NearCache的version机制, 读Redis期间发生了失效就不回填
+	 */
+	private final NearCache hotCache;
+	
+	private final int replicas;
+	
+	private final byte[] replicaTtlMillis;
+	
+	/**
+	 * @param delegate
+	 * @param detector         热点探测
+	 * @param decayMillis      多久让计数衰减一次
+	 * @param localTtlMillis   热点key在本地缓存多久
+	 * @param maxSize          本地最多缓存多少个热点key
+	 * @param replicas         Cluster模式下热点STRING复制几份, 0表示不复制
+	 * @param replicaTtlMillis 副本的过期时间
+	 */
+	public HotKeyJedisOperations(JedisOperations delegate, HotKeyDetector detector, long decayMillis,
+	                             long localTtlMillis, long maxSize, int replicas, long replicaTtlMillis) {
+		super(delegate);
+		this.detector = detector;
+		this.hotCache = new NearCache(maxSize, localTtlMillis, MILLISECONDS, Collections.emptyList());
+		this.replicas = delegate.isCluster() ? replicas : 0;
+		this.replicaTtlMillis = String.valueOf(replicaTtlMillis).getBytes(UTF_8);
+		this.luaScripts = new LuaScriptRegistry(delegate);
+		ThreadPool.scheduler().scheduleWithFixedDelay(this::decay, decayMillis, decayMillis, MILLISECONDS);
+	}
+	
+	/**
+	 * @return 当前的热点key -> 估算的每周期访问次数
+	 */
+	public Map<String, Long> hotKeys() {
+		return detector.hotKeys();
+	}
+	
+	@Override
+	public byte[] get(byte[] key) {
+		if (!detector.record(key)) {
+			return delegate.get(key);
+		}
+		byte[] value = hotCache.get(key);
+		if (value != null) {
+			return value;
+		}
+		long version = hotCache.version();
+		value = replicas > 0 && !hasHashTag(key) ? readReplica(key) : delegate.get(key);
+		hotCache.put(key, value, version);
+		return value;
+	}
+	
+	@Override
+	public byte[] hget(byte[] key, byte[] field) {
+		if (!detector.record(key)) {
+			return delegate.hget(key, field);
+		}
+		byte[] value = hotCache.hget(key, field);
+		if (value != null) {
+			return value;
+		}
+		long version = hotCache.version();
+		value = delegate.hget(key, field);
+		hotCache.hput(key, field, value, version);
+		return value;
+	}
+	
+	@Override
+	public String set(byte[] key, byte[] value) {
+		return write(key, () -> delegate.set(key, value));
+	}
+	
+	@Override
+	public Long setnx(byte[] key, byte[] value) {
+		return write(key, () -> delegate.setnx(key, value));
+	}
+	
+	@Override
+	public String mset(byte[]... keysvalues) {
+		try {
+			return delegate.mset(keysvalues);
+		} finally {
+			for (int i = 0; i < keysvalues.length; i += 2) {
+				invalidate(keysvalues[i]);
+			}
+		}
+	}
+	
+	@Override
+	public Long incr(String key) {
+		return write(key.getBytes(UTF_8), () -> delegate.incr(key));
+	}
+	
+	@Override
+	public Long incrBy(String key, long increment) {
+		return write(key.getBytes(UTF_8), () -> delegate.incrBy(key, increment));
+	}
+	
+	@Override
+	public Long hset(byte[] key, byte[] field, byte[] value) {
+		return write(key, () -> delegate.hset(key, field, value));
+	}
+	
+	@Override
+	public String hmset(String key, Map<String, String> hash) {
+		return write(key.getBytes(UTF_8), () -> delegate.hmset(key, hash));
+	}
+	
+	@Override
+	public Long expire(byte[] key, int seconds) {
+		return write(key, () -> delegate.expire(key, seconds));
+	}
+	
+	@Override
+	public Long expire(String key, int seconds) {
+		return write(key.getBytes(UTF_8), () -> delegate.expire(key, seconds));
+	}
+	
+	@Override
+	public Long expireAt(String key, long unixTime) {
+		return write(key.getBytes(UTF_8), () -> delegate.expireAt(key, unixTime));
+	}
+	
+	@Override
+	public Long expireAt(byte[] key, long unixTime) {
+		return write(key, () -> delegate.expireAt(key, unixTime));
+	}
+	
+	@Override
+	public Long del(String key) {
+		return write(key.getBytes(UTF_8), () -> delegate.del(key));
+	}
+	
+	@Override
+	public Long del(byte[] key) {
+		return write(key, () -> delegate.del(key));
+	}
+	
+	/**
+	 * 脚本写的key由调用方通过这里通知, eval/evalsha本身不做失效, 否则每次脚本读热点key都会删一遍副本
+	 */
+	@Override
+	public void invalidate(byte[]... keys) {
+		for (byte[] key : keys) {
+			invalidate(key);
+		}
+		delegate.invalidate(keys);
+	}
+	
+	private <R> R write(byte[] key, Supplier<R> call) {
+		try {
+			return call.get();
+		} finally {
+			invalidate(key);
+		}
+	}
+	
+	/**
+	 * 只有热点key才可能在本地缓存和副本里, 其他key直接跳过
+	 */
+	private void invalidate(byte[] key) {
+		if (!detector.isHot(key)) {
+			return;
+		}
+		hotCache.invalidate(key);
+		if (replicas > 0 && !hasHashTag(key)) {
+			for (int i = 0; i < replicas; i++) {
+				try {
+					delegate.del(replicaKey(key, i));
+				} catch (Throwable e) {
+					log.warn("Delete hot key replica failed", e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 随机读一个副本, 副本不存在就读原key并重建这个副本
+	 */
+	private byte[] readReplica(byte[] key) {
+		byte[] replicaKey = replicaKey(key, ThreadLocalRandom.current().nextInt(replicas));
+		try {
+			byte[] value = delegate.get(replicaKey);
+			if (value != null) {
+				return value;
+			}
+		} catch (Throwable e) {
+			log.warn("Read hot key replica failed, fallback to origin", e);
+		}
+		byte[] value = delegate.get(key);
+		if (value != null) {
+			writeReplica(replicaKey, value);
+		}
+		return value;
+	}
+	
+	private void writeReplica(byte[] replicaKey, byte[] value) {
+		try {
+			luaScripts.eval(REPLICA_SCRIPT, 1, replicaKey, value, replicaTtlMillis);
+		} catch (Throwable e) {
+			log.warn("Write hot key replica failed", e);
+		}
+	}
+	
+	private void decay() {
+		try {
+			detector.decay();
+		} catch (Throwable e) {
+			log.error("Hot key detector decay failed", e);
+		}
+	}
+	
+	private static byte[] replicaKey(byte[] key, int index) {
+		byte[] suffix = (REPLICA_SUFFIX + index).getBytes(UTF_8);
+		byte[] replicaKey = new byte[key.length + suffix.length];
+		System.arraycopy(key, 0, replicaKey, 0, key.length);
+		System.arraycopy(suffix, 0, replicaKey, key.length, suffix.length);
+		return replicaKey;
+	}
+	
+	/**
+	 * 和Redis Cluster的规则一样: 第一个{和它后面第一个}之间不为空才算hashtag
+	 */
+	private static boolean hasHashTag(byte[] key) {
+		for (int start = 0; start < key.length; start++) {
+			if (key[start] == '{') {
+				for (int end = start + 1; end < key.length; end++) {
+					if (key[end] == '}') {
+						return end > start + 1;
+					}
+				}
+				return false;
+			}
+		}
+		return false;
+	}
+}
@@ -1,14 +1,22 @@
 package com.loserico.cache.operations;
 
+import com.loserico.cache.concurrent.ThreadPool;
+import com.loserico.cache.pipeline.ClusterBulkExecutor;
+import com.loserico.cache.pipeline.ClusterSlotRouter;
 import com.loserico.json.jackson.JacksonUtils;
 import lombok.extern.slf4j.Slf4j;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPubSub;
+import redis.clients.util.Pool;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static com.loserico.cache.utils.ByteUtils.toBytes;
 
@@ -25,12 +33,27 @@ import static com.loserico.cache.utils.ByteUtils.toBytes;
 @Slf4j
 public class JedisClusterOperations implements JedisOperations {
 	
+	private static final ExecutorService THREAD_POOL = ThreadPool.newThreadPool();
+	
+	/**
+	 * 批量读写各个master并行执行用的线程池, 和订阅用的分开, 订阅会一直占着线程
+	 */
+	private static final ExecutorService BULK_THREAD_POOL = ThreadPool.newThreadPool();
+	
 	private final JedisCluster jedisCluster;
 	
+	private volatile ClusterSlotRouter slotRouter;
+	
+	private volatile ClusterBulkExecutor bulkExecutor;
+	
 	public JedisClusterOperations(JedisCluster jedisCluster) {
 		this.jedisCluster = jedisCluster;
 	}
 	
+	public JedisCluster getJedisCluster() {
+		return jedisCluster;
+	}
+	
 	@Override
 	public String set(byte[] key, byte[] value) {
 		return jedisCluster.set(key, value);
@@ -46,6 +69,17 @@ public class JedisClusterOperations implements JedisOperations {
 		return jedisCluster.get(key);
 	}
 	
+	@Override
+	public List<byte[]> mget(byte[]... keys) {
+		return bulkExecutor().mget(keys);
+	}
+	
+	@Override
+	public String mset(byte[]... keysvalues) {
+		bulkExecutor().mset(keysvalues);
+		return "OK";
+	}
+	
 	@Override
 	public Boolean exists(String key) {
 		return jedisCluster.exists(key);
@@ -156,11 +190,21 @@ public class JedisClusterOperations implements JedisOperations {
 		return jedisCluster.brpop(timeout, keys);
 	}
 	
+	@Override
+	public byte[] brpoplpush(byte[] source, byte[] destination, int timeout) {
+		return jedisCluster.brpoplpush(source, destination, timeout);
+	}
+	
 	@Override
 	public String rpop(String key) {
 		return jedisCluster.rpop(key);
 	}
 	
+	@Override
+	public byte[] rpop(byte[] key) {
+		return jedisCluster.rpop(key);
+	}
+	
 	@Override
 	public Long llen(String key) {
 		return jedisCluster.llen(key);
@@ -266,6 +310,11 @@ public class JedisClusterOperations implements JedisOperations {
 		return jedisCluster.hvals(key);
 	}
 	
+	@Override
+	public List<byte[]> hvals(byte[] key) {
+		return new ArrayList<>(jedisCluster.hvals(key));
+	}
+	
 	@Override
 	public Set<String> zrange(String key, long start, long end) {
 		return jedisCluster.zrange(key, start, end);
@@ -321,6 +370,16 @@ public class JedisClusterOperations implements JedisOperations {
 		return jedisCluster.ttl(key);
 	}
 	
+	@Override
+	public Long pttl(String key) {
+		return jedisCluster.pttl(key);
+	}
+	
+	@Override
+	public Long pttl(byte[] key) {
+		return jedisCluster.pttl(key);
+	}
+	
 	@Override
 	public Long del(String key) {
 		return jedisCluster.del(key);
@@ -341,6 +400,11 @@ public class JedisClusterOperations implements JedisOperations {
 		return jedisCluster.eval(script, keyCount, params);
 	}
 	
+	@Override
+	public Object eval(byte[] script, int keyCount, byte[]... params) {
+		return jedisCluster.eval(script, keyCount, params);
+	}
+	
 	@Override
 	public String scriptLoad(String script, String sampleKey) {
 		return jedisCluster.scriptLoad(script, sampleKey);
@@ -371,18 +435,71 @@ public class JedisClusterOperations implements JedisOperations {
 		return jedisCluster.publish(channel, message);
 	}
 	
+	/**
+	 * 集群模式下PUBLISH的消息会广播到所有节点, 所以随便在哪个节点上订阅都可以收到
+	 * <p>
+	 * subscribe会一直阻塞当前线程, 所以交给线程池去执行
+	 *
+	 * @param jedisPubSub
+	 * @param channels
+	 */
 	@Override
 	public void subscribe(JedisPubSub jedisPubSub, String... channels) {
-		log.info("Not implemented yet!");
+		THREAD_POOL.execute(() -> jedisCluster.subscribe(jedisPubSub, channels));
+	}
+	
+	@Override
+	public Future<?> psubscribe(JedisPubSub jedisPubSub, String... patterns) {
+		return THREAD_POOL.submit(() -> jedisCluster.psubscribe(jedisPubSub, patterns));
 	}
 	
 	@Override
-	public void psubscribe(JedisPubSub jedisPubSub, String... patterns) {
-		log.info("Not implemented yet!");
+	public boolean isCluster() {
+		return true;
 	}
 	
 	@Override
 	public Jedis jedis() {
 		throw new UnsupportedOperationException("JedisClusterOperations不支持暴露Jedis");
 	}
+	
+	/**
+	 * 每次都重新拉取CLUSTER SLOTS, SCAN一遍要很久, 用最新的拓扑
+	 */
+	@Override
+	public List<Pool<Jedis>> masterPools() {
+		ClusterSlotRouter router = slotRouter();
+		router.refresh();
+		return new ArrayList<>(router.masters());
+	}
+	
+	@Override
+	public Map<String, Pool<Jedis>> connectionPools() {
+		return new LinkedHashMap<>(jedisCluster.getClusterNodes());
+	}
+	
+	/**
+	 * 第一次批量操作的时候才去拉取CLUSTER SLOTS
+	 */
+	private ClusterBulkExecutor bulkExecutor() {
+		if (bulkExecutor == null) {
+			synchronized (this) {
+				if (bulkExecutor == null) {
+					bulkExecutor = new ClusterBulkExecutor(jedisCluster, slotRouter(), BULK_THREAD_POOL);
+				}
+			}
+		}
+		return bulkExecutor;
+	}
+	
+	private ClusterSlotRouter slotRouter() {
+		if (slotRouter == null) {
+			synchronized (this) {
+				if (slotRouter == null) {
+					slotRouter = new ClusterSlotRouter(jedisCluster);
+				}
+			}
+		}
+		return slotRouter;
+	}
 }
@@ -4,10 +4,12 @@ import com.loserico.cache.exception.OperationNotSupportedException;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPubSub;
 import redis.clients.jedis.Pipeline;
+import redis.clients.util.Pool;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 
 /**
@@ -28,6 +30,24 @@ public interface JedisOperations {
 	
 	public byte[] get(final byte[] key);
 	
+	/**
+	 * 批量读, 返回结果和keys一一对应, 不存在的key对应null
+	 * <p>
+	 * Cluster模式下keys可以分布在不同的slot
+	 *
+	 * @param keys
+	 * @return List<byte[]>
+	 */
+	public List<byte[]> mget(final byte[]... keys);
+	
+	/**
+	 * 批量写, Cluster模式下keys可以分布在不同的slot, 但是整体不再是原子的
+	 *
+	 * @param keysvalues key1, value1, key2, value2 ...
+	 * @return String
+	 */
+	public String mset(final byte[]... keysvalues);
+	
 	public Boolean exists(final String key);
 	
 	public Boolean exists(final byte[] key);
@@ -127,6 +147,18 @@ public interface JedisOperations {
 	
 	public List<byte[]> brpop(final int timeout, final byte[]... keys);
 	
+	/**
+	 * 阻塞地从source右侧弹出一个元素, 同时放到destination左侧, 原子操作
+	 * <p>
+	 * Cluster模式下source和destination必须在同一个slot
+	 *
+	 * @param source
+	 * @param destination
+	 * @param timeout     秒, 0表示一直等
+	 * @return byte[] 超时返回null
+	 */
+	public byte[] brpoplpush(final byte[] source, final byte[] destination, final int timeout);
+	
 	/**
 	 * 从list右侧弹出一个元素
 	 * @param key
@@ -134,6 +166,8 @@ public interface JedisOperations {
 	 */
 	public String rpop(String key);
 	
+	public byte[] rpop(final byte[] key);
+	
 	/**
 	 * Returns the length of the list stored at key.
 	 * <p>
@@ -287,6 +321,8 @@ public interface JedisOperations {
 	
 	public List<String> hvals(String key);
 	
+	public List<byte[]> hvals(byte[] key);
+	
 	/**
 	 * Set a timeout on key.
 	 * After the timeout has expired, the key will automatically be deleted.
@@ -361,6 +397,16 @@ public interface JedisOperations {
 	
 	public Long ttl(final byte[] key);
 	
+	/**
+	 * 和ttl一样, 只是单位是毫秒
+	 *
+	 * @param key
+	 * @return
+	 */
+	public Long pttl(final String key);
+	
+	public Long pttl(final byte[] key);
+	
 	public Long del(final String key);
 	
 	public Long del(final byte[] key);
@@ -382,6 +428,16 @@ public interface JedisOperations {
 	
 	public Object eval(final String script, final int keyCount, final String... params);
 	
+	/**
+	 * 二进制版本的EVAL, 参数可以是任意字节, Cluster模式下按第一个参数路由
+	 *
+	 * @param script
+	 * @param keyCount
+	 * @param params   KEYS 和 ARGV
+	 * @return Object
+	 */
+	public Object eval(final byte[] script, final int keyCount, final byte[]... params);
+	
 	/**
 	 * 这个是默认实现, Redis单节点适用
 	 * @param script
@@ -468,8 +524,9 @@ public interface JedisOperations {
 	 * 
 	 * @param jedisPubSub
 	 * @param patterns
+	 * @return Future<?> 订阅一直阻塞到取消订阅或者连接断开, 订阅结束或者失败之后isDone才是true
 	 */
-	public void psubscribe(JedisPubSub jedisPubSub, String... patterns);
+	public Future<?> psubscribe(JedisPubSub jedisPubSub, String... patterns);
 	
 	/**
 	 * 通过Redis pipeline执行
@@ -483,9 +540,48 @@ public interface JedisOperations {
 		throw new UnsupportedOperationException();
 	}
 	
+	/**
+	 * 是否是Redis集群模式, 集群模式下加载lua脚本等操作需要提供sampleKey
+	 * <p>
+	 * JedisOperations可能被装饰过(比如本地缓存), 所以不要用instanceof JedisClusterOperations来判断
+	 *
+	 * @return boolean
+	 */
+	public default boolean isCluster() {
+		return false;
+	}
+	
+	/**
+	 * 通知装饰器这些key被修改了, 让本地缓存(NearCache, 热点key)失效
+	 * <p>
+	 * lua脚本读写都有, 装饰器看不出来, 所以不再把eval/evalsha的KEYS都当成写; 用脚本修改了key的地方写完之后自己调用这个方法
+	 *
+	 * @param keys
+	 */
+	public default void invalidate(byte[]... keys) {
+	}
+	
 	/**
 	 * 直接暴露Jedis供客户端操作
 	 * @return
 	 */
 	public Jedis jedis();
+	
+	/**
+	 * 所有master节点的连接池, SCAN这类只作用于单个节点的命令要在每个master上各执行一遍
+	 * <p>
+	 * 单节点/Sentinel模式下就是当前的连接池
+	 *
+	 * @return List<Pool<Jedis>>
+	 */
+	public List<Pool<Jedis>> masterPools();
+	
+	/**
+	 * 所有节点的连接池, 不会访问Redis, 用来采集连接池的active/idle/waiters等指标
+	 * <p>
+	 * 单节点/Sentinel模式下只有一个, 名字是default; Cluster模式下key是 host:port, 包括slave节点
+	 *
+	 * @return Map<String, Pool<Jedis>>
+	 */
+	public Map<String, Pool<Jedis>> connectionPools();
 }
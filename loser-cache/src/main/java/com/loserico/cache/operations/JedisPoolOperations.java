@@ -9,12 +9,17 @@ import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPubSub;
 import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.util.Pool;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -32,6 +37,11 @@ public class JedisPoolOperations implements JedisOperations {
 	
 	private static final Logger log = LoggerFactory.getLogger(JedisPoolOperations.class);
 	
+	/**
+	 * 批量读写时一条MGET/MSET最多带多少个key
+	 */
+	private static final int BULK_CHUNK = 1000;
+	
 	private final Pool<Jedis> pool;
 	
 	private static final ExecutorService THREAD_POOL = ThreadPool.newThreadPool();
@@ -40,6 +50,10 @@ public class JedisPoolOperations implements JedisOperations {
 		this.pool = pool;
 	}
 	
+	public Pool<Jedis> getPool() {
+		return pool;
+	}
+	
 	@Override
 	public String set(byte[] key, byte[] value) {
 		return operate((jedis) -> jedis.set(key, value));
@@ -55,6 +69,44 @@ public class JedisPoolOperations implements JedisOperations {
 		return operate((jedis) -> jedis.get(key));
 	}
 	
+	/**
+	 * key很多的时候拆成多条MGET放进一个pipeline, 避免一条命令阻塞Redis太久
+	 */
+	@Override
+	public List<byte[]> mget(byte[]... keys) {
+		if (keys.length <= BULK_CHUNK) {
+			return operate((jedis) -> jedis.mget(keys));
+		}
+		return operate((jedis) -> {
+			Pipeline pipeline = jedis.pipelined();
+			List<Response<List<byte[]>>> responses = new ArrayList<>();
+			for (int from = 0; from < keys.length; from += BULK_CHUNK) {
+				responses.add(pipeline.mget(Arrays.copyOfRange(keys, from, Math.min(from + BULK_CHUNK, keys.length))));
+			}
+			pipeline.sync();
+			List<byte[]> values = new ArrayList<>(keys.length);
+			for (Response<List<byte[]>> response : responses) {
+				values.addAll(response.get());
+			}
+			return values;
+		});
+	}
+	
+	@Override
+	public String mset(byte[]... keysvalues) {
+		if (keysvalues.length <= 2 * BULK_CHUNK) {
+			return operate((jedis) -> jedis.mset(keysvalues));
+		}
+		return operate((jedis) -> {
+			Pipeline pipeline = jedis.pipelined();
+			for (int from = 0; from < keysvalues.length; from += 2 * BULK_CHUNK) {
+				pipeline.mset(Arrays.copyOfRange(keysvalues, from, Math.min(from + 2 * BULK_CHUNK, keysvalues.length)));
+			}
+			pipeline.sync();
+			return "OK";
+		});
+	}
+	
 	@Override
 	public Boolean exists(String key) {
 		return operate((jedis) -> jedis.exists(key));
@@ -175,11 +227,21 @@ public class JedisPoolOperations implements JedisOperations {
 		return operate((jedis) -> jedis.brpop(timeout, keys));
 	}
 	
+	@Override
+	public byte[] brpoplpush(byte[] source, byte[] destination, int timeout) {
+		return operate((jedis) -> jedis.brpoplpush(source, destination, timeout));
+	}
+	
 	@Override
 	public String rpop(String key) {
 		return operate(jedis -> jedis.rpop(key));
 	}
 	
+	@Override
+	public byte[] rpop(byte[] key) {
+		return operate(jedis -> jedis.rpop(key));
+	}
+	
 	@Override
 	public Long llen(String key) {
 		return operate((jedis) -> jedis.llen(key));
@@ -285,6 +347,11 @@ public class JedisPoolOperations implements JedisOperations {
 		return operate((jedis) -> jedis.hvals(key));
 	}
 	
+	@Override
+	public List<byte[]> hvals(byte[] key) {
+		return operate((jedis) -> jedis.hvals(key));
+	}
+	
 	@Override
 	public Long expire(byte[] key, int seconds) {
 		return operate((jedis) -> jedis.expire(key, seconds));
@@ -330,6 +397,16 @@ public class JedisPoolOperations implements JedisOperations {
 		return operate((jedis) -> jedis.ttl(key));
 	}
 	
+	@Override
+	public Long pttl(String key) {
+		return operate((jedis) -> jedis.pttl(key));
+	}
+	
+	@Override
+	public Long pttl(byte[] key) {
+		return operate((jedis) -> jedis.pttl(key));
+	}
+	
 	@Override
 	public Long del(String key) {
 		return operate((jedis) -> jedis.del(key));
@@ -350,6 +427,11 @@ public class JedisPoolOperations implements JedisOperations {
 		return operate((jedis) -> jedis.eval(script, keyCount, params));
 	}
 	
+	@Override
+	public Object eval(byte[] script, int keyCount, byte[]... params) {
+		return operate((jedis) -> jedis.eval(script, keyCount, params));
+	}
+	
 	@Override
 	public String scriptLoad(String script) {
 		return operate((jedis) -> jedis.scriptLoad(script));
@@ -380,25 +462,37 @@ public class JedisPoolOperations implements JedisOperations {
 	/**
 	 * 订阅消息用的Jedis实例不要用完就关掉, 否则接收消息的时候会抛异常
 	 * redis.clients.jedis.exceptions.JedisConnectionException: Unexpected end of stream.
+	 * <p>
+	 * 订阅会一直阻塞到取消订阅或者连接断开, 这之后才把连接还回连接池, 否则每次订阅都会漏掉一个连接
 	 *
 	 * @param jedisPubSub
 	 * @param channels
 	 */
 	@Override
 	public void subscribe(JedisPubSub jedisPubSub, String... channels) {
-		THREAD_POOL.execute(() -> pool.getResource().subscribe(jedisPubSub, channels));
+		THREAD_POOL.execute(() -> {
+			try (Jedis jedis = pool.getResource()) {
+				jedis.subscribe(jedisPubSub, channels);
+			}
+		});
 	}
 	
 	/**
 	 * 订阅消息用的Jedis实例不要用完就关掉, 否则接收消息的时候会抛异常
 	 * redis.clients.jedis.exceptions.JedisConnectionException: Unexpected end of stream.
+	 * <p>
+	 * 订阅会一直阻塞到取消订阅或者连接断开, 这之后才把连接还回连接池, 否则每次订阅都会漏掉一个连接
 	 *
 	 * @param jedisPubSub
 	 * @param patterns
 	 */
 	@Override
-	public void psubscribe(JedisPubSub jedisPubSub, String... patterns) {
-		THREAD_POOL.execute(() -> pool.getResource().psubscribe(jedisPubSub, patterns));
+	public Future<?> psubscribe(JedisPubSub jedisPubSub, String... patterns) {
+		return THREAD_POOL.submit(() -> {
+			try (Jedis jedis = pool.getResource()) {
+				jedis.psubscribe(jedisPubSub, patterns);
+			}
+		});
 	}
 	
 	@Override
@@ -411,6 +505,16 @@ public class JedisPoolOperations implements JedisOperations {
 		return pool.getResource();
 	}
 	
+	@Override
+	public List<Pool<Jedis>> masterPools() {
+		return Collections.singletonList(pool);
+	}
+	
+	@Override
+	public Map<String, Pool<Jedis>> connectionPools() {
+		return Collections.singletonMap("default", pool);
+	}
+	
 	@Override
 	public List<Object> executePipelined(Consumer<Pipeline> consumer) {
 		Jedis jedis = pool.getResource();
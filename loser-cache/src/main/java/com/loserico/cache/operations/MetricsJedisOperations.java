@@ -0,0 +1,510 @@
+package com.loserico.cache.operations;
+
+import com.loserico.cache.metrics.RedisMetrics;
+import redis.clients.jedis.Pipeline;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 记录每条命令耗时, 收发字节数和异常次数的JedisOperations
+ * <p>
+ * 每条命令只多两次System.nanoTime()和一次RedisMetrics.recordCommand(), 可以在生产环境一直开着。
+ * 字节数是按key/value/参数和返回值估算的, String按字符数算, 不含RESP协议本身的开销
+ * <p>
+ * 耗时包括从连接池借连接的时间; 借连接本身等了多久看JedisUtils.poolStats()
+ * <p>
+ * 套在所有装饰器的最外层, 近端缓存命中的读请求也会被记录, 耗时就是本地缓存的耗时
+ * <p>
+ * Copyright: (C), 2021-03-15 14:55
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class MetricsJedisOperations extends DelegatingJedisOperations {
+	
+	private volatile RedisMetrics metrics;
+	
+	public MetricsJedisOperations(JedisOperations delegate, RedisMetrics metrics) {
+		super(delegate);
+		this.metrics = metrics;
+	}
+	
+	public RedisMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * 运行时替换指标的实现, 比如换成MicrometerRedisMetrics
+	 *
+	 * @param metrics
+	 */
+	public void setMetrics(RedisMetrics metrics) {
+		this.metrics = metrics == null ? RedisMetrics.NOOP : metrics;
+	}
+	
+	@Override
+	public String set(byte[] key, byte[] value) {
+		return record("set", sizeOf(key) + sizeOf(value), () -> delegate.set(key, value));
+	}
+	
+	@Override
+	public Long setnx(byte[] key, byte[] value) {
+		return record("setnx", sizeOf(key) + sizeOf(value), () -> delegate.setnx(key, value));
+	}
+	
+	@Override
+	public byte[] get(byte[] key) {
+		return record("get", sizeOf(key), () -> delegate.get(key));
+	}
+	
+	@Override
+	public List<byte[]> mget(byte[]... keys) {
+		return record("mget", sizeOf(keys), () -> delegate.mget(keys));
+	}
+	
+	@Override
+	public String mset(byte[]... keysvalues) {
+		return record("mset", sizeOf(keysvalues), () -> delegate.mset(keysvalues));
+	}
+	
+	@Override
+	public Boolean exists(String key) {
+		return record("exists", sizeOf(key), () -> delegate.exists(key));
+	}
+	
+	@Override
+	public Boolean exists(byte[] key) {
+		return record("exists", sizeOf(key), () -> delegate.exists(key));
+	}
+	
+	@Override
+	public Long incr(String key) {
+		return record("incr", sizeOf(key), () -> delegate.incr(key));
+	}
+	
+	@Override
+	public Long incrBy(String key, long increment) {
+		return record("incrby", sizeOf(key), () -> delegate.incrBy(key, increment));
+	}
+	
+	@Override
+	public Double zscore(String key, String member) {
+		return record("zscore", sizeOf(key) + sizeOf(member), () -> delegate.zscore(key, member));
+	}
+	
+	@Override
+	public Long zadd(String key, double score, String member) {
+		return record("zadd", sizeOf(key) + sizeOf(member), () -> delegate.zadd(key, score, member));
+	}
+	
+	@Override
+	public Long zadd(String key, double score, Object member) {
+		return record("zadd", sizeOf(key) + sizeOf(member), () -> delegate.zadd(key, score, member));
+	}
+	
+	@Override
+	public Long zadd(byte[] key, double score, byte[] member) {
+		return record("zadd", sizeOf(key) + sizeOf(member), () -> delegate.zadd(key, score, member));
+	}
+	
+	@Override
+	public Long zcard(String key) {
+		return record("zcard", sizeOf(key), () -> delegate.zcard(key));
+	}
+	
+	@Override
+	public Long zremByRank(String key, long start, long end) {
+		return record("zremrangebyrank", sizeOf(key), () -> delegate.zremByRank(key, start, end));
+	}
+	
+	@Override
+	public Long zremRangeByScore(String key, String min, String max) {
+		return record("zremrangebyscore", sizeOf(key) + sizeOf(min) + sizeOf(max), () -> delegate.zremRangeByScore(key, min, max));
+	}
+	
+	@Override
+	public Set<String> zrange(String key, long start, long end) {
+		return record("zrange", sizeOf(key), () -> delegate.zrange(key, start, end));
+	}
+	
+	@Override
+	public Set<String> zrangeByScore(String key, String min, String max) {
+		return record("zrangebyscore", sizeOf(key) + sizeOf(min) + sizeOf(max), () -> delegate.zrangeByScore(key, min, max));
+	}
+	
+	@Override
+	public byte[] lpop(byte[] key) {
+		return record("lpop", sizeOf(key), () -> delegate.lpop(key));
+	}
+	
+	@Override
+	public String lpop(String key) {
+		return record("lpop", sizeOf(key), () -> delegate.lpop(key));
+	}
+	
+	@Override
+	public Long lpush(String key, String... strings) {
+		return record("lpush", sizeOf(key) + sizeOf(strings), () -> delegate.lpush(key, strings));
+	}
+	
+	@Override
+	public Long lpush(byte[] key, byte[]... strings) {
+		return record("lpush", sizeOf(key) + sizeOf(strings), () -> delegate.lpush(key, strings));
+	}
+	
+	@Override
+	public Long rpush(String key, String... strings) {
+		return record("rpush", sizeOf(key) + sizeOf(strings), () -> delegate.rpush(key, strings));
+	}
+	
+	@Override
+	public Long rpush(byte[] key, byte[]... strings) {
+		return record("rpush", sizeOf(key) + sizeOf(strings), () -> delegate.rpush(key, strings));
+	}
+	
+	@Override
+	public List<String> blpop(int timeout, String key) {
+		return record("blpop", sizeOf(key), () -> delegate.blpop(timeout, key));
+	}
+	
+	@Override
+	public List<byte[]> blpop(int timeout, byte[]... keys) {
+		return record("blpop", sizeOf(keys), () -> delegate.blpop(timeout, keys));
+	}
+	
+	@Override
+	public List<String> brpop(int timeout, String key) {
+		return record("brpop", sizeOf(key), () -> delegate.brpop(timeout, key));
+	}
+	
+	@Override
+	public List<String> brpop(int timeout, String... keys) {
+		return record("brpop", sizeOf(keys), () -> delegate.brpop(timeout, keys));
+	}
+	
+	@Override
+	public List<byte[]> brpop(int timeout, byte[]... keys) {
+		return record("brpop", sizeOf(keys), () -> delegate.brpop(timeout, keys));
+	}
+	
+	@Override
+	public byte[] brpoplpush(byte[] source, byte[] destination, int timeout) {
+		return record("brpoplpush", sizeOf(source) + sizeOf(destination), () -> delegate.brpoplpush(source, destination, timeout));
+	}
+	
+	@Override
+	public String rpop(String key) {
+		return record("rpop", sizeOf(key), () -> delegate.rpop(key));
+	}
+	
+	@Override
+	public byte[] rpop(byte[] key) {
+		return record("rpop", sizeOf(key), () -> delegate.rpop(key));
+	}
+	
+	@Override
+	public Long llen(String key) {
+		return record("llen", sizeOf(key), () -> delegate.llen(key));
+	}
+	
+	@Override
+	public List<String> lrange(String key, long start, long stop) {
+		return record("lrange", sizeOf(key), () -> delegate.lrange(key, start, stop));
+	}
+	
+	@Override
+	public List<byte[]> lrange(byte[] key, long start, long stop) {
+		return record("lrange", sizeOf(key), () -> delegate.lrange(key, start, stop));
+	}
+	
+	@Override
+	public Long lrem(String key, long count, String value) {
+		return record("lrem", sizeOf(key) + sizeOf(value), () -> delegate.lrem(key, count, value));
+	}
+	
+	@Override
+	public Long sadd(String key, String... members) {
+		return record("sadd", sizeOf(key) + sizeOf(members), () -> delegate.sadd(key, members));
+	}
+	
+	@Override
+	public Long sadd(byte[] key, byte[]... members) {
+		return record("sadd", sizeOf(key) + sizeOf(members), () -> delegate.sadd(key, members));
+	}
+	
+	@Override
+	public Long srem(byte[] key, byte[]... member) {
+		return record("srem", sizeOf(key) + sizeOf(member), () -> delegate.srem(key, member));
+	}
+	
+	@Override
+	public Long scard(String key) {
+		return record("scard", sizeOf(key), () -> delegate.scard(key));
+	}
+	
+	@Override
+	public Boolean sismember(byte[] key, byte[] member) {
+		return record("sismember", sizeOf(key) + sizeOf(member), () -> delegate.sismember(key, member));
+	}
+	
+	@Override
+	public Set<byte[]> smembers(byte[] key) {
+		return record("smembers", sizeOf(key), () -> delegate.smembers(key));
+	}
+	
+	@Override
+	public Set<String> smembers(String key) {
+		return record("smembers", sizeOf(key), () -> delegate.smembers(key));
+	}
+	
+	@Override
+	public Boolean hexists(byte[] key, byte[] field) {
+		return record("hexists", sizeOf(key) + sizeOf(field), () -> delegate.hexists(key, field));
+	}
+	
+	@Override
+	public Boolean hexists(String key, String field) {
+		return record("hexists", sizeOf(key) + sizeOf(field), () -> delegate.hexists(key, field));
+	}
+	
+	@Override
+	public Long hlen(byte[] key) {
+		return record("hlen", sizeOf(key), () -> delegate.hlen(key));
+	}
+	
+	@Override
+	public byte[] hget(byte[] key, byte[] field) {
+		return record("hget", sizeOf(key) + sizeOf(field), () -> delegate.hget(key, field));
+	}
+	
+	@Override
+	public Long hset(byte[] key, byte[] field, byte[] value) {
+		return record("hset", sizeOf(key) + sizeOf(field) + sizeOf(value), () -> delegate.hset(key, field, value));
+	}
+	
+	@Override
+	public String hmset(String key, Map<String, String> hash) {
+		return record("hmset", sizeOf(key) + sizeOf(hash), () -> delegate.hmset(key, hash));
+	}
+	
+	@Override
+	public List<byte[]> hmget(byte[] key, byte[]... fields) {
+		return record("hmget", sizeOf(key) + sizeOf(fields), () -> delegate.hmget(key, fields));
+	}
+	
+	@Override
+	public List<String> hmget(String key, String... fields) {
+		return record("hmget", sizeOf(key) + sizeOf(fields), () -> delegate.hmget(key, fields));
+	}
+	
+	@Override
+	public Map<byte[], byte[]> hgetAll(byte[] key) {
+		return record("hgetall", sizeOf(key), () -> delegate.hgetAll(key));
+	}
+	
+	@Override
+	public Map<String, String> hgetAll(String key) {
+		return record("hgetall", sizeOf(key), () -> delegate.hgetAll(key));
+	}
+	
+	@Override
+	public List<String> hvals(String key) {
+		return record("hvals", sizeOf(key), () -> delegate.hvals(key));
+	}
+	
+	@Override
+	public List<byte[]> hvals(byte[] key) {
+		return record("hvals", sizeOf(key), () -> delegate.hvals(key));
+	}
+	
+	@Override
+	public Long expire(byte[] key, int seconds) {
+		return record("expire", sizeOf(key), () -> delegate.expire(key, seconds));
+	}
+	
+	@Override
+	public Long expire(String key, int seconds) {
+		return record("expire", sizeOf(key), () -> delegate.expire(key, seconds));
+	}
+	
+	@Override
+	public Long expireAt(String key, long unixTime) {
+		return record("expireat", sizeOf(key), () -> delegate.expireAt(key, unixTime));
+	}
+	
+	@Override
+	public Long expireAt(byte[] key, long unixTime) {
+		return record("expireat", sizeOf(key), () -> delegate.expireAt(key, unixTime));
+	}
+	
+	@Override
+	public Long persist(String key) {
+		return record("persist", sizeOf(key), () -> delegate.persist(key));
+	}
+	
+	@Override
+	public Long persist(byte[] key) {
+		return record("persist", sizeOf(key), () -> delegate.persist(key));
+	}
+	
+	@Override
+	public Long ttl(String key) {
+		return record("ttl", sizeOf(key), () -> delegate.ttl(key));
+	}
+	
+	@Override
+	public Long ttl(byte[] key) {
+		return record("ttl", sizeOf(key), () -> delegate.ttl(key));
+	}
+	
+	@Override
+	public Long pttl(String key) {
+		return record("pttl", sizeOf(key), () -> delegate.pttl(key));
+	}
+	
+	@Override
+	public Long pttl(byte[] key) {
+		return record("pttl", sizeOf(key), () -> delegate.pttl(key));
+	}
+	
+	@Override
+	public Long del(String key) {
+		return record("del", sizeOf(key), () -> delegate.del(key));
+	}
+	
+	@Override
+	public Long del(byte[] key) {
+		return record("del", sizeOf(key), () -> delegate.del(key));
+	}
+	
+	@Override
+	public Object eval(String script) {
+		return record("eval", sizeOf(script), () -> delegate.eval(script));
+	}
+	
+	@Override
+	public Object eval(String script, String sampleKey) {
+		return record("eval", sizeOf(script) + sizeOf(sampleKey), () -> delegate.eval(script, sampleKey));
+	}
+	
+	@Override
+	public Object eval(String script, int keyCount, String... params) {
+		return record("eval", sizeOf(script) + sizeOf(params), () -> delegate.eval(script, keyCount, params));
+	}
+	
+	@Override
+	public Object eval(byte[] script, int keyCount, byte[]... params) {
+		return record("eval", sizeOf(script) + sizeOf(params), () -> delegate.eval(script, keyCount, params));
+	}
+	
+	@Override
+	public String scriptLoad(String script) {
+		return record("scriptload", sizeOf(script), () -> delegate.scriptLoad(script));
+	}
+	
+	@Override
+	public String scriptLoad(String script, String sampleKey) {
+		return record("scriptload", sizeOf(script) + sizeOf(sampleKey), () -> delegate.scriptLoad(script, sampleKey));
+	}
+	
+	@Override
+	public String scriptLoad(String script, Object sampleKey) {
+		return record("scriptload", sizeOf(script) + sizeOf(sampleKey), () -> delegate.scriptLoad(script, sampleKey));
+	}
+	
+	@Override
+	public String scriptLoad(String script, byte[] sampleKey) {
+		return record("scriptload", sizeOf(script) + sizeOf(sampleKey), () -> delegate.scriptLoad(script, sampleKey));
+	}
+	
+	@Override
+	public byte[] scriptLoad(byte[] script, byte[] sampleKey) {
+		return record("scriptload", sizeOf(script) + sizeOf(sampleKey), () -> delegate.scriptLoad(script, sampleKey));
+	}
+	
+	@Override
+	public Object evalsha(String sha1) {
+		return record("evalsha", sizeOf(sha1), () -> delegate.evalsha(sha1));
+	}
+	
+	@Override
+	public Object evalsha(String sha1, String sampleKey) {
+		return record("evalsha", sizeOf(sha1) + sizeOf(sampleKey), () -> delegate.evalsha(sha1, sampleKey));
+	}
+	
+	@Override
+	public Object evalsha(String sha1, int keyCount, String... params) {
+		return record("evalsha", sizeOf(sha1) + sizeOf(params), () -> delegate.evalsha(sha1, keyCount, params));
+	}
+	
+	@Override
+	public Object evalsha(byte[] sha1, int keyCount, byte[]... params) {
+		return record("evalsha", sizeOf(sha1) + sizeOf(params), () -> delegate.evalsha(sha1, keyCount, params));
+	}
+	
+	@Override
+	public Long publish(byte[] channel, byte[] message) {
+		return record("publish", sizeOf(channel) + sizeOf(message), () -> delegate.publish(channel, message));
+	}
+	
+	@Override
+	public List<Object> executePipelined(Consumer<Pipeline> consumer) {
+		return record("pipeline", 0, () -> delegate.executePipelined(consumer));
+	}
+	
+	@Override
+	public String ping() {
+		return record("ping", 0, () -> delegate.ping());
+	}
+	
+	private <R> R record(String command, long bytesOut, Supplier<R> call) {
+		long start = System.nanoTime();
+		boolean error = true;
+		R result = null;
+		try {
+			result = call.get();
+			error = false;
+			return result;
+		} finally {
+			metrics.recordCommand(command, System.nanoTime() - start, bytesOut, sizeOf(result), error);
+		}
+	}
+	
+	/**
+	 * 估算字节数, 只认byte[], String和它们组成的数组/集合/Map, 其他类型算0
+	 */
+	private static long sizeOf(Object value) {
+		if (value == null) {
+			return 0L;
+		}
+		if (value instanceof byte[]) {
+			return ((byte[]) value).length;
+		}
+		if (value instanceof String) {
+			return ((String) value).length();
+		}
+		long size = 0L;
+		if (value instanceof Object[]) {
+			for (Object element : (Object[]) value) {
+				size += sizeOf(element);
+			}
+		} else if (value instanceof Collection) {
+			for (Object element : (Collection<?>) value) {
+				size += sizeOf(element);
+			}
+		} else if (value instanceof Map) {
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				size += sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+			}
+		}
+		return size;
+	}
+}
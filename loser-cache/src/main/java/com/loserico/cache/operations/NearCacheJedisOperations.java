@@ -0,0 +1,412 @@
+package com.loserico.cache.operations;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.loserico.cache.near.NearCache;
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 带进程内一级缓存的JedisOperations
+ * <p>
+ * get(byte[]), mget(byte[]...) 和 hget(byte[], byte[]) 先查本地缓存, 没有再查Redis并回填, mget只查本地没有的key;
+ * 本节点的写操作(set/setnx/mset/incr/hset/hmset/expire/del, 以及通过invalidate(keys)通知的脚本写)在写完Redis后让本地副本失效,
+ * 同时把key批量发布到失效通知channel上, 其他节点收到后也让自己的本地副本失效
+ * <p>
+ * Jedis 2.9 不支持RESP3的client side caching, 所以失效通知走的是普通的pub/sub。
+ * 订阅连接断掉期间的消息是收不到的, 所以本节点会定时往channel上发心跳,
+ * 一段时间收不到自己的心跳就认为订阅断了: 清空本地缓存, 在重新订阅成功之前读请求直接走Redis
+ * <p>
+ * 没有经过JedisOperations的写操作(pipeline, 直接拿Jedis操作)不会触发失效, 只能靠ttl兜底
+ * <p>
+ * Copyright: (C), 2021-03-02 15:03
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Slf4j
+public class NearCacheJedisOperations extends DelegatingJedisOperations {
+	
+	public static final String DEFAULT_CHANNEL = "loser:near-cache:invalidate";
+	
+	/**
+	 * 心跳消息, 消息格式是 nodeId\n心跳标记, 普通失效消息是 nodeId\nkey1\nkey2...
+	 */
+	private static final String HEARTBEAT = "~";
+	
+	private static final long HEARTBEAT_INTERVAL = 5000L;
+	
+	/**
+	 * 一次PUBLISH最多带多少个key
+	 */
+	private static final int MAX_BATCH = 512;
+	
+	private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+			.setNameFormat("loser-near-cache-%d")
+			.setDaemon(true)
+			.build();
+	
+	/**
+	 * 区分消息是不是自己发出来的
+	 */
+	private final String nodeId = UUID.randomUUID().toString();
+	
+	private final NearCache nearCache;
+	
+	private final String channel;
+	
+	private final byte[] channelBytes;
+	
+	/**
+	 * 待发布的失效key, 由publisher线程批量发出去
+	 */
+	private final LinkedBlockingQueue<byte[]> pendingKeys = new LinkedBlockingQueue<>();
+	
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(THREAD_FACTORY);
+	
+	private final AtomicLong lastHeartbeat = new AtomicLong(0);
+	
+	/**
+	 * 订阅是否正常, 不正常的时候不读也不写本地缓存
+	 */
+	private volatile boolean subscribed = false;
+	
+	private volatile InvalidationSubscriber subscriber;
+	
+	public NearCacheJedisOperations(JedisOperations delegate, NearCache nearCache) {
+		this(delegate, nearCache, DEFAULT_CHANNEL);
+	}
+	
+	public NearCacheJedisOperations(JedisOperations delegate, NearCache nearCache, String channel) {
+		super(delegate);
+		this.nearCache = nearCache;
+		this.channel = channel;
+		this.channelBytes = channel.getBytes(UTF_8);
+		
+		Thread publisher = THREAD_FACTORY.newThread(this::publishLoop);
+		publisher.start();
+		subscribe();
+		scheduler.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+	
+	public NearCache getNearCache() {
+		return nearCache;
+	}
+	
+	@Override
+	public byte[] get(byte[] key) {
+		if (!subscribed || !nearCache.cacheable(key)) {
+			return delegate.get(key);
+		}
+		byte[] value = nearCache.get(key);
+		if (value != null) {
+			return value;
+		}
+		long version = nearCache.version();
+		value = delegate.get(key);
+		nearCache.put(key, value, version);
+		return value;
+	}
+	
+	@Override
+	public List<byte[]> mget(byte[]... keys) {
+		if (!subscribed) {
+			return delegate.mget(keys);
+		}
+		List<byte[]> values = new ArrayList<>(keys.length);
+		List<Integer> misses = new ArrayList<>();
+		for (int i = 0; i < keys.length; i++) {
+			byte[] value = nearCache.cacheable(keys[i]) ? nearCache.get(keys[i]) : null;
+			values.add(value);
+			if (value == null) {
+				misses.add(i);
+			}
+		}
+		if (misses.isEmpty()) {
+			return values;
+		}
+		
+		long version = nearCache.version();
+		byte[][] missKeys = new byte[misses.size()][];
+		for (int i = 0; i < missKeys.length; i++) {
+			missKeys[i] = keys[misses.get(i)];
+		}
+		List<byte[]> loaded = delegate.mget(missKeys);
+		for (int i = 0; i < missKeys.length; i++) {
+			byte[] value = loaded.get(i);
+			values.set(misses.get(i), value);
+			if (nearCache.cacheable(missKeys[i])) {
+				nearCache.put(missKeys[i], value, version);
+			}
+		}
+		return values;
+	}
+	
+	@Override
+	public byte[] hget(byte[] key, byte[] field) {
+		if (!subscribed || !nearCache.cacheable(key)) {
+			return delegate.hget(key, field);
+		}
+		byte[] value = nearCache.hget(key, field);
+		if (value != null) {
+			return value;
+		}
+		long version = nearCache.version();
+		value = delegate.hget(key, field);
+		nearCache.hput(key, field, value, version);
+		return value;
+	}
+	
+	@Override
+	public String set(byte[] key, byte[] value) {
+		try {
+			return delegate.set(key, value);
+		} finally {
+			invalidate(key);
+		}
+	}
+	
+	@Override
+	public Long setnx(byte[] key, byte[] value) {
+		try {
+			return delegate.setnx(key, value);
+		} finally {
+			invalidate(key);
+		}
+	}
+	
+	@Override
+	public String mset(byte[]... keysvalues) {
+		try {
+			return delegate.mset(keysvalues);
+		} finally {
+			for (int i = 0; i < keysvalues.length; i += 2) {
+				invalidate(keysvalues[i]);
+			}
+		}
+	}
+	
+	@Override
+	public Long incr(String key) {
+		try {
+			return delegate.incr(key);
+		} finally {
+			invalidate(key.getBytes(UTF_8));
+		}
+	}
+	
+	@Override
+	public Long incrBy(String key, long increment) {
+		try {
+			return delegate.incrBy(key, increment);
+		} finally {
+			invalidate(key.getBytes(UTF_8));
+		}
+	}
+	
+	@Override
+	public Long hset(byte[] key, byte[] field, byte[] value) {
+		try {
+			return delegate.hset(key, field, value);
+		} finally {
+			invalidate(key);
+		}
+	}
+	
+	@Override
+	public String hmset(String key, Map<String, String> hash) {
+		try {
+			return delegate.hmset(key, hash);
+		} finally {
+			invalidate(key.getBytes(UTF_8));
+		}
+	}
+	
+	@Override
+	public Long expire(byte[] key, int seconds) {
+		try {
+			return delegate.expire(key, seconds);
+		} finally {
+			invalidate(key);
+		}
+	}
+	
+	@Override
+	public Long expire(String key, int seconds) {
+		try {
+			return delegate.expire(key, seconds);
+		} finally {
+			invalidate(key.getBytes(UTF_8));
+		}
+	}
+	
+	@Override
+	public Long expireAt(String key, long unixTime) {
+		try {
+			return delegate.expireAt(key, unixTime);
+		} finally {
+			invalidate(key.getBytes(UTF_8));
+		}
+	}
+	
+	@Override
+	public Long expireAt(byte[] key, long unixTime) {
+		try {
+			return delegate.expireAt(key, unixTime);
+		} finally {
+			invalidate(key);
+		}
+	}
+	
+	@Override
+	public Long del(String key) {
+		try {
+			return delegate.del(key);
+		} finally {
+			invalidate(key.getBytes(UTF_8));
+		}
+	}
+	
+	@Override
+	public Long del(byte[] key) {
+		try {
+			return delegate.del(key);
+		} finally {
+			invalidate(key);
+		}
+	}
+	
+	/**
+	 * 脚本写的key由调用方通过这里通知, eval/evalsha本身不做失效, 否则脚本读也会变成一次全集群的PUBLISH
+	 */
+	@Override
+	public void invalidate(byte[]... keys) {
+		for (byte[] key : keys) {
+			invalidate(key);
+		}
+		delegate.invalidate(keys);
+	}
+	
+	/**
+	 * 本地失效, 然后交给publisher线程通知其他节点
+	 * <p>
+	 * 不在本地缓存范围内的key其他节点也不会缓存, 不需要发通知
+	 *
+	 * @param key
+	 */
+	private void invalidate(byte[] key) {
+		if (!nearCache.cacheable(key)) {
+			return;
+		}
+		nearCache.invalidate(key);
+		pendingKeys.offer(key);
+	}
+	
+	/**
+	 * 阻塞等待第一个key, 再把队列里攒下的一起带上, 写得越频繁一次PUBLISH带的key越多
+	 */
+	private void publishLoop() {
+		List<byte[]> batch = new ArrayList<>(MAX_BATCH);
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				batch.add(pendingKeys.take());
+				pendingKeys.drainTo(batch, MAX_BATCH - 1);
+				StringBuilder message = new StringBuilder(nodeId);
+				for (byte[] key : batch) {
+					message.append('\n').append(Base64.getEncoder().encodeToString(key));
+				}
+				delegate.publish(channelBytes, message.toString().getBytes(UTF_8));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Throwable e) {
+				log.error("Publish near cache invalidation failed", e);
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+	
+	private void subscribe() {
+		InvalidationSubscriber subscriber = new InvalidationSubscriber();
+		this.subscriber = subscriber;
+		lastHeartbeat.set(System.currentTimeMillis());
+		delegate.subscribe(subscriber, channel);
+	}
+	
+	/**
+	 * 发自己的心跳, 同时检查上一次收到自己心跳的时间, 超过3个周期没收到就重新订阅
+	 */
+	private void heartbeat() {
+		try {
+			if (System.currentTimeMillis() - lastHeartbeat.get() > 3 * HEARTBEAT_INTERVAL) {
+				log.warn("Near cache invalidation channel {} lost, resubscribe", channel);
+				subscribed = false;
+				nearCache.invalidateAll();
+				InvalidationSubscriber old = this.subscriber;
+				try {
+					if (old.isSubscribed()) {
+						old.unsubscribe();
+					}
+				} catch (Throwable e) {
+					log.debug("Unsubscribe broken subscriber failed", e);
+				}
+				subscribe();
+			}
+			delegate.publish(channelBytes, (nodeId + "\n" + HEARTBEAT).getBytes(UTF_8));
+		} catch (Throwable e) {
+			log.error("Near cache heartbeat failed", e);
+		}
+	}
+	
+	private class InvalidationSubscriber extends JedisPubSub {
+		
+		@Override
+		public void onSubscribe(String channel, int subscribedChannels) {
+			/*
+			 * 订阅成功之前的失效消息都错过了
+			 */
+			nearCache.invalidateAll();
+			lastHeartbeat.set(System.currentTimeMillis());
+			subscribed = true;
+			log.info("Near cache subscribed to {}", channel);
+		}
+		
+		@Override
+		public void onMessage(String channel, String message) {
+			if (this != subscriber) {
+				return;
+			}
+			String[] parts = message.split("\n");
+			if (nodeId.equals(parts[0])) {
+				if (parts.length == 2 && HEARTBEAT.equals(parts[1])) {
+					lastHeartbeat.set(System.currentTimeMillis());
+				}
+				return;
+			}
+			if (parts.length == 2 && HEARTBEAT.equals(parts[1])) {
+				return;
+			}
+			List<byte[]> keys = new ArrayList<>(parts.length - 1);
+			for (int i = 1; i < parts.length; i++) {
+				keys.add(Base64.getDecoder().decode(parts[i]));
+			}
+			nearCache.invalidateRemote(keys);
+		}
+	}
+}
@@ -0,0 +1,289 @@
+package com.loserico.cache.operations;
+
+import com.loserico.cache.pipeline.AutoPipeliner;
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 基于AutoPipeliner的AsyncJedisOperations: 命令进队列后立即返回, flusher线程攒批一次pipeline发出去
+ * <p>
+ * 每个连接池只占用flushers个连接, 在途的命令数不受调用方线程数限制。
+ * 结果在flusher线程上拿到之后转交给callbackExecutor去完成future, 调用方的回调再慢也不会拖住flusher,
+ * 回调里同步调用JedisUtils也不会因为flusher在等自己而死锁
+ * <p>
+ * 传入了同步的JedisOperations的话, set/setnx/incr/del/expire/hset/hdel/hincrBy执行完之后和同步命令一样通过
+ * invalidate(keys)让本地缓存和热点key副本失效, 再完成future。异步命令不经过MetricsJedisOperations, 不计入命令统计;
+ * 读也不经过本地缓存, 总是读Redis
+ * <p>
+ * Copyright: (C), 2021-03-16 09:50
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Slf4j
+public class PipelinedAsyncJedisOperations implements AsyncJedisOperations {
+	
+	private final AutoPipeliner pipeliner;
+	
+	private final Executor callbackExecutor;
+	
+	/**
+	 * 写命令完成后通过它让本地缓存失效, 为null表示不做失效
+	 */
+	private final JedisOperations jedisOperations;
+	
+	public PipelinedAsyncJedisOperations(AutoPipeliner pipeliner) {
+		this(pipeliner, null, ForkJoinPool.commonPool());
+	}
+	
+	public PipelinedAsyncJedisOperations(AutoPipeliner pipeliner, JedisOperations jedisOperations) {
+		this(pipeliner, jedisOperations, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * @param pipeliner
+	 * @param jedisOperations  JedisOperationFactory.create()创建出来的同步JedisOperations, 写完之后调它的invalidate
+	 * @param callbackExecutor 在哪个线程池上完成返回的future
+	 */
+	public PipelinedAsyncJedisOperations(AutoPipeliner pipeliner, JedisOperations jedisOperations, Executor callbackExecutor) {
+		this.pipeliner = pipeliner;
+		this.jedisOperations = jedisOperations;
+		this.callbackExecutor = callbackExecutor;
+	}
+	
+	@Override
+	public CompletableFuture<String> get(String key) {
+		return submit(key, pipeline -> pipeline.get(key));
+	}
+	
+	@Override
+	public CompletableFuture<byte[]> get(byte[] key) {
+		return submit(key, pipeline -> pipeline.get(key));
+	}
+	
+	@Override
+	public CompletableFuture<String> set(String key, String value) {
+		return write(key, pipeline -> pipeline.set(key, value));
+	}
+	
+	@Override
+	public CompletableFuture<String> set(byte[] key, byte[] value) {
+		return write(key, pipeline -> pipeline.set(key, value));
+	}
+	
+	@Override
+	public CompletableFuture<String> set(String key, String value, long ttlMillis) {
+		return write(key, pipeline -> pipeline.psetex(key, ttlMillis, value));
+	}
+	
+	@Override
+	public CompletableFuture<Long> setnx(String key, String value) {
+		return write(key, pipeline -> pipeline.setnx(key, value));
+	}
+	
+	@Override
+	public CompletableFuture<Long> incr(String key) {
+		return write(key, pipeline -> pipeline.incr(key));
+	}
+	
+	@Override
+	public CompletableFuture<Long> incrBy(String key, long increment) {
+		return write(key, pipeline -> pipeline.incrBy(key, increment));
+	}
+	
+	@Override
+	public CompletableFuture<Long> del(String key) {
+		return write(key, pipeline -> pipeline.del(key));
+	}
+	
+	@Override
+	public CompletableFuture<Long> del(byte[] key) {
+		return write(key, pipeline -> pipeline.del(key));
+	}
+	
+	@Override
+	public CompletableFuture<Boolean> exists(String key) {
+		return submit(key, pipeline -> pipeline.exists(key));
+	}
+	
+	@Override
+	public CompletableFuture<Long> expire(String key, int seconds) {
+		return write(key, pipeline -> pipeline.expire(key, seconds));
+	}
+	
+	@Override
+	public CompletableFuture<Long> ttl(String key) {
+		return submit(key, pipeline -> pipeline.ttl(key));
+	}
+	
+	@Override
+	public CompletableFuture<String> hget(String key, String field) {
+		return submit(key, pipeline -> pipeline.hget(key, field));
+	}
+	
+	@Override
+	public CompletableFuture<byte[]> hget(byte[] key, byte[] field) {
+		return submit(key, pipeline -> pipeline.hget(key, field));
+	}
+	
+	@Override
+	public CompletableFuture<Long> hset(String key, String field, String value) {
+		return write(key, pipeline -> pipeline.hset(key, field, value));
+	}
+	
+	@Override
+	public CompletableFuture<Long> hset(byte[] key, byte[] field, byte[] value) {
+		return write(key, pipeline -> pipeline.hset(key, field, value));
+	}
+	
+	@Override
+	public CompletableFuture<List<String>> hmget(String key, String... fields) {
+		return submit(key, pipeline -> pipeline.hmget(key, fields));
+	}
+	
+	@Override
+	public CompletableFuture<Map<String, String>> hgetAll(String key) {
+		return submit(key, pipeline -> pipeline.hgetAll(key));
+	}
+	
+	@Override
+	public CompletableFuture<Long> hdel(String key, String... fields) {
+		return write(key, pipeline -> pipeline.hdel(key, fields));
+	}
+	
+	@Override
+	public CompletableFuture<Long> hincrBy(String key, String field, long increment) {
+		return write(key, pipeline -> pipeline.hincrBy(key, field, increment));
+	}
+	
+	@Override
+	public CompletableFuture<Long> lpush(String key, String... values) {
+		return submit(key, pipeline -> pipeline.lpush(key, values));
+	}
+	
+	@Override
+	public CompletableFuture<Long> rpush(String key, String... values) {
+		return submit(key, pipeline -> pipeline.rpush(key, values));
+	}
+	
+	@Override
+	public CompletableFuture<String> lpop(String key) {
+		return submit(key, pipeline -> pipeline.lpop(key));
+	}
+	
+	@Override
+	public CompletableFuture<String> rpop(String key) {
+		return submit(key, pipeline -> pipeline.rpop(key));
+	}
+	
+	@Override
+	public CompletableFuture<List<String>> lrange(String key, long start, long stop) {
+		return submit(key, pipeline -> pipeline.lrange(key, start, stop));
+	}
+	
+	@Override
+	public CompletableFuture<Long> llen(String key) {
+		return submit(key, pipeline -> pipeline.llen(key));
+	}
+	
+	@Override
+	public CompletableFuture<Long> zadd(String key, double score, String member) {
+		return submit(key, pipeline -> pipeline.zadd(key, score, member));
+	}
+	
+	@Override
+	public CompletableFuture<Double> zincrby(String key, double increment, String member) {
+		return submit(key, pipeline -> pipeline.zincrby(key, increment, member));
+	}
+	
+	@Override
+	public CompletableFuture<Double> zscore(String key, String member) {
+		return submit(key, pipeline -> pipeline.zscore(key, member));
+	}
+	
+	@Override
+	public CompletableFuture<Set<String>> zrange(String key, long start, long end) {
+		return submit(key, pipeline -> pipeline.zrange(key, start, end));
+	}
+	
+	@Override
+	public CompletableFuture<Set<String>> zrangeByScore(String key, double min, double max) {
+		return submit(key, pipeline -> pipeline.zrangeByScore(key, min, max));
+	}
+	
+	@Override
+	public CompletableFuture<Long> zrem(String key, String... members) {
+		return submit(key, pipeline -> pipeline.zrem(key, members));
+	}
+	
+	@Override
+	public CompletableFuture<Long> zcard(String key) {
+		return submit(key, pipeline -> pipeline.zcard(key));
+	}
+	
+	@Override
+	public CompletableFuture<Object> eval(String script, int keyCount, String... params) {
+		String routeKey = keyCount > 0 ? params[0] : script;
+		return submit(routeKey, pipeline -> pipeline.eval(script, keyCount, params));
+	}
+	
+	@Override
+	public CompletableFuture<Object> evalsha(String sha1, int keyCount, String... params) {
+		String routeKey = keyCount > 0 ? params[0] : sha1;
+		return submit(routeKey, pipeline -> pipeline.evalsha(sha1, keyCount, params));
+	}
+	
+	private <R> CompletableFuture<R> submit(String key, Function<Pipeline, Response<R>> command) {
+		return submit(key.getBytes(UTF_8), command, false);
+	}
+	
+	private <R> CompletableFuture<R> submit(byte[] key, Function<Pipeline, Response<R>> command) {
+		return submit(key, command, false);
+	}
+	
+	private <R> CompletableFuture<R> write(String key, Function<Pipeline, Response<R>> command) {
+		return submit(key.getBytes(UTF_8), command, true);
+	}
+	
+	private <R> CompletableFuture<R> write(byte[] key, Function<Pipeline, Response<R>> command) {
+		return submit(key, command, true);
+	}
+	
+	/**
+	 * flusher线程上只做一次任务投递, 失效和完成future都在callbackExecutor上
+	 * <p>
+	 * 写命令和同步的一样, 不管成功失败都失效一次, 失败的时候命令可能已经执行了
+	 */
+	private <R> CompletableFuture<R> submit(byte[] key, Function<Pipeline, Response<R>> command, boolean write) {
+		CompletableFuture<R> result = new CompletableFuture<>();
+		pipeliner.submit(key, command).whenCompleteAsync((value, e) -> {
+			if (write && jedisOperations != null) {
+				try {
+					jedisOperations.invalidate(key);
+				} catch (Throwable invalidateError) {
+					log.warn("Invalidate near cache after async write failed", invalidateError);
+				}
+			}
+			if (e != null) {
+				result.completeExceptionally(e);
+			} else {
+				result.complete(value);
+			}
+		}, callbackExecutor);
+		return result;
+	}
+}
@@ -0,0 +1,343 @@
+package com.loserico.cache.pipeline;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.loserico.cache.exception.JedisException;
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.util.Pool;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 自动pipeline: 多个线程并发发出的单条命令先进队列, 由flusher线程攒成一批,
+ * 借一个连接一次pipeline发出去, 每个调用方拿到自己那条命令的CompletableFuture
+ * <p>
+ * 一批的大小由两个参数控制:
+ * <ul>
+ * <li>maxBatch 一批最多多少条命令
+ * <li>windowMicros 拿到第一条命令后最多再等多久凑批, 0表示不等, 队列里有多少发多少
+ * </ul>
+ * 并发越高, 上一批在网络上的时候队列里攒下的命令就越多, 所以windowMicros一般保持0就行
+ * <p>
+ * 每个连接池一个队列, 单机/哨兵只有一个连接池, Cluster模式按slot路由到对应master的连接池。
+ * Cluster模式下收到MOVED刷新slot映射后重新路由, 不再是master的节点的队列连同flusher线程一起回收,
+ * 队列里剩下的命令重新路由; 收到ASK(slot正在迁移)不刷新slot映射, 直接向ASK的目标节点发ASKING再发这条命令
+ * <p>
+ * Copyright: (C), 2021-03-05 15:20
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Slf4j
+public class AutoPipeliner {
+	
+	/**
+	 * MOVED/ASK之后最多重试几次
+	 */
+	private static final int MAX_REDIRECTS = 2;
+	
+	private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+			.setNameFormat("loser-auto-pipeline-%d")
+			.setDaemon(true)
+			.build();
+	
+	/**
+	 * 单机/哨兵模式的连接池, Cluster模式是null
+	 */
+	private final Pool<Jedis> pool;
+	
+	/**
+	 * Cluster模式的slot路由, 单机/哨兵模式是null
+	 */
+	private final ClusterSlotRouter router;
+	
+	private final int maxBatch;
+	
+	private final long windowNanos;
+	
+	private final int flushers;
+	
+	private final ConcurrentHashMap<Pool<Jedis>, Lane> lanes = new ConcurrentHashMap<>();
+	
+	/**
+	 * 单机/哨兵模式, 所有命令都发到同一个连接池
+	 *
+	 * @param pool
+	 * @param maxBatch
+	 * @param windowMicros
+	 * @param flushers     每个连接池几个flusher线程, 也就是最多同时占用几个连接
+	 */
+	public AutoPipeliner(Pool<Jedis> pool, int maxBatch, long windowMicros, int flushers) {
+		this(pool, null, maxBatch, windowMicros, flushers);
+	}
+	
+	/**
+	 * Cluster模式, 按key所在的slot发到对应master
+	 *
+	 * @param router
+	 * @param maxBatch
+	 * @param windowMicros
+	 * @param flushers
+	 */
+	public AutoPipeliner(ClusterSlotRouter router, int maxBatch, long windowMicros, int flushers) {
+		this(null, router, maxBatch, windowMicros, flushers);
+	}
+	
+	private AutoPipeliner(Pool<Jedis> pool, ClusterSlotRouter router, int maxBatch, long windowMicros, int flushers) {
+		this.pool = pool;
+		this.router = router;
+		this.maxBatch = maxBatch;
+		this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+		this.flushers = flushers;
+	}
+	
+	/**
+	 * 提交一条命令, 命令会在某个pipeline里执行
+	 *
+	 * @param key     用来路由, Cluster模式下决定发到哪个节点
+	 * @param command 往pipeline里追加命令, 返回这条命令的Response
+	 * @param <R>
+	 * @return CompletableFuture<R>
+	 */
+	public <R> CompletableFuture<R> submit(byte[] key, Function<Pipeline, Response<R>> command) {
+		Command<R> cmd = new Command<>(key, command);
+		enqueue(cmd);
+		return cmd.future;
+	}
+	
+	/**
+	 * 同步版本, 阻塞等结果, 异常和JedisPoolOperations一样包成JedisException抛出
+	 *
+	 * @param key
+	 * @param command
+	 * @param <R>
+	 * @return R
+	 */
+	public <R> R execute(byte[] key, Function<Pipeline, Response<R>> command) {
+		try {
+			return submit(key, command).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JedisException(e);
+		} catch (ExecutionException e) {
+			throw new JedisException(e.getCause());
+		}
+	}
+	
+	private void enqueue(Command<?> cmd) {
+		Pool<Jedis> target = router == null ? pool : router.route(cmd.key);
+		Lane lane = lanes.get(target);
+		if (lane == null) {
+			lane = lanes.computeIfAbsent(target, this::startFlushers);
+		}
+		lane.queue.offer(cmd);
+		/*
+		 * offer的同时这个队列被回收了, 还在队列里就自己拿出来重新路由; 拿不出来说明已经被flusher取走处理了
+		 */
+		if (lane.stopped && lane.queue.remove(cmd)) {
+			enqueue(cmd);
+		}
+	}
+	
+	private Lane startFlushers(Pool<Jedis> pool) {
+		Lane lane = new Lane();
+		for (int i = 0; i < flushers; i++) {
+			THREAD_FACTORY.newThread(() -> flushLoop(pool, lane)).start();
+		}
+		return lane;
+	}
+	
+	private void flushLoop(Pool<Jedis> pool, Lane lane) {
+		LinkedBlockingQueue<Command<?>> queue = lane.queue;
+		List<Command<?>> batch = new ArrayList<>(maxBatch);
+		while (!lane.stopped && !Thread.currentThread().isInterrupted()) {
+			try {
+				Command<?> first = queue.poll(1L, TimeUnit.SECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, maxBatch - 1);
+				if (windowNanos > 0) {
+					long deadline = System.nanoTime() + windowNanos;
+					while (batch.size() < maxBatch) {
+						long remaining = deadline - System.nanoTime();
+						if (remaining <= 0) {
+							break;
+						}
+						Command<?> cmd = queue.poll(remaining, TimeUnit.NANOSECONDS);
+						if (cmd == null) {
+							break;
+						}
+						batch.add(cmd);
+						queue.drainTo(batch, maxBatch - batch.size());
+					}
+				}
+				flush(pool, batch);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Throwable e) {
+				log.error("Auto pipeline flush failed", e);
+			} finally {
+				batch.clear();
+			}
+		}
+		/*
+		 * 节点已经不是master了, 队列里剩下的命令按新的slot映射重新路由
+		 */
+		Command<?> cmd;
+		while ((cmd = queue.poll()) != null) {
+			enqueue(cmd);
+		}
+	}
+	
+	private void flush(Pool<Jedis> pool, List<Command<?>> batch) {
+		List<Response<?>> responses = new ArrayList<>(batch.size());
+		try (Jedis jedis = pool.getResource()) {
+			Pipeline pipeline = jedis.pipelined();
+			for (Command<?> cmd : batch) {
+				responses.add(cmd.command.apply(pipeline));
+			}
+			pipeline.sync();
+		} catch (Throwable e) {
+			/*
+			 * 连接层面的异常, 这一批都失败
+			 */
+			for (Command<?> cmd : batch) {
+				cmd.future.completeExceptionally(e);
+			}
+			return;
+		}
+		
+		boolean moved = false;
+		Map<HostAndPort, List<Command<?>>> asks = new LinkedHashMap<>();
+		for (int i = 0; i < batch.size(); i++) {
+			Command<?> cmd = batch.get(i);
+			try {
+				cmd.complete(responses.get(i));
+			} catch (JedisMovedDataException e) {
+				if (cmd.redirects++ < MAX_REDIRECTS) {
+					if (!moved) {
+						refresh();
+						moved = true;
+					}
+					enqueue(cmd);
+				} else {
+					cmd.future.completeExceptionally(e);
+				}
+			} catch (JedisAskDataException e) {
+				if (cmd.redirects++ < MAX_REDIRECTS) {
+					asks.computeIfAbsent(e.getTargetNode(), x -> new ArrayList<>()).add(cmd);
+				} else {
+					cmd.future.completeExceptionally(e);
+				}
+			} catch (Throwable e) {
+				cmd.future.completeExceptionally(e);
+			}
+		}
+		asks.forEach(this::ask);
+	}
+	
+	/**
+	 * slot正在迁移, key已经到了目标节点: 每条命令前先发ASKING, 只对紧跟着的一条命令有效, 不改slot映射。
+	 * ASK只在迁移期间出现, 逐条发就行
+	 */
+	private void ask(HostAndPort node, List<Command<?>> commands) {
+		try (Jedis jedis = router.node(node).getResource()) {
+			for (Command<?> cmd : commands) {
+				jedis.asking();
+				Pipeline pipeline = jedis.pipelined();
+				Response<?> response = cmd.command.apply(pipeline);
+				pipeline.sync();
+				try {
+					cmd.complete(response);
+				} catch (JedisMovedDataException e) {
+					/*
+					 * 迁移已经完成了
+					 */
+					if (cmd.redirects++ < MAX_REDIRECTS) {
+						refresh();
+						enqueue(cmd);
+					} else {
+						cmd.future.completeExceptionally(e);
+					}
+				} catch (Throwable e) {
+					cmd.future.completeExceptionally(e);
+				}
+			}
+		} catch (Throwable e) {
+			for (Command<?> cmd : commands) {
+				cmd.future.completeExceptionally(e);
+			}
+		}
+	}
+	
+	/**
+	 * 重新拉取slot映射, 不再是master的节点的队列标记为停止, 它的flusher线程把剩下的命令重新路由之后退出
+	 */
+	private void refresh() {
+		if (router == null) {
+			return;
+		}
+		router.refresh();
+		Set<Pool<Jedis>> masters = new HashSet<>(router.masters());
+		lanes.forEach((target, lane) -> {
+			if (!masters.contains(target) && lanes.remove(target, lane)) {
+				lane.stopped = true;
+				log.info("Node is no longer a master, stop its auto pipeline flushers");
+			}
+		});
+	}
+	
+	/**
+	 * 一个连接池的命令队列和它的flusher线程
+	 */
+	private static class Lane {
+		
+		private final LinkedBlockingQueue<Command<?>> queue = new LinkedBlockingQueue<>();
+		
+		private volatile boolean stopped = false;
+	}
+	
+	private static class Command<R> {
+		
+		private final byte[] key;
+		
+		private final Function<Pipeline, Response<R>> command;
+		
+		private final CompletableFuture<R> future = new CompletableFuture<>();
+		
+		private int redirects = 0;
+		
+		private Command(byte[] key, Function<Pipeline, Response<R>> command) {
+			this.key = key;
+			this.command = command;
+		}
+		
+		private void complete(Response<?> response) {
+			@SuppressWarnings("unchecked")
+			R result = (R) response.get();
+			future.complete(result);
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package com.loserico.cache.pipeline;
+
+import com.loserico.cache.exception.JedisException;
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Cluster模式下的批量读写
+ * <p>
+ * MGET/MSET要求所有key在同一个slot, 否则报CROSSSLOT。这里先按slot分组, 每组一条MGET/MSET,
+ * 再把同一个master上的所有组放进一个pipeline, 各个master并行执行, 最后按原来的顺序拼回结果。
+ * 5000个key分布在3个master上, 就是3次并行的网络往返
+ * <p>
+ * 某个节点的pipeline碰到MOVED/ASK或者连接异常, 刷新slot映射, 这个节点上的组退回到JedisCluster逐组执行,
+ * 由JedisCluster自己处理重定向
+ * <p>
+ * Copyright: (C), 2021-03-07 10:26
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Slf4j
+public class ClusterBulkExecutor {
+	
+	private final JedisCluster jedisCluster;
+	
+	private final ClusterSlotRouter router;
+	
+	private final ExecutorService executor;
+	
+	public ClusterBulkExecutor(JedisCluster jedisCluster, ClusterSlotRouter router, ExecutorService executor) {
+		this.jedisCluster = jedisCluster;
+		this.router = router;
+		this.executor = executor;
+	}
+	
+	/**
+	 * @param keys
+	 * @return List<byte[]> 和keys一一对应, 不存在的key对应null
+	 */
+	public List<byte[]> mget(byte[]... keys) {
+		byte[][] values = new byte[keys.length][];
+		execute(keys, 1, new SlotBatch<List<byte[]>>() {
+			
+			@Override
+			public Response<List<byte[]>> pipelined(Pipeline pipeline, List<Integer> indexes) {
+				return pipeline.mget(keysOf(indexes));
+			}
+			
+			@Override
+			public List<byte[]> direct(List<Integer> indexes) {
+				return jedisCluster.mget(keysOf(indexes));
+			}
+			
+			@Override
+			public void collect(List<Integer> indexes, List<byte[]> result) {
+				for (int i = 0; i < indexes.size(); i++) {
+					values[indexes.get(i)] = result.get(i);
+				}
+			}
+			
+			private byte[][] keysOf(List<Integer> indexes) {
+				byte[][] slotKeys = new byte[indexes.size()][];
+				for (int i = 0; i < indexes.size(); i++) {
+					slotKeys[i] = keys[indexes.get(i)];
+				}
+				return slotKeys;
+			}
+		});
+		return Arrays.asList(values);
+	}
+	
+	/**
+	 * @param keysvalues key1, value1, key2, value2 ...
+	 */
+	public void mset(byte[]... keysvalues) {
+		execute(keysvalues, 2, new SlotBatch<String>() {
+			
+			@Override
+			public Response<String> pipelined(Pipeline pipeline, List<Integer> indexes) {
+				return pipeline.mset(keysValuesOf(indexes));
+			}
+			
+			@Override
+			public String direct(List<Integer> indexes) {
+				return jedisCluster.mset(keysValuesOf(indexes));
+			}
+			
+			@Override
+			public void collect(List<Integer> indexes, String result) {
+			}
+			
+			private byte[][] keysValuesOf(List<Integer> indexes) {
+				byte[][] slotKeysValues = new byte[indexes.size() * 2][];
+				for (int i = 0; i < indexes.size(); i++) {
+					slotKeysValues[2 * i] = keysvalues[indexes.get(i)];
+					slotKeysValues[2 * i + 1] = keysvalues[indexes.get(i) + 1];
+				}
+				return slotKeysValues;
+			}
+		});
+	}
+	
+	/**
+	 * @param keys  key所在的数组
+	 * @param step  相邻两个key的间隔, mget是1, mset是2
+	 * @param batch 每个slot组怎么执行
+	 */
+	private <R> void execute(byte[][] keys, int step, SlotBatch<R> batch) {
+		Map<JedisPool, List<List<Integer>>> nodes = groupByNode(keys, step);
+		if (nodes.size() == 1) {
+			Map.Entry<JedisPool, List<List<Integer>>> node = nodes.entrySet().iterator().next();
+			executeOnNode(node.getKey(), node.getValue(), batch);
+			return;
+		}
+		
+		List<CompletableFuture<Void>> futures = new ArrayList<>(nodes.size());
+		for (Map.Entry<JedisPool, List<List<Integer>>> node : nodes.entrySet()) {
+			futures.add(CompletableFuture.runAsync(() -> executeOnNode(node.getKey(), node.getValue(), batch), executor));
+		}
+		try {
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new JedisException(e.getCause());
+		}
+	}
+	
+	/**
+	 * 一个master上的所有slot组放进同一个pipeline
+	 * <p>
+	 * collect是按slot组分别写结果数组的不同位置, 各个节点并行执行也不会互相覆盖
+	 */
+	private <R> void executeOnNode(JedisPool pool, List<List<Integer>> slotGroups, SlotBatch<R> batch) {
+		try (Jedis jedis = pool.getResource()) {
+			Pipeline pipeline = jedis.pipelined();
+			List<Response<R>> responses = new ArrayList<>(slotGroups.size());
+			for (List<Integer> indexes : slotGroups) {
+				responses.add(batch.pipelined(pipeline, indexes));
+			}
+			pipeline.sync();
+			for (int i = 0; i < slotGroups.size(); i++) {
+				batch.collect(slotGroups.get(i), responses.get(i).get());
+			}
+			return;
+		} catch (JedisMovedDataException | JedisAskDataException | JedisConnectionException e) {
+			log.warn("Cluster topology changed during bulk operation, fall back to JedisCluster", e);
+			router.refresh();
+		}
+		
+		for (List<Integer> indexes : slotGroups) {
+			batch.collect(indexes, batch.direct(indexes));
+		}
+	}
+	
+	/**
+	 * 先按slot分组, 再按slot所在的master分组, 组内保持key原来的相对顺序
+	 */
+	private Map<JedisPool, List<List<Integer>>> groupByNode(byte[][] keys, int step) {
+		Map<Integer, List<Integer>> slots = new LinkedHashMap<>();
+		for (int i = 0; i < keys.length; i += step) {
+			slots.computeIfAbsent(ClusterSlotRouter.slot(keys[i]), slot -> new ArrayList<>()).add(i);
+		}
+		
+		Map<JedisPool, List<List<Integer>>> nodes = new HashMap<>();
+		for (List<Integer> indexes : slots.values()) {
+			JedisPool pool = router.route(keys[indexes.get(0)]);
+			nodes.computeIfAbsent(pool, node -> new ArrayList<>()).add(indexes);
+		}
+		return nodes;
+	}
+	
+	/**
+	 * 一个slot组的执行方式
+	 *
+	 * @param <R> 一条命令的返回值
+	 */
+	private interface SlotBatch<R> {
+		
+		/**
+		 * 把这个slot组的命令追加到pipeline
+		 */
+		Response<R> pipelined(Pipeline pipeline, List<Integer> indexes);
+		
+		/**
+		 * pipeline失败后通过JedisCluster执行
+		 */
+		R direct(List<Integer> indexes);
+		
+		/**
+		 * 把这个slot组的结果放回原来的位置
+		 */
+		void collect(List<Integer> indexes, R result);
+	}
+}
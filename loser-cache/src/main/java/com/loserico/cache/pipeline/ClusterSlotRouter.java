@@ -0,0 +1,129 @@
+package com.loserico.cache.pipeline;
+
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisClusterException;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 根据key算出slot, 再找到负责这个slot的master节点的JedisPool
+ * <p>
+ * JedisCluster内部的slot缓存不是public的, 所以这里用CLUSTER SLOTS自己维护一份,
+ * 碰到MOVED的时候调用refresh()重新拉取; ASK只是slot迁移中的临时重定向, 用node()找到目标节点, 不刷新
+ * <p>
+ * Copyright: (C), 2021-03-05 14:12
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Slf4j
+public class ClusterSlotRouter {
+	
+	public static final int SLOTS = 16384;
+	
+	private final JedisCluster jedisCluster;
+	
+	private volatile JedisPool[] slots = new JedisPool[SLOTS];
+	
+	public ClusterSlotRouter(JedisCluster jedisCluster) {
+		this.jedisCluster = jedisCluster;
+		refresh();
+	}
+	
+	public static int slot(byte[] key) {
+		return JedisClusterCRC16.getSlot(key);
+	}
+	
+	/**
+	 * 返回负责这个key的master节点的连接池
+	 *
+	 * @param key
+	 * @return JedisPool
+	 */
+	public JedisPool route(byte[] key) {
+		JedisPool pool = slots[slot(key)];
+		if (pool == null) {
+			refresh();
+			pool = slots[slot(key)];
+		}
+		if (pool == null) {
+			throw new JedisClusterException("No reachable node for slot " + slot(key));
+		}
+		return pool;
+	}
+	
+	/**
+	 * 返回某个节点的连接池, 处理ASK重定向用
+	 *
+	 * @param node ASK的目标节点
+	 * @return JedisPool
+	 */
+	public JedisPool node(HostAndPort node) {
+		JedisPool pool = jedisCluster.getClusterNodes().get(node.getHost() + ":" + node.getPort());
+		if (pool == null) {
+			throw new JedisClusterException("Unknown cluster node " + node);
+		}
+		return pool;
+	}
+	
+	/**
+	 * 当前所有负责slot的master节点的连接池
+	 *
+	 * @return List<JedisPool> 不重复
+	 */
+	public List<JedisPool> masters() {
+		Set<JedisPool> masters = new LinkedHashSet<>();
+		for (JedisPool pool : slots) {
+			if (pool != null) {
+				masters.add(pool);
+			}
+		}
+		return new ArrayList<>(masters);
+	}
+	
+	/**
+	 * 从任意一个可用节点拉取CLUSTER SLOTS, 重建slot -> JedisPool映射
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized void refresh() {
+		Map<String, JedisPool> nodes = jedisCluster.getClusterNodes();
+		for (JedisPool nodePool : nodes.values()) {
+			try (Jedis jedis = nodePool.getResource()) {
+				List<Object> ranges = jedis.clusterSlots();
+				JedisPool[] newSlots = new JedisPool[SLOTS];
+				for (Object range : ranges) {
+					List<Object> slotInfo = (List<Object>) range;
+					int start = ((Long) slotInfo.get(0)).intValue();
+					int end = ((Long) slotInfo.get(1)).intValue();
+					List<Object> master = (List<Object>) slotInfo.get(2);
+					String node = SafeEncoder.encode((byte[]) master.get(0)) + ":" + master.get(1);
+					/*
+					 * 新加入的节点JedisCluster可能还没感知到, 这时是null, route()的时候会再刷新
+					 */
+					JedisPool masterPool = nodes.get(node);
+					for (int slot = start; slot <= end; slot++) {
+						newSlots[slot] = masterPool;
+					}
+				}
+				this.slots = newSlots;
+				return;
+			} catch (Exception e) {
+				log.warn("Refresh cluster slots from node failed, try next one", e);
+			}
+		}
+		log.error("Refresh cluster slots failed, no reachable node");
+	}
+}
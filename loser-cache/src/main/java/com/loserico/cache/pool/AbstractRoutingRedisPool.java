@@ -1,19 +1,46 @@
 package com.loserico.cache.pool;
 
+import com.loserico.cache.concurrent.ThreadPool;
 import com.loserico.cache.config.RedisProperties;
+import com.loserico.cache.exception.JedisException;
 import com.loserico.cache.factory.JedisPoolFactories;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import redis.clients.util.Pool;
 
 import javax.annotation.PostConstruct;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiFunction;
 
 /**
  * 可动态切换的Jedis Pool
  * <p>
+ * 两种模式:
+ * <ul>
+ * <li>默认按线程上下文里的lookup key选一个Pool, 见 {@link #determineTargetPool()}
+ * <li>sharded=true时, 一个keyspace按一致性hash分散到targetPools里的多个单节点Redis上, 见 {@link #determineTargetPool(String)};
+ * 批量操作用 {@link #executeSharded(List, BiFunction)} 按分片拆开并行执行
+ * </ul>
+ * JedisUtils和JedisOperations不经过这个Pool, 分片模式下的多key命令只能由调用方自己通过executeSharded执行,
+ * 直接在某个分片的连接上执行mget/mset只会读写这个分片上的key
+ * <p>
+ * targetPools是ConcurrentHashMap, addShard/removeShard和路由可以并发进行
+ * <p>
  * Copyright: Copyright (c) 2019-10-17 14:12
  * <p>
  * Company: Sexy Uncle Inc.
@@ -34,7 +61,7 @@ public abstract class AbstractRoutingRedisPool<T> extends Pool<T> {
 	/**
 	 * 以JedisPool名字为key, Pool实例为value存储, 方便根据名字取出对应的实例
 	 */
-	private Map<Object, Pool<T>> targetPools = new HashMap<>();
+	private Map<Object, Pool<T>> targetPools = new ConcurrentHashMap<>();
 
 	/**
 	 * 以JedisPool名字为key, 对应Pool的配置属性为value
@@ -51,6 +78,28 @@ public abstract class AbstractRoutingRedisPool<T> extends Pool<T> {
 	 */
 	private String defaultTargetPoolName;
 
+	/**
+	 * 是否按key的一致性hash在targetPools之间分片
+	 */
+	private boolean sharded = false;
+
+	/**
+	 * 分片模式下每个Pool在hash环上放几个虚拟节点
+	 */
+	private int virtualNodes = ConsistentHashRing.DEFAULT_VIRTUAL_NODES;
+
+	/**
+	 * 第一次分片路由的时候按targetPools建, 增删分片时整个换掉
+	 */
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private volatile ConsistentHashRing<Pool<T>> ring;
+
+	/**
+	 * 批量操作各个分片并行执行用的线程池
+	 */
+	private static final ExecutorService SHARD_THREAD_POOL = ThreadPool.newThreadPool();
+
 	/**
 	 * Specify whether to apply a lenient fallback to the default Pool
 	 * if no specific Pool could be found for the current lookup key.
@@ -69,6 +118,15 @@ public abstract class AbstractRoutingRedisPool<T> extends Pool<T> {
 		this.lenientFallback = lenientFallback;
 	}
 
+	/**
+	 * 复制一份到ConcurrentHashMap里, 传进来的Map之后再改不影响路由
+	 *
+	 * @param targetPools
+	 */
+	public void setTargetPools(Map<Object, Pool<T>> targetPools) {
+		this.targetPools = new ConcurrentHashMap<>(targetPools);
+	}
+
 	/**
 	 * Determine the current lookup key. This will typically be implemented to check a thread-bound
 	 * transaction context.
@@ -93,7 +151,7 @@ public abstract class AbstractRoutingRedisPool<T> extends Pool<T> {
 		Object lookupKey = determineCurrentLookupKey();
 		log.info("Current redis pool {}", lookupKey);
 
-		Pool<T> pool = this.targetPools.get(lookupKey);
+		Pool<T> pool = lookupKey == null ? null : this.targetPools.get(lookupKey);
 
 		/**
 		 * 找不到指定的JedisPool时, 决定是否取默认的一个JedisPool作为备胎
@@ -111,6 +169,130 @@ public abstract class AbstractRoutingRedisPool<T> extends Pool<T> {
 	}
 
 
+	/**
+	 * 分片模式下返回key所在分片的Pool, 否则和 {@link #determineTargetPool()} 一样
+	 *
+	 * @param key redis key, 有 {hashtag} 的只按hashtag路由
+	 * @return Pool<T>
+	 */
+	public Pool<T> determineTargetPool(String key) {
+		if (!sharded) {
+			return determineTargetPool();
+		}
+		return ring().route(key);
+	}
+
+	/**
+	 * 多key操作按分片拆开, 每个分片借一个连接并行执行, 结果按keys原来的顺序拼回来
+	 * <p>
+	 * 不是分片模式就在当前Pool上执行一次
+	 *
+	 * @param keys
+	 * @param operation (连接, 这个分片上的key) -> 和这些key一一对应的结果
+	 * @return List<R> 和keys一一对应
+	 */
+	@SuppressWarnings("unchecked")
+	public <R> List<R> executeSharded(List<String> keys, BiFunction<T, List<String>, List<R>> operation) {
+		if (!sharded) {
+			return execute(determineTargetPool(), keys, operation);
+		}
+		ConsistentHashRing<Pool<T>> currentRing = ring();
+		Map<String, List<Integer>> indexesByShard = new LinkedHashMap<>();
+		for (int i = 0; i < keys.size(); i++) {
+			indexesByShard.computeIfAbsent(currentRing.routeName(keys.get(i)), x -> new ArrayList<>()).add(i);
+		}
+		if (indexesByShard.size() == 1) {
+			return execute(currentRing.nodes().get(indexesByShard.keySet().iterator().next()), keys, operation);
+		}
+
+		Map<String, CompletableFuture<List<R>>> futures = new LinkedHashMap<>();
+		indexesByShard.forEach((shard, indexes) -> {
+			List<String> shardKeys = new ArrayList<>(indexes.size());
+			for (Integer index : indexes) {
+				shardKeys.add(keys.get(index));
+			}
+			Pool<T> pool = currentRing.nodes().get(shard);
+			futures.put(shard, CompletableFuture.supplyAsync(() -> execute(pool, shardKeys, operation), SHARD_THREAD_POOL));
+		});
+		Object[] results = new Object[keys.size()];
+		futures.forEach((shard, future) -> {
+			List<R> shardResults = join(future);
+			List<Integer> indexes = indexesByShard.get(shard);
+			for (int i = 0; i < indexes.size(); i++) {
+				results[indexes.get(i)] = shardResults.get(i);
+			}
+		});
+		return (List<R>) Arrays.asList(results);
+	}
+
+	/**
+	 * 加一个分片, 只有大约1/N的key会路由到新分片上, 这些key的数据要调用方自己迁移
+	 *
+	 * @param name
+	 * @param pool
+	 */
+	public synchronized void addShard(String name, Pool<T> pool) {
+		String shard = name.toLowerCase();
+		targetPools.put(shard, pool);
+		ring = ring().add(shard, pool);
+		log.info("Added redis shard {}, {} shards now", shard, ring.nodes().size());
+	}
+
+	/**
+	 * 去掉一个分片, 原来在它上面的key路由到环上的下一个分片
+	 *
+	 * @param name
+	 * @return 去掉的Pool, 由调用方关闭
+	 */
+	public synchronized Pool<T> removeShard(String name) {
+		String shard = name.toLowerCase();
+		Pool<T> pool = targetPools.remove(shard);
+		ring = ring().remove(shard);
+		log.info("Removed redis shard {}, {} shards now", shard, ring.nodes().size());
+		return pool;
+	}
+
+	private ConsistentHashRing<Pool<T>> ring() {
+		if (ring == null) {
+			synchronized (this) {
+				if (ring == null) {
+					Map<String, Pool<T>> shards = new LinkedHashMap<>();
+					targetPools.forEach((name, pool) -> shards.put(String.valueOf(name), pool));
+					ring = new ConsistentHashRing<>(shards, virtualNodes);
+				}
+			}
+		}
+		return ring;
+	}
+
+	private static <T, R> List<R> execute(Pool<T> pool, List<String> keys, BiFunction<T, List<String>, List<R>> operation) {
+		T resource = pool.getResource();
+		try {
+			return operation.apply(resource, keys);
+		} finally {
+			if (resource instanceof Closeable) {
+				try {
+					((Closeable) resource).close();
+				} catch (IOException e) {
+					log.warn("Return resource to pool failed", e);
+				}
+			} else {
+				pool.returnResourceObject(resource);
+			}
+		}
+	}
+
+	private static <R> List<R> join(CompletableFuture<List<R>> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new JedisException(e.getCause());
+		}
+	}
+
 	@PostConstruct
 	public void init() {
 		if (redisPropertiesMap != null && !redisPropertiesMap.isEmpty()) {
@@ -0,0 +1,128 @@
+package com.loserico.cache.pool;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 带虚拟节点的一致性hash环, 不可变, 增删节点返回一个新的环
+ * <p>
+ * 每个节点在环上放virtualNodes个点, key落在顺时针方向遇到的第一个点所属的节点上。
+ * 增加第N个节点只有大约1/N的key换节点, 删除一个节点只影响原来在它上面的key
+ * <p>
+ * key里有 {hashtag} 的只对hashtag算hash, 和Redis Cluster一样, 批量操作相关的key可以放到同一个节点上
+ * <p>
+ * Copyright: (C), 2021-03-15 09:20
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public final class ConsistentHashRing<T> {
+	
+	public static final int DEFAULT_VIRTUAL_NODES = 160;
+	
+	private static final HashFunction MURMUR3 = Hashing.murmur3_128();
+	
+	private final int virtualNodes;
+	
+	/**
+	 * 节点名字 -> 节点
+	 */
+	private final Map<String, T> nodes;
+	
+	/**
+	 * 虚拟节点的hash -> 节点名字
+	 */
+	private final NavigableMap<Long, String> ring = new TreeMap<>();
+	
+	/**
+	 * @param nodes        节点名字 -> 节点, 名字决定节点在环上的位置, 同一个节点换了地址名字不变key就不会迁移
+	 * @param virtualNodes 每个节点在环上放几个点, 越多分布越均匀
+	 */
+	public ConsistentHashRing(Map<String, T> nodes, int virtualNodes) {
+		if (nodes.isEmpty()) {
+			throw new IllegalArgumentException("nodes cannot be empty");
+		}
+		this.virtualNodes = virtualNodes;
+		this.nodes = Collections.unmodifiableMap(new LinkedHashMap<>(nodes));
+		for (String name : nodes.keySet()) {
+			for (int i = 0; i < virtualNodes; i++) {
+				ring.put(hash((name + "#" + i).getBytes(UTF_8)), name);
+			}
+		}
+	}
+	
+	public ConsistentHashRing(Map<String, T> nodes) {
+		this(nodes, DEFAULT_VIRTUAL_NODES);
+	}
+	
+	/**
+	 * @param key
+	 * @return key所在的节点
+	 */
+	public T route(String key) {
+		return nodes.get(routeName(key));
+	}
+	
+	/**
+	 * @param key
+	 * @return key所在节点的名字
+	 */
+	public String routeName(String key) {
+		Map.Entry<Long, String> entry = ring.ceilingEntry(hash(hashTag(key).getBytes(UTF_8)));
+		return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+	}
+	
+	/**
+	 * @return 节点名字 -> 节点, 不可修改
+	 */
+	public Map<String, T> nodes() {
+		return nodes;
+	}
+	
+	/**
+	 * @return 加了一个节点的新环, 已经有同名节点则替换
+	 */
+	public ConsistentHashRing<T> add(String name, T node) {
+		Map<String, T> newNodes = new LinkedHashMap<>(nodes);
+		newNodes.put(name, node);
+		return new ConsistentHashRing<>(newNodes, virtualNodes);
+	}
+	
+	/**
+	 * @return 去掉一个节点的新环
+	 */
+	public ConsistentHashRing<T> remove(String name) {
+		Map<String, T> newNodes = new LinkedHashMap<>(nodes);
+		newNodes.remove(name);
+		return new ConsistentHashRing<>(newNodes, virtualNodes);
+	}
+	
+	private static long hash(byte[] data) {
+		return MURMUR3.hashBytes(data).asLong();
+	}
+	
+	/**
+	 * 和Redis Cluster的规则一样: 第一个{和它后面第一个}之间不为空才算hashtag
+	 */
+	static String hashTag(String key) {
+		int start = key.indexOf('{');
+		if (start != -1) {
+			int end = key.indexOf('}', start + 1);
+			if (end > start + 1) {
+				return key.substring(start + 1, end);
+			}
+		}
+		return key;
+	}
+}
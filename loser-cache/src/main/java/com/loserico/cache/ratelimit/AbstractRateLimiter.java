@@ -0,0 +1,139 @@
+package com.loserico.cache.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.loserico.cache.JedisUtils;
+import com.loserico.cache.utils.KeyUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * 三种限流算法共用的部分
+ * <p>
+ * 每次判断都是一个lua脚本, 脚本的sha由JedisUtils.evalScript按路径缓存, 只加载一次
+ * <p>
+ * 判断用的当前时间在脚本里用TIME取Redis服务器的时间, 多个JVM之间时钟不一致不会让限流变松或变紧;
+ * JVM自己的时钟只用在本地预检上
+ * <p>
+ * 本地预检: 一个key被拒绝的时候脚本会顺带返回还要等多久, 这段时间内同一个key在本JVM里直接拒绝, 不再访问Redis。
+ * 网关被刷的时候绝大部分请求都是要被拒绝的, 这样只有第一次拒绝需要网络往返
+ * <p>
+ * Copyright: (C), 2021-03-12 09:48
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public abstract class AbstractRateLimiter implements RateLimiter {
+	
+	/**
+	 * loser:ratelimit:算法:key, 不同算法的数据结构不一样, 不能共用一个key
+	 */
+	private static final String KEY_FORMAT = "loser:ratelimit:%s:%s";
+	
+	private final String script;
+	
+	private final String algorithm;
+	
+	/**
+	 * key -> 本地直接拒绝到什么时候, 为null表示不开启本地预检
+	 */
+	private final Cache<String, Long> blockedUntil;
+	
+	/**
+	 * @param script        lua脚本路径
+	 * @param algorithm     算法名, 作为key的一部分
+	 * @param localPreCheck 是否开启本地预检
+	 * @param maxWaitMillis 被拒绝之后最长要等多久, 本地预检的记录最多保留这么久
+	 */
+	protected AbstractRateLimiter(String script, String algorithm, boolean localPreCheck, long maxWaitMillis) {
+		this.script = script;
+		this.algorithm = algorithm;
+		this.blockedUntil = localPreCheck ? Caffeine.newBuilder()
+				.maximumSize(100000)
+				.expireAfterWrite(Math.max(1L, maxWaitMillis), MILLISECONDS)
+				.build() : null;
+	}
+	
+	@Override
+	public boolean tryAcquire(String key) {
+		KeyUtils.requireNonBlank(key);
+		long now = System.currentTimeMillis();
+		if (locallyBlocked(key, now)) {
+			return false;
+		}
+		Long result = JedisUtils.evalScript(script, 1, params(redisKey(key)));
+		return allowed(key, now, result);
+	}
+	
+	@Override
+	public List<Boolean> tryAcquire(String... keys) {
+		Boolean[] results = new Boolean[keys.length];
+		List<Integer> remoteIndexes = new ArrayList<>(keys.length);
+		List<Object[]> paramsList = new ArrayList<>(keys.length);
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < keys.length; i++) {
+			KeyUtils.requireNonBlank(keys[i]);
+			if (locallyBlocked(keys[i], now)) {
+				results[i] = false;
+			} else {
+				remoteIndexes.add(i);
+				paramsList.add(params(redisKey(keys[i])));
+			}
+		}
+		
+		if (!paramsList.isEmpty()) {
+			List<Object> remoteResults = JedisUtils.evalScriptPipelined(script, 1, paramsList);
+			for (int i = 0; i < remoteIndexes.size(); i++) {
+				Object result = remoteResults.get(i);
+				if (result instanceof RuntimeException) {
+					throw (RuntimeException) result;
+				}
+				int index = remoteIndexes.get(i);
+				results[index] = allowed(keys[index], now, (Long) result);
+			}
+		}
+		return Arrays.asList(results);
+	}
+	
+	/**
+	 * @param redisKey 加了前缀的key
+	 * @return 脚本的 KEYS 和 ARGV, 只有一个key
+	 */
+	protected abstract Object[] params(String redisKey);
+	
+	/**
+	 * @param result 脚本返回值
+	 * @return 0表示通过, 大于0表示被拒绝, 是还要等多少毫秒
+	 */
+	protected abstract long waitMillis(long result);
+	
+	private boolean allowed(String key, long now, Long result) {
+		long waitMillis = waitMillis(result);
+		if (waitMillis == 0) {
+			return true;
+		}
+		if (blockedUntil != null) {
+			blockedUntil.put(key, now + waitMillis);
+		}
+		return false;
+	}
+	
+	private boolean locallyBlocked(String key, long now) {
+		if (blockedUntil == null) {
+			return false;
+		}
+		Long until = blockedUntil.getIfPresent(key);
+		return until != null && until > now;
+	}
+	
+	private String redisKey(String key) {
+		return String.format(KEY_FORMAT, algorithm, key);
+	}
+}
@@ -0,0 +1,61 @@
+package com.loserico.cache.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 固定窗口限流, 基于 rateLimit.lua
+ * <p>
+ * 第一次请求开始计时, 一个窗口内最多limit次, 窗口结束计数清零。实现最简单, 只有一个计数器,
+ * 缺点是两个窗口交界处短时间内最多可以通过2*limit次
+ * <p>
+ * Copyright: (C), 2021-03-12 10:02
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class FixedWindowRateLimiter extends AbstractRateLimiter {
+	
+	private static final String SCRIPT = "/lua-scripts/rateLimit.lua";
+	
+	private final long limit;
+	
+	private final long windowSeconds;
+	
+	public FixedWindowRateLimiter(long limit, long window, TimeUnit timeUnit) {
+		this(limit, window, timeUnit, true);
+	}
+	
+	/**
+	 * @param limit         一个窗口内最多允许多少次
+	 * @param window        窗口长度, 最小1秒
+	 * @param timeUnit
+	 * @param localPreCheck 被拒绝之后到窗口结束之前, 同一个key在本地直接拒绝
+	 */
+	public FixedWindowRateLimiter(long limit, long window, TimeUnit timeUnit, boolean localPreCheck) {
+		super(SCRIPT, "fixed", localPreCheck, timeUnit.toMillis(window));
+		if (limit <= 0) {
+			throw new IllegalArgumentException("limit must be positive");
+		}
+		this.limit = limit;
+		this.windowSeconds = Math.max(1L, timeUnit.toSeconds(window));
+	}
+	
+	@Override
+	protected Object[] params(String redisKey) {
+		return new Object[]{redisKey, windowSeconds, limit};
+	}
+	
+	/**
+	 * 1表示通过, 负数的绝对值是离窗口结束还有多少毫秒; 0是key没有过期时间这种异常情况, 不做本地预检
+	 */
+	@Override
+	protected long waitMillis(long result) {
+		if (result == 1) {
+			return 0;
+		}
+		return result < 0 ? -result : 1;
+	}
+}
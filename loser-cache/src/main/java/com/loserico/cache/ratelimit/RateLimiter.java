@@ -0,0 +1,41 @@
+package com.loserico.cache.ratelimit;
+
+import java.util.List;
+
+/**
+ * 基于Redis的分布式限流器
+ * <p>
+ * key是限流的维度, 比如 用户ID, 接口路径, 用户ID+接口路径; 同一个RateLimiter对象上不同的key各自计数
+ * <pre>
+ * RateLimiter limiter = JedisUtils.tokenBucketLimiter(100, 1, TimeUnit.SECONDS, 200);
+ * if (!limiter.tryAcquire("api:" + userId)) {
+ *     return tooManyRequests();
+ * }
+ * </pre>
+ * <p>
+ * Copyright: (C), 2021-03-12 09:40
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public interface RateLimiter {
+	
+	/**
+	 * 拿一个许可, 拿不到立即返回false, 不等待
+	 *
+	 * @param key 限流的维度
+	 * @return boolean
+	 */
+	boolean tryAcquire(String key);
+	
+	/**
+	 * 每个key各拿一个许可, 单节点/Sentinel模式下一次网络往返
+	 *
+	 * @param keys
+	 * @return List<Boolean> 和keys一一对应
+	 */
+	List<Boolean> tryAcquire(String... keys);
+}
@@ -0,0 +1,59 @@
+package com.loserico.cache.ratelimit;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 滑动日志限流, 基于 slidingLogRateLimit.lua
+ * <p>
+ * 每次通过在zset里记一条日志, 判断的时候只统计最近一个窗口内的日志, 任意一个窗口长度的时间段内都不会超过limit次。
+ * 精确, 但是每个key要保存limit条日志, limit很大的时候占内存
+ * <p>
+ * Copyright: (C), 2021-03-12 10:10
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class SlidingLogRateLimiter extends AbstractRateLimiter {
+	
+	private static final String SCRIPT = "/lua-scripts/slidingLogRateLimit.lua";
+	
+	private final long limit;
+	
+	private final long windowMillis;
+	
+	public SlidingLogRateLimiter(long limit, long window, TimeUnit timeUnit) {
+		this(limit, window, timeUnit, true);
+	}
+	
+	/**
+	 * @param limit         任意一个窗口内最多允许多少次
+	 * @param window        窗口长度
+	 * @param timeUnit
+	 * @param localPreCheck 被拒绝之后到最早一条日志滑出窗口之前, 同一个key在本地直接拒绝
+	 */
+	public SlidingLogRateLimiter(long limit, long window, TimeUnit timeUnit, boolean localPreCheck) {
+		super(SCRIPT, "sliding", localPreCheck, timeUnit.toMillis(window));
+		if (limit <= 0) {
+			throw new IllegalArgumentException("limit must be positive");
+		}
+		this.limit = limit;
+		this.windowMillis = Math.max(1L, timeUnit.toMillis(window));
+	}
+	
+	/**
+	 * 同一毫秒可能有多次请求, 日志的成员要唯一
+	 */
+	@Override
+	protected Object[] params(String redisKey) {
+		return new Object[]{redisKey, windowMillis, limit, UUID.randomUUID().toString()};
+	}
+	
+	@Override
+	protected long waitMillis(long result) {
+		return result;
+	}
+}
@@ -0,0 +1,59 @@
+package com.loserico.cache.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶限流, 基于 gcraRateLimit.lua
+ * <p>
+ * 用GCRA(Generic Cell Rate Algorithm)实现: 不用真的往桶里放令牌, 每个key只记一个"理论到达时间", 一个字符串就够了。
+ * 平均每 period/rate 产生一个令牌, 桶里最多攒burst个, 允许短时间的突发
+ * <p>
+ * Copyright: (C), 2021-03-12 10:18
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class TokenBucketRateLimiter extends AbstractRateLimiter {
+	
+	private static final String SCRIPT = "/lua-scripts/gcraRateLimit.lua";
+	
+	/**
+	 * 产生一个令牌要多少毫秒, 可能是小数
+	 */
+	private final double intervalMillis;
+	
+	private final long burst;
+	
+	public TokenBucketRateLimiter(long rate, long period, TimeUnit timeUnit) {
+		this(rate, period, timeUnit, rate, true);
+	}
+	
+	/**
+	 * @param rate          每个period产生多少个令牌
+	 * @param period
+	 * @param timeUnit
+	 * @param burst         桶容量, 最多允许连续通过多少次
+	 * @param localPreCheck 令牌不够的时候, 到下一个令牌产生之前同一个key在本地直接拒绝
+	 */
+	public TokenBucketRateLimiter(long rate, long period, TimeUnit timeUnit, long burst, boolean localPreCheck) {
+		super(SCRIPT, "gcra", localPreCheck, timeUnit.toMillis(period));
+		if (rate <= 0 || burst <= 0) {
+			throw new IllegalArgumentException("rate and burst must be positive");
+		}
+		this.intervalMillis = (double) timeUnit.toMillis(period) / rate;
+		this.burst = burst;
+	}
+	
+	@Override
+	protected Object[] params(String redisKey) {
+		return new Object[]{redisKey, intervalMillis, burst, 1};
+	}
+	
+	@Override
+	protected long waitMillis(long result) {
+		return result;
+	}
+}
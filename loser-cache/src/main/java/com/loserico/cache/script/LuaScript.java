@@ -0,0 +1,36 @@
+package com.loserico.cache.script;
+
+import lombok.Getter;
+
+/**
+ * 一个lua脚本, 脚本内容和本地算出来的SHA1
+ * <p>
+ * Copyright: (C), 2021-03-16 11:05
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Getter
+public final class LuaScript {
+	
+	/**
+	 * 如 /lua-scripts/hash.lua
+	 */
+	private final String path;
+	
+	private final byte[] body;
+	
+	/**
+	 * 小写十六进制的SHA1, 和SCRIPT LOAD返回的一样
+	 */
+	private final byte[] sha1;
+	
+	LuaScript(String path, byte[] body) {
+		this.path = path;
+		this.body = body;
+		this.sha1 = LuaScriptRegistry.sha1(body);
+	}
+}
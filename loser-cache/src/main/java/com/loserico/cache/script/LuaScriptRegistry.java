@@ -0,0 +1,203 @@
+package com.loserico.cache.script;
+
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.loserico.cache.exception.JedisException;
+import com.loserico.cache.operations.JedisOperations;
+import com.loserico.common.lang.utils.IOUtils;
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * classpath下lua脚本的统一入口
+ * <p>
+ * 脚本的SHA1在本地计算, 不依赖SCRIPT LOAD的返回值; 启动时把 /lua-scripts/ 下所有脚本加载到每个master上
+ * <p>
+ * 执行时先EVALSHA, 碰到NOSCRIPT(主从切换, SCRIPT FLUSH, 新加了节点)这一次直接用EVAL带上脚本内容执行,
+ * 调用方感觉不到; 同时在后台把所有脚本重新加载到每个master上, 之后的调用又回到EVALSHA
+ * <p>
+ * Copyright: (C), 2021-03-16 11:10
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+@Slf4j
+public class LuaScriptRegistry {
+	
+	public static final String SCRIPT_DIR = "/lua-scripts/";
+	
+	private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+			.setNameFormat("loser-lua-loader-%d")
+			.setDaemon(true)
+			.build();
+	
+	private final JedisOperations jedisOperations;
+	
+	/**
+	 * 脚本路径 -> 脚本
+	 */
+	private final Map<String, LuaScript> scripts = new ConcurrentHashMap<>();
+	
+	/**
+	 * 同一时间只有一个后台重新加载任务
+	 */
+	private final AtomicBoolean reloading = new AtomicBoolean(false);
+	
+	public LuaScriptRegistry(JedisOperations jedisOperations) {
+		this.jedisOperations = jedisOperations;
+	}
+	
+	/**
+	 * 取脚本, 第一次取的时候从classpath读出来并计算SHA1
+	 *
+	 * @param luaPath 如 /lua-scripts/hash.lua
+	 * @return LuaScript
+	 */
+	public LuaScript script(String luaPath) {
+		LuaScript script = scripts.get(luaPath);
+		if (script == null) {
+			script = scripts.computeIfAbsent(luaPath, path -> new LuaScript(path, IOUtils.readClassPathFileAsBytes(path)));
+		}
+		return script;
+	}
+	
+	/**
+	 * EVALSHA, 碰到NOSCRIPT退回到EVAL并在后台重新加载所有脚本
+	 *
+	 * @param luaPath
+	 * @param keyCount
+	 * @param params   KEYS 和 ARGV
+	 * @return Object
+	 */
+	public Object eval(String luaPath, int keyCount, byte[]... params) {
+		LuaScript script = script(luaPath);
+		try {
+			return jedisOperations.evalsha(script.getSha1(), keyCount, params);
+		} catch (RuntimeException e) {
+			if (!isNoScript(e)) {
+				throw e;
+			}
+			log.warn("NOSCRIPT for {}, fallback to EVAL and reload scripts", luaPath);
+			reloadAsync();
+			return jedisOperations.eval(script.getBody(), keyCount, params);
+		}
+	}
+	
+	/**
+	 * 把classpath下 /lua-scripts/ 里所有脚本登记下来, 在后台加载到每个master上, 不阻塞启动
+	 */
+	public void preload() {
+		for (String luaPath : discover()) {
+			script(luaPath);
+		}
+		reloadAsync();
+	}
+	
+	/**
+	 * 在后台把已登记的脚本重新加载到每个master上, 已经有一个加载任务在跑就不再提交
+	 */
+	public void reloadAsync() {
+		if (!reloading.compareAndSet(false, true)) {
+			return;
+		}
+		THREAD_FACTORY.newThread(() -> {
+			try {
+				load();
+			} catch (Throwable e) {
+				log.error("Reload lua scripts failed", e);
+			} finally {
+				reloading.set(false);
+			}
+		}).start();
+	}
+	
+	/**
+	 * 同步把已登记的脚本加载到每个master上
+	 */
+	public void load() {
+		List<LuaScript> snapshot = new ArrayList<>(scripts.values());
+		for (Pool<Jedis> pool : jedisOperations.masterPools()) {
+			try (Jedis jedis = pool.getResource()) {
+				for (LuaScript script : snapshot) {
+					jedis.scriptLoad(script.getBody());
+				}
+			}
+		}
+		log.info("Loaded {} lua scripts", snapshot.size());
+	}
+	
+	public static boolean isNoScript(Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * 列出classpath下 /lua-scripts/ 目录里的所有 .lua, 目录和jar包都支持
+	 */
+	private static List<String> discover() {
+		List<String> paths = new ArrayList<>();
+		String dir = SCRIPT_DIR.substring(1);
+		try {
+			Enumeration<URL> urls = LuaScriptRegistry.class.getClassLoader().getResources(dir);
+			while (urls.hasMoreElements()) {
+				URL url = urls.nextElement();
+				if ("file".equals(url.getProtocol())) {
+					File[] files = new File(url.toURI()).listFiles((folder, name) -> name.endsWith(".lua"));
+					if (files != null) {
+						for (File file : files) {
+							paths.add(SCRIPT_DIR + file.getName());
+						}
+					}
+				} else if ("jar".equals(url.getProtocol())) {
+					JarFile jarFile = ((JarURLConnection) url.openConnection()).getJarFile();
+					Enumeration<JarEntry> entries = jarFile.entries();
+					while (entries.hasMoreElements()) {
+						String name = entries.nextElement().getName();
+						if (name.startsWith(dir) && name.endsWith(".lua") && name.indexOf('/', dir.length()) == -1) {
+							paths.add("/" + name);
+						}
+					}
+				}
+			}
+		} catch (IOException | URISyntaxException e) {
+			log.warn("Discover lua scripts failed, scripts will be loaded on first use", e);
+		}
+		return paths;
+	}
+	
+	static byte[] sha1(byte[] body) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(body);
+			return BaseEncoding.base16().lowerCase().encode(digest).getBytes(UTF_8);
+		} catch (NoSuchAlgorithmException e) {
+			throw new JedisException(e);
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package com.loserico.cache.utils;
 
+import com.loserico.cache.codec.RedisCodecs;
 import com.loserico.common.lang.utils.PrimitiveUtils;
 import com.loserico.json.jackson.JacksonUtils;
 
@@ -28,6 +29,10 @@ public class ByteUtils {
 		if (obj == null) {
 			return new byte[0];
 		}
+		// 已经是byte[]就原样返回, 转成String再转回来二进制数据会被破坏
+		if (obj instanceof byte[]) {
+			return (byte[]) obj;
+		}
 		// 先检查一下是不是原子类型, 是的话直接toString
 		String primitive = PrimitiveUtils.toString(obj);
 		if (primitive != null) {
@@ -41,6 +46,41 @@ public class ByteUtils {
 		}
 	}
 
+	/**
+	 * value专用, POJO通过当前的RedisCodec序列化; String, 原子类型, 集合和toBytes(Object)一样
+	 * <p>
+	 * key, hash field, set/zset member这些要靠byte[]相等来比较的, 还是用toBytes(Object), 保证格式稳定
+	 *
+	 * @param value
+	 * @return byte[]
+	 */
+	public static byte[] encode(Object value) {
+		if (value == null) {
+			return new byte[0];
+		}
+		// 和toBytes一样, byte[]原样写进去, 不经过RedisCodec
+		if (value instanceof byte[]) {
+			return (byte[]) value;
+		}
+		String primitive = PrimitiveUtils.toString(value);
+		if (primitive != null) {
+			return primitive.getBytes(UTF_8);
+		} else if (String.class.isInstance(value)) {
+			return ((String) value).getBytes(UTF_8);
+		} else if (Collection.class.isInstance(value)) {
+			return JacksonUtils.toBytes(value);
+		}
+		return RedisCodecs.encode(value);
+	}
+
+	public static byte[][] encode(Object... values) {
+		byte[][] bytesArrays = new byte[values.length][];
+		for (int i = 0; i < bytesArrays.length; i++) {
+			bytesArrays[i] = encode(values[i]);
+		}
+		return bytesArrays;
+	}
+
 	public static byte[] toBytes(String value) {
 		if (value == null) {
 			return new byte[0];
@@ -0,0 +1,301 @@
+package com.loserico.cache.utils;
+
+import com.loserico.cache.exception.InvalidKeyException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 预编译的key模板, 占位符和formatKey一样是{0}, {1}..., 其他字符原样保留
+ * <p>
+ * 模板只解析一次, format直接把字面量和参数写进线程复用的buffer, 最后只分配一个结果byte[], 不经过String
+ * <p>
+ * hashTag(i)把第i个参数作为Cluster的hash tag: 参数自己没有{tag}就包成{参数}, 已经有了就原样写入。
+ * 这样生成的key和参数本身, 以及用同一个参数生成的其他key, 都落在同一个slot上, 可以一起pipeline或者在lua脚本里一起用
+ * <pre>
+ * KeyTemplate ordersOfUser = KeyTemplate.of("user:{0}:orders").hashTag(0);
+ * ordersOfUser.format(42);          // user:{42}:orders
+ * ordersOfUser.format("tenant:{7}"); // user:tenant:{7}:orders, 和tenant:{7}同一个slot
+ * </pre>
+ * <p>
+ * 参数null写成空字符串; String, 整数, byte[]直接编码, 其他类型和KeyUtils.joinKey的转换规则一样。
+ * 和joinKey不同的是String参数不会trim, 否则和参数本身就不在同一个slot了
+ * <p>
+ * Copyright: (C), 2021-03-17 10:05
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public final class KeyTemplate {
+	
+	private static final byte LEFT_BRACE = '{';
+	
+	private static final byte RIGHT_BRACE = '}';
+	
+	private static final ThreadLocal<KeyBuffer> BUFFER = ThreadLocal.withInitial(KeyBuffer::new);
+	
+	private final String pattern;
+	
+	/**
+	 * 字面量, literals[i]写在第i个占位符前面, 最后一个写在所有占位符后面
+	 */
+	private final byte[][] literals;
+	
+	/**
+	 * 第i个占位符对应的参数下标
+	 */
+	private final int[] argIndexes;
+	
+	/**
+	 * 作为hash tag的参数下标, -1表示没有
+	 */
+	private final int hashTagArg;
+	
+	private final int argCount;
+	
+	private KeyTemplate(String pattern, byte[][] literals, int[] argIndexes, int hashTagArg) {
+		this.pattern = pattern;
+		this.literals = literals;
+		this.argIndexes = argIndexes;
+		this.hashTagArg = hashTagArg;
+		this.argCount = Arrays.stream(argIndexes).max().orElse(-1) + 1;
+	}
+	
+	public static KeyTemplate of(String pattern) {
+		Objects.requireNonNull(pattern, "pattern不能为null");
+		
+		List<byte[]> literals = new ArrayList<>();
+		List<Integer> argIndexes = new ArrayList<>();
+		StringBuilder literal = new StringBuilder();
+		int i = 0;
+		while (i < pattern.length()) {
+			char c = pattern.charAt(i);
+			int close = c == '{' ? pattern.indexOf('}', i + 1) : -1;
+			if (close > i + 1 && isDigits(pattern, i + 1, close)) {
+				literals.add(literal.toString().getBytes(UTF_8));
+				literal.setLength(0);
+				argIndexes.add(Integer.parseInt(pattern.substring(i + 1, close)));
+				i = close + 1;
+			} else {
+				literal.append(c);
+				i++;
+			}
+		}
+		literals.add(literal.toString().getBytes(UTF_8));
+		
+		return new KeyTemplate(pattern,
+				literals.toArray(new byte[0][]),
+				argIndexes.stream().mapToInt(Integer::intValue).toArray(),
+				-1);
+	}
+	
+	/**
+	 * 返回一个新模板, 第argIndex个参数作为hash tag
+	 * <p>
+	 * 这个参数只能出现一次, 它前面的字面量不能有'{', 否则Redis会把前面的{}当成hash tag
+	 *
+	 * @param argIndex
+	 * @return KeyTemplate
+	 */
+	public KeyTemplate hashTag(int argIndex) {
+		int position = -1;
+		for (int i = 0; i < argIndexes.length; i++) {
+			if (argIndexes[i] != argIndex) {
+				continue;
+			}
+			if (position != -1) {
+				throw new IllegalArgumentException("hash tag参数{" + argIndex + "}在模板里出现了多次: " + pattern);
+			}
+			position = i;
+		}
+		if (position == -1) {
+			throw new IllegalArgumentException("模板里没有参数{" + argIndex + "}: " + pattern);
+		}
+		for (int i = 0; i <= position; i++) {
+			if (indexOf(literals[i], 0, literals[i].length, LEFT_BRACE) != -1) {
+				throw new IllegalArgumentException("hash tag参数前面的字面量不能有'{': " + pattern);
+			}
+		}
+		return new KeyTemplate(pattern, literals, argIndexes, argIndex);
+	}
+	
+	/**
+	 * 生成key
+	 *
+	 * @param args
+	 * @return byte[]
+	 */
+	public byte[] format(Object... args) {
+		if (args.length < argCount) {
+			throw new IllegalArgumentException("模板" + pattern + "需要" + argCount + "个参数, 实际" + args.length + "个");
+		}
+		
+		KeyBuffer buffer = BUFFER.get();
+		buffer.pos = 0;
+		for (int i = 0; i < argIndexes.length; i++) {
+			buffer.put(literals[i]);
+			int argIndex = argIndexes[i];
+			if (argIndex != hashTagArg) {
+				buffer.putArg(args[argIndex]);
+				continue;
+			}
+			
+			// 前面的参数里有'{'的话, 这里的hash tag就不一定生效了
+			if (indexOf(buffer.bytes, 0, buffer.pos, LEFT_BRACE) != -1) {
+				throw new InvalidKeyException("hash tag参数前面的参数不能有'{': " + pattern);
+			}
+			int start = buffer.pos;
+			buffer.put(LEFT_BRACE);
+			buffer.putArg(args[argIndex]);
+			if (hasHashTag(buffer.bytes, start + 1, buffer.pos)) {
+				// 参数自己有hash tag, 去掉前面加的'{'
+				System.arraycopy(buffer.bytes, start + 1, buffer.bytes, start, buffer.pos - start - 1);
+				buffer.pos--;
+			} else {
+				buffer.put(RIGHT_BRACE);
+			}
+		}
+		buffer.put(literals[literals.length - 1]);
+		return Arrays.copyOf(buffer.bytes, buffer.pos);
+	}
+	
+	/**
+	 * 生成key的String形式
+	 *
+	 * @param args
+	 * @return String
+	 */
+	public String formatAsString(Object... args) {
+		return new String(format(args), UTF_8);
+	}
+	
+	@Override
+	public String toString() {
+		return pattern;
+	}
+	
+	/**
+	 * 和Redis的规则一样: 第一个'{'之后第一个'}'之间不为空才算hash tag
+	 */
+	private static boolean hasHashTag(byte[] bytes, int from, int to) {
+		int left = indexOf(bytes, from, to, LEFT_BRACE);
+		if (left == -1) {
+			return false;
+		}
+		int right = indexOf(bytes, left + 1, to, RIGHT_BRACE);
+		return right > left + 1;
+	}
+	
+	private static int indexOf(byte[] bytes, int from, int to, byte b) {
+		for (int i = from; i < to; i++) {
+			if (bytes[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	private static boolean isDigits(String s, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (!Character.isDigit(s.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * 每个线程一个, format期间写key用, 只会变大不会缩小
+	 */
+	private static final class KeyBuffer {
+		
+		private byte[] bytes = new byte[256];
+		
+		private int pos;
+		
+		private void put(byte b) {
+			ensure(1);
+			bytes[pos++] = b;
+		}
+		
+		private void put(byte[] src) {
+			ensure(src.length);
+			System.arraycopy(src, 0, bytes, pos, src.length);
+			pos += src.length;
+		}
+		
+		private void putArg(Object arg) {
+			if (arg == null) {
+				return;
+			}
+			if (arg instanceof byte[]) {
+				put((byte[]) arg);
+			} else if (arg instanceof Long || arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+				putLong(((Number) arg).longValue());
+			} else {
+				putUtf8(arg instanceof String ? (String) arg : KeyUtils.toString(arg));
+			}
+		}
+		
+		private void putLong(long value) {
+			if (value == Long.MIN_VALUE) {
+				putUtf8(Long.toString(value));
+				return;
+			}
+			ensure(20);
+			if (value < 0) {
+				bytes[pos++] = '-';
+				value = -value;
+			}
+			int start = pos;
+			do {
+				bytes[pos++] = (byte) ('0' + value % 10);
+				value /= 10;
+			} while (value != 0);
+			for (int i = start, j = pos - 1; i < j; i++, j--) {
+				byte b = bytes[i];
+				bytes[i] = bytes[j];
+				bytes[j] = b;
+			}
+		}
+		
+		private void putUtf8(String s) {
+			ensure(s.length() * 3);
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				if (c < 0x80) {
+					bytes[pos++] = (byte) c;
+				} else if (c < 0x800) {
+					bytes[pos++] = (byte) (0xC0 | c >> 6);
+					bytes[pos++] = (byte) (0x80 | c & 0x3F);
+				} else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+					int codePoint = Character.toCodePoint(c, s.charAt(++i));
+					bytes[pos++] = (byte) (0xF0 | codePoint >> 18);
+					bytes[pos++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+					bytes[pos++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+					bytes[pos++] = (byte) (0x80 | codePoint & 0x3F);
+				} else if (Character.isSurrogate(c)) {
+					// 和String.getBytes(UTF_8)一样, 落单的代理项写成'?'
+					bytes[pos++] = '?';
+				} else {
+					bytes[pos++] = (byte) (0xE0 | c >> 12);
+					bytes[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+					bytes[pos++] = (byte) (0x80 | c & 0x3F);
+				}
+			}
+		}
+		
+		private void ensure(int extra) {
+			if (pos + extra > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, pos + extra));
+			}
+		}
+	}
+}
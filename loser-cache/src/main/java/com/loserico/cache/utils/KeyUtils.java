@@ -98,7 +98,7 @@ public final class KeyUtils {
 	 * @param obj 要转成string的对象
 	 * @return String
 	 */
-	private static String toString(Object obj) {
+	static String toString(Object obj) {
 		if (obj == null) {
 			return "";
 		}
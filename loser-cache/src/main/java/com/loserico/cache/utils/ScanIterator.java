@@ -0,0 +1,72 @@
+package com.loserico.cache.utils;
+
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 把SCAN/HSCAN/SSCAN/ZSCAN的游标包装成Iterator, 用到下一页的时候才去取
+ * <p>
+ * SCAN的语义: 遍历期间一直存在的元素一定会返回, 但同一个元素可能返回多次, 遍历期间增删的元素可能返回也可能不返回
+ * <p>
+ * Copyright: (C), 2021-03-14 16:10
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public final class ScanIterator<T> implements Iterator<T> {
+	
+	/**
+	 * 游标 -> 这一页的结果和下一个游标
+	 */
+	private final Function<String, ScanResult<T>> scanner;
+	
+	private String cursor = ScanParams.SCAN_POINTER_START;
+	
+	private Iterator<T> page = Collections.emptyIterator();
+	
+	private boolean finished = false;
+	
+	public ScanIterator(Function<String, ScanResult<T>> scanner) {
+		this.scanner = scanner;
+	}
+	
+	/**
+	 * @param scanner 游标 -> 这一页的结果和下一个游标
+	 * @return 惰性的Stream
+	 */
+	public static <T> Stream<T> stream(Function<String, ScanResult<T>> scanner) {
+		Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(new ScanIterator<>(scanner), Spliterator.NONNULL);
+		return StreamSupport.stream(spliterator, false);
+	}
+	
+	@Override
+	public boolean hasNext() {
+		while (!page.hasNext() && !finished) {
+			ScanResult<T> result = scanner.apply(cursor);
+			cursor = result.getStringCursor();
+			finished = ScanParams.SCAN_POINTER_START.equals(cursor);
+			page = result.getResult().iterator();
+		}
+		return page.hasNext();
+	}
+	
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return page.next();
+	}
+}
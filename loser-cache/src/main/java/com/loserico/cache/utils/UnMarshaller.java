@@ -1,5 +1,7 @@
 package com.loserico.cache.utils;
 
+import com.fasterxml.jackson.databind.JavaType;
+import com.loserico.cache.codec.RedisCodecs;
 import com.loserico.common.lang.utils.PrimitiveUtils;
 import com.loserico.json.jackson.JacksonUtils;
 
@@ -29,19 +31,34 @@ public class UnMarshaller {
 		if (clazz.equals(String.class)) {
 			return (T) new String(data, UTF_8);
 		}
+		// ByteUtils.encode原样写进去的byte[]
+		if (clazz.equals(byte[].class)) {
+			return (T) data;
+		}
 		T result = PrimitiveUtils.toPrimitive(data, clazz);
 		if (result != null) {
 			return result;
 		}
-		return JacksonUtils.toObject(toString(data), clazz);
+		return RedisCodecs.decode(data, clazz);
+	}
+
+	/**
+	 * 泛型类型的value, 比如List&lt;Foo&gt;, Map&lt;String, Foo&gt;
+	 *
+	 * @param data
+	 * @param javaType
+	 * @param <T>
+	 * @return T
+	 */
+	public static <T> T toObject(byte[] data, JavaType javaType) {
+		return RedisCodecs.decode(data, javaType);
 	}
 
 	public static <T> List<T> toList(byte[] value, Class<T> clazz) {
 		if (value == null || value.length == 0) {
 			return new ArrayList<>();
 		}
-		String json = toString(value);
-		return JacksonUtils.toList(json, clazz);
+		return JacksonUtils.toList(value, clazz);
 	}
 
 	public static String toString(byte[] data) {
@@ -55,7 +72,7 @@ public class UnMarshaller {
 		if (data == null || data.length == 0) {
 			return null;
 		}
-		return new Long(new String(data, UTF_8));
+		return PrimitiveUtils.parseLong(data);
 	}
 
 	public static int toSeconds(int time, TimeUnit timeUnit) {
@@ -0,0 +1,23 @@
+-- 令牌桶限流, GCRA算法, 只需要记一个理论到达时间(TAT)
+-- KEYS[1] TAT  ARGV[1] 产生一个令牌的间隔(毫秒, 可以是小数)  ARGV[2] 桶容量  ARGV[3] 本次要几个令牌
+-- 返回0表示通过, 大于0表示令牌不够, 是还要等多少毫秒
+-- 当前时间取Redis服务器的时间, 各个JVM的时钟不一致也不影响; TIME之后还要写, Redis 5以下要先切到按命令复制
+redis.replicate_commands()
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + tonumber(time[2]) / 1000
+local interval = tonumber(ARGV[1])
+local burst = interval * tonumber(ARGV[2])
+
+local tat = tonumber(redis.call('get', KEYS[1]))
+if not tat or tat < now then
+  tat = now
+end
+
+local newTat = tat + interval * tonumber(ARGV[3])
+local allowAt = newTat - burst
+if allowAt > now then
+  return math.ceil(allowAt - now)
+end
+
+redis.call('set', KEYS[1], string.format('%.3f', newTat), 'PX', math.ceil(newTat - now))
+return 0
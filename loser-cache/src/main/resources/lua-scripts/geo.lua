@@ -0,0 +1,96 @@
+--[[
+ GEO 相关操作
+
+ KEYS[1] geo的key  ARGV[1] 操作
+ add    ARGV[2..] 经度, 纬度, member 三个一组                         返回新增的个数
+ rem    ARGV[2..] member                                            返回删除的个数
+ radius ARGV[2] 经度  ARGV[3] 纬度  ARGV[4] 半径(米)  ARGV[5] 最多几个, 0表示不限  ARGV[6] 1表示ANY
+ box    ARGV[2] 经度  ARGV[3] 纬度  ARGV[4] 宽(米)  ARGV[5] 高(米)  ARGV[6] 最多几个  ARGV[7] 1表示ANY
+ 查询按距离由近到远返回 {member, 距离(米), {经度, 纬度}}
+
+ Redis 6.2以前没有GEOSEARCH: radius退回到GEORADIUS, 不支持ANY;
+ box用外接圆GEORADIUS查出来再按矩形过滤
+]]
+local key = KEYS[1]
+local op = ARGV[1]
+
+if op == "add" then
+  local added = 0
+  for i = 2, #ARGV, 3 do
+    added = added + redis.call("GEOADD", key, ARGV[i], ARGV[i + 1], ARGV[i + 2])
+  end
+  return added
+end
+
+if op == "rem" then
+  local removed = 0
+  for i = 2, #ARGV do
+    removed = removed + redis.call("ZREM", key, ARGV[i])
+  end
+  return removed
+end
+
+-- 和Redis里计算距离的公式一样
+local EARTH_RADIUS = 6372797.560856
+local function distance(lon1, lat1, lon2, lat2)
+  local rlat1, rlat2 = math.rad(lat1), math.rad(lat2)
+  local u = math.sin((rlat2 - rlat1) / 2)
+  local v = math.sin(math.rad(lon2 - lon1) / 2)
+  return 2 * EARTH_RADIUS * math.asin(math.sqrt(u * u + math.cos(rlat1) * math.cos(rlat2) * v * v))
+end
+
+local lon, lat = tonumber(ARGV[2]), tonumber(ARGV[3])
+local search = {"GEOSEARCH", key, "FROMLONLAT", lon, lat}
+local count, any
+if op == "radius" then
+  search[#search + 1] = "BYRADIUS"
+  search[#search + 1] = ARGV[4]
+  count, any = tonumber(ARGV[5]), ARGV[6] == "1"
+elseif op == "box" then
+  search[#search + 1] = "BYBOX"
+  search[#search + 1] = ARGV[4]
+  search[#search + 1] = ARGV[5]
+  count, any = tonumber(ARGV[6]), ARGV[7] == "1"
+else
+  return redis.error_reply("Unknown geo operation " .. tostring(op))
+end
+for _, arg in ipairs({"m", "ASC", "WITHCOORD", "WITHDIST"}) do
+  search[#search + 1] = arg
+end
+if count > 0 then
+  search[#search + 1] = "COUNT"
+  search[#search + 1] = count
+  if any then
+    search[#search + 1] = "ANY"
+  end
+end
+
+local result = redis.pcall(unpack(search))
+if type(result) ~= "table" or not result.err then
+  return result
+end
+if not string.find(string.lower(result.err), "unknown") then
+  return redis.error_reply(result.err)
+end
+
+if op == "radius" then
+  if count > 0 then
+    return redis.call("GEORADIUS", key, lon, lat, ARGV[4], "m", "WITHDIST", "WITHCOORD", "ASC", "COUNT", count)
+  end
+  return redis.call("GEORADIUS", key, lon, lat, ARGV[4], "m", "WITHDIST", "WITHCOORD", "ASC")
+end
+
+local halfWidth, halfHeight = tonumber(ARGV[4]) / 2, tonumber(ARGV[5]) / 2
+local candidates = redis.call("GEORADIUS", key, lon, lat, math.sqrt(halfWidth * halfWidth + halfHeight * halfHeight),
+  "m", "WITHDIST", "WITHCOORD", "ASC")
+local matched = {}
+for _, candidate in ipairs(candidates) do
+  local plon, plat = tonumber(candidate[3][1]), tonumber(candidate[3][2])
+  if distance(lon, lat, lon, plat) <= halfHeight and distance(lon, plat, plon, plat) <= halfWidth then
+    matched[#matched + 1] = candidate
+    if count > 0 and #matched >= count then
+      break
+    end
+  end
+end
+return matched
@@ -45,30 +45,20 @@ local zadd = function(key, score, member)
   return redis.call("ZADD", key, currentTimestamp + score, member)
 end
 
---[[
-   根据auth:token:ttl:zset的score，与当前timestamp比较，score<timestamp表示过期了, 超过有效时间范围执行登出操作清理数据,返回expiredTokenLoginInfo
-   返回一个数组[token, loginInfo, token2, loginInfo2...]
-   
- PUBLISH 消息
- ]]
-local clearExpired = function(key, zsetKey)
-  local currentTimestamp = redis.call("TIME")[1] -- 得到当前时间,单位是秒
-  -- 拿score从负无穷大到currentTimestamp之间的元素
-  local expiredFields = redis.call("ZRANGEBYSCORE", zsetKey, "-inf", currentTimestamp)
-
-  -- 有token过期
-  if(#expiredFields ~= 0) then
+-- 只检查要操作的这一个field, 已经过期就删掉并返回true; 其他过期的field由后台的HashFieldReaper清理
+local expireField = function(key, zsetKey, field)
+  local score = redis.call("ZSCORE", zsetKey, field)
+  if score and tonumber(score) <= tonumber(redis.call("TIME")[1]) then
     redis.replicate_commands()
-    for index, field in ipairs(expiredFields) do
-      redis.call("ZREM", zsetKey, field)
-      redis.call("HDEL", key, field)
-    end
+    redis.call("ZREM", zsetKey, field)
+    redis.call("HDEL", key, field)
+    return true
   end
+  return false
 end
 
 local hset = function(key, zsetKey, field, value, ttl)
-  clearExpired(key, zsetKey) -- 先清除过期的key
-  redis.replicate_commands()
+  redis.replicate_commands() -- zadd里会取TIME, 写之前先切换成effects replication
   -- 如果设置了过期时间, 则将field插入zset或者更新其在zset中的ttl
   if ttl ~= "-1" and ttl ~= "0" then -- 表示field设置了过期时间
     zadd(zsetKey, ttl, field)
@@ -90,7 +80,9 @@ end
                  hget key field
 ]]
 local hget = function(key, zsetKey, field)
-  clearExpired(key, zsetKey) -- 先清除过期的key
+  if expireField(key, zsetKey, field) then
+    return nil
+  end
   return redis.call("HGET", key, field)
 end
 
@@ -119,7 +111,7 @@ end
   否则返回剩余的ttl
 ]]
 local ttl = function(key, zsetKey, field)
-  clearExpired(key, zsetKey)
+  expireField(key, zsetKey, field)
   local keyExists = redis.call("EXISTS", key)
   if keyExists == 0 then -- key不存在
     return -3
@@ -138,7 +130,7 @@ local ttl = function(key, zsetKey, field)
 end
 
 local expire = function(key, zsetKey, field, ttl)
-  clearExpired(key, zsetKey)
+  expireField(key, zsetKey, field)
   local keyExists = redis.call("EXISTS", key)
   if keyExists == 0 then
     return -1
@@ -165,7 +157,7 @@ local expiredFields = function(zsetKey)
 end
 
 local persist = function(key, zsetKey, field)
-  clearExpired(key, zsetKey)
+  expireField(key, zsetKey, field)
   local fieldExists = redis.call("HEXISTS", key, field)
   if fieldExists == 0 then
     return 0
@@ -176,6 +168,63 @@ local persist = function(key, zsetKey, field)
   end
 end
 
+--[[
+ 后台清理, 由HashFieldReaper调用
+ 删掉最多batch个已经过期的field, 返回下一个field的过期时间(秒), 没有带过期时间的field了返回-1
+]]
+local reap = function(key, zsetKey, batch)
+  local currentTimestamp = redis.call("TIME")[1]
+  local expiredFields = redis.call("ZRANGEBYSCORE", zsetKey, "-inf", currentTimestamp, "LIMIT", 0, batch)
+  if #expiredFields ~= 0 then
+    redis.replicate_commands()
+    redis.call("ZREM", zsetKey, unpack(expiredFields))
+    redis.call("HDEL", key, unpack(expiredFields))
+  end
+  local first = redis.call("ZRANGE", zsetKey, 0, 0, "WITHSCORES")
+  if first[2] then
+    return tonumber(first[2])
+  end
+  return -1
+end
+
+--[[
+ Redis 7.4开始原生支持hash field过期, 服务端支持的话下面几个直接用HEXPIRE/HTTL/HPERSIST, 不再用zset,
+ 读的时候也就不需要lua脚本了, 直接HGET
+ 返回值和上面对应的非Native版本一样
+]]
+local hsetNative = function(key, zsetKey, field, value, ttl)
+  redis.call("ZREM", zsetKey, field) -- 以前用zset记的过期时间不要了
+  local result = redis.call("HSET", key, field, value) -- HSET会清掉field原来的过期时间
+  if ttl ~= "-1" and ttl ~= "0" then
+    redis.call("HEXPIRE", key, ttl, "FIELDS", 1, field)
+  end
+  return result
+end
+
+local ttlNative = function(key, field)
+  if redis.call("EXISTS", key) == 0 then
+    return -3
+  end
+  return redis.call("HTTL", key, "FIELDS", 1, field)[1] -- -2 field不存在, -1 没有过期时间
+end
+
+local expireNative = function(key, field, ttl)
+  if redis.call("EXISTS", key) == 0 then
+    return -1
+  end
+  if redis.call("HEXPIRE", key, ttl, "FIELDS", 1, field)[1] == -2 then
+    return 0
+  end
+  return 1
+end
+
+local persistNative = function(key, field)
+  if redis.call("HPERSIST", key, "FIELDS", 1, field)[1] == 1 then
+    return 1
+  end
+  return 0
+end
+
 local operate = ARGV[1]
 if operate == "hset" then
   local key = KEYS[1]
@@ -220,4 +269,14 @@ elseif operate == "persist" then
   local zsetKey = KEYS[2]
   local field = ARGV[2]
   return persist(key, zsetKey, field)
+elseif operate == "reap" then
+  return reap(KEYS[1], KEYS[2], ARGV[2])
+elseif operate == "hsetNative" then
+  return hsetNative(KEYS[1], KEYS[2], ARGV[2], ARGV[3], ARGV[4])
+elseif operate == "ttlNative" then
+  return ttlNative(KEYS[1], ARGV[2])
+elseif operate == "expireNative" then
+  return expireNative(KEYS[1], ARGV[2], ARGV[3])
+elseif operate == "persistNative" then
+  return persistNative(KEYS[1], ARGV[2])
 end  
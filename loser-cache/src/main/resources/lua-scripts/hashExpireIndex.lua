@@ -0,0 +1,37 @@
+--[[
+ hash field过期的索引, 给HashFieldReaper用
+ KEYS[1] 索引zset, member是hash的key, score是这个hash里最早可能有field过期的时间(秒)
+
+ ARGV[1] = "track"    ARGV[2] hash的key  ARGV[3] 多少秒后过期   有field设置了过期时间
+ ARGV[1] = "reindex"  ARGV[2] hash的key  ARGV[3] 下一个field的过期时间(秒), -1表示没有带过期时间的field了
+ ARGV[1] = "due"      ARGV[2] 最多返回几个   返回已经有field过期了的hash key
+
+ 索引里的时间已经到了说明这条记录是过时的, 可以直接覆盖; 还没到说明中间有新的field设置了过期时间, 只能往前改,
+ 这样reaper清理完之后回写索引时不会把新登记的记录冲掉
+]]
+local now = tonumber(redis.call("TIME")[1])
+local operate = ARGV[1]
+
+if operate == "due" then
+  return redis.call("ZRANGEBYSCORE", KEYS[1], "-inf", now, "LIMIT", 0, ARGV[2])
+end
+
+local expireAt = tonumber(ARGV[3])
+if operate == "track" then
+  expireAt = now + expireAt
+end
+
+local score = redis.call("ZSCORE", KEYS[1], ARGV[2])
+local stale = score and tonumber(score) <= now
+redis.replicate_commands()
+if expireAt < 0 then
+  if stale then
+    redis.call("ZREM", KEYS[1], ARGV[2])
+  end
+  return 0
+end
+if not score or stale or tonumber(score) > expireAt then
+  redis.call("ZADD", KEYS[1], expireAt, ARGV[2])
+  return 1
+end
+return 0
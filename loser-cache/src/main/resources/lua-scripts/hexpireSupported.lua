@@ -0,0 +1,7 @@
+-- 服务端是否支持hash field过期(HEXPIRE, Redis 7.4+), 支持返回1, 不支持返回0
+-- KEYS[1] 随便一个key, Cluster模式下用来定位节点
+local result = redis.pcall("HEXPIRE", KEYS[1], 1, "FIELDS", 1, "__loser_probe__")
+if type(result) == "table" and result.err and string.find(string.lower(result.err), "unknown") then
+  return 0
+end
+return 1
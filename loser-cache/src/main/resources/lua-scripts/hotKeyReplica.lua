@@ -0,0 +1,7 @@
+--[[
+写热点key的副本并设置过期时间, 一次往返
+KEYS[1] 副本key
+ARGV[1] value
+ARGV[2] 过期时间, 毫秒
+]]
+return redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
@@ -0,0 +1,8 @@
+-- KEYS[1] 处理中列表  KEYS[2] 处理截止时间zset  ARGV 处理成功的元素
+-- 确认处理完成, 返回确认成功的个数; 已经因为超时被重新入队的元素确认不了
+local acked = 0
+for i = 1, #ARGV do
+    acked = acked + redis.call("lrem", KEYS[1], -1, ARGV[i])
+    redis.call("zrem", KEYS[2], ARGV[i])
+end
+return acked
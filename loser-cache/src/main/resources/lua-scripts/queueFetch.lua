@@ -0,0 +1,26 @@
+-- KEYS[1] 队列  KEYS[2] 处理中列表  KEYS[3] 处理截止时间zset
+-- ARGV[1] 最多再取几个  ARGV[2] 处理时限(毫秒)  ARGV[3] 可选, 已经被BRPOPLPUSH挪到处理中列表的元素
+-- 从队尾(最早入队的一端)批量挪到处理中列表并登记截止时间(当前时间+处理时限), 按入队先后返回
+-- 当前时间取Redis服务器的时间, 各个JVM的时钟不一致也不影响截止时间; TIME之后还要写, Redis 5以下要先切到按命令复制
+redis.replicate_commands()
+local time = redis.call("time")
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local deadline = now + tonumber(ARGV[2])
+local elements = {}
+if ARGV[3] then
+    elements[1] = ARGV[3]
+    redis.call("zadd", KEYS[3], deadline, ARGV[3])
+end
+local n = tonumber(ARGV[1])
+if n > 0 then
+    local batch = redis.call("lrange", KEYS[1], -n, -1)
+    if #batch > 0 then
+        redis.call("ltrim", KEYS[1], 0, -#batch - 1)
+        for i = #batch, 1, -1 do
+            redis.call("lpush", KEYS[2], batch[i])
+            redis.call("zadd", KEYS[3], deadline, batch[i])
+            elements[#elements + 1] = batch[i]
+        end
+    end
+end
+return elements
@@ -0,0 +1,32 @@
+-- KEYS[1] 队列  KEYS[2] 处理中列表  KEYS[3] 处理截止时间zset
+-- ARGV[1] 处理时限(毫秒), 没有截止时间的元素补登记为当前时间+处理时限  ARGV[2] 一次最多重新入队/检查几个
+-- ARGV[3] 这次从处理中列表的哪个下标开始检查有没有截止时间
+-- 超过截止时间还没确认的元素放回队尾, 下一个就被消费; 返回{重新入队的个数, 下次检查的起始下标}
+-- 当前时间取Redis服务器的时间, 各个JVM的时钟不一致也不影响截止时间; TIME之后还要写, Redis 5以下要先切到按命令复制
+redis.replicate_commands()
+local time = redis.call("time")
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local limit = tonumber(ARGV[2])
+local expired = redis.call("zrangebyscore", KEYS[3], "-inf", now, "limit", 0, limit)
+local requeued = 0
+for _, element in ipairs(expired) do
+    if redis.call("lrem", KEYS[2], -1, element) > 0 then
+        redis.call("rpush", KEYS[1], element)
+        requeued = requeued + 1
+    end
+    redis.call("zrem", KEYS[3], element)
+end
+-- BRPOPLPUSH之后, 登记截止时间之前消费者挂了, 元素在处理中列表里却没有截止时间
+-- 处理中列表可能很长, 每次只检查limit个, 下一轮接着往后检查, 到头了从0开始
+local start = tonumber(ARGV[3])
+local inflight = redis.call("lrange", KEYS[2], start, start + limit - 1)
+for _, element in ipairs(inflight) do
+    if not redis.call("zscore", KEYS[3], element) then
+        redis.call("zadd", KEYS[3], now + tonumber(ARGV[1]), element)
+    end
+end
+local cursor = start + limit
+if #inflight < limit then
+    cursor = 0
+end
+return {requeued, cursor}
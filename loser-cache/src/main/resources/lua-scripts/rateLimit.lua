@@ -1,4 +1,5 @@
--- 返回0表示超出限制
+-- 固定窗口限流  KEYS[1] 计数器  ARGV[1] 窗口长度(秒)  ARGV[2] 窗口内最多允许多少次
+-- 返回1表示通过, 小于等于0表示超出限制, 负数的绝对值是离窗口结束还有多少毫秒
 local times = redis.call('incr', KEYS[1])
 
 if times == 1 then
@@ -7,7 +8,11 @@ if times == 1 then
 end
 
 if times > tonumber(ARGV[2]) then
+  local ttl = redis.call('pttl', KEYS[1])
+  if ttl > 0 then
+    return -ttl
+  end
   return 0
 end
 
-return 1
\ No newline at end of file
+return 1
@@ -0,0 +1,12 @@
+-- KEYS[1] 持有者zset(持有者 -> 租约到期时间)  ARGV[1] 持有者  ARGV[2] 租约毫秒
+-- 当前时间取Redis服务器的时间, 各个JVM的时钟不一致也不影响租约; TIME之后还要写, Redis 5以下要先切到按命令复制
+redis.replicate_commands()
+local time = redis.call("time")
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+-- 租约已经到期(不管有没有被别人清理掉)就不再续约, 返回0
+local deadline = redis.call("zscore", KEYS[1], ARGV[1])
+if deadline and tonumber(deadline) > now then
+    redis.call("zadd", KEYS[1], now + tonumber(ARGV[2]), ARGV[1])
+    return 1
+end
+return 0
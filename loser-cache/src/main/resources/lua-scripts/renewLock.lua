@@ -0,0 +1,6 @@
+-- KEYS[1] 锁  ARGV[1] 锁的值  ARGV[2] 新的过期时间(毫秒)
+-- 锁已经过期或者被别人拿走了就不再续约, 返回0
+if redis.call("get", KEYS[1]) == ARGV[1] then
+    return redis.call("pexpire", KEYS[1], ARGV[2])
+end
+return 0
@@ -0,0 +1,37 @@
+-- KEYS[1] 锁hash(mode -> read/write, 持有者:r -> 读锁重入次数, 持有者:w -> 写锁重入次数)
+-- KEYS[2] 持有者zset(持有者 -> 租约到期时间)
+-- ARGV[1] 持有者  ARGV[2] 租约毫秒
+-- 返回0表示加锁成功, 大于0表示建议等待的毫秒数
+-- 当前时间取Redis服务器的时间, 各个JVM的时钟不一致也不影响租约; TIME之后还要写, Redis 5以下要先切到按命令复制
+redis.replicate_commands()
+local time = redis.call("time")
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local lease = tonumber(ARGV[2])
+
+-- 租约到期的持有者(进程挂了)的锁直接清掉
+local expired = redis.call("zrangebyscore", KEYS[2], "-inf", now)
+for _, holder in ipairs(expired) do
+    redis.call("hdel", KEYS[1], holder .. ":r", holder .. ":w")
+end
+if #expired > 0 then
+    redis.call("zremrangebyscore", KEYS[2], "-inf", now)
+    if redis.call("hlen", KEYS[1]) <= 1 then
+        redis.call("del", KEYS[1])
+    end
+end
+
+-- 别人持有写锁的时候不能加读锁, 自己持有写锁的时候可以(锁降级)
+local mode = redis.call("hget", KEYS[1], "mode")
+if mode == "write" and redis.call("hexists", KEYS[1], ARGV[1] .. ":w") == 0 then
+    local first = redis.call("zrange", KEYS[2], 0, 0, "withscores")
+    if first[2] then
+        return math.max(1, tonumber(first[2]) - now)
+    end
+    return lease
+end
+if not mode then
+    redis.call("hset", KEYS[1], "mode", "read")
+end
+redis.call("hincrby", KEYS[1], ARGV[1] .. ":r", 1)
+redis.call("zadd", KEYS[2], now + lease, ARGV[1])
+return 0
@@ -0,0 +1,27 @@
+-- KEYS[1] 锁hash  KEYS[2] 持有者zset
+-- ARGV[1] 持有者  ARGV[2] r/w  ARGV[3] 通知channel
+-- 返回剩余的重入次数, -1表示没有持有这个锁
+local field = ARGV[1] .. ":" .. ARGV[2]
+if redis.call("hexists", KEYS[1], field) == 0 then
+    return -1
+end
+local count = redis.call("hincrby", KEYS[1], field, -1)
+if count > 0 then
+    return count
+end
+redis.call("hdel", KEYS[1], field)
+
+local other = ARGV[1] .. ":" .. (ARGV[2] == "r" and "w" or "r")
+if redis.call("hexists", KEYS[1], other) == 0 then
+    redis.call("zrem", KEYS[2], ARGV[1])
+end
+
+if redis.call("hlen", KEYS[1]) <= 1 then
+    redis.call("del", KEYS[1])
+    redis.call("publish", ARGV[3], 0)
+elseif ARGV[2] == "w" then
+    -- 释放了写锁但自己还持有读锁(锁降级), 其他读者可以进来了
+    redis.call("hset", KEYS[1], "mode", "read")
+    redis.call("publish", ARGV[3], 0)
+end
+return 0
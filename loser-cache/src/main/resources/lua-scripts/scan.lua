@@ -0,0 +1,3 @@
+-- KEYS[1] key  ARGV[1] 命令 HSCAN/SSCAN/ZSCAN  ARGV[2] 游标  ARGV[3] MATCH  ARGV[4] COUNT
+-- 返回 {下一个游标, 元素}, 游标为0表示遍历完了
+return redis.call(ARGV[1], KEYS[1], ARGV[2], "MATCH", ARGV[3], "COUNT", ARGV[4])
@@ -0,0 +1,67 @@
+-- KEYS[1] permits总数  KEYS[2] 持有者zset(clientId -> 租约到期时间)  KEYS[3] 持有数hash(clientId -> 持有的permit数)
+-- KEYS[4] 公平模式的等待队列list  KEYS[5] 等待者hash(waiterId -> 等待期限)
+-- ARGV[1] clientId  ARGV[2] 要获取的permit数  ARGV[3] 租约毫秒  ARGV[4] 是否公平模式  ARGV[5] waiterId
+-- 返回0表示获取成功, 大于0表示建议等待的毫秒数; 等待者的等待期限是当前时间加一个租约
+-- 当前时间取Redis服务器的时间, 各个JVM的时钟不一致也不影响租约; TIME之后还要写, Redis 5以下要先切到按命令复制
+redis.replicate_commands()
+local time = redis.call("time")
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local lease = tonumber(ARGV[3])
+
+-- 租约到期的持有者(进程挂了或者没有续约), 它持有的permit自动归还
+local expired = redis.call("zrangebyscore", KEYS[2], "-inf", now)
+for _, holder in ipairs(expired) do
+    redis.call("hdel", KEYS[3], holder)
+end
+if #expired > 0 then
+    redis.call("zremrangebyscore", KEYS[2], "-inf", now)
+end
+
+local function waitMillis()
+    local first = redis.call("zrange", KEYS[2], 0, 0, "withscores")
+    if first[2] then
+        return math.max(1, tonumber(first[2]) - now)
+    end
+    return lease
+end
+
+local fair = ARGV[4] == "1"
+if fair then
+    if redis.call("hset", KEYS[5], ARGV[5], now + lease) == 1 then
+        redis.call("rpush", KEYS[4], ARGV[5])
+    end
+    -- 队头的等待者已经过了等待期限, 移出队列
+    while true do
+        local head = redis.call("lindex", KEYS[4], 0)
+        if not head then
+            break
+        end
+        local deadline = tonumber(redis.call("hget", KEYS[5], head) or "0")
+        if deadline >= now then
+            break
+        end
+        redis.call("lpop", KEYS[4])
+        redis.call("hdel", KEYS[5], head)
+    end
+    if redis.call("lindex", KEYS[4], 0) ~= ARGV[5] then
+        return waitMillis()
+    end
+end
+
+local total = tonumber(redis.call("get", KEYS[1]) or "0")
+local used = 0
+for _, held in ipairs(redis.call("hvals", KEYS[3])) do
+    used = used + tonumber(held)
+end
+local permits = tonumber(ARGV[2])
+if total - used < permits then
+    return waitMillis()
+end
+
+if fair then
+    redis.call("lpop", KEYS[4])
+    redis.call("hdel", KEYS[5], ARGV[5])
+end
+redis.call("hincrby", KEYS[3], ARGV[1], permits)
+redis.call("zadd", KEYS[2], now + lease, ARGV[1])
+return 0
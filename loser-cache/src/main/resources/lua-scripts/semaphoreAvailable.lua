@@ -0,0 +1,17 @@
+-- KEYS[1] permits总数  KEYS[2] 持有者zset  KEYS[3] 持有数hash
+-- 当前时间取Redis服务器的时间, 各个JVM的时钟不一致也不影响租约; TIME之后还要写, Redis 5以下要先切到按命令复制
+redis.replicate_commands()
+local time = redis.call("time")
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local expired = redis.call("zrangebyscore", KEYS[2], "-inf", now)
+for _, holder in ipairs(expired) do
+    redis.call("hdel", KEYS[3], holder)
+end
+if #expired > 0 then
+    redis.call("zremrangebyscore", KEYS[2], "-inf", now)
+end
+local used = 0
+for _, held in ipairs(redis.call("hvals", KEYS[3])) do
+    used = used + tonumber(held)
+end
+return tonumber(redis.call("get", KEYS[1]) or "0") - used
@@ -0,0 +1,9 @@
+-- KEYS[1] 等待队列list  KEYS[2] 等待者hash  ARGV[1] waiterId  ARGV[2] 通知channel
+-- 放弃等待, 如果正好排在队头, 通知后面的等待者
+local head = redis.call("lindex", KEYS[1], 0)
+redis.call("lrem", KEYS[1], 1, ARGV[1])
+redis.call("hdel", KEYS[2], ARGV[1])
+if head == ARGV[1] then
+    redis.call("publish", ARGV[2], 0)
+end
+return 1
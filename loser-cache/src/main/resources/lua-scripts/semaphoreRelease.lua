@@ -0,0 +1,17 @@
+-- KEYS[1] 持有者zset  KEYS[2] 持有数hash
+-- ARGV[1] clientId  ARGV[2] 释放的permit数  ARGV[3] 通知channel
+-- 返回释放后还持有的permit数, -1表示持有的permit不够
+local held = tonumber(redis.call("hget", KEYS[2], ARGV[1]) or "0")
+local permits = tonumber(ARGV[2])
+if held < permits then
+    return -1
+end
+local remaining = held - permits
+if remaining > 0 then
+    redis.call("hset", KEYS[2], ARGV[1], remaining)
+else
+    redis.call("hdel", KEYS[2], ARGV[1])
+    redis.call("zrem", KEYS[1], ARGV[1])
+end
+redis.call("publish", ARGV[3], permits)
+return remaining
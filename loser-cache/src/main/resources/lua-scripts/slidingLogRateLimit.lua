@@ -0,0 +1,18 @@
+-- 滑动日志限流, 每次通过记一条日志, 统计最近一个窗口内的日志数
+-- KEYS[1] 日志zset(成员 -> 时间)  ARGV[1] 窗口长度(毫秒)  ARGV[2] 窗口内最多允许多少次  ARGV[3] 本次日志的成员
+-- 返回0表示通过, 大于0表示超出限制, 是离最早一条日志滑出窗口还有多少毫秒
+-- 当前时间取Redis服务器的时间, 各个JVM的时钟不一致也不影响; TIME之后还要写, Redis 5以下要先切到按命令复制
+redis.replicate_commands()
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local window = tonumber(ARGV[1])
+
+redis.call('zremrangebyscore', KEYS[1], '-inf', now - window)
+if redis.call('zcard', KEYS[1]) < tonumber(ARGV[2]) then
+  redis.call('zadd', KEYS[1], now, ARGV[3])
+  redis.call('pexpire', KEYS[1], window)
+  return 0
+end
+
+local oldest = redis.call('zrange', KEYS[1], 0, 0, 'WITHSCORES')
+return math.max(1, tonumber(oldest[2]) + window - now)
@@ -34,6 +34,10 @@ local OPERATE_AUTH = "auth" -- 根据token认证
 local OPERATE_CLEAR_EXPIRED = "clearExpired" --清除已过期的token
 local OPERATE_USERNAME = "username" --根据token获取用户名
 local OPERATE_IS_LOGINED = "isLogined" --根据username判断是否已登录
+local OPERATE_REFRESH = "refresh" --批量刷新token过期时间
+
+--auth/isLogined/refresh顺带清理过期token时一次最多清理多少个, 其余的交给定时的clearExpired分批清理
+local INLINE_CLEAR_LIMIT = 100
 
 local setExpires = function(token, expires)
     -- 默认一年过期
@@ -62,20 +66,21 @@ end
 - 根据token删auth:token:authorities
 - 根据token删auth:token:ttl
 - 根据token删auth:token:ttl:zset
+username取不到(数据不完整的孤儿token)也要把token相关的数据删掉, 特别是auth:token:ttl:zset,
+否则过期的孤儿token一直排在zset最前面, clearExpired每一批都取到它们, 后面真正过期的token永远清不到
 ]]
 local logout = function(token)
     local username = redis.call("HGET", AUTH_TOKEN_USERNAME_HASH, token)
-    if(not username) then
-        return cjson.encode(false)
+    if(username) then
+        redis.call("HDEL", AUTH_USERNAME_TOKEN_HASH, username)
     end
-    redis.call("HDEL", AUTH_USERNAME_TOKEN_HASH, username)
     redis.call("HDEL", AUTH_TOKEN_USERNAME_HASH, token)
     redis.call("HDEL", AUTH_TOKEN_USERDETAILS_HASH, token)
     redis.call("HDEL", AUTH_TOKEN_AUTHORITIES_HASH, token)
     redis.call("HDEL", AUTH_TOKEN_LOGIN_INFO_HASH, token)
     redis.call("HDEL", AUTH_TOKEN_TTL_HASH, token)
     redis.call("ZREM", AUTH_TOKEN_TTL_ZSET, token)
-    return cjson.encode(true)
+    return cjson.encode(username ~= false)
 end
 
 --[[
@@ -134,14 +139,20 @@ end
 --[[
    根据auth:token:ttl:zset的score, 与当前timestamp比较, score<timestamp表示过期了, 
    超过有效时间范围执行登出操作清理数据, 返回expiredTokenLoginInfo
-   返回一个数组[token, loginInfo, token2, loginInfo2...]
+   返回一个JSON {token:loginInfo, token2:loginInfo2...}
+   limit 一次最多清理多少个token, 不传则全部清理; token很多时全部清理会长时间阻塞Redis, 回复也很大
    
- PUBLISH 消息
+ PUBLISH 消息, 每一批发一条
  ]]
-local clearExpired = function()
+local clearExpired = function(limit)
     local currentTimestamp = redis.call("TIME")[1] -- 得到的是秒: unix time in seconds
     -- 拿score从负无穷大到currentTimestamp之间的元素
-    local expiredTokens = redis.call("ZRANGEBYSCORE", AUTH_TOKEN_TTL_ZSET, "-inf", currentTimestamp * 1000)
+    local expiredTokens
+    if limit then
+        expiredTokens = redis.call("ZRANGEBYSCORE", AUTH_TOKEN_TTL_ZSET, "-inf", currentTimestamp * 1000, "LIMIT", 0, limit)
+    else
+        expiredTokens = redis.call("ZRANGEBYSCORE", AUTH_TOKEN_TTL_ZSET, "-inf", currentTimestamp * 1000)
+    end
 
     local expiredTokenLoginInfo = {}
     -- 没有token过期
@@ -162,13 +173,33 @@ local clearExpired = function()
     return expiredTokenInfos
 end
 
+--[[
+   token已过期则清理掉并PUBLISH, 返回true表示已过期
+   clearExpired有limit时不一定清理到这个token, 所以auth/isLogined/refresh还要单独检查自己的token
+ ]]
+local expireIfNeeded = function(token)
+    local score = redis.call("ZSCORE", AUTH_TOKEN_TTL_ZSET, token)
+    if (not score) or tonumber(score) > redis.call("TIME")[1] * 1000 then
+        return false
+    end
+    redis.replicate_commands()
+    local expiredTokenLoginInfo = {}
+    expiredTokenLoginInfo[token] = redis.call("HGET", AUTH_TOKEN_LOGIN_INFO_HASH, token)
+    logout(token)
+    redis.call("PUBLISH", AUTH_TOKEN_EXPIRE_CHANNEL, cjson.encode(expiredTokenLoginInfo))
+    return true
+end
+
 --[[
 3.验证token
 - 根据提供的token从auth:token:username中取username，取不到则验证失败
 - 返回username
 ]]
 local auth = function(token, refresh)
-    clearExpired() --清除过期的token
+    clearExpired(INLINE_CLEAR_LIMIT) --清除过期的token
+    if expireIfNeeded(token) then
+        return nil
+    end
     -- 如果设置了自动刷新token
     if(refresh == "true") then
         redis.replicate_commands()
@@ -177,14 +208,36 @@ local auth = function(token, refresh)
     return redis.call("HGET", AUTH_TOKEN_USERNAME_HASH, token)
 end
 
+--[[
+批量刷新token过期时间, 本地缓存命中的auth不访问Redis, 由客户端攒一批token定时调用
+- 先清除过期的token, 已经过期的token不会被续期
+- 返回续期成功的token个数
+]]
+local refresh = function(tokens)
+    clearExpired(INLINE_CLEAR_LIMIT)
+    redis.replicate_commands()
+    local refreshed = 0
+    for i, token in ipairs(tokens) do
+        if not expireIfNeeded(token) and redis.call("HEXISTS", AUTH_TOKEN_USERNAME_HASH, token) == 1 then
+            autoRefresh(token)
+            refreshed = refreshed + 1
+        end
+    end
+    return refreshed
+end
+
 --[[
 4.根据username检查改用户是否已登录
      根据提供的username从AUTH_USERNAME_TOKEN_HASH从取token，取不到则验证失败
 - 返回token
 ]]
 local isLogined = function(username)
-    clearExpired() --清除过期的token
-    return redis.call("HGET", AUTH_USERNAME_TOKEN_HASH, username)
+    clearExpired(INLINE_CLEAR_LIMIT) --清除过期的token
+    local token = redis.call("HGET", AUTH_USERNAME_TOKEN_HASH, username)
+    if token and expireIfNeeded(token) then
+        return nil
+    end
+    return token
 end
 
 local operate = ARGV[1]
@@ -204,8 +257,15 @@ elseif operate == OPERATE_AUTH then
     local refresh = ARGV[3]
     return auth(token, refresh)
 elseif operate == OPERATE_CLEAR_EXPIRED then
-    return clearExpired()
+    local limit = ARGV[2]
+    return clearExpired(limit)
 elseif operate == OPERATE_IS_LOGINED then
     local username = ARGV[2]
     return isLogined(username)
+elseif operate == OPERATE_REFRESH then
+    local tokens = {}
+    for i = 2, #ARGV do
+        tokens[#tokens + 1] = ARGV[i]
+    end
+    return refresh(tokens)
 end
\ No newline at end of file
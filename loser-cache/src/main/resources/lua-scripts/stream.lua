@@ -0,0 +1,136 @@
+--[[
+ Stream 相关操作, Jedis 2.9没有stream的API, 都通过lua执行(Redis 5.0+)
+
+ KEYS[1] stream的key  ARGV[1] 操作
+ add   ARGV[2] 最大长度, 0表示不裁剪  ARGV[3..] 每个entry的body      返回每个entry的id
+ group ARGV[2] 消费组  ARGV[3] 从哪个id开始消费, $表示只消费新的     消费组已经存在返回0, 否则创建并返回1
+ read  ARGV[2] 消费组  ARGV[3] 消费者  ARGV[4] 最多读几个           返回entries, 没有新的返回空
+ ack   ARGV[2] 消费组  ARGV[3..] entry的id                           返回确认的个数
+ claim ARGV[2] 消费组  ARGV[3] 消费者  ARGV[4] 最少空闲多少毫秒  ARGV[5] 最多几个
+       ARGV[6] 从哪个id开始找, 第一次传0-0  ARGV[7] 最多投递几次, 0表示不限
+       KEYS[2] 死信stream, 投递次数超过ARGV[7]的entry追加到这里(body之外带上原来的id)并确认掉
+       返回 {下次开始找的id, 认领的entries, 转到死信的个数}, 下次开始找的id是0-0表示已经找完一轮
+
+ entry的格式是 {id, body}; 每个entry只有一个field: body
+ lua脚本里不能阻塞, read没有BLOCK, 由调用方轮询
+]]
+local key = KEYS[1]
+local op = ARGV[1]
+
+-- {id, {field, value}} -> {id, value}, 已经被XDEL/裁剪掉的entry fields是false
+local function flatten(entries, group)
+  local result = {}
+  local deleted = {}
+  for _, entry in ipairs(entries) do
+    if entry[2] then
+      result[#result + 1] = {entry[1], entry[2][2]}
+    else
+      deleted[#deleted + 1] = entry[1]
+    end
+  end
+  if #deleted > 0 and group then
+    redis.call("XACK", key, group, unpack(deleted))
+  end
+  return result
+end
+
+if op == "add" then
+  local maxLen = tonumber(ARGV[2])
+  local ids = {}
+  for i = 3, #ARGV do
+    if maxLen > 0 then
+      ids[#ids + 1] = redis.call("XADD", key, "MAXLEN", "~", maxLen, "*", "body", ARGV[i])
+    else
+      ids[#ids + 1] = redis.call("XADD", key, "*", "body", ARGV[i])
+    end
+  end
+  return ids
+end
+
+if op == "group" then
+  local result = redis.pcall("XGROUP", "CREATE", key, ARGV[2], ARGV[3], "MKSTREAM")
+  if type(result) == "table" and result.err then
+    if string.find(result.err, "BUSYGROUP") then
+      return 0
+    end
+    return redis.error_reply(result.err)
+  end
+  return 1
+end
+
+if op == "read" then
+  local streams = redis.call("XREADGROUP", "GROUP", ARGV[2], ARGV[3], "COUNT", tonumber(ARGV[4]), "STREAMS", key, ">")
+  if not streams then
+    return {}
+  end
+  return flatten(streams[1][2], ARGV[2])
+end
+
+if op == "ack" then
+  local acked = 0
+  for i = 3, #ARGV do
+    acked = acked + redis.call("XACK", key, ARGV[2], ARGV[i])
+  end
+  return acked
+end
+
+-- 认领之后投递次数超过maxDeliveries的entry转到死信stream并确认掉, 返回剩下的entries和转走的个数
+local function deadLetter(entries, group, maxDeliveries)
+  if maxDeliveries <= 0 or not KEYS[2] then
+    return entries, 0
+  end
+  local alive = {}
+  local dead = 0
+  for _, entry in ipairs(entries) do
+    local pending = redis.call("XPENDING", key, group, entry[1], entry[1], 1)
+    if pending[1] and pending[1][4] > maxDeliveries then
+      redis.call("XADD", KEYS[2], "*", "body", entry[2], "id", entry[1], "group", group, "deliveries", pending[1][4])
+      redis.call("XACK", key, group, entry[1])
+      dead = dead + 1
+    else
+      alive[#alive + 1] = entry
+    end
+  end
+  return alive, dead
+end
+
+if op == "claim" then
+  local group, consumer, minIdle, count = ARGV[2], ARGV[3], tonumber(ARGV[4]), tonumber(ARGV[5])
+  local cursor, maxDeliveries = ARGV[6] or "0-0", tonumber(ARGV[7] or "0")
+  local claimed
+  local result = redis.pcall("XAUTOCLAIM", key, group, consumer, minIdle, cursor, "COUNT", count)
+  if type(result) == "table" and not result.err then
+    cursor = result[1]
+    claimed = flatten(result[2], group)
+  else
+    if not string.find(string.lower(result.err), "unknown") then
+      return redis.error_reply(result.err)
+    end
+    -- Redis 6.2以前没有XAUTOCLAIM, 用XPENDING + XCLAIM, 从cursor开始往后找count个
+    local pendings = redis.call("XPENDING", key, group, cursor, "+", count)
+    local ids = {}
+    for _, pending in ipairs(pendings) do
+      if pending[3] >= minIdle then
+        ids[#ids + 1] = pending[1]
+      end
+    end
+    if #pendings < count then
+      cursor = "0-0"
+    else
+      local ms, seq = string.match(pendings[#pendings][1], "(%d+)-(%d+)")
+      cursor = ms .. "-" .. (tonumber(seq) + 1)
+    end
+    claimed = {}
+    if #ids > 0 then
+      claimed = flatten(redis.call("XCLAIM", key, group, consumer, minIdle, unpack(ids)), group)
+    end
+  end
+  local alive, dead = deadLetter(claimed, group, maxDeliveries)
+  return {cursor, alive, dead}
+end
+
+if op == "len" then
+  return redis.call("XLEN", key)
+end
+
+return redis.error_reply("Unknown stream operation " .. tostring(op))
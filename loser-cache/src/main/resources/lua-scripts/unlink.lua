@@ -0,0 +1,7 @@
+-- KEYS 要删除的key, Cluster模式下必须在同一个slot
+-- UNLINK在后台线程释放内存, 删大key不阻塞; Redis 4.0以前没有UNLINK, 退回到DEL
+local result = redis.pcall("UNLINK", unpack(KEYS))
+if type(result) == "table" and result.err then
+  return redis.call("DEL", unpack(KEYS))
+end
+return result
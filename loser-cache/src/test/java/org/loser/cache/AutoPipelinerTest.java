@@ -0,0 +1,115 @@
+package org.loser.cache;
+
+import com.loserico.cache.JedisUtils;
+import com.loserico.cache.pipeline.AutoPipeliner;
+import com.loserico.common.lang.resource.PropertyReader;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 需要本地Redis, 和JedisUtilsTests一样
+ * <p>
+ * 单机Redis不会返回MOVED, 用lua的error_reply模拟: 前几次返回MOVED, 之后正常返回
+ * <p>
+ * Copyright: (C), 2021-03-18 16:30
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class AutoPipelinerTest {
+	
+	private static final PropertyReader propertyReader = new PropertyReader("redis");
+	
+	/**
+	 * 第ARGV[1]次调用之前都返回MOVED
+	 */
+	private static final String MOVED_SCRIPT = "if redis.call('incr', KEYS[1]) < tonumber(ARGV[1]) then "
+			+ "return redis.error_reply('MOVED 3999 127.0.0.1:6379') end return 'OK'";
+	
+	private final AtomicInteger borrows = new AtomicInteger();
+	
+	private JedisPool pool;
+	
+	@Before
+	public void setUp() {
+		String password = propertyReader.getString("redis.password");
+		pool = new JedisPool(new GenericObjectPoolConfig(), propertyReader.getString("redis.host", "localhost"),
+				propertyReader.getInt("redis.port", 6379), Protocol.DEFAULT_TIMEOUT,
+				password == null || password.isEmpty() ? null : password) {
+			@Override
+			public Jedis getResource() {
+				borrows.incrementAndGet();
+				return super.getResource();
+			}
+		};
+	}
+	
+	@After
+	public void tearDown() {
+		pool.close();
+	}
+	
+	/**
+	 * 凑批窗口内提交的命令一次pipeline发出去, 只借很少几次连接
+	 */
+	@Test
+	public void testBatching() throws Exception {
+		String key = "test:pipeline:" + UUID.randomUUID();
+		AutoPipeliner pipeliner = new AutoPipeliner(pool, 128, 100000L, 1);
+		List<CompletableFuture<Long>> futures = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			futures.add(pipeliner.submit(key.getBytes(), pipeline -> pipeline.incr(key)));
+		}
+		long max = 0L;
+		for (CompletableFuture<Long> future : futures) {
+			max = Math.max(max, future.get());
+		}
+		assertEquals(100L, max);
+		assertTrue(borrows.get() <= 5);
+		JedisUtils.del(key);
+	}
+	
+	@Test
+	public void testRetryAfterMoved() {
+		String key = "test:pipeline:" + UUID.randomUUID();
+		AutoPipeliner pipeliner = new AutoPipeliner(pool, 128, 0L, 1);
+		Object result = pipeliner.execute(key.getBytes(), pipeline -> pipeline.eval(MOVED_SCRIPT, 1, key, "2"));
+		assertEquals("OK", result);
+		Long calls = JedisUtils.get(key, Long.class);
+		assertEquals(2L, (long) calls);
+		JedisUtils.del(key);
+	}
+	
+	@Test
+	public void testGiveUpAfterMaxRedirects() throws InterruptedException {
+		String key = "test:pipeline:" + UUID.randomUUID();
+		AutoPipeliner pipeliner = new AutoPipeliner(pool, 128, 0L, 1);
+		try {
+			pipeliner.submit(key.getBytes(), pipeline -> pipeline.eval(MOVED_SCRIPT, 1, key, "100")).get();
+			fail("MOVED should be thrown after max redirects");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof JedisMovedDataException);
+		}
+		Long calls = JedisUtils.get(key, Long.class);
+		assertEquals(3L, (long) calls);
+		JedisUtils.del(key);
+	}
+}
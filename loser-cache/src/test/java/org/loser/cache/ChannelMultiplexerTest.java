@@ -0,0 +1,93 @@
+package org.loser.cache;
+
+import com.loserico.cache.concurrent.RedisSemaphore;
+import com.loserico.common.lang.resource.PropertyReader;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * ChannelMultiplexer是包内可见的, 通过RedisSemaphore等待释放通知来测; 需要本地Redis, 和JedisUtilsTests一样
+ * <p>
+ * 等待者没收到通知的话要过租约的1/3(默认10秒)才会再试一次, 所以2秒内拿到permit说明通知送到了
+ * <p>
+ * Copyright: (C), 2021-03-18 15:30
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class ChannelMultiplexerTest {
+	
+	private static final PropertyReader propertyReader = new PropertyReader("redis");
+	
+	@Test
+	public void testNotifyWaiter() throws InterruptedException {
+		String name = "test:" + UUID.randomUUID();
+		RedisSemaphore holder = new RedisSemaphore(name, 1);
+		RedisSemaphore waiter = new RedisSemaphore(name, 1);
+		assertTrue(holder.tryAcquire());
+		assertNotifiedOnRelease(holder, waiter);
+		holder.delete();
+	}
+	
+	@Test
+	public void testResubscribeAfterDisconnect() throws InterruptedException {
+		String name = "test:" + UUID.randomUUID();
+		RedisSemaphore holder = new RedisSemaphore(name, 1);
+		RedisSemaphore waiter = new RedisSemaphore(name, 1);
+		assertTrue(holder.tryAcquire());
+		/*
+		 * 第一次等待的时候订阅
+		 */
+		assertFalse(waiter.tryAcquire(200, TimeUnit.MILLISECONDS));
+		
+		killPubSubConnections();
+		/*
+		 * 每5秒检查一次订阅
+		 */
+		TimeUnit.SECONDS.sleep(7);
+		assertNotifiedOnRelease(holder, waiter);
+		holder.delete();
+	}
+	
+	private static void assertNotifiedOnRelease(RedisSemaphore holder, RedisSemaphore waiter) throws InterruptedException {
+		new Thread(() -> {
+			try {
+				TimeUnit.MILLISECONDS.sleep(300);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			holder.release();
+		}).start();
+		long begin = System.currentTimeMillis();
+		assertTrue(waiter.tryAcquire(5, TimeUnit.SECONDS));
+		assertTrue(System.currentTimeMillis() - begin < 2000L);
+		waiter.release();
+	}
+	
+	private static void killPubSubConnections() {
+		try (Jedis jedis = new Jedis(propertyReader.getString("redis.host", "localhost"), propertyReader.getInt("redis.port", 6379))) {
+			String password = propertyReader.getString("redis.password");
+			if (password != null && !password.isEmpty()) {
+				jedis.auth(password);
+			}
+			for (String client : jedis.clientList().split("\n")) {
+				if (!client.contains("cmd=psubscribe")) {
+					continue;
+				}
+				for (String field : client.split(" ")) {
+					if (field.startsWith("addr=")) {
+						jedis.clientKill(field.substring("addr=".length()));
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package org.loser.cache;
+
+import com.loserico.cache.pool.ConsistentHashRing;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * Copyright: (C), 2021-03-15 10:05
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class ConsistentHashRingTest {
+	
+	private static final int KEYS = 100000;
+	
+	@Test
+	public void testBalanced() {
+		ConsistentHashRing<String> ring = new ConsistentHashRing<>(shards(4));
+		Map<String, Integer> counts = new HashMap<>();
+		for (int i = 0; i < KEYS; i++) {
+			counts.merge(ring.routeName("user:" + i), 1, Integer::sum);
+		}
+		assertEquals(4, counts.size());
+		for (Integer count : counts.values()) {
+			assertTrue("unbalanced: " + counts, Math.abs(count - KEYS / 4) < KEYS / 4 * 0.2);
+		}
+	}
+	
+	@Test
+	public void testAddShardMovesAboutOneNth() {
+		ConsistentHashRing<String> ring = new ConsistentHashRing<>(shards(4));
+		ConsistentHashRing<String> grown = ring.add("shard4", "shard4");
+		int moved = 0;
+		for (int i = 0; i < KEYS; i++) {
+			String before = ring.routeName("user:" + i);
+			String after = grown.routeName("user:" + i);
+			if (!before.equals(after)) {
+				assertEquals("keys only move to the new shard", "shard4", after);
+				moved++;
+			}
+		}
+		assertTrue("moved " + moved, Math.abs(moved - KEYS / 5) < KEYS / 5 * 0.2);
+	}
+	
+	@Test
+	public void testHashTag() {
+		ConsistentHashRing<String> ring = new ConsistentHashRing<>(shards(8));
+		for (int i = 0; i < 100; i++) {
+			assertEquals(ring.routeName("{tenant:" + i + "}:orders"), ring.routeName("{tenant:" + i + "}:users"));
+		}
+	}
+	
+	private Map<String, String> shards(int count) {
+		Map<String, String> shards = new LinkedHashMap<>();
+		for (int i = 0; i < count; i++) {
+			shards.put("shard" + i, "shard" + i);
+		}
+		return shards;
+	}
+}
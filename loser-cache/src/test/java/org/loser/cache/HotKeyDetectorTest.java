@@ -0,0 +1,61 @@
+package org.loser.cache;
+
+import com.loserico.cache.near.HotKeyDetector;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * Copyright: (C), 2021-03-15 17:30
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class HotKeyDetectorTest {
+	
+	@Test
+	public void testDetectHotKey() {
+		HotKeyDetector detector = new HotKeyDetector(1, 500);
+		byte[] hot = "config:feature-flags".getBytes(UTF_8);
+		for (int i = 0; i < 1000; i++) {
+			detector.record(hot);
+			for (int j = 0; j < 10; j++) {
+				detector.record(("user:" + (i * 10 + j)).getBytes(UTF_8));
+			}
+		}
+		assertTrue(detector.isHot(hot));
+		assertEquals(1, detector.hotKeys().size());
+		assertTrue(detector.hotKeys().containsKey("config:feature-flags"));
+		assertFalse(detector.isHot("user:42".getBytes(UTF_8)));
+	}
+	
+	@Test
+	public void testSampling() {
+		HotKeyDetector detector = new HotKeyDetector(16, 500);
+		byte[] hot = "config:global".getBytes(UTF_8);
+		for (int i = 0; i < 2000; i++) {
+			detector.record(hot);
+		}
+		assertTrue(detector.isHot(hot));
+	}
+	
+	@Test
+	public void testDecay() {
+		HotKeyDetector detector = new HotKeyDetector(1, 500);
+		byte[] hot = "config:feature-flags".getBytes(UTF_8);
+		for (int i = 0; i < 600; i++) {
+			detector.record(hot);
+		}
+		assertTrue(detector.isHot(hot));
+		detector.decay();
+		assertTrue("hysteresis keeps it hot above threshold/2", detector.isHot(hot));
+		detector.decay();
+		assertFalse(detector.isHot(hot));
+		assertTrue(detector.hotKeys().isEmpty());
+	}
+}
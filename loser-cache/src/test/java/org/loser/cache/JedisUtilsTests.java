@@ -8,7 +8,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
@@ -230,4 +232,11 @@ public class JedisUtilsTests {
 		JedisUtils.HASH.hset("hash-delget", "f1", "v1");
 		assertEquals("v1", JedisUtils.HASH.hdelGet("hash-delget", "f1"));
 	}
+	
+	@Test
+	public void testMgetMsetEmpty() {
+		assertTrue(JedisUtils.mget(new ArrayList<>()).isEmpty());
+		assertTrue(JedisUtils.mget(new ArrayList<>(), String.class).isEmpty());
+		assertTrue(JedisUtils.mset(new HashMap<>()));
+	}
 }
@@ -0,0 +1,47 @@
+package org.loser.cache;
+
+import com.loserico.cache.utils.KeyTemplate;
+import org.junit.Test;
+import redis.clients.util.JedisClusterCRC16;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * Copyright: (C), 2021-03-17 11:20
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class KeyTemplateTest {
+	
+	@Test
+	public void testFormat() {
+		KeyTemplate template = KeyTemplate.of("order:{1}:user:{0}");
+		assertEquals("order:1001:user:rico", template.formatAsString("rico", 1001L));
+		assertEquals("order::user:三少", template.formatAsString("三少", null));
+		assertArrayEquals("order:-7:user:😀".getBytes(UTF_8), template.format("😀", -7));
+	}
+	
+	@Test
+	public void testHashTagCoLocation() {
+		KeyTemplate companion = KeyTemplate.of("jedis_utils:__timeout__set:{0}").hashTag(0);
+		
+		String plain = "user:session";
+		assertEquals("jedis_utils:__timeout__set:{user:session}", companion.formatAsString(plain));
+		assertEquals(JedisClusterCRC16.getSlot(plain.getBytes(UTF_8)), JedisClusterCRC16.getSlot(companion.format(plain)));
+		
+		String tagged = "user:{42}:session";
+		assertEquals("jedis_utils:__timeout__set:user:{42}:session", companion.formatAsString(tagged));
+		assertEquals(JedisClusterCRC16.getSlot(tagged.getBytes(UTF_8)), JedisClusterCRC16.getSlot(companion.format(tagged)));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testBraceBeforeHashTag() {
+		KeyTemplate.of("{app}:{0}").hashTag(0);
+	}
+}
@@ -0,0 +1,89 @@
+package org.loser.cache;
+
+import com.loserico.cache.JedisUtils;
+import com.loserico.cache.ratelimit.FixedWindowRateLimiter;
+import com.loserico.cache.ratelimit.RateLimiter;
+import com.loserico.cache.ratelimit.SlidingLogRateLimiter;
+import com.loserico.cache.ratelimit.TokenBucketRateLimiter;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 需要本地Redis, 和JedisUtilsTests一样
+ * <p>
+ * Copyright: (C), 2021-03-18 10:20
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class RateLimiterTest {
+	
+	@Test
+	public void testFixedWindow() {
+		String key = "test:" + UUID.randomUUID();
+		RateLimiter limiter = new FixedWindowRateLimiter(2, 10, TimeUnit.SECONDS, false);
+		assertTrue(limiter.tryAcquire(key));
+		assertTrue(limiter.tryAcquire(key));
+		assertFalse(limiter.tryAcquire(key));
+		JedisUtils.del("loser:ratelimit:fixed:" + key);
+	}
+	
+	@Test
+	public void testFixedWindowWaitMillis() {
+		String key = "test:ratelimit:" + UUID.randomUUID();
+		Long first = JedisUtils.evalScript("/lua-scripts/rateLimit.lua", 1, key, 10, 1);
+		assertEquals(1L, (long) first);
+		long result = JedisUtils.evalScript("/lua-scripts/rateLimit.lua", 1, key, 10, 1);
+		assertTrue(result < 0 && result >= -10000L);
+		JedisUtils.del(key);
+	}
+	
+	@Test
+	public void testSlidingLog() {
+		String key = "test:" + UUID.randomUUID();
+		RateLimiter limiter = new SlidingLogRateLimiter(2, 10, TimeUnit.SECONDS, false);
+		List<Boolean> results = limiter.tryAcquire(key, key, key);
+		assertTrue(results.get(0));
+		assertTrue(results.get(1));
+		assertFalse(results.get(2));
+		JedisUtils.del("loser:ratelimit:sliding:" + key);
+	}
+	
+	@Test
+	public void testSlidingLogWaitMillis() {
+		String key = "test:ratelimit:" + UUID.randomUUID();
+		Long first = JedisUtils.evalScript("/lua-scripts/slidingLogRateLimit.lua", 1, key, 10000, 1, "a");
+		assertEquals(0L, (long) first);
+		long waitMillis = JedisUtils.evalScript("/lua-scripts/slidingLogRateLimit.lua", 1, key, 10000, 1, "b");
+		assertTrue(waitMillis > 0 && waitMillis <= 10000L);
+		JedisUtils.del(key);
+	}
+	
+	@Test
+	public void testTokenBucket() {
+		String key = "test:" + UUID.randomUUID();
+		RateLimiter limiter = new TokenBucketRateLimiter(1, 10, TimeUnit.SECONDS, 2, false);
+		assertTrue(limiter.tryAcquire(key));
+		assertTrue(limiter.tryAcquire(key));
+		assertFalse(limiter.tryAcquire(key));
+		JedisUtils.del("loser:ratelimit:gcra:" + key);
+	}
+	
+	@Test
+	public void testTokenBucketWaitMillis() {
+		String key = "test:ratelimit:" + UUID.randomUUID();
+		Long first = JedisUtils.evalScript("/lua-scripts/gcraRateLimit.lua", 1, key, 10000, 1, 1);
+		assertEquals(0L, (long) first);
+		long waitMillis = JedisUtils.evalScript("/lua-scripts/gcraRateLimit.lua", 1, key, 10000, 1, 1);
+		assertTrue(waitMillis > 0 && waitMillis <= 10000L);
+		JedisUtils.del(key);
+	}
+}
@@ -0,0 +1,58 @@
+package org.loser.cache;
+
+import com.loserico.cache.codec.FstCodec;
+import com.loserico.cache.codec.JacksonCodec;
+import com.loserico.cache.codec.KryoCodec;
+import com.loserico.cache.codec.ProtostuffCodec;
+import com.loserico.cache.codec.RedisCodec;
+import com.loserico.cache.codec.RedisCodecs;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * Copyright: (C), 2021-03-04 11:02
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class RedisCodecTest {
+	
+	@Test
+	public void testRoundTrip() {
+		RedisCodec[] codecs = {new JacksonCodec(), new KryoCodec(), new ProtostuffCodec(), new FstCodec()};
+		NetFlowBean bean = netFlowBean();
+		for (RedisCodec codec : codecs) {
+			byte[] data = codec.encode(bean);
+			assertEquals(bean, RedisCodecs.decode(data, NetFlowBean.class));
+		}
+	}
+	
+	@Test
+	public void testReadJsonWithBinaryCodec() {
+		NetFlowBean bean = netFlowBean();
+		byte[] json = new JacksonCodec().encode(bean);
+		RedisCodec old = RedisCodecs.getCodec();
+		try {
+			RedisCodecs.setCodec(new KryoCodec());
+			assertEquals(bean, RedisCodecs.decode(json, NetFlowBean.class));
+			assertTrue(new KryoCodec().encode(bean).length < json.length);
+		} finally {
+			RedisCodecs.setCodec(old);
+		}
+	}
+	
+	private NetFlowBean netFlowBean() {
+		NetFlowBean bean = new NetFlowBean();
+		bean.setTs(System.currentTimeMillis());
+		bean.setMeshPort("eth0");
+		bean.setPktsRecvd(1024L);
+		bean.setPktsDrooped(3L);
+		bean.setBytesRecvd(1048576L);
+		return bean;
+	}
+}
@@ -0,0 +1,115 @@
+package org.loser.cache;
+
+import com.loserico.cache.JedisUtils;
+import com.loserico.cache.concurrent.Lock;
+import com.loserico.cache.concurrent.RedisReadWriteLock;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 需要本地Redis, 和JedisUtilsTests一样
+ * <p>
+ * Copyright: (C), 2021-03-18 14:40
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class RedisReadWriteLockTest {
+	
+	@Test
+	public void testReadersShare() throws InterruptedException {
+		String name = "test:" + UUID.randomUUID();
+		RedisReadWriteLock rwLock = new RedisReadWriteLock(name);
+		rwLock.readLock().lock();
+		
+		CountDownLatch locked = new CountDownLatch(1);
+		Thread reader = new Thread(() -> {
+			Lock lock = new RedisReadWriteLock(name).readLock();
+			lock.lock();
+			locked.countDown();
+			lock.unlock();
+		});
+		reader.start();
+		assertTrue(locked.await(2, TimeUnit.SECONDS));
+		rwLock.readLock().unlock();
+		cleanup(name);
+	}
+	
+	@Test
+	public void testWriterExcludesReader() throws InterruptedException {
+		String name = "test:" + UUID.randomUUID();
+		RedisReadWriteLock rwLock = new RedisReadWriteLock(name);
+		rwLock.writeLock().lock();
+		
+		CountDownLatch locked = new CountDownLatch(1);
+		Thread reader = new Thread(() -> {
+			Lock lock = new RedisReadWriteLock(name).readLock();
+			lock.lock();
+			locked.countDown();
+			lock.unlock();
+		});
+		reader.start();
+		assertFalse(locked.await(300, TimeUnit.MILLISECONDS));
+		
+		rwLock.writeLock().unlock();
+		assertTrue(locked.await(5, TimeUnit.SECONDS));
+		cleanup(name);
+	}
+	
+	@Test
+	public void testReaderExcludesWriter() throws InterruptedException {
+		String name = "test:" + UUID.randomUUID();
+		RedisReadWriteLock rwLock = new RedisReadWriteLock(name);
+		rwLock.readLock().lock();
+		
+		CountDownLatch locked = new CountDownLatch(1);
+		Thread writer = new Thread(() -> {
+			Lock lock = new RedisReadWriteLock(name).writeLock();
+			lock.lock();
+			locked.countDown();
+			lock.unlock();
+		});
+		writer.start();
+		assertFalse(locked.await(300, TimeUnit.MILLISECONDS));
+		
+		rwLock.readLock().unlock();
+		assertTrue(locked.await(5, TimeUnit.SECONDS));
+		cleanup(name);
+	}
+	
+	/**
+	 * 持有写锁的进程挂了(不再续约), 租约到期之后别人可以加锁
+	 */
+	@Test
+	public void testExpiredWriterReaped() throws InterruptedException {
+		String name = "test:" + UUID.randomUUID();
+		String lockKey = "loser:rwlock:{" + name + "}:lock";
+		String leasesKey = "loser:rwlock:{" + name + "}:leases";
+		Long waitMillis = JedisUtils.evalScript("/lua-scripts/rwlockWrite.lua", 2, lockKey, leasesKey, "dead-holder", 200);
+		assertEquals(0L, (long) waitMillis);
+		
+		CountDownLatch locked = new CountDownLatch(1);
+		Thread reader = new Thread(() -> {
+			Lock lock = new RedisReadWriteLock(name).readLock();
+			lock.lock();
+			locked.countDown();
+			lock.unlock();
+		});
+		reader.start();
+		assertTrue(locked.await(5, TimeUnit.SECONDS));
+		cleanup(name);
+	}
+	
+	private static void cleanup(String name) {
+		JedisUtils.del("loser:rwlock:{" + name + "}:lock");
+		JedisUtils.del("loser:rwlock:{" + name + "}:leases");
+	}
+}
@@ -0,0 +1,82 @@
+package org.loser.cache;
+
+import com.loserico.cache.JedisUtils;
+import com.loserico.cache.concurrent.RedisSemaphore;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 需要本地Redis, 和JedisUtilsTests一样
+ * <p>
+ * Copyright: (C), 2021-03-18 14:10
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class RedisSemaphoreTest {
+	
+	@Test
+	public void testPermits() {
+		RedisSemaphore semaphore = new RedisSemaphore("test:" + UUID.randomUUID(), 2);
+		assertTrue(semaphore.isPermitsSetSuccess());
+		assertTrue(semaphore.tryAcquire());
+		assertTrue(semaphore.tryAcquire());
+		assertFalse(semaphore.tryAcquire());
+		assertEquals(0, semaphore.availablePermits());
+		semaphore.release();
+		assertEquals(1, semaphore.availablePermits());
+		semaphore.release();
+		assertEquals(2, semaphore.availablePermits());
+		semaphore.delete();
+	}
+	
+	@Test
+	public void testTryAcquireWait() throws InterruptedException {
+		String name = "test:" + UUID.randomUUID();
+		RedisSemaphore holder = new RedisSemaphore(name, 1);
+		RedisSemaphore waiter = new RedisSemaphore(name, 1);
+		assertTrue(holder.tryAcquire());
+		assertFalse(waiter.tryAcquire(200, TimeUnit.MILLISECONDS));
+		
+		new Thread(() -> {
+			try {
+				TimeUnit.MILLISECONDS.sleep(200);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			holder.release();
+		}).start();
+		assertTrue(waiter.tryAcquire(5, TimeUnit.SECONDS));
+		waiter.release();
+		holder.delete();
+	}
+	
+	/**
+	 * 持有者挂掉(不再续约), 租约到期之后permit被回收
+	 */
+	@Test
+	public void testExpiredLeaseReaped() throws InterruptedException {
+		String name = "test:" + UUID.randomUUID();
+		RedisSemaphore semaphore = new RedisSemaphore(name, 1);
+		String keyPrefix = "loser:sem:{" + name + "}:";
+		Long acquired = JedisUtils.evalScript("/lua-scripts/semaphoreAcquire.lua", 5,
+				keyPrefix + "permits", keyPrefix + "holders", keyPrefix + "counts", keyPrefix + "queue", keyPrefix + "waiters",
+				"dead-client", 1, 200, 0, "dead-waiter");
+		assertEquals(0L, (long) acquired);
+		assertFalse(semaphore.tryAcquire());
+		assertEquals(0, semaphore.availablePermits());
+		
+		TimeUnit.MILLISECONDS.sleep(400);
+		assertEquals(1, semaphore.availablePermits());
+		assertTrue(semaphore.tryAcquire());
+		semaphore.release();
+		semaphore.delete();
+	}
+}
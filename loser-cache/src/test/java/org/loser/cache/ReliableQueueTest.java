@@ -0,0 +1,105 @@
+package org.loser.cache;
+
+import com.loserico.cache.JedisUtils;
+import com.loserico.cache.collection.QueueStats;
+import com.loserico.cache.collection.ReliableQueue;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+/**
+ * 需要本地Redis, 和JedisUtilsTests一样
+ * <p>
+ * Copyright: (C), 2021-03-18 16:00
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class ReliableQueueTest {
+	
+	@Test
+	public void testFetchAndAck() throws InterruptedException {
+		String name = "test:queue:" + UUID.randomUUID();
+		ReliableQueue<String> queue = ReliableQueue.builder(name, String.class).build();
+		List<String> handled = new CopyOnWriteArrayList<>();
+		CountDownLatch latch = new CountDownLatch(3);
+		queue.start(value -> {
+			handled.add(value);
+			latch.countDown();
+		});
+		queue.offer("a", "b", "c");
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(asList("a", "b", "c"), handled);
+		
+		TimeUnit.MILLISECONDS.sleep(200);
+		QueueStats stats = queue.stats();
+		assertEquals(0L, stats.getBacklog());
+		assertEquals(0L, stats.getInflight());
+		assertEquals(3L, stats.getProcessed());
+		queue.shutdown();
+		cleanup(name);
+	}
+	
+	@Test
+	public void testRequeueAfterVisibilityTimeout() throws InterruptedException {
+		String name = "test:queue:" + UUID.randomUUID();
+		ReliableQueue<String> queue = ReliableQueue.builder(name, String.class)
+				.visibilityTimeout(1, TimeUnit.SECONDS)
+				.build();
+		AtomicInteger attempts = new AtomicInteger();
+		CountDownLatch latch = new CountDownLatch(1);
+		queue.start(value -> {
+			if (attempts.incrementAndGet() == 1) {
+				throw new IllegalStateException("first attempt fails");
+			}
+			latch.countDown();
+		});
+		queue.offer("x");
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals(2, attempts.get());
+		
+		QueueStats stats = queue.stats();
+		assertEquals(1L, stats.getFailed());
+		assertTrue(stats.getRequeued() >= 1L);
+		queue.shutdown();
+		cleanup(name);
+	}
+	
+	/**
+	 * 截止时间是lua里按Redis的时间算的, 没到截止时间不会重新入队
+	 */
+	@Test
+	public void testRequeueOnlyExpired() throws InterruptedException {
+		String name = "test:queue:" + UUID.randomUUID();
+		ReliableQueue<String> queue = ReliableQueue.builder(name, String.class).build();
+		queue.offer("y");
+		List<byte[]> fetched = JedisUtils.evalScript("/lua-scripts/queueFetch.lua", 3,
+				name, "{" + name + "}:processing", "{" + name + "}:deadlines", 10, 300);
+		assertEquals(1, fetched.size());
+		assertEquals(0, queue.requeue());
+		assertEquals(1L, queue.stats().getInflight());
+		
+		TimeUnit.MILLISECONDS.sleep(500);
+		assertEquals(1, queue.requeue());
+		assertEquals(1L, queue.stats().getBacklog());
+		assertEquals(0L, queue.stats().getInflight());
+		cleanup(name);
+	}
+	
+	private static void cleanup(String name) {
+		JedisUtils.del(name);
+		JedisUtils.del("{" + name + "}:processing");
+		JedisUtils.del("{" + name + "}:deadlines");
+	}
+}
@@ -0,0 +1,95 @@
+package org.loser.cache;
+
+import com.loserico.cache.JedisUtils;
+import com.loserico.cache.concurrent.WatchDog;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.*;
+
+/**
+ * 需要本地Redis, 和JedisUtilsTests一样; Redis和JVM在同一台机器上, 时钟一致
+ * <p>
+ * Copyright: (C), 2021-03-18 15:05
+ * <p>
+ * <p>
+ * Company: Sexy Uncle Inc.
+ *
+ * @author Rico Yu ricoyu520@gmail.com
+ * @version 1.0
+ */
+public class WatchDogTest {
+	
+	@Test
+	public void testRenewLock() throws InterruptedException {
+		String key = "test:watchdog:" + UUID.randomUUID();
+		String value = UUID.randomUUID().toString();
+		JedisUtils.set(key, value, 1, TimeUnit.SECONDS);
+		WatchDog.Lease lease = WatchDog.instance().watchLock(key, value, 1, TimeUnit.SECONDS, null);
+		
+		TimeUnit.MILLISECONDS.sleep(2500);
+		assertTrue(JedisUtils.exists(key));
+		assertFalse(lease.isLost());
+		
+		lease.cancel();
+		TimeUnit.MILLISECONDS.sleep(1500);
+		assertFalse(JedisUtils.exists(key));
+	}
+	
+	@Test
+	public void testRenewLease() throws InterruptedException {
+		String key = "test:watchdog:" + UUID.randomUUID();
+		String member = UUID.randomUUID().toString();
+		JedisUtils.ZSET.zadd(key, System.currentTimeMillis() + 300, member);
+		WatchDog.Lease lease = WatchDog.instance().watchLease(key, member, 300, MILLISECONDS, null);
+		
+		TimeUnit.MILLISECONDS.sleep(1000);
+		assertTrue(JedisUtils.ZSET.zscore(key, member) > System.currentTimeMillis());
+		assertFalse(lease.isLost());
+		
+		lease.cancel();
+		TimeUnit.MILLISECONDS.sleep(600);
+		assertTrue(JedisUtils.ZSET.zscore(key, member) < System.currentTimeMillis());
+		JedisUtils.del(key);
+	}
+	
+	/**
+	 * 租约已经被清理掉了, 不再续约并回调onLost
+	 */
+	@Test
+	public void testLostLease() throws InterruptedException {
+		String key = "test:watchdog:" + UUID.randomUUID();
+		CountDownLatch lost = new CountDownLatch(1);
+		WatchDog.Lease lease = WatchDog.instance().watchLease(key, "gone", 300, MILLISECONDS, lost::countDown);
+		assertTrue(lost.await(2, TimeUnit.SECONDS));
+		assertTrue(lease.isLost());
+		assertFalse(JedisUtils.exists(key));
+	}
+	
+	/**
+	 * 同一个时间槽里的多个租约一批续约, 一个丢了不影响其他的
+	 */
+	@Test
+	public void testRenewBatch() throws InterruptedException {
+		String key = "test:watchdog:" + UUID.randomUUID();
+		WatchDog.Lease[] leases = new WatchDog.Lease[10];
+		for (int i = 0; i < leases.length; i++) {
+			JedisUtils.ZSET.zadd(key, System.currentTimeMillis() + 300, "member" + i);
+			leases[i] = WatchDog.instance().watchLease(key, "member" + i, 300, MILLISECONDS, null);
+		}
+		WatchDog.Lease orphan = WatchDog.instance().watchLease(key, "orphan", 300, MILLISECONDS, null);
+		
+		TimeUnit.MILLISECONDS.sleep(1000);
+		for (int i = 0; i < leases.length; i++) {
+			assertFalse(leases[i].isLost());
+			assertTrue(JedisUtils.ZSET.zscore(key, "member" + i) > System.currentTimeMillis());
+			leases[i].cancel();
+		}
+		assertTrue(orphan.isLost());
+		JedisUtils.del(key);
+	}
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.CollectionType;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
 import com.loserico.json.ObjectMapperDecorator;
 import com.loserico.json.exception.JacksonException;
 import org.slf4j.Logger;
@@ -11,6 +12,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -71,6 +73,26 @@ public final class JacksonUtils {
 		}
 	}
 	
+	/**
+	 * 直接从ByteBuffer的position到limit之间解析, 堆内的buffer不会复制
+	 * 不会改变buffer的position
+	 *
+	 * @param src
+	 * @param clazz
+	 * @return T
+	 */
+	public static <T> T toObject(ByteBuffer src, Class<T> clazz) {
+		try {
+			if (src.hasArray()) {
+				return objectMapper.readValue(src.array(), src.arrayOffset() + src.position(), src.remaining(), clazz);
+			}
+			return objectMapper.readValue(new ByteBufferBackedInputStream(src.duplicate()), clazz);
+		} catch (IOException e) {
+			logger.error(e.getMessage(), e);
+			throw new JacksonException(e);
+		}
+	}
+	
 	/**
 	 * Map转POJO
 	 *
@@ -149,6 +171,42 @@ public final class JacksonUtils {
 		}
 	}
 	
+	/**
+	 * 和toList(String, Class)一样, 直接从UTF-8字节解析, 不用先转成String
+	 *
+	 * @param src
+	 * @param clazz
+	 * @return List<T>
+	 */
+	public static <T> List<T> toList(byte[] src, Class<T> clazz) {
+		if (isBlank(src)) {
+			return emptyList();
+		}
+		CollectionType javaType = objectMapper.getTypeFactory()
+				.constructCollectionType(List.class, clazz);
+		try {
+			return objectMapper.readValue(src, javaType);
+		} catch (IOException e) {
+			logger.error("Parse json array to List of type {} failed", clazz, e);
+			throw new JacksonException(e);
+		}
+	}
+	
+	/**
+	 * 全是空白字符, 和toList(String, Class)里的isBlank对应
+	 */
+	private static boolean isBlank(byte[] src) {
+		if (src == null) {
+			return true;
+		}
+		for (byte b : src) {
+			if (b != ' ' && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != 0x0B) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
 	/**
 	 * 将对象转成json串
 	 *